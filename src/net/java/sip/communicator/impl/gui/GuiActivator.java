@@ -28,6 +28,7 @@ import net.java.sip.communicator.service.muc.*;
 import net.java.sip.communicator.service.notification.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.globalstatus.*;
+import net.java.sip.communicator.service.protocol.media.*;
 import net.java.sip.communicator.service.replacement.*;
 import net.java.sip.communicator.service.replacement.directimage.*;
 import net.java.sip.communicator.service.replacement.smilies.*;
@@ -521,6 +522,20 @@ public class GuiActivator implements BundleActivator
         return mediaService;
     }
 
+    /**
+     * Returns the <tt>MediaQualityStatistics</tt> obtained from the bundle
+     * context.
+     * @return the <tt>MediaQualityStatistics</tt> obtained from the bundle
+     * context or <tt>null</tt> if it is not registered
+     */
+    public static MediaQualityStatistics getMediaQualityStatistics()
+    {
+        return
+            ServiceUtils.getService(
+                    bundleContext,
+                    MediaQualityStatistics.class);
+    }
+
     /**
      * Returns the <tt>DemuxContactSourceService</tt> obtained from the bundle
      * context.
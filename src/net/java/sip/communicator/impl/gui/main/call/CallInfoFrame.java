@@ -267,6 +267,13 @@ public class CallInfoFrame
 
             constructCallPeersInfo(stringBuffer);
 
+            if (aCall instanceof MediaAwareCall)
+            {
+                constructSetupTraceInfo(
+                        ((MediaAwareCall<?,?,?>) aCall).getSetupTrace(),
+                        stringBuffer);
+            }
+
             stringBuffer.append("</font></p></body></html>");
 
             infoTextPane.setText(stringBuffer.toString());
@@ -298,6 +305,49 @@ public class CallInfoFrame
         }
     }
 
+    /**
+     * Constructs the info about the phases of the setup of a call.
+     *
+     * @param trace the trace of the setup of the call
+     * @param stringBuffer the <tt>StringBuffer</tt>, where the setup info will
+     * be added
+     */
+    private void constructSetupTraceInfo(
+            CallSetupTrace trace,
+            StringBuffer stringBuffer)
+    {
+        List<CallSetupTrace.Span> spans = trace.getSpans();
+
+        if (spans.isEmpty())
+            return;
+
+        stringBuffer.append("<br/>");
+        stringBuffer.append(getLineString(resources.getI18NString(
+            "service.gui.callinfo.CALL_SETUP"), ""));
+
+        for (CallSetupTrace.Span span : spans)
+        {
+            String label = span.getName();
+
+            if (span.getPeer() != null)
+                label += " " + span.getPeer();
+
+            long duration = span.getDuration();
+            StringBuilder info
+                = new StringBuilder("+").append(span.getOffset()).append(" ms");
+
+            if (duration > 0)
+                info.append(", ").append(duration).append(" ms");
+            else if (duration < 0)
+            {
+                info.append(", ").append(resources.getI18NString(
+                        "service.gui.callinfo.CALL_SETUP_IN_PROGRESS"));
+            }
+
+            stringBuffer.append(getLineString(label, info.toString()));
+        }
+    }
+
     /**
      * Constructs peer info.
      *
@@ -464,7 +514,18 @@ public class CallInfoFrame
         if(mediaStreamStats == null)
             return;
 
-        mediaStreamStats.updateStats();
+        // The statistics of the streams of sampled calls are kept up to date
+        // by MediaQualityStatistics and updating them here as well would
+        // shorten the periods their rates are computed over.
+        MediaQualityStatistics mediaQualityStatistics
+            = GuiActivator.getMediaQualityStatistics();
+
+        if((mediaQualityStatistics == null)
+                || !mediaQualityStatistics.isSampled(
+                        callPeerMediaHandler.getPeer()))
+        {
+            mediaStreamStats.updateStats();
+        }
 
         if(mediaType == MediaType.VIDEO)
         {
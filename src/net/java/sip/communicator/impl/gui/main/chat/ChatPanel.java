@@ -2289,6 +2289,17 @@ public class ChatPanel
             chatContactListPanel.addContact(chatContact);
     }
 
+    /**
+     * Adds the given <tt>chatContacts</tt> to the list of chat contacts
+     * participating in the corresponding to this chat panel chat at once.
+     * @param chatContacts the contacts to add
+     */
+    public void addChatContacts(Collection<ChatContact<?>> chatContacts)
+    {
+        if (chatContactListPanel != null)
+            chatContactListPanel.addContacts(chatContacts);
+    }
+
     /**
      * Removes the given <tt>chatContact</tt> from the list of chat contacts
      * participating in the corresponding to this chat panel chat.
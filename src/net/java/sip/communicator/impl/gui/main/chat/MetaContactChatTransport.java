@@ -6,9 +6,13 @@
  */
 package net.java.sip.communicator.impl.gui.main.chat;
 
+import java.awt.*;
 import java.io.*;
 import java.net.*;
+import java.util.*;
 
+import javax.imageio.*;
+import javax.imageio.stream.*;
 import javax.swing.*;
 
 import net.java.sip.communicator.impl.gui.utils.*;
@@ -785,9 +789,16 @@ public class MetaContactChatTransport
         {
             try
             {
-                ImageIcon image = new ImageIcon(file.toURI().toURL());
-                int width = image.getIconWidth();
-                int height = image.getIconHeight();
+                Image image = readThumbnailSource(file);
+
+                if (image == null)
+                {
+                    image
+                        = new ImageIcon(file.toURI().toURL()).getImage();
+                }
+
+                int width = image.getWidth(null);
+                int height = image.getHeight(null);
 
                 if (width > THUMBNAIL_WIDTH)
                     width = THUMBNAIL_WIDTH;
@@ -797,7 +808,7 @@ public class MetaContactChatTransport
                 bytes
                     = ImageUtils
                         .getScaledInstanceInBytes(
-                            image.getImage(),
+                            image,
                             width,
                             height);
             }
@@ -806,7 +817,66 @@ public class MetaContactChatTransport
                 if (logger.isDebugEnabled())
                     logger.debug("Could not locate image.", e);
             }
+            catch (IOException e)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Could not read image.", e);
+            }
         }
         return bytes;
     }
+
+    /**
+     * Decodes the image in <tt>file</tt> at the lowest resolution which is
+     * still at least as large as a thumbnail, so that a huge picture is not
+     * decoded at full size only to be scaled down to a few pixels.
+     *
+     * @param file the image file
+     * @return the image at a resolution suitable for a thumbnail or
+     * <tt>null</tt> if ImageIO cannot read the format of <tt>file</tt>
+     * @throws IOException if reading <tt>file</tt> fails
+     */
+    private static Image readThumbnailSource(File file)
+        throws IOException
+    {
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+
+        if (in == null)
+            return null;
+
+        try
+        {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+
+            if (!readers.hasNext())
+                return null;
+
+            ImageReader reader = readers.next();
+
+            try
+            {
+                reader.setInput(in, true, true);
+
+                // only the header is read to get the size
+                int subsampling
+                    = Math.max(
+                            1,
+                            Math.min(
+                                    reader.getWidth(0) / THUMBNAIL_WIDTH,
+                                    reader.getHeight(0) / THUMBNAIL_HEIGHT));
+                ImageReadParam param = reader.getDefaultReadParam();
+
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+    }
 }
@@ -169,6 +169,48 @@ public class ChatContactListModel
         fireIntervalAdded(this, index, index);
     }
 
+    /**
+     * Adds specific <tt>ChatContact</tt>s to this <tt>AbstractListModel</tt>
+     * implementation at once, sorting the whole list a single time and
+     * notifying the listeners of this model a single time, which is much
+     * cheaper than adding them one by one when there are a lot of them.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to be added to this
+     * <tt>AbstractListModel</tt>
+     */
+    public void addElements(Collection<ChatContact<?>> chatContacts)
+    {
+        int oldSize;
+        int newSize;
+
+        synchronized(this.chatContacts)
+        {
+            oldSize = this.chatContacts.size();
+
+            // We don't want duplicates.
+            Set<ChatContact<?>> contained
+                = new HashSet<ChatContact<?>>(this.chatContacts);
+
+            for (ChatContact<?> chatContact : chatContacts)
+            {
+                if (chatContact == null)
+                    throw new IllegalArgumentException("chatContact");
+                if (contained.add(chatContact))
+                    this.chatContacts.add(chatContact);
+            }
+
+            newSize = this.chatContacts.size();
+            if (newSize == oldSize)
+                return;
+
+            Collections.sort(this.chatContacts, sorter);
+        }
+
+        if (oldSize > 0)
+            fireContentsChanged(this, 0, oldSize - 1);
+        fireIntervalAdded(this, oldSize, newSize - 1);
+    }
+
     /* Implements ListModel#getElementAt(int). */
     public ChatContact<?> getElementAt(int index)
     {
@@ -8,6 +8,7 @@ package net.java.sip.communicator.impl.gui.main.chat.conference;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.util.*;
 
 import javax.swing.*;
 
@@ -152,6 +153,17 @@ public class ChatRoomMemberListPanel
         memberListModel.addElement(chatContact);
     }
 
+    /**
+     * Adds <tt>ChatContact</tt>s to the list of contacts contained in the
+     * chat at once.
+     *
+     * @param chatContacts the <tt>ChatContact</tt>s to add
+     */
+    public void addContacts(Collection<ChatContact<?>> chatContacts)
+    {
+        memberListModel.addElements(chatContacts);
+    }
+
     /**
      * Removes the given <tt>ChatContact</tt> from the list of chat contacts.
      *
@@ -29,7 +29,7 @@ import net.java.sip.communicator.util.*;
  */
 public class ConferenceChatSession
     extends ChatSession
-    implements  ChatRoomMemberPresenceListener,
+    implements  ChatRoomMemberPresenceBatchListener,
                 ChatRoomPropertyChangeListener,
                 ChatRoomConferencePublishedListener
 {
@@ -403,6 +403,66 @@ public class ConferenceChatSession
             return;
         }
 
+        processMemberPresenceChange(evt, null);
+    }
+
+    /**
+     * Invoked when several <tt>ChatRoomMemberPresenceChangeEvent</tt>s are
+     * received at once, e.g. the list of the members of a chat room we have
+     * just joined. The members who have joined are added to the list of chat
+     * participants at once.
+     * @param evts the <tt>ChatRoomMemberPresenceChangeEvent</tt>s that
+     * notified us
+     */
+    public void membersPresenceChanged(
+        final List<ChatRoomMemberPresenceChangeEvent> evts)
+    {
+        if(!SwingUtilities.isEventDispatchThread())
+        {
+            SwingUtilities.invokeLater(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    membersPresenceChanged(evts);
+                }
+            });
+            return;
+        }
+
+        List<ChatContact<?>> joinedContacts = new ArrayList<ChatContact<?>>();
+
+        for (ChatRoomMemberPresenceChangeEvent evt : evts)
+        {
+            // keep the order of the changes, the members who have joined so
+            // far have to be shown before others leave
+            if (!joinedContacts.isEmpty()
+                && !ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED.equals(
+                        evt.getEventType()))
+            {
+                sessionRenderer.addChatContacts(joinedContacts);
+                joinedContacts.clear();
+            }
+            processMemberPresenceChange(evt, joinedContacts);
+        }
+
+        if (!joinedContacts.isEmpty())
+            sessionRenderer.addChatContacts(joinedContacts);
+    }
+
+    /**
+     * Updates the list of chat participants and the chat window according to
+     * a <tt>ChatRoomMemberPresenceChangeEvent</tt>. Must be called on the
+     * event dispatch thread.
+     * @param evt the <tt>ChatRoomMemberPresenceChangeEvent</tt> to process
+     * @param joinedContacts the list to collect the chat contacts of the
+     * members who have joined in, so that they are added to the UI later at
+     * once, or <tt>null</tt> to add them to the UI right away
+     */
+    private void processMemberPresenceChange(
+        ChatRoomMemberPresenceChangeEvent evt,
+        List<ChatContact<?>> joinedContacts)
+    {
         ChatRoom sourceChatRoom = (ChatRoom) evt.getSource();
 
         if(!sourceChatRoom.equals(chatRoomWrapper.getChatRoom()))
@@ -425,7 +485,10 @@ public class ConferenceChatSession
             {
                 if (!chatParticipants.contains(chatContact))
                     chatParticipants.add(chatContact);
+                if (joinedContacts == null)
                     sessionRenderer.addChatContact(chatContact);
+                else
+                    joinedContacts.add(chatContact);
             }
             
             ChatRoom room = chatRoomWrapper.getChatRoom();
@@ -0,0 +1,530 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Runs the periodic and background tasks of all Jabber accounts (keep-alive
+ * pings, failover checks, discovery info retrieval) instead of a timer or a
+ * thread per account and per task.
+ * <p>
+ * A single timer thread triggers the tasks and the tasks run on a pool of at
+ * most {@link #MAX_WORKER_THREADS} daemon threads which only exist while there
+ * is work to do, so a task which blocks on the network does not delay the
+ * tasks of the other accounts unless that many are blocked at once. The
+ * period of a task varies randomly by up to
+ * {@link #JITTER_PROPERTY_NAME} percent so that the tasks of accounts which
+ * have registered at the same time do not keep firing together. A run of a
+ * periodic task is skipped if the previous one has not finished yet.
+ * <p>
+ * The number of tasks, runs and the time spent running them are accounted
+ * per account until the account is removed with {@link #removeAccount}.
+ */
+public class AccountTaskScheduler
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(AccountTaskScheduler.class);
+
+    /**
+     * The name of the property which specifies by how many percent of its
+     * period the period of a task is randomly shortened or lengthened.
+     */
+    public static final String JITTER_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.jabber.SCHEDULER_JITTER";
+
+    /**
+     * The default percentage of the period by which it is randomly varied.
+     */
+    public static final int DEFAULT_JITTER = 10;
+
+    /**
+     * The number of seconds an idle pool thread waits for a new task before
+     * it ends.
+     */
+    private static final long IDLE_THREAD_TIMEOUT = 60;
+
+    /**
+     * The maximum number of threads running tasks at the same time. The tasks
+     * triggered while all of them are busy wait for one to become available.
+     */
+    static final int MAX_WORKER_THREADS = 8;
+
+    /**
+     * The scheduler shared by all accounts or <tt>null</tt> if it has not been
+     * needed yet.
+     */
+    private static AccountTaskScheduler instance;
+
+    /**
+     * The percentage of the period by which it is randomly varied.
+     */
+    private final int jitter;
+
+    /**
+     * The thread triggering the tasks.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The threads running the tasks.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The generator of the random variations of the periods.
+     */
+    private final Random random = new Random();
+
+    /**
+     * The accounting of the tasks of each account.
+     */
+    private final Map<AccountID, Statistics> statistics
+        = new HashMap<AccountID, Statistics>();
+
+    /**
+     * Initializes a new <tt>AccountTaskScheduler</tt>.
+     *
+     * @param jitter the percentage of the period by which it is randomly
+     * varied
+     */
+    public AccountTaskScheduler(int jitter)
+    {
+        this.jitter = Math.max(0, Math.min(jitter, 50));
+
+        timer
+            = Executors.newSingleThreadScheduledExecutor(
+                    new DaemonThreadFactory("AccountTaskScheduler"));
+
+        ThreadPoolExecutor workers
+            = new ThreadPoolExecutor(
+                    MAX_WORKER_THREADS, MAX_WORKER_THREADS,
+                    IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("AccountTaskScheduler.worker"));
+
+        workers.allowCoreThreadTimeOut(true);
+        executor = workers;
+    }
+
+    /**
+     * Returns the scheduler shared by all accounts.
+     *
+     * @return the scheduler shared by all accounts
+     */
+    public static synchronized AccountTaskScheduler getInstance()
+    {
+        if (instance == null)
+        {
+            instance
+                = new AccountTaskScheduler(
+                        JabberActivator.getConfigurationService().getInt(
+                                JITTER_PROPERTY_NAME,
+                                DEFAULT_JITTER));
+        }
+        return instance;
+    }
+
+    /**
+     * Runs a task once, as soon as possible.
+     *
+     * @param account the account the task is run for
+     * @param name the name of the task used in the logs
+     * @param runnable the task
+     * @return the <tt>Task</tt> which may be used to cancel the task
+     */
+    public Task execute(AccountID account, String name, Runnable runnable)
+    {
+        return schedule(account, name, runnable, 0, 0);
+    }
+
+    /**
+     * Runs a task after a delay and then every <tt>period</tt> milliseconds,
+     * give or take the jitter, until it is canceled.
+     *
+     * @param account the account the task is run for
+     * @param name the name of the task used in the logs
+     * @param runnable the task
+     * @param delay the number of milliseconds before the first run
+     * @param period the number of milliseconds between two runs or <tt>0</tt>
+     * to run the task only once
+     * @return the <tt>Task</tt> which may be used to cancel the task
+     */
+    public Task schedule(
+            AccountID account,
+            String name,
+            Runnable runnable,
+            long delay,
+            long period)
+    {
+        Statistics accounting;
+
+        synchronized (statistics)
+        {
+            accounting = getStatistics(account);
+            accounting.taskCount++;
+        }
+
+        Task task = new Task(account, accounting, name, runnable, period);
+
+        task.trigger(jitter(delay));
+        return task;
+    }
+
+    /**
+     * Returns the number of tasks of an account which have been scheduled and
+     * have neither been canceled nor run to completion.
+     *
+     * @param account the account
+     * @return the number of active tasks of <tt>account</tt>
+     */
+    public int getTaskCount(AccountID account)
+    {
+        synchronized (statistics)
+        {
+            Statistics s = statistics.get(account);
+
+            return (s == null) ? 0 : s.taskCount;
+        }
+    }
+
+    /**
+     * Returns the number of times the tasks of an account have been run.
+     *
+     * @param account the account
+     * @return the number of runs of the tasks of <tt>account</tt>
+     */
+    public long getRunCount(AccountID account)
+    {
+        synchronized (statistics)
+        {
+            Statistics s = statistics.get(account);
+
+            return (s == null) ? 0 : s.runCount;
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds spent running the tasks of an
+     * account.
+     *
+     * @param account the account
+     * @return the number of milliseconds spent running the tasks of
+     * <tt>account</tt>
+     */
+    public long getRunTime(AccountID account)
+    {
+        synchronized (statistics)
+        {
+            Statistics s = statistics.get(account);
+
+            return (s == null) ? 0 : s.runTime;
+        }
+    }
+
+    /**
+     * Forgets the accounting of the tasks of an account which is being
+     * removed. The tasks of the account which are still active are no longer
+     * accounted.
+     *
+     * @param account the account being removed
+     */
+    public void removeAccount(AccountID account)
+    {
+        synchronized (statistics)
+        {
+            statistics.remove(account);
+        }
+    }
+
+    /**
+     * Returns the accounting of the tasks of an account, creating it if
+     * necessary. Must be called with <tt>statistics</tt> locked.
+     *
+     * @param account the account
+     * @return the accounting of the tasks of <tt>account</tt>
+     */
+    private Statistics getStatistics(AccountID account)
+    {
+        Statistics s = statistics.get(account);
+
+        if (s == null)
+        {
+            s = new Statistics();
+            statistics.put(account, s);
+        }
+        return s;
+    }
+
+    /**
+     * Randomly shortens or lengthens a delay by up to {@link #jitter}
+     * percent.
+     *
+     * @param delay the delay in milliseconds
+     * @return the varied delay in milliseconds
+     */
+    private long jitter(long delay)
+    {
+        long maxJitter = delay * jitter / 100;
+
+        if (maxJitter <= 0)
+            return delay;
+
+        long offset;
+
+        synchronized (random)
+        {
+            offset = (long) ((random.nextDouble() * 2 - 1) * maxJitter);
+        }
+        return delay + offset;
+    }
+
+    /**
+     * A task scheduled on an <tt>AccountTaskScheduler</tt>.
+     */
+    public class Task
+    {
+        /**
+         * The account the task is run for.
+         */
+        private final AccountID account;
+
+        /**
+         * The accounting of the tasks of {@link #account}.
+         */
+        private final Statistics accounting;
+
+        /**
+         * The name of the task used in the logs.
+         */
+        private final String name;
+
+        /**
+         * The actual task.
+         */
+        private final Runnable runnable;
+
+        /**
+         * The number of milliseconds between two runs or <tt>0</tt> if the
+         * task is run only once.
+         */
+        private final long period;
+
+        /**
+         * Whether the task has been canceled or has run to completion.
+         */
+        private boolean done = false;
+
+        /**
+         * Whether the task is being run.
+         */
+        private boolean running = false;
+
+        /**
+         * The pending trigger of the next run or <tt>null</tt>.
+         */
+        private ScheduledFuture<?> trigger;
+
+        /**
+         * Initializes a new <tt>Task</tt>.
+         *
+         * @param account the account the task is run for
+         * @param accounting the accounting of the tasks of <tt>account</tt>
+         * @param name the name of the task used in the logs
+         * @param runnable the actual task
+         * @param period the number of milliseconds between two runs or
+         * <tt>0</tt> if the task is run only once
+         */
+        private Task(
+                AccountID account,
+                Statistics accounting,
+                String name,
+                Runnable runnable,
+                long period)
+        {
+            this.account = account;
+            this.accounting = accounting;
+            this.name = name;
+            this.runnable = runnable;
+            this.period = period;
+        }
+
+        /**
+         * Cancels the task. A run in progress is not interrupted.
+         */
+        public void cancel()
+        {
+            synchronized (this)
+            {
+                if (done)
+                    return;
+                done = true;
+                if (trigger != null)
+                {
+                    trigger.cancel(false);
+                    trigger = null;
+                }
+            }
+            taskDone();
+        }
+
+        /**
+         * Returns whether the task has been canceled or has run to
+         * completion.
+         *
+         * @return <tt>true</tt> if the task will not run again
+         */
+        public synchronized boolean isDone()
+        {
+            return done;
+        }
+
+        /**
+         * Schedules the next run of the task.
+         *
+         * @param delay the number of milliseconds before the next run
+         */
+        private synchronized void trigger(long delay)
+        {
+            if (done)
+                return;
+
+            trigger
+                = timer.schedule(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                dispatch();
+                            }
+                        },
+                        Math.max(0, delay),
+                        TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Hands the task over to a pool thread unless its previous run is
+         * still in progress, and schedules the next run.
+         */
+        private void dispatch()
+        {
+            synchronized (this)
+            {
+                trigger = null;
+                if (done)
+                    return;
+
+                if (running)
+                {
+                    logger.warn(
+                            "Skipping " + name + " for " + account
+                                + ": its previous run has not finished.");
+                }
+                else
+                {
+                    running = true;
+                    executor.execute(
+                            new Runnable()
+                            {
+                                public void run()
+                                {
+                                    runTask();
+                                }
+                            });
+                }
+
+                if (period > 0)
+                    trigger(jitter(period));
+            }
+        }
+
+        /**
+         * Runs the task and accounts for it.
+         */
+        private void runTask()
+        {
+            long startTime = System.currentTimeMillis();
+
+            try
+            {
+                runnable.run();
+            }
+            catch (Throwable t)
+            {
+                if (t instanceof ThreadDeath)
+                    throw (ThreadDeath) t;
+                logger.error("Error running " + name + " for " + account, t);
+            }
+            finally
+            {
+                long runTime = System.currentTimeMillis() - startTime;
+                boolean completed;
+
+                synchronized (statistics)
+                {
+                    accounting.runCount++;
+                    accounting.runTime += runTime;
+                }
+                if (logger.isTraceEnabled())
+                {
+                    logger.trace(
+                            "Ran " + name + " for " + account + " within "
+                                + runTime + " ms");
+                }
+
+                synchronized (this)
+                {
+                    running = false;
+                    completed = (period <= 0) && !done;
+                    if (completed)
+                        done = true;
+                }
+                if (completed)
+                    taskDone();
+            }
+        }
+
+        /**
+         * Accounts for the end of the task.
+         */
+        private void taskDone()
+        {
+            synchronized (statistics)
+            {
+                accounting.taskCount--;
+            }
+        }
+    }
+
+    /**
+     * The accounting of the tasks of an account.
+     */
+    private static class Statistics
+    {
+        /**
+         * The number of active tasks.
+         */
+        int taskCount;
+
+        /**
+         * The number of runs.
+         */
+        long runCount;
+
+        /**
+         * The number of milliseconds spent running the tasks.
+         */
+        long runTime;
+    }
+}
@@ -0,0 +1,534 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Fetches the avatars of the contacts of an account with a bounded number of
+ * vCard requests in flight, so that logging into a large roster does not
+ * flood the server or hold up the presence listener.
+ * <p>
+ * Requests for contacts which are being displayed are served before the ones
+ * triggered by presence updates, and requests are served in the order they
+ * have been made otherwise. Requests are keyed by the hash of the avatar when
+ * it is known, so an avatar advertised by several contacts is downloaded once
+ * for all of them, and by the address of the contact otherwise. Avatars whose
+ * hash is already in the <tt>AvatarStore</tt> are not downloaded again.
+ * <p>
+ * The latest hash advertised by each contact is remembered and a fetched
+ * avatar is only delivered to the contacts whose latest hash it still is, so
+ * that a slow fetch of an older avatar never replaces a newer one.
+ */
+public class AvatarFetcher
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(AvatarFetcher.class);
+
+    /**
+     * The name of the property which specifies the maximum number of avatars
+     * fetched at the same time per account.
+     */
+    public static final String MAX_IN_FLIGHT_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "AVATAR_FETCH_MAX_IN_FLIGHT";
+
+    /**
+     * The default maximum number of avatars fetched at the same time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    /**
+     * The maximum number of avatars fetched at the same time by all
+     * accounts.
+     */
+    private static final int MAX_WORKER_THREADS = 8;
+
+    /**
+     * The pool running the workers of all fetchers.
+     */
+    private static final ExecutorService workerExecutor;
+
+    static
+    {
+        ThreadPoolExecutor executor
+            = new ThreadPoolExecutor(
+                    MAX_WORKER_THREADS, MAX_WORKER_THREADS,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("AvatarFetcher"));
+
+        executor.allowCoreThreadTimeOut(true);
+        workerExecutor = executor;
+    }
+
+    /**
+     * Downloads avatars from the server.
+     */
+    public interface Source
+    {
+        /**
+         * Downloads the avatar of a contact.
+         *
+         * @param address the address of the contact.
+         * @param sha1 the hash of the avatar the contact has advertised or
+         * <tt>null</tt> if it is not known.
+         * @return the avatar of the contact, an empty array if the contact
+         * has none or <tt>null</tt> if it could not be downloaded.
+         */
+        public byte[] fetchAvatar(String address, String sha1);
+    }
+
+    /**
+     * Receives the fetched avatars.
+     */
+    public interface Listener
+    {
+        /**
+         * Notifies that the avatar of a contact has been fetched.
+         *
+         * @param address the address of the contact.
+         * @param sha1 the hash of the avatar which has been requested or
+         * <tt>null</tt> if it was not known.
+         * @param avatar the avatar of the contact, an empty array if the
+         * contact has none or <tt>null</tt> if it could not be downloaded.
+         */
+        public void avatarFetched(String address, String sha1, byte[] avatar);
+    }
+
+    /**
+     * Downloads the avatars.
+     */
+    private final Source source;
+
+    /**
+     * Receives the fetched avatars.
+     */
+    private final Listener listener;
+
+    /**
+     * The store of the downloaded avatars or <tt>null</tt> if they are not
+     * stored.
+     */
+    private final AvatarStore store;
+
+    /**
+     * The maximum number of avatars fetched at the same time.
+     */
+    private final int maxInFlight;
+
+    /**
+     * The queued requests, the ones for visible contacts first.
+     */
+    private final PriorityQueue<Request> queue = new PriorityQueue<Request>();
+
+    /**
+     * The queued and in-flight requests for a known hash mapped by the
+     * lower-case hash.
+     */
+    private final Map<String, Request> hashRequests
+        = new HashMap<String, Request>();
+
+    /**
+     * The queued and in-flight requests for an unknown hash mapped by the
+     * address of their contact.
+     */
+    private final Map<String, Request> addressRequests
+        = new HashMap<String, Request>();
+
+    /**
+     * The latest lower-case hash advertised by each contact mapped by the
+     * address of the contact.
+     */
+    private final Map<String, String> latestHashes
+        = new HashMap<String, String>();
+
+    /**
+     * The <tt>Object</tt> held while checking that fetched avatars are still
+     * the latest ones of their contacts and delivering them, so that an older
+     * avatar is never delivered after a newer one.
+     */
+    private final Object deliverySyncRoot = new Object();
+
+    /**
+     * The number of workers running or waiting to run on the pool.
+     */
+    private int workerCount = 0;
+
+    /**
+     * The number of requests made so far, used to serve requests of the same
+     * priority in order.
+     */
+    private long requestCount = 0;
+
+    /**
+     * Whether this fetcher has been shut down.
+     */
+    private boolean shutdown = false;
+
+    /**
+     * Initializes a new <tt>AvatarFetcher</tt>.
+     *
+     * @param source downloads the avatars.
+     * @param listener receives the fetched avatars.
+     * @param store the store of the downloaded avatars or <tt>null</tt> if
+     * they are not to be stored.
+     * @param maxInFlight the maximum number of avatars fetched at the same
+     * time.
+     */
+    public AvatarFetcher(
+            Source source,
+            Listener listener,
+            AvatarStore store,
+            int maxInFlight)
+    {
+        this.source = source;
+        this.listener = listener;
+        this.store = store;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Queues the fetching of the avatar of a contact.
+     *
+     * @param address the address of the contact.
+     * @param sha1 the hash of the avatar the contact has advertised or
+     * <tt>null</tt> if it is not known, in which case the latest hash the
+     * contact has advertised, if any, is used.
+     * @param visible <tt>true</tt> if the contact is being displayed and its
+     * avatar is to be fetched before the ones of the other contacts.
+     */
+    public synchronized void fetch(String address, String sha1, boolean visible)
+    {
+        if (shutdown)
+            return;
+
+        if (sha1 == null)
+            sha1 = latestHashes.get(address);
+        else
+        {
+            sha1 = sha1.toLowerCase();
+
+            String oldSha1 = latestHashes.put(address, sha1);
+
+            // the contact no longer waits for the avatar it had advertised
+            if (oldSha1 != null && !oldSha1.equals(sha1))
+                forget(address, hashRequests.get(oldSha1));
+            forget(address, addressRequests.get(address));
+        }
+
+        Request request
+            = (sha1 == null)
+                ? addressRequests.get(address)
+                : hashRequests.get(sha1);
+
+        if (request != null)
+        {
+            request.addresses.add(address);
+            if (visible && !request.visible && !request.inFlight)
+            {
+                queue.remove(request);
+                request.visible = true;
+                queue.add(request);
+            }
+            return;
+        }
+
+        request = new Request(sha1, address, visible, requestCount++);
+        request.addresses.add(address);
+        if (sha1 == null)
+            addressRequests.put(address, request);
+        else
+            hashRequests.put(sha1, request);
+        queue.add(request);
+
+        if (workerCount < maxInFlight)
+        {
+            workerExecutor.execute(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            runWorker();
+                        }
+                    });
+            workerCount++;
+        }
+    }
+
+    /**
+     * Returns the number of requests which are queued or being served.
+     *
+     * @return the number of requests which are queued or being served.
+     */
+    public synchronized int getRequestCount()
+    {
+        return hashRequests.size() + addressRequests.size();
+    }
+
+    /**
+     * Drops the queued requests and lets the worker threads exit once they
+     * are done with the requests they are serving, whose avatars are not
+     * delivered.
+     */
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        queue.clear();
+        hashRequests.clear();
+        addressRequests.clear();
+        latestHashes.clear();
+    }
+
+    /**
+     * Removes a contact from the ones waiting for a request and drops the
+     * request if it is still queued and no other contact waits for it.
+     *
+     * @param address the address of the contact.
+     * @param request the request or <tt>null</tt>.
+     */
+    private void forget(String address, Request request)
+    {
+        if (request == null
+                || !request.addresses.remove(address)
+                || !request.addresses.isEmpty()
+                || request.inFlight)
+            return;
+
+        queue.remove(request);
+        remove(request);
+    }
+
+    /**
+     * Removes a request from the map it is kept in.
+     *
+     * @param request the request to remove.
+     */
+    private void remove(Request request)
+    {
+        if (request.sha1 == null)
+        {
+            if (addressRequests.get(request.address) == request)
+                addressRequests.remove(request.address);
+        }
+        else if (hashRequests.get(request.sha1) == request)
+            hashRequests.remove(request.sha1);
+    }
+
+    /**
+     * Serves queued requests until there are none left.
+     */
+    private void runWorker()
+    {
+        Request request;
+
+        while ((request = take()) != null)
+        {
+            byte[] avatar = null;
+
+            try
+            {
+                avatar = fetch(request);
+            }
+            catch (RuntimeException ex)
+            {
+                logger.error(
+                        "Failed to fetch avatar of " + request.fetchAddress,
+                        ex);
+            }
+            finally
+            {
+                deliver(request, avatar);
+            }
+        }
+    }
+
+    /**
+     * Delivers the avatar fetched for a request to the contacts whose latest
+     * advertised hash is still the one of the request.
+     *
+     * @param request the request which has been served.
+     * @param avatar the fetched avatar, an empty array if the contact has
+     * none or <tt>null</tt> if it could not be downloaded.
+     */
+    private void deliver(Request request, byte[] avatar)
+    {
+        synchronized (deliverySyncRoot)
+        {
+            List<String> addresses = new ArrayList<String>();
+
+            synchronized (this)
+            {
+                remove(request);
+                if (shutdown)
+                    return;
+
+                // an avatar which turns out not to have the requested hash is
+                // only known to belong to the contact it was downloaded for
+                Collection<String> candidates
+                    = (request.sha1 == null
+                            || avatar == null
+                            || request.sha1.equals(
+                                    VCardTempXUpdatePresenceExtension
+                                        .getImageSha1(avatar)))
+                        ? request.addresses
+                        : Collections.singleton(request.fetchAddress);
+
+                for (String address : candidates)
+                {
+                    String latestSha1 = latestHashes.get(address);
+
+                    if ((request.sha1 == null)
+                            ? (latestSha1 == null)
+                            : request.sha1.equals(latestSha1))
+                        addresses.add(address);
+                }
+            }
+
+            for (String address : addresses)
+            {
+                try
+                {
+                    listener.avatarFetched(address, request.sha1, avatar);
+                }
+                catch (RuntimeException ex)
+                {
+                    logger.error("Failed to set avatar of " + address, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches the avatar of a request from the store or else from the server.
+     *
+     * @param request the request to serve.
+     * @return the avatar, an empty array if the contact has none or
+     * <tt>null</tt> if it could not be downloaded.
+     */
+    private byte[] fetch(Request request)
+    {
+        if (store != null && request.sha1 != null)
+        {
+            byte[] avatar = store.get(request.sha1);
+
+            if (avatar != null)
+                return avatar;
+        }
+
+        byte[] avatar
+            = source.fetchAvatar(request.fetchAddress, request.sha1);
+
+        if (store != null && avatar != null && avatar.length != 0)
+            store.put(avatar);
+        return avatar;
+    }
+
+    /**
+     * Takes the next request off the queue or lets the calling worker exit
+     * if there is none.
+     *
+     * @return the next request or <tt>null</tt> if the calling worker is to
+     * exit.
+     */
+    private synchronized Request take()
+    {
+        Request request = queue.poll();
+
+        if (request == null)
+        {
+            workerCount--;
+            return null;
+        }
+
+        request.inFlight = true;
+        request.fetchAddress = request.addresses.iterator().next();
+        return request;
+    }
+
+    /**
+     * A queued or in-flight request for an avatar.
+     */
+    private static class Request
+        implements Comparable<Request>
+    {
+        /**
+         * The lower-case hash of the avatar or <tt>null</tt> if it is not
+         * known.
+         */
+        final String sha1;
+
+        /**
+         * The address of the contact the request has been made for.
+         */
+        final String address;
+
+        /**
+         * The addresses of the contacts waiting for the avatar.
+         */
+        final Set<String> addresses = new LinkedHashSet<String>();
+
+        /**
+         * The number of requests made before this one.
+         */
+        final long index;
+
+        /**
+         * The address of the contact the avatar is downloaded for once the
+         * request is in flight.
+         */
+        String fetchAddress;
+
+        /**
+         * Whether the request is being served.
+         */
+        boolean inFlight = false;
+
+        /**
+         * Whether one of the contacts is being displayed.
+         */
+        boolean visible;
+
+        /**
+         * Initializes a new <tt>Request</tt>.
+         *
+         * @param sha1 the lower-case hash of the avatar or <tt>null</tt>.
+         * @param address the address of the contact the request is made for.
+         * @param visible whether the contact is being displayed.
+         * @param index the number of requests made before this one.
+         */
+        Request(String sha1, String address, boolean visible, long index)
+        {
+            this.sha1 = sha1;
+            this.address = address;
+            this.visible = visible;
+            this.index = index;
+        }
+
+        /**
+         * Orders the requests for visible contacts first and then by the
+         * order they have been made in.
+         *
+         * @param other the request to compare to.
+         * @return a negative integer, zero, or a positive integer as this
+         * request is to be served before, with or after <tt>other</tt>.
+         */
+        public int compareTo(Request other)
+        {
+            if (visible != other.visible)
+                return visible ? -1 : 1;
+            if (index != other.index)
+                return (index < other.index) ? -1 : 1;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * On-disk store of avatar images addressed by the SHA-1 hash of their
+ * content, i.e. by the hash contacts advertise in the <tt>photo</tt> element
+ * of their <tt>vcard-temp:x:update</tt> presence. An avatar whose hash is
+ * already in the store does not have to be downloaded again, no matter which
+ * contact or account it has been downloaded for.
+ * <p>
+ * The store keeps at most a given number of avatars: when it grows past it,
+ * the least recently used ones are deleted.
+ */
+public class AvatarStore
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger = Logger.getLogger(AvatarStore.class);
+
+    /**
+     * The number of hexadecimal digits of a SHA-1 hash.
+     */
+    private static final int SHA1_LENGTH = 40;
+
+    /**
+     * The name of the property which specifies the maximum number of avatars
+     * kept in the store.
+     */
+    public static final String MAX_AVATARS_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "AVATAR_STORE_MAX_AVATARS";
+
+    /**
+     * The default maximum number of avatars kept in the store.
+     */
+    public static final int DEFAULT_MAX_AVATARS = 1000;
+
+    /**
+     * The directory the avatars are stored in.
+     */
+    private final File directory;
+
+    /**
+     * The maximum number of avatars kept in the store.
+     */
+    private final int maxAvatars;
+
+    /**
+     * Creates a store which keeps at most {@link #DEFAULT_MAX_AVATARS}
+     * avatars in <tt>directory</tt>.
+     *
+     * @param directory the directory to keep the avatars in. It is created
+     * when the first avatar is stored.
+     */
+    public AvatarStore(File directory)
+    {
+        this(directory, DEFAULT_MAX_AVATARS);
+    }
+
+    /**
+     * Creates a store which keeps at most <tt>maxAvatars</tt> avatars in
+     * <tt>directory</tt>.
+     *
+     * @param directory the directory to keep the avatars in. It is created
+     * when the first avatar is stored.
+     * @param maxAvatars the maximum number of avatars kept in the store.
+     */
+    public AvatarStore(File directory, int maxAvatars)
+    {
+        this.directory = directory;
+        this.maxAvatars = Math.max(1, maxAvatars);
+    }
+
+    /**
+     * Returns the avatar with SHA-1 hash <tt>sha1</tt>.
+     *
+     * @param sha1 the hexadecimal SHA-1 hash of the avatar as advertised in
+     * presence.
+     * @return the avatar or <tt>null</tt> if it is not in the store.
+     */
+    public byte[] get(String sha1)
+    {
+        File file = getFile(sha1);
+
+        if (file == null || !file.isFile())
+            return null;
+
+        byte[] avatar = new byte[(int) file.length()];
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new FileInputStream(file));
+            in.readFully(avatar);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to read stored avatar " + file, e);
+            return null;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+
+        // a truncated or otherwise damaged file is as good as a missing one
+        if (!sha1.equalsIgnoreCase(
+                VCardTempXUpdatePresenceExtension.getImageSha1(avatar)))
+        {
+            if (!file.delete())
+                logger.warn("Failed to delete damaged avatar " + file);
+            return null;
+        }
+
+        // keep the avatars in use from being evicted
+        file.setLastModified(System.currentTimeMillis());
+        return avatar;
+    }
+
+    /**
+     * Stores <tt>avatar</tt> unless an avatar with the same hash is already
+     * stored. The hash is returned even if the avatar could not be written, as
+     * the contact advertising it still has that avatar.
+     *
+     * @param avatar the avatar to store.
+     * @return the hexadecimal SHA-1 hash of <tt>avatar</tt>.
+     */
+    public String put(byte[] avatar)
+    {
+        String sha1 = VCardTempXUpdatePresenceExtension.getImageSha1(avatar);
+        File file = getFile(sha1);
+
+        if (file == null || file.exists())
+            return sha1;
+
+        File tmpFile = null;
+        OutputStream out = null;
+        try
+        {
+            if (!directory.exists() && !directory.mkdirs())
+            {
+                throw new IOException(
+                    "Failed to create directory: "
+                        + directory.getAbsolutePath());
+            }
+
+            // the store may be shared by several accounts, so make sure no
+            // one sees a half written avatar
+            tmpFile = File.createTempFile(sha1, null, directory);
+            out = new FileOutputStream(tmpFile);
+            out.write(avatar);
+            out.close();
+            out = null;
+
+            if (!tmpFile.renameTo(file) && !file.exists())
+                throw new IOException("Failed to rename " + tmpFile);
+            evict();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to store avatar " + sha1, e);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(out);
+            if (tmpFile != null && tmpFile.exists() && !tmpFile.delete())
+                logger.warn("Failed to delete " + tmpFile);
+        }
+        return sha1;
+    }
+
+    /**
+     * Deletes the least recently used avatars while the store keeps more than
+     * <tt>maxAvatars</tt> of them.
+     */
+    private void evict()
+    {
+        File[] files = directory.listFiles();
+
+        if (files == null || files.length <= maxAvatars)
+            return;
+
+        List<File> avatars = new ArrayList<File>(files.length);
+
+        // leave the files other accounts are writing alone
+        for (File file : files)
+        {
+            if (getFile(file.getName()) != null)
+                avatars.add(file);
+        }
+        if (avatars.size() <= maxAvatars)
+            return;
+
+        Collections.sort(
+                avatars,
+                new Comparator<File>()
+                {
+                    public int compare(File file1, File file2)
+                    {
+                        long lastModified1 = file1.lastModified();
+                        long lastModified2 = file2.lastModified();
+
+                        if (lastModified1 == lastModified2)
+                            return 0;
+                        return (lastModified1 < lastModified2) ? -1 : 1;
+                    }
+                });
+        for (File file : avatars.subList(0, avatars.size() - maxAvatars))
+        {
+            if (!file.delete() && file.exists())
+                logger.warn("Failed to evict avatar " + file);
+        }
+    }
+
+    /**
+     * Returns the file the avatar with hash <tt>sha1</tt> is stored in.
+     *
+     * @param sha1 the hexadecimal SHA-1 hash of the avatar.
+     * @return the file the avatar is stored in or <tt>null</tt> if
+     * <tt>sha1</tt> is not a valid SHA-1 hash.
+     */
+    private File getFile(String sha1)
+    {
+        // the hash comes from the network, never let it escape the directory
+        if (sha1 == null || sha1.length() != SHA1_LENGTH)
+            return null;
+
+        for (int i = 0; i < SHA1_LENGTH; i++)
+        {
+            if ("0123456789abcdefABCDEF".indexOf(sha1.charAt(i)) == -1)
+                return null;
+        }
+        return new File(directory, sha1.toLowerCase());
+    }
+}
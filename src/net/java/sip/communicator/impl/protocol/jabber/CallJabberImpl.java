@@ -52,6 +52,15 @@ public class CallJabberImpl
      */
     private MediaHandler colibriMediaHandler;
 
+    /**
+     * The <tt>Object</tt> which synchronizes the allocation of colibri
+     * channels, i.e. the creation and the updates of {@link #colibri} and
+     * {@link #colibriMediaHandler}, because the callees of a conference may be
+     * invited concurrently and they all have to join one and the same
+     * conference on the Jitsi Videobridge.
+     */
+    private final Object colibriSyncRoot = new Object();
+
     /**
      * Contains one ColibriStreamConnector for each <tt>MediaType</tt>
      */
@@ -165,6 +174,35 @@ public class CallJabberImpl
             CallPeerJabberImpl peer,
             Map<ContentPacketExtension,ContentPacketExtension> contentMap)
         throws OperationFailedException
+    {
+        /*
+         * The first allocation creates the conference on the Jitsi Videobridge
+         * and the next ones have to use its ID so they cannot overlap.
+         */
+        synchronized (colibriSyncRoot)
+        {
+            return doCreateColibriChannels(peer, contentMap);
+        }
+    }
+
+    /**
+     * Allocates colibri (conference) channels for a specific <tt>MediaType</tt>
+     * to be used by a specific <tt>CallPeer</tt>. Must be called with
+     * {@link #colibriSyncRoot} locked.
+     *
+     * @param peer the <tt>CallPeer</tt> which is to use the allocated colibri
+     * (conference) channels
+     * @param contentMap the local and remote <tt>ContentPacketExtension</tt>s
+     * which specify the <tt>MediaType</tt>s for which colibri (conference)
+     * channels are to be allocated
+     * @return a <tt>ColibriConferenceIQ</tt> which describes the allocated
+     * colibri (conference) channels for the specified <tt>mediaTypes</tt> which
+     * are to be used by the specified <tt>peer</tt>; otherwise, <tt>null</tt>
+     */
+    private ColibriConferenceIQ doCreateColibriChannels(
+            CallPeerJabberImpl peer,
+            Map<ContentPacketExtension,ContentPacketExtension> contentMap)
+        throws OperationFailedException
     {
         if (!getConference().isJitsiVideobridge())
             return null;
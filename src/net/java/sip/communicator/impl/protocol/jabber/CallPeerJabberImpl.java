@@ -376,6 +376,21 @@ public class CallPeerJabberImpl
         }
 
         protocolProvider.getConnection().sendPacket(sessionInitIQ);
+
+        /*
+         * The remote peer processes transport-info only after the
+         * session-initiate so the candidates left out of the offer may only be
+         * trickled now.
+         */
+        getMediaHandler().getTransportManager().startCandidateTrickle(
+                new TransportInfoSender()
+                {
+                    public void sendTransportInfo(
+                            Iterable<ContentPacketExtension> contents)
+                    {
+                        CallPeerJabberImpl.this.sendTransportInfo(contents);
+                    }
+                });
     }
 
     /**
@@ -0,0 +1,242 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.jivesoftware.smackx.muc.*;
+
+/**
+ * Remembers the newest messages of a chat room so that joining it only asks
+ * the server for the discussion history since them, and so that the history
+ * messages which have already been received are not reported again.
+ * <p>
+ * The history is requested from {@link #HISTORY_SINCE_MARGIN} before the
+ * newest message because the timestamps of the messages received live are
+ * taken from the local clock, which may be ahead of the one of the server.
+ * The messages the server sends again because of the margin are recognized
+ * by their sender, their body and a timestamp within the margin of the one
+ * they have been reported with, since the clocks may differ by that much.
+ * <p>
+ * The messages stored before the room has been created are loaded once from
+ * the message history in the background, so that joining does not wait for
+ * the disk.
+ */
+class ChatRoomHistoryTracker
+{
+    /**
+     * The number of milliseconds before the newest known message of the room
+     * the requested discussion history starts at.
+     */
+    static final long HISTORY_SINCE_MARGIN = 60000;
+
+    /**
+     * The maximum number of history messages requested when joining the room
+     * and the maximum number of messages remembered.
+     */
+    static final int MAX_HISTORY_STANZAS = 100;
+
+    /**
+     * The newest messages of the room, oldest first.
+     */
+    private final LinkedList<KnownMessage> knownMessages
+        = new LinkedList<KnownMessage>();
+
+    /**
+     * Whether the messages stored before the room has been created have been
+     * loaded.
+     */
+    private boolean historyLoaded = false;
+
+    /**
+     * Remembers a message of the room which has been reported to the
+     * listeners.
+     *
+     * @param nickname the nickname of the sender of the message
+     * @param body the body of the message
+     * @param timestamp the timestamp of the message
+     */
+    synchronized void messageReported(
+            String nickname,
+            String body,
+            Date timestamp)
+    {
+        add(new KnownMessage(nickname, body, timestamp.getTime()));
+    }
+
+    /**
+     * Remembers the messages stored in the message history before the room
+     * has been created.
+     *
+     * @param evts the stored message events, as returned by the message
+     * history service
+     * @param localNickname the nickname of the local user in the room, which
+     * is the sender of the stored delivered messages
+     */
+    synchronized void historyLoaded(
+            Collection<EventObject> evts,
+            String localNickname)
+    {
+        List<KnownMessage> liveMessages
+            = new ArrayList<KnownMessage>(knownMessages);
+
+        knownMessages.clear();
+        for (EventObject evt : evts)
+        {
+            if (evt instanceof ChatRoomMessageReceivedEvent)
+            {
+                ChatRoomMessageReceivedEvent received
+                    = (ChatRoomMessageReceivedEvent) evt;
+
+                add(
+                    new KnownMessage(
+                            received.getSourceChatRoomMember().getName(),
+                            received.getMessage().getContent(),
+                            received.getTimestamp().getTime()));
+            }
+            else if (evt instanceof ChatRoomMessageDeliveredEvent)
+            {
+                ChatRoomMessageDeliveredEvent delivered
+                    = (ChatRoomMessageDeliveredEvent) evt;
+
+                add(
+                    new KnownMessage(
+                            localNickname,
+                            delivered.getMessage().getContent(),
+                            delivered.getTimestamp().getTime()));
+            }
+        }
+        for (KnownMessage message : liveMessages)
+            add(message);
+        historyLoaded = true;
+    }
+
+    /**
+     * Determines whether a history message sent by the server has already
+     * been reported, in which case it is forgotten so that a message with the
+     * same body which follows is reported. A reported message matches when
+     * it has the same sender and body and its timestamp is no further than
+     * {@link #HISTORY_SINCE_MARGIN} from the one of the history message.
+     *
+     * @param nickname the nickname of the sender of the message
+     * @param body the body of the message
+     * @param timestamp the timestamp the server has sent the message with
+     * @return <tt>true</tt> if the message has already been reported and is to
+     * be dropped
+     */
+    synchronized boolean isReplayed(
+            String nickname,
+            String body,
+            Date timestamp)
+    {
+        long time = timestamp.getTime();
+
+        for (Iterator<KnownMessage> i = knownMessages.iterator(); i.hasNext();)
+        {
+            KnownMessage message = i.next();
+
+            if (message.body.equals(body)
+                    && (message.nickname != null)
+                    && message.nickname.equals(nickname)
+                    && (Math.abs(message.time - time) <= HISTORY_SINCE_MARGIN))
+            {
+                i.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the discussion history to request when joining the room.
+     *
+     * @return the discussion history since the newest known message or
+     * <tt>null</tt> to let the server decide if no message is known or the
+     * stored messages have not been loaded yet
+     */
+    synchronized DiscussionHistory createDiscussionHistory()
+    {
+        if (!historyLoaded || knownMessages.isEmpty())
+            return null;
+
+        DiscussionHistory history = new DiscussionHistory();
+
+        history.setSince(
+                new Date(getNewestTime() - HISTORY_SINCE_MARGIN));
+        history.setMaxStanzas(MAX_HISTORY_STANZAS);
+        return history;
+    }
+
+    /**
+     * Adds a message to {@link #knownMessages} and forgets the messages which
+     * are too old to be sent again by the server.
+     *
+     * @param message the message to add
+     */
+    private void add(KnownMessage message)
+    {
+        knownMessages.add(message);
+
+        long oldestTime = getNewestTime() - HISTORY_SINCE_MARGIN;
+
+        while ((knownMessages.size() > MAX_HISTORY_STANZAS)
+                || (knownMessages.getFirst().time < oldestTime))
+            knownMessages.removeFirst();
+    }
+
+    /**
+     * Returns the timestamp of the newest known message. Must be called with
+     * a non-empty {@link #knownMessages}.
+     *
+     * @return the timestamp in milliseconds of the newest known message
+     */
+    private long getNewestTime()
+    {
+        long newestTime = Long.MIN_VALUE;
+
+        for (KnownMessage message : knownMessages)
+            newestTime = Math.max(newestTime, message.time);
+        return newestTime;
+    }
+
+    /**
+     * A message of the room which has been reported.
+     */
+    private static class KnownMessage
+    {
+        /**
+         * The nickname of the sender of the message.
+         */
+        final String nickname;
+
+        /**
+         * The body of the message.
+         */
+        final String body;
+
+        /**
+         * The timestamp of the message in milliseconds.
+         */
+        final long time;
+
+        /**
+         * Initializes a new <tt>KnownMessage</tt>.
+         *
+         * @param nickname the nickname of the sender of the message
+         * @param body the body of the message
+         * @param time the timestamp of the message in milliseconds
+         */
+        KnownMessage(String nickname, String body, long time)
+        {
+            this.nickname = nickname;
+            this.body = body;
+            this.time = time;
+        }
+    }
+}
@@ -10,6 +10,7 @@ import java.beans.*;
 import java.util.*;
 
 import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+import net.java.sip.communicator.service.msghistory.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.Message;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -104,6 +105,13 @@ public class ChatRoomJabberImpl
      */
     private final OperationSetMultiUserChatJabberImpl opSetMuc;
 
+    /**
+     * Remembers the newest messages of this room to request only the
+     * discussion history since them and to drop the ones sent again.
+     */
+    private final ChatRoomHistoryTracker historyTracker
+        = new ChatRoomHistoryTracker();
+
     /**
      * The list of members of this chat room.
      */
@@ -172,6 +180,11 @@ public class ChatRoomJabberImpl
      */
     private PresenceListener presenceListener = null;
 
+    /**
+     * Collects the member presence changes and delivers them in batches.
+     */
+    private final MemberPresenceEventQueue memberPresenceEvents;
+
     /**
      * Creates an instance of a chat room that has been.
      *
@@ -190,6 +203,18 @@ public class ChatRoomJabberImpl
 
         this.oldSubject = multiUserChat.getSubject();
 
+        this.memberPresenceEvents
+            = new MemberPresenceEventQueue(
+                    provider.getAccountID(),
+                    new MemberPresenceEventQueue.Dispatcher()
+                    {
+                        public void dispatch(
+                            List<ChatRoomMemberPresenceChangeEvent> evts)
+                        {
+                            dispatchMemberPresenceEvents(evts);
+                        }
+                    });
+
         multiUserChat.addSubjectUpdatedListener(
             new SmackSubjectUpdatedListener());
         multiUserChat.addMessageListener(new SmackMessageListener());
@@ -200,6 +225,8 @@ public class ChatRoomJabberImpl
         this.provider.getConnection().addPacketListener(
             invitationRejectionListeners,
             new PacketTypeFilter(org.jivesoftware.smack.packet.Message.class));
+
+        loadStoredHistory();
     }
 
     /**
@@ -601,10 +628,22 @@ public class ChatRoomJabberImpl
                         new FromMatchesFilter(multiUserChat.getRoom()),
                         new PacketTypeFilter(
                             org.jivesoftware.smack.packet.Presence.class)));
-                if(password == null)
-                    multiUserChat.join(nickname);
-                else
-                    multiUserChat.join(nickname, new String(password));
+
+                // the room reports its occupants before the join completes,
+                // deliver them as a single batch
+                memberPresenceEvents.startBatch();
+                try
+                {
+                    multiUserChat.join(
+                        nickname,
+                        (password == null) ? null : new String(password),
+                        createDiscussionHistory(),
+                        SmackConfiguration.getPacketReplyTimeout());
+                }
+                finally
+                {
+                    memberPresenceEvents.endBatch();
+                }
             }
 
             ChatRoomMemberJabberImpl member
@@ -704,6 +743,65 @@ public class ChatRoomJabberImpl
         }
     }
 
+    /**
+     * Starts loading the newest messages of this room stored in the message
+     * history, if any, so that joining does not have to wait for the disk.
+     */
+    private void loadStoredHistory()
+    {
+        final MessageHistoryService historyService
+            = JabberActivator.getMessageHistoryService();
+
+        if(historyService == null
+            || !historyService.isHistoryLoggingEnabled(getIdentifier()))
+            return;
+
+        AccountTaskScheduler.getInstance().execute(
+            provider.getAccountID(),
+            "MUC history lookup",
+            new Runnable()
+            {
+                public void run()
+                {
+                    Collection<EventObject> evts
+                        = historyService.findLast(
+                            ChatRoomJabberImpl.this,
+                            ChatRoomHistoryTracker.MAX_HISTORY_STANZAS);
+
+                    historyTracker.historyLoaded(
+                        (evts == null)
+                            ? Collections.<EventObject>emptyList()
+                            : evts,
+                        getUserNickname());
+                }
+            });
+    }
+
+    /**
+     * Creates the discussion history to request when joining this room. If
+     * the messages of this room are stored locally, only the messages since
+     * the newest known one are requested, otherwise the server decides.
+     *
+     * @return the discussion history to request or <tt>null</tt> to let the
+     * server decide
+     */
+    private DiscussionHistory createDiscussionHistory()
+    {
+        MessageHistoryService historyService
+            = JabberActivator.getMessageHistoryService();
+
+        if(historyService == null
+            || !historyService.isHistoryLoggingEnabled(getIdentifier()))
+            return null;
+
+        DiscussionHistory history = historyTracker.createDiscussionHistory();
+
+        if (history != null && logger.isDebugEnabled())
+            logger.debug("Requesting the history of " + getName()
+                + " since " + history.getSince());
+        return history;
+    }
+
     /**
      * Joins this chat room with the specified nickname so that the user
      * would start receiving events and messages for it.
@@ -899,6 +997,9 @@ public class ChatRoomJabberImpl
             }
         }
 
+        // the members have to be gone before we are
+        memberPresenceEvents.flush();
+
         opSetMuc.fireLocalUserPresenceEvent(
             this,
             LocalUserChatRoomPresenceChangeEvent.LOCAL_USER_LEFT,
@@ -1146,9 +1247,12 @@ public class ChatRoomJabberImpl
 
             members.put(participantName, member);
 
-            //we don't specify a reason
+            // the occupants reported while joining were there before us
             fireMemberPresenceEvent(member,
-                ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED, null);
+                ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED,
+                memberPresenceEvents.isBatching()
+                    ? ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST
+                    : null);
         }
 
         /**
@@ -1631,19 +1735,7 @@ public class ChatRoomJabberImpl
         if (logger.isTraceEnabled())
             logger.trace("Will dispatch the following ChatRoom event: " + evt);
 
-        Iterator<ChatRoomMemberPresenceListener> listeners = null;
-        synchronized (memberListeners)
-        {
-            listeners = new ArrayList<ChatRoomMemberPresenceListener>(
-                                memberListeners).iterator();
-        }
-
-        while (listeners.hasNext())
-        {
-            ChatRoomMemberPresenceListener listener = listeners.next();
-
-            listener.memberPresenceChanged(evt);
-        }
+        memberPresenceEvents.add(evt);
     }
 
     /**
@@ -1668,6 +1760,20 @@ public class ChatRoomJabberImpl
         if (logger.isTraceEnabled())
             logger.trace("Will dispatch the following ChatRoom event: " + evt);
 
+        memberPresenceEvents.add(evt);
+    }
+
+    /**
+     * Notifies all <tt>ChatRoomMemberPresenceListener</tt>s of a batch of
+     * member presence changes. <tt>ChatRoomMemberPresenceBatchListener</tt>s
+     * receive the whole batch at once.
+     *
+     * @param evts the <tt>ChatRoomMemberPresenceChangeEvent</tt>s in the
+     * order in which the changes have occurred
+     */
+    private void dispatchMemberPresenceEvents(
+        List<ChatRoomMemberPresenceChangeEvent> evts)
+    {
         Iterable<ChatRoomMemberPresenceListener> listeners;
         synchronized (memberListeners)
         {
@@ -1677,7 +1783,20 @@ public class ChatRoomJabberImpl
         }
 
         for (ChatRoomMemberPresenceListener listener : listeners)
-            listener.memberPresenceChanged(evt);
+        {
+            if ((evts.size() > 1)
+                && (listener
+                        instanceof ChatRoomMemberPresenceBatchListener))
+            {
+                ((ChatRoomMemberPresenceBatchListener) listener)
+                    .membersPresenceChanged(evts);
+            }
+            else
+            {
+                for (ChatRoomMemberPresenceChangeEvent evt : evts)
+                    listener.memberPresenceChanged(evt);
+            }
+        }
     }
 
     /**
@@ -1692,6 +1811,9 @@ public class ChatRoomJabberImpl
     private void fireMemberRoleEvent(ChatRoomMember member,
         ChatRoomMemberRole previousRole, ChatRoomMemberRole newRole)
     {
+        // the member has to be known before its role changes
+        memberPresenceEvents.flush();
+
         member.setRole(newRole);
         ChatRoomMemberRoleChangeEvent evt
             = new ChatRoomMemberRoleChangeEvent(
@@ -1719,6 +1841,9 @@ public class ChatRoomJabberImpl
      */
     void fireMessageEvent(EventObject evt)
     {
+        // the sender has to be known before its messages
+        memberPresenceEvents.flush();
+
         Iterable<ChatRoomMessageListener> listeners;
         synchronized (messageListeners)
         {
@@ -2024,6 +2149,12 @@ public class ChatRoomJabberImpl
             ChatRoomMember member = null;
 
             String fromUserName = StringUtils.parseResource(msgFrom);
+            boolean outgoing = getUserNickname().equals(fromUserName);
+
+            // history we have already received live or in an earlier join
+            if(delay != null
+                && historyTracker.isReplayed(fromUserName, msgBody, timeStamp))
+                return;
 
             // when the message comes from the room itself its a system message
             if(msgFrom.equals(getName()))
@@ -2061,7 +2192,7 @@ public class ChatRoomJabberImpl
             // if we are sending this message, this either a delivery report
             // or if there is a delay extension this is a history coming from
             // the chat room
-            if(getUserNickname().equals(fromUserName))
+            if(outgoing)
             {
                 // message delivered
                 ChatRoomMessageDeliveredEvent msgDeliveredEvt
@@ -2075,6 +2206,8 @@ public class ChatRoomJabberImpl
                 if(delay != null)
                     msgDeliveredEvt.setHistoryMessage(true);
 
+                historyTracker.messageReported(
+                    fromUserName, msgBody, timeStamp);
                 fireMessageEvent(msgDeliveredEvt);
                 return;
             }
@@ -2133,6 +2266,12 @@ public class ChatRoomJabberImpl
                 msgReceivedEvt.setImportantMessage(true);
             }
 
+            if(messageReceivedEventType
+                == ChatRoomMessageReceivedEvent.CONVERSATION_MESSAGE_RECEIVED)
+            {
+                historyTracker.messageReported(
+                    fromUserName, msgBody, timeStamp);
+            }
             fireMessageEvent(msgReceivedEvt);
         }
     }
@@ -2383,6 +2522,8 @@ public class ChatRoomJabberImpl
     public void fireMemberPropertyChangeEvent(
         ChatRoomMemberPropertyChangeEvent evt)
     {
+        memberPresenceEvents.flush();
+
         Iterable<ChatRoomMemberPropertyChangeListener> listeners;
         synchronized (memberPropChangeListeners)
         {
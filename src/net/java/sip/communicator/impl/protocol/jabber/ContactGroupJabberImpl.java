@@ -461,7 +461,7 @@ public class ContactGroupJabberImpl
             {
                 contact.setResolved(item);
 
-                ssclCallback.fireContactResolved(this, contact);
+                ssclCallback.fireContactResolved(this, contact, item);
             }
             else
             {
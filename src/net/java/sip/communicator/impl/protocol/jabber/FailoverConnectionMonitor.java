@@ -60,16 +60,10 @@ public class FailoverConnectionMonitor
         providerFilovers = new Hashtable<ProtocolProviderServiceJabberImpl, FailoverConnectionMonitor>();
 
     /**
-     * The timer that periodically will trigger a task to check primary server
-     * if we are in failover state.
+     * The task periodically triggered by the <tt>AccountTaskScheduler</tt> to
+     * check primary server or whether we are now connected to primary one.
      */
-    private Timer checkTimer;
-
-    /**
-     * The task to be triggered to check primary server or whether we are now
-     * connected to primary one.
-     */
-    private CheckPrimaryTask task;
+    private AccountTaskScheduler.Task task;
 
     /**
      * The interval between checks (default is 1 minute).
@@ -186,14 +180,13 @@ public class FailoverConnectionMonitor
     {
         if(evt.getNewState() == RegistrationState.REGISTERED)
         {
-            if(checkTimer == null)
-                checkTimer = new Timer(
-                    FailoverConnectionMonitor.class.getName(), true);
-
-            if(task == null)
-                task = new CheckPrimaryTask();
+            if(task != null)
+                task.cancel();
 
-            checkTimer.schedule(task,
+            task = AccountTaskScheduler.getInstance().schedule(
+                parentProvider.getAccountID(),
+                FailoverConnectionMonitor.class.getName(),
+                new CheckPrimaryTask(),
                 CHECK_FOR_PRIMARY_UP_INTERVAL,
                 CHECK_FOR_PRIMARY_UP_INTERVAL);
         }
@@ -208,12 +201,6 @@ public class FailoverConnectionMonitor
                 parentProvider.removeRegistrationStateChangeListener(this);
             }
 
-            if(checkTimer != null)
-            {
-                checkTimer.cancel();
-                checkTimer = null;
-            }
-
             if(task != null)
             {
                 task.cancel();
@@ -226,9 +213,8 @@ public class FailoverConnectionMonitor
      * The task that will make the checks.
      */
     private class CheckPrimaryTask
-        extends TimerTask
+        implements Runnable
     {
-        @Override
         public void run()
         {
             try
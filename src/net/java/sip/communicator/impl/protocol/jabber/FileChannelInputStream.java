@@ -0,0 +1,264 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * Reads a file through a <tt>FileChannel</tt> into a large direct buffer, so
+ * that sending a big file costs a disk read every few hundred kilobytes
+ * rather than for every small chunk the bytestream writes. Reading may start
+ * at an offset, e.g. to resume a transfer.
+ * <p>
+ * The file is only opened on the first read: Smack does not close the stream
+ * it has been given if the transfer is never negotiated.
+ */
+public class FileChannelInputStream
+    extends InputStream
+{
+    /**
+     * The default size in bytes of the read buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The file to read.
+     */
+    private final File file;
+
+    /**
+     * The size in bytes of the read buffer.
+     */
+    private final int bufferSize;
+
+    /**
+     * The position in the file of the next read from the channel.
+     */
+    private long position;
+
+    /**
+     * The channel of the file or <tt>null</tt> if it has not been opened yet.
+     */
+    private FileChannel channel;
+
+    /**
+     * The bytes read from the file which have not been consumed yet or
+     * <tt>null</tt> if nothing has been read yet.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Whether this stream has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Creates a stream reading <tt>file</tt> from its beginning.
+     *
+     * @param file the file to read.
+     * @throws FileNotFoundException if <tt>file</tt> is not a readable file.
+     */
+    public FileChannelInputStream(File file)
+        throws FileNotFoundException
+    {
+        this(file, 0, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a stream reading <tt>file</tt> from <tt>offset</tt>.
+     *
+     * @param file the file to read.
+     * @param offset the position in the file to start reading from.
+     * @throws FileNotFoundException if <tt>file</tt> is not a readable file.
+     */
+    public FileChannelInputStream(File file, long offset)
+        throws FileNotFoundException
+    {
+        this(file, offset, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a stream reading <tt>file</tt> from <tt>offset</tt>.
+     *
+     * @param file the file to read.
+     * @param offset the position in the file to start reading from.
+     * @param bufferSize the size in bytes of the read buffer.
+     * @throws FileNotFoundException if <tt>file</tt> is not a readable file.
+     */
+    FileChannelInputStream(File file, long offset, int bufferSize)
+        throws FileNotFoundException
+    {
+        if (offset < 0)
+            throw new IllegalArgumentException("offset");
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("bufferSize");
+        // fail like FileInputStream would, just without opening the file yet
+        if (!file.isFile() || !file.canRead())
+            throw new FileNotFoundException(file.getPath());
+
+        this.file = file;
+        this.position = offset;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Reads the next byte of the file.
+     *
+     * @return the next byte of the file or <tt>-1</tt> if the end of the file
+     * has been reached.
+     * @throws IOException if the file cannot be read.
+     */
+    @Override
+    public int read()
+        throws IOException
+    {
+        return fill() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    /**
+     * Reads up to <tt>len</tt> bytes of the file into <tt>b</tt>.
+     *
+     * @param b the array to read into.
+     * @param off the offset in <tt>b</tt> to read into.
+     * @param len the maximum number of bytes to read.
+     * @return the number of bytes read or <tt>-1</tt> if the end of the file
+     * has been reached.
+     * @throws IOException if the file cannot be read.
+     */
+    @Override
+    public int read(byte[] b, int off, int len)
+        throws IOException
+    {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+
+        int count = Math.min(len, buffer.remaining());
+
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * Skips up to <tt>n</tt> bytes of the file without reading them.
+     *
+     * @param n the number of bytes to skip.
+     * @return the number of bytes skipped.
+     * @throws IOException if this stream has been closed.
+     */
+    @Override
+    public long skip(long n)
+        throws IOException
+    {
+        ensureOpen();
+        if (n <= 0)
+            return 0;
+
+        long skipped = 0;
+
+        if (buffer != null && buffer.hasRemaining())
+        {
+            skipped = Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + (int) skipped);
+        }
+
+        long fileSkip
+            = Math.min(n - skipped, Math.max(0, file.length() - position));
+
+        position += fileSkip;
+        return skipped + fileSkip;
+    }
+
+    /**
+     * Returns the number of bytes which can be read without accessing the
+     * file.
+     *
+     * @return the number of buffered bytes.
+     * @throws IOException if this stream has been closed.
+     */
+    @Override
+    public int available()
+        throws IOException
+    {
+        ensureOpen();
+        return (buffer == null) ? 0 : buffer.remaining();
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if closing the file fails.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        closed = true;
+        buffer = null;
+        if (channel != null)
+        {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads the next bytes of the file into the buffer if all the buffered
+     * ones have been consumed.
+     *
+     * @return <tt>true</tt> if there are bytes to consume; <tt>false</tt> if
+     * the end of the file has been reached.
+     * @throws IOException if the file cannot be read.
+     */
+    private boolean fill()
+        throws IOException
+    {
+        ensureOpen();
+        if (buffer != null && buffer.hasRemaining())
+            return true;
+
+        if (channel == null)
+        {
+            channel = new FileInputStream(file).getChannel();
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        buffer.clear();
+
+        int count;
+
+        do
+        {
+            count = channel.read(buffer, position);
+        }
+        while (count == 0);
+
+        buffer.flip();
+        if (count < 0)
+            return false;
+
+        position += count;
+        return true;
+    }
+
+    /**
+     * Throws an <tt>IOException</tt> if this stream has been closed.
+     *
+     * @throws IOException if this stream has been closed.
+     */
+    private void ensureOpen()
+        throws IOException
+    {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.util.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
+
+/**
+ * Updates the progress and status of all the file transfers in progress from
+ * a single timer. Every active transfer is sampled at a fixed rate and events
+ * are only fired when its status or the number of transferred bytes has
+ * changed since the previous sample. The timer is stopped whenever there is
+ * no transfer left to sample.
+ */
+public class FileTransferProgressScheduler
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(FileTransferProgressScheduler.class);
+
+    /**
+     * The name of the property which specifies the number of milliseconds
+     * between two samples of the file transfers in progress.
+     */
+    public static final String INTERVAL_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "FILE_TRANSFER_PROGRESS_INTERVAL";
+
+    /**
+     * The default number of milliseconds between two samples.
+     */
+    public static final long DEFAULT_INTERVAL = 100;
+
+    /**
+     * The scheduler shared by all accounts or <tt>null</tt> if it has not been
+     * needed yet.
+     */
+    private static FileTransferProgressScheduler instance;
+
+    /**
+     * The number of milliseconds between two samples.
+     */
+    private final long interval;
+
+    /**
+     * The transfers being sampled.
+     */
+    private final List<TransferProgress> transfers
+        = new ArrayList<TransferProgress>();
+
+    /**
+     * The timer sampling the transfers or <tt>null</tt> if there are none.
+     */
+    private Timer timer;
+
+    /**
+     * Initializes a new <tt>FileTransferProgressScheduler</tt>.
+     *
+     * @param interval the number of milliseconds between two samples.
+     */
+    public FileTransferProgressScheduler(long interval)
+    {
+        this.interval = (interval > 0) ? interval : DEFAULT_INTERVAL;
+    }
+
+    /**
+     * Returns the scheduler shared by all accounts.
+     *
+     * @return the scheduler shared by all accounts.
+     */
+    public static synchronized FileTransferProgressScheduler getInstance()
+    {
+        if (instance == null)
+        {
+            instance
+                = new FileTransferProgressScheduler(
+                        JabberActivator.getConfigurationService().getLong(
+                                INTERVAL_PROPERTY_NAME,
+                                DEFAULT_INTERVAL));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts updating the progress and status of a file transfer until it is
+     * over.
+     *
+     * @param jabberTransfer the Smack file transfer.
+     * @param transfer the file transfer to update.
+     * @param initialFileSize the size of the file being received or
+     * <tt>0</tt> if it is not known.
+     */
+    public synchronized void add(
+            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
+            AbstractFileTransfer transfer,
+            long initialFileSize)
+    {
+        transfers.add(
+                new TransferProgress(jabberTransfer, transfer, initialFileSize));
+
+        if (timer == null)
+        {
+            timer = new Timer("FileTransferProgressScheduler", true);
+            timer.scheduleAtFixedRate(new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    sample();
+                }
+            }, interval, interval);
+        }
+    }
+
+    /**
+     * Returns the number of file transfers being sampled.
+     *
+     * @return the number of file transfers being sampled.
+     */
+    public synchronized int getTransferCount()
+    {
+        return transfers.size();
+    }
+
+    /**
+     * Samples all active transfers, fires the events for the ones which have
+     * changed and drops the ones which are over.
+     */
+    void sample()
+    {
+        List<TransferProgress> activeTransfers;
+
+        synchronized (this)
+        {
+            activeTransfers = new ArrayList<TransferProgress>(transfers);
+        }
+
+        List<TransferProgress> doneTransfers
+            = new ArrayList<TransferProgress>();
+
+        for (TransferProgress transfer : activeTransfers)
+        {
+            try
+            {
+                if (transfer.sample())
+                    doneTransfers.add(transfer);
+            }
+            catch (RuntimeException ex)
+            {
+                logger.error("Failed to update file transfer progress", ex);
+                doneTransfers.add(transfer);
+            }
+        }
+
+        synchronized (this)
+        {
+            transfers.removeAll(doneTransfers);
+            if (transfers.isEmpty() && timer != null)
+            {
+                timer.cancel();
+                timer = null;
+            }
+        }
+    }
+
+    /**
+     * Parses the given Jabber status to a <tt>FileTransfer</tt> interface
+     * status.
+     *
+     * @param jabberStatus the Jabber status to parse
+     * @return the parsed status
+     */
+    private static int parseJabberStatus(Status jabberStatus)
+    {
+        if (jabberStatus.equals(Status.complete))
+            return FileTransferStatusChangeEvent.COMPLETED;
+        else if (jabberStatus.equals(Status.cancelled))
+            return FileTransferStatusChangeEvent.CANCELED;
+        else if (jabberStatus.equals(Status.in_progress)
+                || jabberStatus.equals(Status.negotiated))
+            return FileTransferStatusChangeEvent.IN_PROGRESS;
+        else if (jabberStatus.equals(Status.error))
+            return FileTransferStatusChangeEvent.FAILED;
+        else if (jabberStatus.equals(Status.refused))
+            return FileTransferStatusChangeEvent.REFUSED;
+        else if (jabberStatus.equals(Status.negotiating_transfer)
+                || jabberStatus.equals(Status.negotiating_stream))
+            return FileTransferStatusChangeEvent.PREPARING;
+        else
+             // FileTransfer.Status.initial
+            return FileTransferStatusChangeEvent.WAITING;
+    }
+
+    /**
+     * The progress of a single file transfer.
+     */
+    private static class TransferProgress
+    {
+        /**
+         * The Smack file transfer.
+         */
+        private final org.jivesoftware.smackx.filetransfer.FileTransfer
+            jabberTransfer;
+
+        /**
+         * The file transfer to update.
+         */
+        private final AbstractFileTransfer fileTransfer;
+
+        /**
+         * The size of the file being received or <tt>0</tt> if not known.
+         */
+        private final long initialFileSize;
+
+        /**
+         * The number of transferred bytes last announced or <tt>-1</tt> if
+         * none has been announced yet.
+         */
+        private long lastProgress = -1;
+
+        /**
+         * Initializes a new <tt>TransferProgress</tt>.
+         *
+         * @param jabberTransfer the Smack file transfer.
+         * @param fileTransfer the file transfer to update.
+         * @param initialFileSize the size of the file being received or
+         * <tt>0</tt> if it is not known.
+         */
+        TransferProgress(
+                org.jivesoftware.smackx.filetransfer.FileTransfer
+                    jabberTransfer,
+                AbstractFileTransfer fileTransfer,
+                long initialFileSize)
+        {
+            this.jabberTransfer = jabberTransfer;
+            this.fileTransfer = fileTransfer;
+            this.initialFileSize = initialFileSize;
+        }
+
+        /**
+         * Fires the events for the changes since the previous sample.
+         *
+         * @return <tt>true</tt> if the transfer is over; otherwise,
+         * <tt>false</tt>.
+         */
+        boolean sample()
+        {
+            int status = parseJabberStatus(jabberTransfer.getStatus());
+            long progress = fileTransfer.getTransferedBytes();
+
+            if (status == FileTransferStatusChangeEvent.FAILED
+                || status == FileTransferStatusChangeEvent.COMPLETED
+                || status == FileTransferStatusChangeEvent.CANCELED
+                || status == FileTransferStatusChangeEvent.REFUSED)
+            {
+                finish(status, progress);
+                return true;
+            }
+
+            fileTransfer.fireStatusChangeEvent(status, "Status changed");
+            fireProgressChangeEvent(progress);
+            return false;
+        }
+
+        /**
+         * Fires the events announcing the end of the transfer.
+         *
+         * @param status the status the transfer has ended with.
+         * @param progress the number of transferred bytes.
+         */
+        private void finish(int status, long progress)
+        {
+            String statusReason = "";
+
+            if (fileTransfer instanceof OutgoingFileTransferJabberImpl)
+            {
+                ((OutgoingFileTransferJabberImpl) fileTransfer)
+                    .removeThumbnailRequestListener();
+            }
+
+            // sometimes a filetransfer can be preparing and than completed
+            // between two samples, so it won't go through the intermediate
+            // state - inProgress; make sure this won't happen
+            if(status == FileTransferStatusChangeEvent.COMPLETED
+                && fileTransfer.getStatus()
+                    == FileTransferStatusChangeEvent.PREPARING)
+            {
+                fileTransfer.fireStatusChangeEvent(
+                    FileTransferStatusChangeEvent.IN_PROGRESS,
+                    "Status changed");
+                fireProgressChangeEvent(progress);
+            }
+
+            if (jabberTransfer.getError() != null)
+            {
+                logger.error("An error occured while transfering file: "
+                    +  jabberTransfer.getError().getMessage());
+            }
+
+            if (jabberTransfer.getException() != null)
+            {
+                logger.error("An exception occured while transfering file: ",
+                    jabberTransfer.getException());
+
+                if(jabberTransfer.getException() instanceof XMPPException)
+                {
+                    XMPPError error =
+                        ((XMPPException)jabberTransfer.getException())
+                            .getXMPPError();
+                    if (error != null)
+                        if(error.getCode() == 406
+                           || error.getCode() == 403)
+                            status = FileTransferStatusChangeEvent.REFUSED;
+                }
+
+                statusReason = jabberTransfer.getException().getMessage();
+            }
+
+            if (initialFileSize > 0
+                && status == FileTransferStatusChangeEvent.COMPLETED
+                && fileTransfer.getTransferedBytes() < initialFileSize)
+            {
+                status = FileTransferStatusChangeEvent.CANCELED;
+            }
+
+            fileTransfer.fireStatusChangeEvent(status, statusReason);
+            fireProgressChangeEvent(progress);
+        }
+
+        /**
+         * Fires a progress event unless <tt>progress</tt> has already been
+         * announced.
+         *
+         * @param progress the number of transferred bytes.
+         */
+        private void fireProgressChangeEvent(long progress)
+        {
+            if (progress == lastProgress)
+                return;
+
+            lastProgress = progress;
+            fileTransfer.fireProgressChangeEvent(
+                System.currentTimeMillis(), progress);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.netaddr.*;
+import net.java.sip.communicator.service.netaddr.event.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.media.*;
+import net.java.sip.communicator.util.*;
+
+import org.bitlet.weupnp.*;
+import org.ice4j.*;
+import org.ice4j.ice.harvest.*;
+import org.ice4j.security.*;
+
+/**
+ * Keeps the outcome of the STUN/TURN server discovery and of the UPnP gateway
+ * discovery of an account across calls, so that only the first call after
+ * registration or after a change of the network configuration has to wait
+ * for them.
+ * <p>
+ * The harvesters themselves are not shared because they are bound to the
+ * <tt>StunStack</tt> of the <tt>Agent</tt> they harvest for and keep the
+ * statistics of its harvesting: new ones are created for every call from
+ * the discovered STUN/TURN server and UPnP gateway.
+ * <p>
+ * The discoveries run without holding the lock of the cache so that a call
+ * which only needs the outcome of an earlier discovery does not wait for a
+ * discovery in progress. After a change of the network configuration the
+ * STUN/TURN server discovery is run again in the background for the last
+ * domain it has been run for.
+ * <p>
+ * The caches are kept per <tt>AccountID</tt> and have to be removed with
+ * {@link #removeInstance(AccountID)} when the account is unregistered or
+ * unloaded so that its credentials are not kept any longer.
+ */
+public class IceHarvesterCache
+    implements NetworkConfigurationChangeListener
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(IceHarvesterCache.class);
+
+    /**
+     * The search target of the UPnP gateways providing a WAN IP connection.
+     */
+    private static final String UPNP_IP_SERVICE
+        = "urn:schemas-upnp-org:service:WANIPConnection:1";
+
+    /**
+     * The search target of the UPnP gateways providing a WAN PPP connection.
+     */
+    private static final String UPNP_PPP_SERVICE
+        = "urn:schemas-upnp-org:service:WANPPPConnection:1";
+
+    /**
+     * The caches of the registered accounts.
+     */
+    private static final Map<AccountID, IceHarvesterCache> instances
+        = new HashMap<AccountID, IceHarvesterCache>();
+
+    /**
+     * The service used to discover the STUN/TURN server and notifying about
+     * changes of the network configuration.
+     */
+    private final NetworkAddressManagerService netAddrMgr;
+
+    /**
+     * Runs the discoveries started in the background.
+     */
+    private final Executor executor;
+
+    /**
+     * Whether the STUN/TURN server discovery has been done since the last
+     * change of the network configuration.
+     */
+    private boolean stunServerDiscovered = false;
+
+    /**
+     * The address of the discovered STUN/TURN server or <tt>null</tt> if no
+     * server has been discovered.
+     */
+    private TransportAddress stunServer;
+
+    /**
+     * The credential to use with the discovered TURN server or <tt>null</tt>
+     * if the discovered server only supports STUN.
+     */
+    private LongTermCredential turnCredential;
+
+    /**
+     * Whether the UPnP gateway discovery has been done since the last change
+     * of the network configuration.
+     */
+    private boolean upnpGatewayDiscovered = false;
+
+    /**
+     * The discovered UPnP gateway or <tt>null</tt> if no gateway has been
+     * discovered.
+     */
+    private GatewayDevice upnpGateway;
+
+    /**
+     * Whether a UPnP gateway discovery is in progress.
+     */
+    private boolean discoveringUPNPGateway = false;
+
+    /**
+     * Whether a STUN/TURN server discovery is in progress.
+     */
+    private boolean discovering = false;
+
+    /**
+     * Incremented whenever the cache is cleared so that a discovery which has
+     * been started before does not store its outdated outcome.
+     */
+    private int generation = 0;
+
+    /**
+     * The domain the last discovery has been run for or <tt>null</tt> if none
+     * has been run since the cache has been created or disposed.
+     */
+    private String domainName;
+
+    /**
+     * The name of the user the last discovery has been run with.
+     */
+    private byte[] userName;
+
+    /**
+     * The password the last discovery has been run with.
+     */
+    private byte[] password;
+
+    /**
+     * Whether the cache has been disposed of, in which case it does not keep
+     * the credentials of the discoveries anymore.
+     */
+    private boolean disposed = false;
+
+    /**
+     * Initializes a new <tt>IceHarvesterCache</tt> which is cleared whenever
+     * the network configuration changes.
+     *
+     * @param netAddrMgr the service used to discover the STUN/TURN server and
+     * notifying about changes of the network configuration
+     * @param executor runs the discoveries started in the background
+     */
+    IceHarvesterCache(
+            NetworkAddressManagerService netAddrMgr,
+            Executor executor)
+    {
+        this.netAddrMgr = netAddrMgr;
+        this.executor = executor;
+
+        netAddrMgr.addNetworkConfigurationChangeListener(this);
+    }
+
+    /**
+     * Returns the cache of an account, creating it if the account does not
+     * have one yet.
+     *
+     * @param accountID the account to get the cache of
+     * @return the <tt>IceHarvesterCache</tt> of <tt>accountID</tt>
+     */
+    public static IceHarvesterCache getInstance(final AccountID accountID)
+    {
+        synchronized (instances)
+        {
+            IceHarvesterCache instance = instances.get(accountID);
+
+            if (instance == null)
+            {
+                instance
+                    = new IceHarvesterCache(
+                            JabberActivator.getNetworkAddressManagerService(),
+                            new Executor()
+                            {
+                                public void execute(Runnable command)
+                                {
+                                    AccountTaskScheduler.getInstance().execute(
+                                            accountID,
+                                            "STUN/TURN server discovery",
+                                            command);
+                                }
+                            });
+                instances.put(accountID, instance);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Disposes of the cache of an account and forgets the credentials it has
+     * been discovering with. Does nothing if the account has no cache.
+     *
+     * @param accountID the account which has been unregistered or unloaded
+     */
+    public static void removeInstance(AccountID accountID)
+    {
+        IceHarvesterCache instance;
+
+        synchronized (instances)
+        {
+            instance = instances.remove(accountID);
+        }
+        if (instance != null)
+            instance.dispose();
+    }
+
+    /**
+     * Returns whether the STUN/TURN server discovery has been done since the
+     * last change of the network configuration, in which case
+     * {@link #createDiscoveredHarvester()} does not need the credentials of
+     * the account.
+     *
+     * @return <tt>true</tt> if the STUN/TURN server discovery has been done;
+     * otherwise, <tt>false</tt>
+     */
+    public synchronized boolean isStunServerDiscovered()
+    {
+        return stunServerDiscovered;
+    }
+
+    /**
+     * Creates a harvester for the STUN/TURN server discovered earlier.
+     *
+     * @return a new harvester for the discovered STUN/TURN server or
+     * <tt>null</tt> if no server has been discovered or the discovery has not
+     * been done
+     */
+    public synchronized StunCandidateHarvester createDiscoveredHarvester()
+    {
+        return createHarvester(stunServer, turnCredential);
+    }
+
+    /**
+     * Creates a harvester for a STUN/TURN server.
+     *
+     * @param stunServer the address of the server or <tt>null</tt>
+     * @param turnCredential the credential to use with a TURN server or
+     * <tt>null</tt> if the server only supports STUN
+     * @return a new harvester for <tt>stunServer</tt> or <tt>null</tt> if
+     * <tt>stunServer</tt> is <tt>null</tt>
+     */
+    private static StunCandidateHarvester createHarvester(
+            TransportAddress stunServer,
+            LongTermCredential turnCredential)
+    {
+        if (stunServer == null)
+            return null;
+        else if (turnCredential == null)
+            return new StunCandidateHarvester(stunServer);
+        else
+            return new TurnCandidateHarvester(stunServer, turnCredential);
+    }
+
+    /**
+     * Starts the discovery of the STUN/TURN server of <tt>domainName</tt> in
+     * the background unless it has already been done since the last change
+     * of the network configuration.
+     *
+     * @param domainName the domain to discover the STUN/TURN server of
+     * @param userName the name of the user to use with a TURN server
+     * @param password the password to use with a TURN server
+     */
+    public void startStunServerDiscovery(
+            final String domainName,
+            final byte[] userName,
+            final byte[] password)
+    {
+        executor.execute(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        discoverStunServer(domainName, userName, password);
+                    }
+                });
+    }
+
+    /**
+     * Discovers the STUN/TURN server of <tt>domainName</tt> unless it has
+     * already been discovered since the last change of the network
+     * configuration, and creates a harvester for it. Concurrent callers wait
+     * for a single discovery.
+     *
+     * @param domainName the domain to discover the STUN/TURN server of
+     * @param userName the name of the user to use with a TURN server
+     * @param password the password to use with a TURN server
+     * @return a new harvester for the discovered STUN/TURN server or
+     * <tt>null</tt> if there is no such server
+     */
+    public StunCandidateHarvester discoverStunServer(
+            String domainName,
+            byte[] userName,
+            byte[] password)
+    {
+        int discoveryGeneration;
+
+        synchronized (this)
+        {
+            if (!disposed)
+            {
+                this.domainName = domainName;
+                this.userName = userName;
+                this.password = password;
+            }
+
+            boolean interrupted = false;
+
+            while (discovering)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+
+            if (stunServerDiscovered)
+                return createDiscoveredHarvester();
+
+            discovering = true;
+            discoveryGeneration = generation;
+        }
+
+        long startDiscoveryTime = System.currentTimeMillis();
+        TransportAddress discoveredServer = null;
+        LongTermCredential discoveredCredential = null;
+
+        try
+        {
+            StunCandidateHarvester harvester
+                = netAddrMgr.discoverStunServer(
+                        domainName,
+                        userName,
+                        password);
+
+            if (harvester != null)
+            {
+                discoveredServer = harvester.stunServer;
+                if (harvester instanceof TurnCandidateHarvester)
+                {
+                    discoveredCredential
+                        = new LongTermCredential(userName, password);
+                }
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                discovering = false;
+                if (generation == discoveryGeneration)
+                {
+                    stunServer = discoveredServer;
+                    turnCredential = discoveredCredential;
+                    stunServerDiscovered = true;
+                }
+                notifyAll();
+            }
+        }
+
+        if (logger.isInfoEnabled())
+        {
+            logger.info(
+                    "Discovered STUN/TURN server " + discoveredServer + " for "
+                        + domainName + " within "
+                        + (System.currentTimeMillis() - startDiscoveryTime)
+                        + " ms");
+        }
+        return createHarvester(discoveredServer, discoveredCredential);
+    }
+
+    /**
+     * Creates a UPnP harvester for a call which harvests through the UPnP
+     * gateway discovered earlier or discovers it when it harvests.
+     *
+     * @return a new UPnP harvester for a call
+     */
+    public CandidateHarvester createUPNPHarvester()
+    {
+        return new UPNPGatewayHarvester(this);
+    }
+
+    /**
+     * Returns the UPnP gateway discovered since the last change of the
+     * network configuration, discovering it first if that has not been done.
+     * Concurrent callers wait for a single discovery.
+     *
+     * @return the discovered UPnP gateway or <tt>null</tt> if there is no
+     * such gateway
+     */
+    GatewayDevice getUPNPGateway()
+    {
+        int discoveryGeneration;
+
+        synchronized (this)
+        {
+            boolean interrupted = false;
+
+            while (discoveringUPNPGateway)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+
+            if (upnpGatewayDiscovered)
+                return upnpGateway;
+
+            discoveringUPNPGateway = true;
+            discoveryGeneration = generation;
+        }
+
+        GatewayDevice discoveredGateway = null;
+
+        try
+        {
+            discoveredGateway = discoverUPNPGateway();
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                discoveringUPNPGateway = false;
+                if (generation == discoveryGeneration)
+                {
+                    upnpGateway = discoveredGateway;
+                    upnpGatewayDiscovered = true;
+                }
+                notifyAll();
+            }
+        }
+        return discoveredGateway;
+    }
+
+    /**
+     * Discovers a UPnP gateway providing either a WAN IP or a WAN PPP
+     * connection, looking for both at the same time.
+     *
+     * @return the discovered UPnP gateway or <tt>null</tt> if there is no
+     * such gateway
+     */
+    GatewayDevice discoverUPNPGateway()
+    {
+        Future<GatewayDevice> pppGateway
+            = MediaTaskExecutor.getExecutor().submit(
+                    new UPNPGatewayDiscovery(UPNP_PPP_SERVICE));
+        GatewayDevice gateway
+            = new UPNPGatewayDiscovery(UPNP_IP_SERVICE).call();
+
+        if (gateway == null)
+        {
+            try
+            {
+                gateway = pppGateway.get();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException ee)
+            {
+                logger.info("UPnP discovery failed", ee.getCause());
+            }
+        }
+        return gateway;
+    }
+
+    /**
+     * Forgets the discovered STUN/TURN server and UPnP gateway because they
+     * may no longer be reachable or relevant, and discovers the STUN/TURN
+     * server again in the background so that the next call does not have to
+     * wait for it.
+     *
+     * @param event the change of the network configuration
+     */
+    public void configurationChanged(ChangeEvent event)
+    {
+        if (event.isInitial())
+            return;
+
+        String domainName;
+        byte[] userName;
+        byte[] password;
+
+        synchronized (this)
+        {
+            clear();
+            domainName = this.domainName;
+            userName = this.userName;
+            password = this.password;
+        }
+        if (domainName != null)
+            startStunServerDiscovery(domainName, userName, password);
+    }
+
+    /**
+     * Forgets the discovered STUN/TURN server and UPnP gateway.
+     */
+    public synchronized void clear()
+    {
+        generation++;
+        stunServerDiscovered = false;
+        stunServer = null;
+        turnCredential = null;
+        upnpGatewayDiscovered = false;
+        upnpGateway = null;
+    }
+
+    /**
+     * Stops listening to changes of the network configuration and forgets
+     * everything which has been discovered.
+     */
+    public void dispose()
+    {
+        netAddrMgr.removeNetworkConfigurationChangeListener(this);
+        synchronized (this)
+        {
+            disposed = true;
+            clear();
+            domainName = null;
+            userName = null;
+            password = null;
+        }
+    }
+
+    /**
+     * Discovers the UPnP gateway providing a specific service.
+     */
+    private static class UPNPGatewayDiscovery
+        implements Callable<GatewayDevice>
+    {
+        /**
+         * The search target of the gateway to discover.
+         */
+        private final String searchTarget;
+
+        /**
+         * Initializes a new <tt>UPNPGatewayDiscovery</tt>.
+         *
+         * @param searchTarget the search target of the gateway to discover
+         */
+        public UPNPGatewayDiscovery(String searchTarget)
+        {
+            this.searchTarget = searchTarget;
+        }
+
+        /**
+         * Discovers the UPnP gateway.
+         *
+         * @return the discovered gateway or <tt>null</tt> if there is no such
+         * gateway or the discovery failed
+         */
+        public GatewayDevice call()
+        {
+            try
+            {
+                GatewayDiscover discover = new GatewayDiscover(searchTarget);
+
+                discover.discover();
+                return discover.getValidGateway();
+            }
+            catch (Exception e)
+            {
+                logger.info("UPnP discovery of " + searchTarget + " failed", e);
+                return null;
+            }
+        }
+    }
+}
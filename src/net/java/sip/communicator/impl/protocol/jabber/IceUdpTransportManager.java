@@ -75,6 +75,20 @@ public class IceUdpTransportManager
      */
     protected static final int DEFAULT_STUN_SERVER_PORT = 3478;
 
+    /**
+     * The name of the property which specifies whether only the host
+     * candidates are to be included in offers and answers, and the candidates
+     * of the other harvesters (STUN, TURN, Jingle Nodes, UPnP) are to be sent
+     * in <tt>transport-info</tt>s as they are gathered (trickle ICE).
+     */
+    public static final String TRICKLE_ICE_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.jabber.TRICKLE_ICE";
+
+    /**
+     * Whether the trickling of the local candidates has been started.
+     */
+    private boolean trickleStarted = false;
+
     /**
      * Creates a new instance of this transport manager, binding it to the
      * specified peer.
@@ -87,6 +101,14 @@ public class IceUdpTransportManager
         super(callPeer);
         iceAgent = createIceAgent();
         iceAgent.addStateChangeListener(this);
+
+        if (!callPeer.isJitsiVideobridge()
+                && JabberActivator.getConfigurationService().getBoolean(
+                        TRICKLE_ICE_PROPERTY_NAME,
+                        false))
+        {
+            iceAgent.setTrickling(true);
+        }
     }
 
     /**
@@ -117,58 +139,32 @@ public class IceUdpTransportManager
 
         if (accID.isStunServerDiscoveryEnabled())
         {
-            //the default server is supposed to use the same user name and
-            //password as the account itself.
-            String username
-                = org.jivesoftware.smack.util.StringUtils.parseName(
-                        provider.getOurJID());
-            String password
-                = JabberActivator.getProtocolProviderFactory().loadPassword(
-                        accID);
-            UserCredentials credentials = provider.getUserCredentials();
-
-            if(credentials != null)
-                password = credentials.getPasswordAsString();
-
-            // ask for password if not saved
-            if (password == null)
-            {
-                //create a default credentials object
-                credentials = new UserCredentials();
-                credentials.setUserName(accID.getUserID());
-                //request a password from the user
-                credentials
-                    = provider.getAuthority().obtainCredentials(
-                            accID.getDisplayName(),
-                            credentials,
-                            SecurityAuthority.AUTHENTICATION_REQUIRED);
-
-                // in case user has canceled the login window
-                if(credentials == null)
-                    return null;
+            IceHarvesterCache harvesterCache = provider.getIceHarvesterCache();
+            StunCandidateHarvester autoHarvester;
 
-                //extract the password the user passed us.
-                char[] pass = credentials.getPassword();
-
-                // the user didn't provide us a password (i.e. canceled the
-                // operation)
-                if(pass == null)
+            if (harvesterCache.isStunServerDiscovered())
+            {
+                autoHarvester = harvesterCache.createDiscoveredHarvester();
+            }
+            else
+            {
+                //the default server is supposed to use the same user name and
+                //password as the account itself.
+                String username
+                    = org.jivesoftware.smack.util.StringUtils.parseName(
+                            provider.getOurJID());
+                String password = obtainStunServerPassword(provider, accID);
+
+                if (password == null)
                     return null;
-                password = new String(pass);
 
-                if (credentials.isPasswordPersistent())
-                {
-                    JabberActivator.getProtocolProviderFactory()
-                        .storePassword(accID, password);
-                }
+                autoHarvester
+                    = harvesterCache.discoverStunServer(
+                            accID.getService(),
+                            StringUtils.getUTF8Bytes(username),
+                            StringUtils.getUTF8Bytes(password));
             }
 
-            StunCandidateHarvester autoHarvester
-                = namSer.discoverStunServer(
-                        accID.getService(),
-                        StringUtils.getUTF8Bytes(username),
-                        StringUtils.getUTF8Bytes(password));
-
             if (logger.isInfoEnabled())
                 logger.info("Auto discovered harvester is " + autoHarvester);
 
@@ -253,7 +249,10 @@ public class IceUdpTransportManager
         }
 
         if(accID.isUPNPEnabled())
-            agent.addCandidateHarvester(new UPNPHarvester());
+        {
+            agent.addCandidateHarvester(
+                    provider.getIceHarvesterCache().createUPNPHarvester());
+        }
 
         long stopGatheringHarvesterTime = System.currentTimeMillis();
 
@@ -269,6 +268,62 @@ public class IceUdpTransportManager
         return agent;
     }
 
+    /**
+     * Returns the password to use with the auto-discovered TURN server, which
+     * is the password of the account. Asks the user for it if it has not been
+     * saved.
+     *
+     * @param provider the provider of the account
+     * @param accID the account
+     * @return the password of the account or <tt>null</tt> if the user has
+     * not provided it
+     */
+    private static String obtainStunServerPassword(
+            ProtocolProviderServiceJabberImpl provider,
+            JabberAccountIDImpl accID)
+    {
+        String password
+            = JabberActivator.getProtocolProviderFactory().loadPassword(accID);
+        UserCredentials credentials = provider.getUserCredentials();
+
+        if(credentials != null)
+            password = credentials.getPasswordAsString();
+
+        // ask for password if not saved
+        if (password == null)
+        {
+            //create a default credentials object
+            credentials = new UserCredentials();
+            credentials.setUserName(accID.getUserID());
+            //request a password from the user
+            credentials
+                = provider.getAuthority().obtainCredentials(
+                        accID.getDisplayName(),
+                        credentials,
+                        SecurityAuthority.AUTHENTICATION_REQUIRED);
+
+            // in case user has canceled the login window
+            if(credentials == null)
+                return null;
+
+            //extract the password the user passed us.
+            char[] pass = credentials.getPassword();
+
+            // the user didn't provide us a password (i.e. canceled the
+            // operation)
+            if(pass == null)
+                return null;
+            password = new String(pass);
+
+            if (credentials.isPasswordPersistent())
+            {
+                JabberActivator.getProtocolProviderFactory()
+                    .storePassword(accID, password);
+            }
+        }
+        return password;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -509,6 +564,40 @@ public class IceUdpTransportManager
             TransportInfoSender transportInfoSender,
             String media)
         throws OperationFailedException
+    {
+        CallSetupTrace.Span span
+            = CallSetupTrace.begin(getCallPeer(), "ice.harvest." + media);
+
+        try
+        {
+            return doStartCandidateHarvest(
+                    ourContent,
+                    transportInfoSender,
+                    media);
+        }
+        finally
+        {
+            CallSetupTrace.end(span);
+        }
+    }
+
+    /**
+     * Implements {@link #startCandidateHarvest(ContentPacketExtension,
+     * ContentPacketExtension, TransportInfoSender, String)}.
+     *
+     * @param ourContent the local content
+     * @param transportInfoSender the <tt>TransportInfoSender</tt> to send the
+     * candidates with or <tt>null</tt> to report them in the returned
+     * transport
+     * @param media the media of the content
+     * @return the transport to report in the offer or answer
+     * @throws OperationFailedException if harvesting fails
+     */
+    private PacketExtension doStartCandidateHarvest(
+            ContentPacketExtension ourContent,
+            TransportInfoSender transportInfoSender,
+            String media)
+        throws OperationFailedException
     {
         PacketExtension pe;
 
@@ -526,24 +615,10 @@ public class IceUdpTransportManager
              */
             pe = createTransportPacketExtension();
 
-            /*
-             * Create the content to be sent in a transport-info. The transport
-             * is the only extension to be sent in transport-info so the content
-             * has the same attributes as in our answer and none of its
-             * non-transport extensions.
-             */
             ContentPacketExtension transportInfoContent
-                = new ContentPacketExtension();
-
-            for (String name : ourContent.getAttributeNames())
-            {
-                Object value = ourContent.getAttribute(name);
-
-                if (value != null)
-                    transportInfoContent.setAttribute(name, value);
-            }
-            transportInfoContent.addChildExtension(
-                    createTransportForStartCandidateHarvest(media));
+                = createTransportInfoContent(
+                        ourContent,
+                        createTransportForStartCandidateHarvest(media));
 
             /*
              * We send each media content in separate transport-info. It is
@@ -605,6 +680,240 @@ public class IceUdpTransportManager
         this.cpeList = ourAnswer;
 
         super.startCandidateHarvest(theirOffer, ourAnswer, transportInfoSender);
+
+        /*
+         * The candidates gathered so far have already been sent in
+         * transport-info so the remaining ones may follow right away.
+         */
+        if (transportInfoSender != null)
+            startCandidateTrickle(transportInfoSender);
+    }
+
+    /**
+     * Starts sending the local candidates which have not been included in the
+     * offer or answer because the ICE <tt>Agent</tt> is trickling. The
+     * candidates of every harvester are sent in <tt>transport-info</tt>s as
+     * soon as the harvester returns them. Does nothing if the ICE
+     * <tt>Agent</tt> is not trickling or the trickle has already been
+     * started.
+     *
+     * @param transportInfoSender the <tt>TransportInfoSender</tt> to send the
+     * <tt>transport-info</tt>s with
+     */
+    @Override
+    public void startCandidateTrickle(
+            final TransportInfoSender transportInfoSender)
+    {
+        synchronized (this)
+        {
+            if (trickleStarted || !iceAgent.isTrickling())
+                return;
+            trickleStarted = true;
+        }
+
+        final long startTrickleTime = System.currentTimeMillis();
+        final TrickleCallback trickleCallback
+            = new TrickleCallback()
+            {
+                public void onIceCandidates(
+                        Collection<LocalCandidate> candidates)
+                {
+                    if (candidates == null)
+                    {
+                        // The harvest is over, streams added later on (e.g.
+                        // by a content-add) are to be harvested as usual.
+                        iceAgent.setTrickling(false);
+                        logTrickleStatistics(startTrickleTime);
+                    }
+                    else if (!candidates.isEmpty())
+                    {
+                        sendTrickledCandidates(
+                                candidates,
+                                transportInfoSender);
+                    }
+                }
+            };
+
+        /*
+         * The harvesters block until they are done so the trickle runs on the
+         * pool of the Jabber accounts rather than on the thread setting up the
+         * call. The pool logs any error.
+         */
+        AccountTaskScheduler.getInstance().execute(
+                getCallPeer().getProtocolProvider().getAccountID(),
+                "ICE candidate trickle",
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        iceAgent.startCandidateTrickle(trickleCallback);
+                    }
+                });
+    }
+
+    /**
+     * Sends trickled local candidates to the remote peer in
+     * <tt>transport-info</tt>s, one per media content.
+     *
+     * @param candidates the local candidates returned by a harvester
+     * @param transportInfoSender the <tt>TransportInfoSender</tt> to send the
+     * <tt>transport-info</tt>s with
+     */
+    private void sendTrickledCandidates(
+            Collection<LocalCandidate> candidates,
+            TransportInfoSender transportInfoSender)
+    {
+        List<ContentPacketExtension> cpeList = this.cpeList;
+
+        for (Map.Entry<String,List<LocalCandidate>> e
+                : groupCandidatesByMedia(candidates).entrySet())
+        {
+            ContentPacketExtension ourContent
+                = (cpeList == null)
+                    ? null
+                    : findContentByMedia(cpeList, e.getKey());
+
+            if (ourContent == null)
+            {
+                logger.warn(
+                        "No content for media: " + e.getKey()
+                            + " - trickled candidates ignored.");
+                continue;
+            }
+
+            /*
+             * We send each media content in separate transport-info for the
+             * same reason as in startCandidateHarvest.
+             */
+            IceUdpTransportPacketExtension transport
+                = new IceUdpTransportPacketExtension();
+
+            transport.setUfrag(iceAgent.getLocalUfrag());
+            transport.setPassword(iceAgent.getLocalPassword());
+            for (LocalCandidate candidate : e.getValue())
+                transport.addCandidate(createCandidate(candidate));
+
+            Collection<ContentPacketExtension> transportInfoContents
+                = new LinkedList<ContentPacketExtension>();
+
+            transportInfoContents.add(
+                    createTransportInfoContent(ourContent, transport));
+            transportInfoSender.sendTransportInfo(transportInfoContents);
+        }
+    }
+
+    /**
+     * Groups local candidates by the name of the media stream they belong to,
+     * keeping the order in which the streams and the candidates come.
+     *
+     * @param candidates the local candidates to group
+     * @return the candidates of each media stream
+     */
+    static Map<String,List<LocalCandidate>> groupCandidatesByMedia(
+            Collection<LocalCandidate> candidates)
+    {
+        Map<String,List<LocalCandidate>> candidatesByMedia
+            = new LinkedHashMap<String,List<LocalCandidate>>();
+
+        for (LocalCandidate candidate : candidates)
+        {
+            String media
+                = candidate.getParentComponent().getParentStream().getName();
+            List<LocalCandidate> mediaCandidates = candidatesByMedia.get(media);
+
+            if (mediaCandidates == null)
+            {
+                mediaCandidates = new ArrayList<LocalCandidate>();
+                candidatesByMedia.put(media, mediaCandidates);
+            }
+            mediaCandidates.add(candidate);
+        }
+        return candidatesByMedia;
+    }
+
+    /**
+     * Logs how long the trickle has taken and how long each harvester has
+     * taken to return its candidates.
+     *
+     * @param startTrickleTime the time in milliseconds the trickle has been
+     * started at
+     */
+    private void logTrickleStatistics(long startTrickleTime)
+    {
+        if (!logger.isInfoEnabled())
+            return;
+
+        logger.info(
+                "End candidate trickle within "
+                    + (System.currentTimeMillis() - startTrickleTime)
+                    + " ms");
+
+        for (CandidateHarvester harvester : iceAgent.getHarvesters())
+        {
+            HarvestStatistics statistics = harvester.getHarvestStatistics();
+
+            if (statistics != null)
+            {
+                logger.info(
+                        statistics.getName() + " trickled "
+                            + statistics.getTotalCandidateCount()
+                            + " candidates within "
+                            + statistics.getHarvestDuration() + " ms");
+            }
+        }
+    }
+
+    /**
+     * Creates the content to be sent in a <tt>transport-info</tt>. The
+     * transport is the only extension to be sent in <tt>transport-info</tt> so
+     * the content has the same attributes as <tt>ourContent</tt> and none of
+     * its non-transport extensions.
+     *
+     * @param ourContent the content of our offer or answer
+     * @param transport the transport to be sent
+     * @return the content to be sent in a <tt>transport-info</tt>
+     */
+    static ContentPacketExtension createTransportInfoContent(
+            ContentPacketExtension ourContent,
+            PacketExtension transport)
+    {
+        ContentPacketExtension transportInfoContent
+            = new ContentPacketExtension();
+
+        for (String name : ourContent.getAttributeNames())
+        {
+            Object value = ourContent.getAttribute(name);
+
+            if (value != null)
+                transportInfoContent.setAttribute(name, value);
+        }
+        transportInfoContent.addChildExtension(transport);
+        return transportInfoContent;
+    }
+
+    /**
+     * Looks through <tt>cpExtList</tt> for the content describing the
+     * specified <tt>media</tt>.
+     *
+     * @param cpExtList the list of contents to search
+     * @param media the media of the content
+     * @return the content describing <tt>media</tt> or <tt>null</tt> if there
+     * is no such content in <tt>cpExtList</tt>
+     */
+    static ContentPacketExtension findContentByMedia(
+            Iterable<ContentPacketExtension> cpExtList,
+            String media)
+    {
+        for (ContentPacketExtension cpExt : cpExtList)
+        {
+            RtpDescriptionPacketExtension description
+                = cpExt.getFirstChildOfType(
+                        RtpDescriptionPacketExtension.class);
+
+            if ((description != null) && media.equals(description.getMedia()))
+                return cpExt;
+        }
+        return null;
     }
 
     /**
@@ -1005,6 +1314,7 @@ public class IceUdpTransportManager
             }
             if (startConnectivityEstablishment)
             {
+                traceConnectivityEstablishment();
                 iceAgent.startConnectivityEstablishment();
                 return true;
             }
@@ -1013,6 +1323,38 @@ public class IceUdpTransportManager
         return false;
     }
 
+    /**
+     * Records the connectivity establishment of the associated ICE
+     * <tt>Agent</tt>, which is about to start, in the setup trace of the call.
+     */
+    private void traceConnectivityEstablishment()
+    {
+        final CallSetupTrace.Span span
+            = CallSetupTrace.begin(getCallPeer(), "ice.connectivity");
+
+        if (span == null)
+            return;
+
+        iceAgent.addStateChangeListener(
+                new PropertyChangeListener()
+                {
+                    public void propertyChange(PropertyChangeEvent evt)
+                    {
+                        Object newValue = evt.getNewValue();
+
+                        if (IceProcessingState.COMPLETED.equals(newValue)
+                                || IceProcessingState.FAILED.equals(newValue)
+                                || IceProcessingState.TERMINATED.equals(
+                                        newValue))
+                        {
+                            ((Agent) evt.getSource())
+                                .removeStateChangeListener(this);
+                            span.end();
+                        }
+                    }
+                });
+    }
+
     /**
      * Waits for the associated ICE <tt>Agent</tt> to finish any started
      * connectivity checks.
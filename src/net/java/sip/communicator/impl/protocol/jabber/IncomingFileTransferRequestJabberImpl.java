@@ -168,9 +168,8 @@ public class IncomingFileTransferRequestJabberImpl
 
             jabberTransfer.recieveFile(file);
 
-            new OperationSetFileTransferJabberImpl
-                .FileTransferProgressThread(
-                jabberTransfer, incomingTransfer, getFileSize()).start();
+            FileTransferProgressScheduler.getInstance().add(
+                jabberTransfer, incomingTransfer, getFileSize());
         }
         catch (XMPPException e)
         {
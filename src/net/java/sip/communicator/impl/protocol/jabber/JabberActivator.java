@@ -14,12 +14,14 @@ import net.java.sip.communicator.service.globaldisplaydetails.*;
 import net.java.sip.communicator.service.googlecontacts.*;
 import net.java.sip.communicator.service.gui.*;
 import net.java.sip.communicator.service.hid.*;
+import net.java.sip.communicator.service.msghistory.*;
 import net.java.sip.communicator.service.netaddr.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.resources.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.configuration.*;
+import org.jitsi.service.fileaccess.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.packetlogging.*;
 import org.jitsi.service.resources.*;
@@ -53,6 +55,11 @@ public class JabberActivator
      */
     private static ConfigurationService configurationService = null;
 
+    /**
+     * File access service.
+     */
+    private static FileAccessService fileAccessService = null;
+
     /**
      * Media service.
      */
@@ -120,6 +127,11 @@ public class JabberActivator
      */
     private static PhoneNumberI18nService phoneNumberI18nService;
 
+    /**
+     * The message history service instance.
+     */
+    private static MessageHistoryService messageHistoryService;
+
     /**
      * The global display details service instance.
      */
@@ -180,6 +192,25 @@ public class JabberActivator
         return configurationService;
     }
 
+    /**
+     * Returns a reference to a FileAccessService implementation currently
+     * registered in the bundle context or null if no such implementation was
+     * found.
+     *
+     * @return a currently valid implementation of the FileAccessService.
+     */
+    public static FileAccessService getFileAccessService()
+    {
+        if (fileAccessService == null)
+        {
+            fileAccessService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        FileAccessService.class);
+        }
+        return fileAccessService;
+    }
+
     /**
      * Returns a reference to the bundle context that we were started with.
      * @return a reference to the BundleContext instance that we were started
@@ -471,4 +502,22 @@ public class JabberActivator
         }
         return globalDisplayDetailsService;
     }
+
+    /**
+     * Returns the <tt>MessageHistoryService</tt> obtained from the bundle
+     * context.
+     * @return the <tt>MessageHistoryService</tt> obtained from the bundle
+     * context or <tt>null</tt> if there is none
+     */
+    public static MessageHistoryService getMessageHistoryService()
+    {
+        if(messageHistoryService == null)
+        {
+            messageHistoryService
+                = ServiceUtils.getService(
+                        bundleContext,
+                        MessageHistoryService.class);
+        }
+        return messageHistoryService;
+    }
 }
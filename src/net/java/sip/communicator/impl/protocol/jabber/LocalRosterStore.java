@@ -0,0 +1,259 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import org.jivesoftware.smack.*;
+
+/**
+ * Keeps a local copy of the roster of an account as it was when the contact
+ * list last saw it. On login every entry of the roster received from the
+ * server is checked against the copy and entries which have not changed since
+ * are resolved silently: the meta contact list already holds everything they
+ * carry, so there is no need to announce them again.
+ * <p>
+ * Entries are stored by their JID together with a fingerprint of the
+ * properties of the entry that are reflected in the contact list (name,
+ * subscription and groups).
+ */
+public class LocalRosterStore
+{
+    /**
+     * The logger.
+     */
+    private static final Logger logger
+        = Logger.getLogger(LocalRosterStore.class);
+
+    /**
+     * The file the roster is stored in.
+     */
+    private final File file;
+
+    /**
+     * The fingerprints of the stored entries mapped by JID or <tt>null</tt>
+     * if the file has not been read yet.
+     */
+    private Map<String, String> entries = null;
+
+    /**
+     * Whether entries have changed since the file has been written.
+     */
+    private boolean dirty = false;
+
+    /**
+     * Creates a store which keeps the roster in <tt>file</tt>.
+     *
+     * @param file the file to keep the roster in.
+     */
+    public LocalRosterStore(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Determines whether <tt>entry</tt> is the same as when it was stored.
+     *
+     * @param entry the roster entry received from the server.
+     * @return <tt>true</tt> if <tt>entry</tt> has been stored and has not
+     * changed since; otherwise, <tt>false</tt>.
+     */
+    public boolean isUnchanged(RosterEntry entry)
+    {
+        return isUnchanged(entry.getUser(), getFingerprint(entry));
+    }
+
+    /**
+     * Stores <tt>entry</tt> replacing any previous version of it.
+     *
+     * @param entry the roster entry to store.
+     */
+    public void put(RosterEntry entry)
+    {
+        put(entry.getUser(), getFingerprint(entry));
+    }
+
+    /**
+     * Replaces all stored entries with <tt>roster</tt>.
+     *
+     * @param roster the entries of the roster.
+     */
+    public synchronized void putAll(Collection<RosterEntry> roster)
+    {
+        Map<String, String> newEntries = new HashMap<String, String>();
+
+        for (RosterEntry entry : roster)
+            newEntries.put(entry.getUser(), getFingerprint(entry));
+
+        if (!newEntries.equals(getEntries()))
+        {
+            entries = newEntries;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Removes the entry with JID <tt>user</tt>.
+     *
+     * @param user the JID of the entry to remove.
+     */
+    public synchronized void remove(String user)
+    {
+        if (getEntries().remove(user) != null)
+            dirty = true;
+    }
+
+    /**
+     * Determines whether the entry with JID <tt>user</tt> is stored with
+     * <tt>fingerprint</tt>.
+     *
+     * @param user the JID of the entry.
+     * @param fingerprint the fingerprint of the entry.
+     * @return <tt>true</tt> if the entry is stored with the same fingerprint;
+     * otherwise, <tt>false</tt>.
+     */
+    synchronized boolean isUnchanged(String user, String fingerprint)
+    {
+        return fingerprint.equals(getEntries().get(user));
+    }
+
+    /**
+     * Stores the entry with JID <tt>user</tt> with <tt>fingerprint</tt>.
+     *
+     * @param user the JID of the entry.
+     * @param fingerprint the fingerprint of the entry.
+     */
+    synchronized void put(String user, String fingerprint)
+    {
+        if (!fingerprint.equals(getEntries().put(user, fingerprint)))
+            dirty = true;
+    }
+
+    /**
+     * Writes the stored entries to disk if they have changed. The entries
+     * stay dirty when writing fails, so the next call tries again.
+     */
+    public synchronized void save()
+    {
+        if (!dirty)
+            return;
+
+        Properties properties = new Properties();
+        properties.putAll(getEntries());
+
+        OutputStream out = null;
+        try
+        {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs())
+            {
+                throw new IOException(
+                    "Failed to create directory: " + dir.getAbsolutePath());
+            }
+
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            properties.store(out, null);
+            dirty = false;
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to store roster in " + file, e);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Returns the stored entries reading them from disk the first time.
+     *
+     * @return the fingerprints of the stored entries mapped by JID.
+     */
+    private Map<String, String> getEntries()
+    {
+        if (entries != null)
+            return entries;
+
+        entries = new HashMap<String, String>();
+        if (!file.isFile())
+            return entries;
+
+        Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(file));
+            properties.load(in);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to read stored roster from " + file, e);
+            return entries;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+
+        for (String user : properties.stringPropertyNames())
+            entries.put(user, properties.getProperty(user));
+        return entries;
+    }
+
+    /**
+     * Returns the fingerprint of the properties of <tt>entry</tt> which are
+     * reflected in the contact list.
+     *
+     * @param entry the roster entry.
+     * @return the fingerprint of <tt>entry</tt>.
+     */
+    private static String getFingerprint(RosterEntry entry)
+    {
+        List<String> groupNames = new ArrayList<String>();
+
+        for (RosterGroup group : entry.getGroups())
+            groupNames.add(group.getName());
+
+        return getFingerprint(
+                entry.getName(),
+                String.valueOf(entry.getType()),
+                String.valueOf(entry.getStatus()),
+                groupNames);
+    }
+
+    /**
+     * Returns the fingerprint of a roster entry.
+     *
+     * @param name the name of the entry.
+     * @param type the subscription type of the entry.
+     * @param status the subscription status of the entry.
+     * @param groupNames the names of the groups of the entry.
+     * @return the fingerprint of the entry.
+     */
+    static String getFingerprint(
+            String name,
+            String type,
+            String status,
+            List<String> groupNames)
+    {
+        List<String> sortedGroupNames = new ArrayList<String>(groupNames);
+        Collections.sort(sortedGroupNames);
+
+        // names may contain pretty much anything but line breaks
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(type).append('\n').append(status).append('\n')
+            .append(name == null ? "" : name);
+        for (String groupName : sortedGroupNames)
+            fingerprint.append('\n').append(groupName);
+
+        return fingerprint.toString();
+    }
+}
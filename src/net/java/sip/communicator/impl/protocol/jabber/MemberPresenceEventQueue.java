@@ -0,0 +1,351 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+/**
+ * Collects the <tt>ChatRoomMemberPresenceChangeEvent</tt>s of a chat room and
+ * delivers them in batches. While a batch is open, e.g. while joining the
+ * room and receiving the list of its occupants, events are only collected.
+ * Otherwise they are delivered a short interval after the first of them, so
+ * that a burst of changes results in a single delivery. A member who joins
+ * and leaves within the same batch is not reported at all.
+ * <p>
+ * The batches are delivered one at a time and in order, without holding any
+ * lock of the queue so that the listeners may call back into the chat room.
+ */
+public class MemberPresenceEventQueue
+{
+    /**
+     * The name of the property which specifies the number of milliseconds
+     * member presence changes are collected for before being delivered.
+     * <tt>0</tt> delivers each change as soon as it occurs.
+     */
+    public static final String INTERVAL_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.jabber."
+            + "MUC_MEMBER_EVENT_INTERVAL";
+
+    /**
+     * The default number of milliseconds member presence changes are
+     * collected for.
+     */
+    public static final long DEFAULT_INTERVAL = 200;
+
+    /**
+     * Delivers batches of events.
+     */
+    public interface Dispatcher
+    {
+        /**
+         * Delivers a batch of events.
+         *
+         * @param evts the events in the order in which they have occurred
+         */
+        public void dispatch(List<ChatRoomMemberPresenceChangeEvent> evts);
+    }
+
+    /**
+     * The account the chat room belongs to.
+     */
+    private final AccountID account;
+
+    /**
+     * Delivers the batches.
+     */
+    private final Dispatcher dispatcher;
+
+    /**
+     * Schedules the delivery of the collected events.
+     */
+    private final AccountTaskScheduler scheduler;
+
+    /**
+     * The number of milliseconds events are collected for.
+     */
+    private final long interval;
+
+    /**
+     * The events which have not been delivered yet.
+     */
+    private final List<ChatRoomMemberPresenceChangeEvent> pending
+        = new ArrayList<ChatRoomMemberPresenceChangeEvent>();
+
+    /**
+     * The batches which have been taken out of {@link #pending} and have not
+     * been delivered yet, in order.
+     */
+    private final LinkedList<List<ChatRoomMemberPresenceChangeEvent>> batches
+        = new LinkedList<List<ChatRoomMemberPresenceChangeEvent>>();
+
+    /**
+     * The number of batches which have been taken out of {@link #pending}.
+     */
+    private long batchCount = 0;
+
+    /**
+     * The number of batches which have been delivered.
+     */
+    private long deliveredCount = 0;
+
+    /**
+     * The thread delivering {@link #batches} or <tt>null</tt> if none is.
+     */
+    private Thread dispatchThread;
+
+    /**
+     * Whether a batch is open.
+     */
+    private boolean batching = false;
+
+    /**
+     * The scheduled delivery of the pending events or <tt>null</tt>.
+     */
+    private AccountTaskScheduler.Task flushTask;
+
+    /**
+     * Initializes a new <tt>MemberPresenceEventQueue</tt> collecting events
+     * for the configured interval.
+     *
+     * @param account the account the chat room belongs to
+     * @param dispatcher delivers the batches
+     */
+    public MemberPresenceEventQueue(AccountID account, Dispatcher dispatcher)
+    {
+        this(
+            account,
+            dispatcher,
+            AccountTaskScheduler.getInstance(),
+            JabberActivator.getConfigurationService().getLong(
+                    INTERVAL_PROPERTY_NAME,
+                    DEFAULT_INTERVAL));
+    }
+
+    /**
+     * Initializes a new <tt>MemberPresenceEventQueue</tt>.
+     *
+     * @param account the account the chat room belongs to
+     * @param dispatcher delivers the batches
+     * @param scheduler schedules the delivery of the collected events
+     * @param interval the number of milliseconds events are collected for
+     */
+    MemberPresenceEventQueue(
+            AccountID account,
+            Dispatcher dispatcher,
+            AccountTaskScheduler scheduler,
+            long interval)
+    {
+        this.account = account;
+        this.dispatcher = dispatcher;
+        this.scheduler = scheduler;
+        this.interval = interval;
+    }
+
+    /**
+     * Queues an event for delivery.
+     *
+     * @param evt the event to deliver
+     */
+    public void add(ChatRoomMemberPresenceChangeEvent evt)
+    {
+        boolean flushNow = false;
+
+        synchronized (this)
+        {
+            if (isLeave(evt) && removePendingJoin(evt.getChatRoomMember()))
+                return;
+
+            pending.add(evt);
+
+            if (batching)
+                return;
+            else if (interval <= 0)
+                flushNow = true;
+            else if (flushTask == null)
+            {
+                flushTask
+                    = scheduler.schedule(
+                            account,
+                            "MUC member presence events",
+                            new Runnable()
+                            {
+                                public void run()
+                                {
+                                    flush();
+                                }
+                            },
+                            interval,
+                            0);
+            }
+        }
+
+        if (flushNow)
+            flush();
+    }
+
+    /**
+     * Opens a batch: events are only collected until {@link #endBatch()}.
+     */
+    public synchronized void startBatch()
+    {
+        batching = true;
+    }
+
+    /**
+     * Returns whether a batch is open.
+     *
+     * @return <tt>true</tt> if a batch is open
+     */
+    public synchronized boolean isBatching()
+    {
+        return batching;
+    }
+
+    /**
+     * Closes the batch and delivers the collected events.
+     */
+    public void endBatch()
+    {
+        synchronized (this)
+        {
+            batching = false;
+        }
+        flush();
+    }
+
+    /**
+     * Delivers the pending events right away, e.g. before an event which
+     * refers to a member whose arrival may not have been delivered yet.
+     * Returns once they have been delivered, unless it is called by a
+     * listener of this queue, in which case they are delivered as soon as
+     * that listener returns.
+     */
+    public void flush()
+    {
+        long batch;
+
+        synchronized (this)
+        {
+            if (flushTask != null)
+            {
+                flushTask.cancel();
+                flushTask = null;
+            }
+            if (!pending.isEmpty())
+            {
+                batches.add(
+                        new ArrayList<ChatRoomMemberPresenceChangeEvent>(
+                                pending));
+                pending.clear();
+                batchCount++;
+            }
+            batch = batchCount;
+
+            if (dispatchThread == Thread.currentThread())
+                return;
+
+            boolean interrupted = false;
+
+            while ((dispatchThread != null) && (deliveredCount < batch))
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException ie)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+
+            if (deliveredCount >= batch)
+                return;
+            dispatchThread = Thread.currentThread();
+        }
+
+        try
+        {
+            while (true)
+            {
+                List<ChatRoomMemberPresenceChangeEvent> evts;
+
+                synchronized (this)
+                {
+                    evts = batches.poll();
+                    if (evts == null)
+                        break;
+                }
+                try
+                {
+                    dispatcher.dispatch(evts);
+                }
+                finally
+                {
+                    synchronized (this)
+                    {
+                        deliveredCount++;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                dispatchThread = null;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Removes the pending event reporting the arrival of a member.
+     *
+     * @param member the member
+     * @return <tt>true</tt> if there was such an event; otherwise,
+     * <tt>false</tt>
+     */
+    private boolean removePendingJoin(ChatRoomMember member)
+    {
+        for (Iterator<ChatRoomMemberPresenceChangeEvent> i
+                    = pending.iterator();
+                i.hasNext();)
+        {
+            ChatRoomMemberPresenceChangeEvent evt = i.next();
+
+            if ((evt.getChatRoomMember() == member)
+                    && ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED.equals(
+                            evt.getEventType()))
+            {
+                i.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether an event reports the departure of a member.
+     *
+     * @param evt the event
+     * @return <tt>true</tt> if <tt>evt</tt> reports the departure of a member
+     */
+    private static boolean isLeave(ChatRoomMemberPresenceChangeEvent evt)
+    {
+        String eventType = evt.getEventType();
+
+        return ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT.equals(eventType)
+            || ChatRoomMemberPresenceChangeEvent.MEMBER_KICKED.equals(eventType)
+            || ChatRoomMemberPresenceChangeEvent.MEMBER_QUIT.equals(eventType);
+    }
+}
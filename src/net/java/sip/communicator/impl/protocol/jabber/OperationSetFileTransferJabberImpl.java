@@ -22,7 +22,6 @@ import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.provider.*;
-import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
 import org.jivesoftware.smackx.filetransfer.*;
 import org.jivesoftware.smackx.packet.*;
 
@@ -213,6 +212,11 @@ public class OperationSetFileTransferJabberImpl
                 fullJid = fullJid + "@" + gw;
             }
 
+            // The file is read in large chunks rather than in the small ones
+            // Smack writes to the bytestream. Opening it fails before any
+            // transfer is created if it cannot be read.
+            InputStream in = new FileChannelInputStream(file);
+
             OutgoingFileTransfer transfer
                 = manager.createOutgoingFileTransfer(fullJid);
 
@@ -228,15 +232,17 @@ public class OperationSetFileTransferJabberImpl
             fireFileTransferCreated(event);
 
             // Send the file through the Jabber file transfer.
-            transfer.sendFile(file, "Sending file");
+            transfer.sendStream(
+                in, file.getName(), file.length(), "Sending file");
 
-            // Start the status and progress thread.
-            new FileTransferProgressThread(
-                transfer, outgoingTransfer).start();
+            // Start updating the status and progress.
+            FileTransferProgressScheduler.getInstance().add(
+                transfer, outgoingTransfer, 0);
         }
-        catch(XMPPException e)
+        catch(FileNotFoundException e)
         {
-            logger.error("Failed to send file.", e);
+            // Smack's sendFile reported unreadable files the same way.
+            throw new IllegalArgumentException("Could not read file", e);
         }
 
         return outgoingTransfer;
@@ -557,161 +563,4 @@ public class OperationSetFileTransferJabberImpl
             listener.fileTransferCreated(event);
         }
     }
-
-    /**
-     * Updates file transfer progress and status while sending or receiving a
-     * file.
-     */
-    protected static class FileTransferProgressThread extends Thread
-    {
-        private final org.jivesoftware.smackx.filetransfer.FileTransfer
-            jabberTransfer;
-        private final AbstractFileTransfer fileTransfer;
-
-        private long initialFileSize;
-
-        public FileTransferProgressThread(
-            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer,
-            long initialFileSize)
-        {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
-            this.initialFileSize = initialFileSize;
-        }
-
-        public FileTransferProgressThread(
-            org.jivesoftware.smackx.filetransfer.FileTransfer jabberTransfer,
-            AbstractFileTransfer transfer)
-        {
-            this.jabberTransfer = jabberTransfer;
-            this.fileTransfer = transfer;
-        }
-
-        /**
-         * Thread entry point.
-         */
-        @Override
-        public void run()
-        {
-            int status;
-            long progress;
-            String statusReason = "";
-
-            while (true)
-            {
-                try
-                {
-                    Thread.sleep(10);
-
-                    status = parseJabberStatus(jabberTransfer.getStatus());
-                    progress = fileTransfer.getTransferedBytes();
-
-                    if (status == FileTransferStatusChangeEvent.FAILED
-                        || status == FileTransferStatusChangeEvent.COMPLETED
-                        || status == FileTransferStatusChangeEvent.CANCELED
-                        || status == FileTransferStatusChangeEvent.REFUSED)
-                    {
-                        if (fileTransfer instanceof
-                                OutgoingFileTransferJabberImpl)
-                        {
-                            ((OutgoingFileTransferJabberImpl) fileTransfer)
-                                .removeThumbnailRequestListener();
-                        }
-
-                        // sometimes a filetransfer can be preparing
-                        // and than completed :
-                        // transfered in one iteration of current thread
-                        // so it won't go through intermediate state - inProgress
-                        // make sure this won't happen
-                        if(status == FileTransferStatusChangeEvent.COMPLETED
-                            && fileTransfer.getStatus()
-                                == FileTransferStatusChangeEvent.PREPARING)
-                        {
-                            fileTransfer.fireStatusChangeEvent(
-                                FileTransferStatusChangeEvent.IN_PROGRESS,
-                                "Status changed");
-                            fileTransfer.fireProgressChangeEvent(
-                                System.currentTimeMillis(), progress);
-                        }
-
-                        break;
-                    }
-
-                    fileTransfer.fireStatusChangeEvent(status, "Status changed");
-                    fileTransfer.fireProgressChangeEvent(
-                        System.currentTimeMillis(), progress);
-                }
-                catch (InterruptedException e)
-                {
-                    if (logger.isDebugEnabled())
-                        logger.debug("Unable to sleep thread.", e);
-                }
-            }
-
-            if (jabberTransfer.getError() != null)
-            {
-                logger.error("An error occured while transfering file: "
-                    +  jabberTransfer.getError().getMessage());
-            }
-
-            if (jabberTransfer.getException() != null)
-            {
-                logger.error("An exception occured while transfering file: ",
-                    jabberTransfer.getException());
-
-                if(jabberTransfer.getException() instanceof XMPPException)
-                {
-                    XMPPError error =
-                        ((XMPPException)jabberTransfer.getException())
-                            .getXMPPError();
-                    if (error != null)
-                        if(error.getCode() == 406
-                           || error.getCode() == 403)
-                            status = FileTransferStatusChangeEvent.REFUSED;
-                }
-
-                statusReason = jabberTransfer.getException().getMessage();
-            }
-
-            if (initialFileSize > 0
-                && status == FileTransferStatusChangeEvent.COMPLETED
-                && fileTransfer.getTransferedBytes() < initialFileSize)
-            {
-                status = FileTransferStatusChangeEvent.CANCELED;
-            }
-
-            fileTransfer.fireStatusChangeEvent(status, statusReason);
-            fileTransfer.fireProgressChangeEvent(
-                System.currentTimeMillis(), progress);
-        }
-    }
-
-    /**
-     * Parses the given Jabber status to a <tt>FileTransfer</tt> interface
-     * status.
-     *
-     * @param jabberStatus the Jabber status to parse
-     * @return the parsed status
-     */
-    private static int parseJabberStatus(Status jabberStatus)
-    {
-        if (jabberStatus.equals(Status.complete))
-            return FileTransferStatusChangeEvent.COMPLETED;
-        else if (jabberStatus.equals(Status.cancelled))
-            return FileTransferStatusChangeEvent.CANCELED;
-        else if (jabberStatus.equals(Status.in_progress)
-                || jabberStatus.equals(Status.negotiated))
-            return FileTransferStatusChangeEvent.IN_PROGRESS;
-        else if (jabberStatus.equals(Status.error))
-            return FileTransferStatusChangeEvent.FAILED;
-        else if (jabberStatus.equals(Status.refused))
-            return FileTransferStatusChangeEvent.REFUSED;
-        else if (jabberStatus.equals(Status.negotiating_transfer)
-                || jabberStatus.equals(Status.negotiating_stream))
-            return FileTransferStatusChangeEvent.PREPARING;
-        else
-             // FileTransfer.Status.initial
-            return FileTransferStatusChangeEvent.WAITING;
-    }
 }
@@ -140,33 +140,21 @@ public class OperationSetTelephonyConferencingJabberImpl
             return;
 
         final CallPeerJabberImpl callPeerJabber = (CallPeerJabberImpl)callPeer;
+        ConferenceNotifyScheduler scheduler
+                = getConferenceNotifyScheduler(callPeerJabber);
 
-        final long timeSinceLastCoin = System.currentTimeMillis()
-                - callPeerJabber.getLastConferenceInfoSentTimestamp();
-        if (timeSinceLastCoin < COIN_MIN_INTERVAL)
-        {
-            if (callPeerJabber.isConfInfoScheduled())
-                return;
-
-            logger.info("Scheduling to send a COIN to " + callPeerJabber);
-            callPeerJabber.setConfInfoScheduled(true);
-            new Thread(new Runnable(){
-                @Override
-                public void run()
+        if (scheduler == null || !scheduler.schedule(
+                callPeerJabber,
+                COIN_MIN_INTERVAL,
+                new Runnable()
                 {
-                    try
+                    public void run()
                     {
-                        Thread.sleep(1 + COIN_MIN_INTERVAL - timeSinceLastCoin);
+                        OperationSetTelephonyConferencingJabberImpl.this
+                                .notify(callPeerJabber);
                     }
-                    catch (InterruptedException ie) {}
-
-                    OperationSetTelephonyConferencingJabberImpl.this
-                            .notify(callPeerJabber);
-                }
-            }).start();
-
+                }))
             return;
-        }
 
         // check that callPeer supports COIN before sending him a
         // conference-info
@@ -183,7 +171,6 @@ public class OperationSetTelephonyConferencingJabberImpl
                     ProtocolProviderServiceJabberImpl.URN_XMPP_JINGLE_COIN))
             {
                 logger.info(callPeer.getAddress() + " does not support COIN");
-                callPeerJabber.setConfInfoScheduled(false);
                 return;
             }
         }
@@ -192,41 +179,23 @@ public class OperationSetTelephonyConferencingJabberImpl
             logger.warn("Failed to retrieve DiscoverInfo for " + to, xmppe);
         }
 
-        ConferenceInfoDocument currentConfInfo
-                = getCurrentConferenceInfo(callPeerJabber);
-        ConferenceInfoDocument lastSentConfInfo
-                = callPeerJabber.getLastConferenceInfoSent();
+        ConferenceInfoState.Notification confInfo
+                = createConferenceInfoNotification(callPeerJabber, false);
 
-        ConferenceInfoDocument diff;
-
-        if (lastSentConfInfo == null)
-            diff = currentConfInfo;
-        else
-            diff = getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
-
-        if (diff != null)
+        if (confInfo != null)
         {
-            int newVersion
-                    = lastSentConfInfo == null
-                    ? 1
-                    : lastSentConfInfo.getVersion() + 1;
-            diff.setVersion(newVersion);
-
-            IQ iq = getConferenceInfo(callPeerJabber, diff);
+            IQ iq = getConferenceInfo(callPeerJabber, confInfo);
 
             if (iq != null)
             {
                 parentProvider.getConnection().sendPacket(iq);
 
-                // We save currentConfInfo, because it is of state "full", while
-                // diff could be a partial
-                currentConfInfo.setVersion(newVersion);
-                callPeerJabber.setLastConferenceInfoSent(currentConfInfo);
+                callPeerJabber.setLastConferenceInfoSent(confInfo);
                 callPeerJabber.setLastConferenceInfoSentTimestamp(
                         System.currentTimeMillis());
+                scheduler.notificationSent();
             }
         }
-        callPeerJabber.setConfInfoScheduled(false);
     }
 
     /**
@@ -235,14 +204,15 @@ public class OperationSetTelephonyConferencingJabberImpl
      * conference managed by the local peer.
      *
      * @param callPeer the <tt>CallPeer</tt> to generate conference-info XML for
-     * @param confInfo the <tt>ConferenceInformationDocument</tt> which is to be
+     * @param confInfo the Conference Information notification which is to be
      * included in the IQ
      * @return the conference-info IQ to be sent to the specified
      * <tt>callPeer</tt> in order to notify it of the current state of the
      * conference managed by the local peer
      */
-    private IQ getConferenceInfo(CallPeerJabberImpl callPeer,
-                                 final ConferenceInfoDocument confInfo)
+    private IQ getConferenceInfo(
+            CallPeerJabberImpl callPeer,
+            final ConferenceInfoState.Notification confInfo)
     {
         String callPeerSID = callPeer.getSID();
 
@@ -476,18 +446,11 @@ public class OperationSetTelephonyConferencingJabberImpl
      * SID.
      */
     @Override
-    protected ConferenceInfoDocument getCurrentConferenceInfo(
-            MediaAwareCallPeer<?,?,?> callPeer)
+    protected String getConferenceInfoSid(MediaAwareCallPeer<?,?,?> callPeer)
     {
-        ConferenceInfoDocument confInfo
-                = super.getCurrentConferenceInfo(callPeer);
-
-        if (callPeer instanceof CallPeerJabberImpl
-                && confInfo != null)
-        {
-            confInfo.setSid(((CallPeerJabberImpl)callPeer).getSID());
-        }
-        return confInfo;
+        return (callPeer instanceof CallPeerJabberImpl)
+            ? ((CallPeerJabberImpl) callPeer).getSID()
+            : null;
     }
 
     /**
@@ -1494,6 +1494,7 @@ public class ProtocolProviderServiceJabberImpl
             }
 
             disconnectAndCleanConnection();
+            IceHarvesterCache.removeInstance(getAccountID());
 
             RegistrationState currRegState = getRegistrationState();
 
@@ -2009,6 +2010,10 @@ public class ProtocolProviderServiceJabberImpl
 
             disconnectAndCleanConnection();
 
+            IceHarvesterCache.removeInstance(getAccountID());
+
+            AccountTaskScheduler.getInstance().removeAccount(getAccountID());
+
             isInitialized = false;
         }
     }
@@ -2644,6 +2649,45 @@ public class ProtocolProviderServiceJabberImpl
         }
     }
 
+    /**
+     * Returns the STUN/TURN server and UPnP gateway discovered for the calls
+     * of this account.
+     *
+     * @return the <tt>IceHarvesterCache</tt> of this account
+     */
+    public IceHarvesterCache getIceHarvesterCache()
+    {
+        return IceHarvesterCache.getInstance(getAccountID());
+    }
+
+    /**
+     * Starts the auto-discovery of the STUN/TURN server of the account so
+     * that the first call does not have to wait for it. Does nothing if the
+     * password of the account would have to be asked for.
+     */
+    public void startStunServerDiscovery()
+    {
+        JabberAccountIDImpl accID = (JabberAccountIDImpl)getAccountID();
+
+        if (!accID.isStunServerDiscoveryEnabled())
+            return;
+
+        String password
+            = JabberActivator.getProtocolProviderFactory().loadPassword(accID);
+        UserCredentials credentials = getUserCredentials();
+
+        if (credentials != null)
+            password = credentials.getPasswordAsString();
+        if (password == null)
+            return;
+
+        getIceHarvesterCache().startStunServerDiscovery(
+                accID.getService(),
+                org.jitsi.util.StringUtils.getUTF8Bytes(
+                        StringUtils.parseName(getOurJID())),
+                org.jitsi.util.StringUtils.getUTF8Bytes(password));
+    }
+
     /**
      * Logs a specific message and associated <tt>Throwable</tt> cause as an
      * error using the current <tt>Logger</tt> and then throws a new
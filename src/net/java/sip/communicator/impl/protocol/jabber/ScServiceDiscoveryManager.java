@@ -653,7 +653,8 @@ public class ScServiceDiscoveryManager
     }
 
     /**
-     * Thread that runs the discovery info.
+     * Retrieves the discovery info of the queued entities on the
+     * <tt>AccountTaskScheduler</tt>.
      */
     private class DiscoveryInfoRetriever
         implements Runnable
@@ -664,9 +665,9 @@ public class ScServiceDiscoveryManager
         private boolean stopped = true;
 
         /**
-         * The thread that runs this dispatcher.
+         * Whether the queued entities are being processed.
          */
-        private Thread retrieverThread = null;
+        private boolean retrieving = false;
 
         /**
          * Entities to be processed and their caps.
@@ -681,53 +682,46 @@ public class ScServiceDiscoveryManager
         private OperationSetContactCapabilitiesJabberImpl capabilitiesOpSet;
 
         /**
-         * Runs in different thread.
+         * Processes the queued entities until there are none left or this
+         * retriever is stopped.
          */
         public void run()
         {
             try
             {
-                stopped = false;
-
-                while(!stopped)
+                while(true)
                 {
                     Map.Entry<String, EntityCapsManager.Caps>
                         entityToProcess = null;
 
                     synchronized(entities)
                     {
-                        if(entities.size() == 0)
-                        {
-                            try
-                            {
-                                entities.wait();
-                            }
-                            catch (InterruptedException iex){}
-                        }
-
                         Iterator<Map.Entry<String, EntityCapsManager.Caps>>
                             iter = entities.entrySet().iterator();
-                        if(iter.hasNext())
+                        if(stopped || !iter.hasNext())
                         {
-                            entityToProcess = iter.next();
-                            iter.remove();
+                            retrieving = false;
+                            return;
                         }
-                    }
 
-                    if(entityToProcess != null)
-                    {
-                        // process
-                        requestDiscoveryInfo(
-                            entityToProcess.getKey(),
-                            entityToProcess.getValue());
+                        entityToProcess = iter.next();
+                        iter.remove();
                     }
 
-                    entityToProcess = null;
+                    // process
+                    requestDiscoveryInfo(
+                        entityToProcess.getKey(),
+                        entityToProcess.getValue());
                 }
             } catch(Throwable t)
             {
                 logger.error("Error requesting discovery info, " +
-                    "thread ended unexpectedly", t);
+                    "retrieval ended unexpectedly", t);
+
+                synchronized(entities)
+                {
+                    retrieving = false;
+                }
             }
         }
 
@@ -801,9 +795,9 @@ public class ScServiceDiscoveryManager
                 if(!entities.containsKey(entityID))
                 {
                     entities.put(entityID, caps);
-                    entities.notifyAll();
+                    stopped = false;
 
-                    if(retrieverThread == null)
+                    if(!retrieving)
                     {
                         start();
                     }
@@ -812,7 +806,8 @@ public class ScServiceDiscoveryManager
         }
 
         /**
-         * Start thread.
+         * Starts processing the queued entities. Must be called with
+         * <tt>entities</tt> locked.
          */
         private void start()
         {
@@ -820,14 +815,11 @@ public class ScServiceDiscoveryManager
                 parentProvider.getOperationSet(
                     OperationSetContactCapabilities.class);
 
-            retrieverThread = new Thread(
-                this,
-                ScServiceDiscoveryManager.class.getName());
-            retrieverThread.setDaemon(true);
-
-            retrieverThread.start();
-
-
+            retrieving = true;
+            AccountTaskScheduler.getInstance().execute(
+                parentProvider.getAccountID(),
+                ScServiceDiscoveryManager.class.getName(),
+                this);
         }
 
         /**
@@ -838,9 +830,7 @@ public class ScServiceDiscoveryManager
             synchronized(entities)
             {
                 stopped = true;
-                entities.notifyAll();
-
-                retrieverThread = null;
+                entities.clear();
             }
         }
     }
@@ -6,6 +6,7 @@
  */
 package net.java.sip.communicator.impl.protocol.jabber;
 
+import java.io.*;
 import java.util.*;
 
 import net.java.sip.communicator.service.customavatar.*;
@@ -17,6 +18,7 @@ import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
 import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smack.util.*;
+import org.jitsi.service.fileaccess.*;
 import org.jivesoftware.smackx.packet.*;
 import org.osgi.framework.*;
 
@@ -69,9 +71,20 @@ public class ServerStoredContactListJabberImpl
         = new Vector<ServerStoredGroupListener>();
 
     /**
-     *  Thread retreiving images for contacts
+     * Fetches the avatars of the contacts or <tt>null</tt> if none has been
+     * requested yet.
      */
-    private ImageRetriever imageRetriever = null;
+    private AvatarFetcher avatarFetcher = null;
+
+    /**
+     * Lock object for the avatarFetcher variable.
+     */
+    private final Object avatarFetcherLock = new Object();
+
+    /**
+     * The name of the directory the avatars are stored in by hash.
+     */
+    private static final String AVATAR_STORE_DIR_NAME = "avatarstore";
 
     /**
      * Listens for roster changes.
@@ -93,6 +106,18 @@ public class ServerStoredContactListJabberImpl
      */
     private Object rosterInitLock = new Object();
 
+    /**
+     * The roster as it was when we last saw it, used to resolve unchanged
+     * contacts without announcing them again. <tt>null</tt> while we are
+     * offline or if the roster cannot be stored.
+     */
+    private LocalRosterStore rosterStore = null;
+
+    /**
+     * The name of the directory the rosters of the accounts are stored in.
+     */
+    private static final String ROSTER_STORE_DIR_NAME = "roster";
+
     /**
      * The initial status saved.
      */
@@ -887,8 +912,16 @@ public class ServerStoredContactListJabberImpl
         this.roster.addRosterListener(presenceChangeListener);
         this.roster.setSubscriptionMode(Roster.SubscriptionMode.manual);
 
+        rosterStore = createRosterStore();
+
         initRoster();
 
+        if (rosterStore != null)
+        {
+            rosterStore.putAll(roster.getEntries());
+            rosterStore.save();
+        }
+
         // roster has been requested and dispatched, mark this
         synchronized(rosterInitLock)
         {
@@ -937,10 +970,13 @@ public class ServerStoredContactListJabberImpl
      */
     void cleanup()
     {
-        if(imageRetriever != null)
+        synchronized(avatarFetcherLock)
         {
-            imageRetriever.quit();
-            imageRetriever = null;
+            if(avatarFetcher != null)
+            {
+                avatarFetcher.shutdown();
+                avatarFetcher = null;
+            }
         }
 
         if(this.roster != null)
@@ -949,6 +985,12 @@ public class ServerStoredContactListJabberImpl
         this.rosterChangeListener = null;
         this.roster = null;
 
+        if (rosterStore != null)
+        {
+            rosterStore.save();
+            rosterStore = null;
+        }
+
         synchronized(rosterInitLock)
         {
             this.isRosterInitialized = false;
@@ -1011,7 +1053,7 @@ public class ServerStoredContactListJabberImpl
 
                     //fire an event saying that the unfiled contact has been
                     //resolved
-                    fireContactResolved(rootGroup, contact);
+                    fireContactResolved(rootGroup, contact, item);
                 }
 
                 try
@@ -1232,6 +1274,101 @@ public class ServerStoredContactListJabberImpl
             SubscriptionEvent.SUBSCRIPTION_RESOLVED);
     }
 
+    /**
+     * Makes the parent persistent presence operation set dispatch a contact
+     * resolved event unless <tt>entry</tt> has not changed since we last saw
+     * it. In that case only its presence is dispatched and the work the meta
+     * contact list would do on the event is done here instead:
+     * <ul>
+     * <li>the display name needs no update: the stored roster is only saved
+     * after the events for the entries it holds have been dispatched, so the
+     * meta contact list has already seen the name;</li>
+     * <li>the avatar is queued for retrieval if the contact has none yet, as
+     * <tt>MetaContact.getAvatar()</tt> would. The meta contact list gets the
+     * avatar through the usual image property change event.</li>
+     * </ul>
+     *
+     * @param parentGroup the group that the resolved contact belongs to.
+     * @param contact the contact that was resolved
+     * @param entry the roster entry <tt>contact</tt> has been resolved against
+     */
+    void fireContactResolved(ContactGroup parentGroup,
+                             ContactJabberImpl contact,
+                             RosterEntry entry)
+    {
+        LocalRosterStore rosterStore = this.rosterStore;
+
+        if(rosterStore == null || !rosterStore.isUnchanged(entry))
+        {
+            fireContactResolved(parentGroup, contact);
+            return;
+        }
+
+        if(parentOperationSet != null && roster != null)
+        {
+            parentOperationSet.firePresenceStatusChanged(
+                    roster.getPresence(contact.getAddress()));
+        }
+        contact.getImage(true);
+    }
+
+    /**
+     * Creates the store for the roster of our account.
+     *
+     * @return the store for the roster of our account or <tt>null</tt> if the
+     * roster cannot be stored.
+     */
+    private LocalRosterStore createRosterStore()
+    {
+        FileAccessService fileAccessService
+            = JabberActivator.getFileAccessService();
+
+        if(fileAccessService == null)
+            return null;
+
+        try
+        {
+            String fileName
+                = Sha1Crypto.encode(
+                    jabberProvider.getAccountID().getAccountUniqueID()
+                        .getBytes("UTF-8"));
+            File file
+                = fileAccessService.getPrivatePersistentFile(
+                        ROSTER_STORE_DIR_NAME + File.separator + fileName,
+                        FileCategory.PROFILE);
+
+            return new LocalRosterStore(file);
+        }
+        catch(Exception e)
+        {
+            logger.warn("Roster will not be stored locally", e);
+            return null;
+        }
+    }
+
+    /**
+     * Updates the stored roster with the entries of <tt>addresses</tt>.
+     *
+     * @param addresses the JIDs of the entries which have been added or
+     * updated.
+     */
+    private void storeRosterEntries(Collection<String> addresses)
+    {
+        LocalRosterStore rosterStore = this.rosterStore;
+        Roster roster = this.roster;
+
+        if(rosterStore == null || roster == null)
+            return;
+
+        for(String address : addresses)
+        {
+            RosterEntry entry = roster.getEntry(address);
+
+            if(entry != null)
+                rosterStore.put(entry);
+        }
+    }
+
     /**
      * when there is no image for contact we must retrieve it
      * add contacts for image update
@@ -1244,13 +1381,80 @@ public class ServerStoredContactListJabberImpl
             && ((VolatileContactJabberImpl)contact).isPrivateMessagingContact())
             return;
 
-        if(imageRetriever == null)
+        // the image is needed to display the contact, so serve it first
+        getAvatarFetcher().fetch(contact.getAddress(), null, true);
+    }
+
+    /**
+     * Schedules the retrieval of the avatar a contact has advertised in its
+     * presence.
+     *
+     * @param contact the contact.
+     * @param sha1 the hash of the advertised avatar.
+     */
+    void updateAvatar(ContactJabberImpl contact, String sha1)
+    {
+        getAvatarFetcher().fetch(contact.getAddress(), sha1, false);
+    }
+
+    /**
+     * Returns the fetcher of the avatars of the contacts creating it the
+     * first time.
+     *
+     * @return the fetcher of the avatars of the contacts.
+     */
+    private AvatarFetcher getAvatarFetcher()
+    {
+        synchronized(avatarFetcherLock)
         {
-            imageRetriever = new ImageRetriever();
-            imageRetriever.start();
+            if(avatarFetcher == null)
+            {
+                AvatarHandler handler = new AvatarHandler();
+
+                avatarFetcher
+                    = new AvatarFetcher(
+                            handler,
+                            handler,
+                            createAvatarStore(),
+                            JabberActivator.getConfigurationService().getInt(
+                                AvatarFetcher.MAX_IN_FLIGHT_PROPERTY_NAME,
+                                AvatarFetcher.DEFAULT_MAX_IN_FLIGHT));
+            }
+            return avatarFetcher;
         }
+    }
 
-        imageRetriever.addContact(contact);
+    /**
+     * Creates the store of the avatars downloaded by hash. It is shared by
+     * all accounts.
+     *
+     * @return the store of the avatars or <tt>null</tt> if avatars cannot be
+     * stored.
+     */
+    private AvatarStore createAvatarStore()
+    {
+        FileAccessService fileAccessService
+            = JabberActivator.getFileAccessService();
+
+        if(fileAccessService == null)
+            return null;
+
+        try
+        {
+            return
+                new AvatarStore(
+                        fileAccessService.getPrivatePersistentDirectory(
+                                AVATAR_STORE_DIR_NAME,
+                                FileCategory.CACHE),
+                        JabberActivator.getConfigurationService().getInt(
+                                AvatarStore.MAX_AVATARS_PROPERTY_NAME,
+                                AvatarStore.DEFAULT_MAX_AVATARS));
+        }
+        catch(Exception e)
+        {
+            logger.warn("Avatars will not be stored locally", e);
+            return null;
+        }
     }
 
     /**
@@ -1364,6 +1568,8 @@ public class ServerStoredContactListJabberImpl
             {
                 addEntryToContactList(id);
             }
+
+            storeRosterEntries(addresses);
         }
 
         /**
@@ -1634,6 +1840,9 @@ public class ServerStoredContactListJabberImpl
                     }
                 }
             }
+
+            // only now that the changes have been announced
+            storeRosterEntries(addresses);
         }
 
         /**
@@ -1663,6 +1872,15 @@ public class ServerStoredContactListJabberImpl
          */
         public void entriesDeleted(Collection<String> addresses)
         {
+            LocalRosterStore rosterStore
+                = ServerStoredContactListJabberImpl.this.rosterStore;
+
+            if (rosterStore != null)
+            {
+                for (String address : addresses)
+                    rosterStore.remove(address);
+            }
+
             Iterator<String> iter = addresses.iterator();
             while (iter.hasNext())
             {
@@ -1693,127 +1911,50 @@ public class ServerStoredContactListJabberImpl
     }
 
     /**
-     * Thread retrieving images.
+     * Downloads the avatars of the contacts for the <tt>AvatarFetcher</tt>
+     * and sets them on the contacts once fetched.
      */
-    private class ImageRetriever
-        extends Thread
+    private class AvatarHandler
+        implements AvatarFetcher.Source,
+                   AvatarFetcher.Listener
     {
         /**
-         * list with the accounts with missing image
-         */
-        private final List<ContactJabberImpl> contactsForUpdate
-            = new Vector<ContactJabberImpl>();
-
-        /**
-         * Should we stop.
-         */
-        private boolean running = false;
-
-        /**
-         * Creates image retrieving.
-         */
-        ImageRetriever()
-        {
-            setDaemon(true);
-        }
-
-        /**
-         * Thread entry point.
+         * Downloads the avatar of a contact. If the contact has advertised a
+         * new avatar its vCard is loaded anew, otherwise the one retrieved
+         * with the other details of the contact is used.
+         *
+         * @param address the address of the contact.
+         * @param sha1 the hash of the avatar the contact has advertised or
+         * <tt>null</tt> if it is not known.
+         * @return the avatar of the contact, an empty array if the contact
+         * has none or <tt>null</tt> if it could not be downloaded.
          */
-        @Override
-        public void run()
+        public byte[] fetchAvatar(String address, String sha1)
         {
-            try
+            if(sha1 != null)
             {
-                Collection<ContactJabberImpl> copyContactsForUpdate = null;
-                running = true;
-                while (running)
+                try
                 {
-                    synchronized(contactsForUpdate)
-                    {
-                        if(contactsForUpdate.isEmpty())
-                            contactsForUpdate.wait();
-
-                        if(!running)
-                            return;
-
-                        copyContactsForUpdate
-                            = new Vector<ContactJabberImpl>(contactsForUpdate);
-                        contactsForUpdate.clear();
-                    }
-
-                    Iterator<ContactJabberImpl> iter
-                        = copyContactsForUpdate.iterator();
-                    while (iter.hasNext())
-                    {
-                        ContactJabberImpl contact = iter.next();
-
-                        byte[] imgBytes = getAvatar(contact);
+                    VCard vCard = new VCard();
+                    vCard.load(jabberProvider.getConnection(), address);
 
-                        if(imgBytes != null)
-                        {
-                            byte[] oldImage = contact.getImage(false);
-
-                            contact.setImage(imgBytes);
-                            parentOperationSet.fireContactPropertyChangeEvent(
-                                ContactPropertyChangeEvent.PROPERTY_IMAGE,
-                                contact, oldImage, imgBytes);
-                        }
-                        else
-                            // set an empty image data so it won't be queried again
-                            contact.setImage(new byte[0]);
-                    }
+                    byte[] avatar = vCard.getAvatar();
+                    return (avatar == null) ? new byte[0] : avatar;
                 }
-            }
-            catch (InterruptedException ex)
-            {
-                logger.error("ImageRetriever error waiting will stop now!", ex);
-            }
-        }
-
-        /**
-         * Add contact for retrieving
-         * if the provider is register notify the retriever to get the nicks
-         * if we are not registered add a listener to wait for registering
-         *
-         * @param contact ContactJabberImpl
-         */
-        void addContact(ContactJabberImpl contact)
-        {
-            synchronized(contactsForUpdate)
-            {
-                if (!contactsForUpdate.contains(contact))
+                catch(XMPPException ex)
                 {
-                    contactsForUpdate.add(contact);
-                    contactsForUpdate.notifyAll();
+                    logger.info("Cannot retrieve vCard from: " + address);
+                    if(logger.isTraceEnabled())
+                        logger.trace("vCard retrieval exception was: ", ex);
+                    return null;
                 }
             }
-        }
-
-        /**
-         * Stops this thread.
-         */
-        void quit()
-        {
-            synchronized(contactsForUpdate)
-            {
-                running = false;
-                contactsForUpdate.notifyAll();
-            }
-        }
 
-        /**
-         * Retrieves the avatar.
-         * @param contact the contact.
-         * @return the contact avatar.
-         */
-        private byte[] getAvatar(ContactJabberImpl contact)
-        {
             byte[] result = null;
             try
             {
                 Iterator<ServerStoredDetails.GenericDetail> iter =
-                    infoRetreiver.getDetails(contact.getAddress(),
+                    infoRetreiver.getDetails(address,
                     ServerStoredDetails.ImageDetail.class);
 
                 if(iter.hasNext())
@@ -1825,7 +1966,7 @@ public class ServerStoredContactListJabberImpl
 
                 if(result == null)
                 {
-                    result = searchForCustomAvatar(contact.getAddress());
+                    result = searchForCustomAvatar(address);
                 }
 
                 return result;
@@ -1836,19 +1977,56 @@ public class ServerStoredContactListJabberImpl
                 {
                     logger.debug(
                             "Cannot load image for contact "
-                                + contact
+                                + address
                                 + ": "
                                 + ex.getMessage(),
                             ex);
                 }
 
-                result = searchForCustomAvatar(contact.getAddress());
+                result = searchForCustomAvatar(address);
                 if(result == null)
                     result = new byte[0];
             }
 
             return result;
         }
+
+        /**
+         * Sets the fetched avatar on its contact and fires the corresponding
+         * event.
+         *
+         * @param address the address of the contact.
+         * @param sha1 the hash of the avatar which has been requested or
+         * <tt>null</tt> if it was not known.
+         * @param avatar the avatar of the contact, an empty array if the
+         * contact has none or <tt>null</tt> if it could not be downloaded.
+         */
+        public void avatarFetched(String address, String sha1, byte[] avatar)
+        {
+            ContactJabberImpl contact = findContactById(address);
+
+            if(contact == null)
+                return;
+
+            if(avatar == null)
+            {
+                // set an empty image data so it won't be queried again, a
+                // contact advertising a new avatar keeps the one it had
+                if(sha1 == null)
+                    contact.setImage(new byte[0]);
+                return;
+            }
+
+            byte[] oldImage = contact.getImage(false);
+
+            if(Arrays.equals(oldImage, avatar))
+                return;
+
+            contact.setImage(avatar);
+            parentOperationSet.fireContactPropertyChangeEvent(
+                ContactPropertyChangeEvent.PROPERTY_IMAGE,
+                contact, oldImage, avatar);
+        }
     }
 
     /**
@@ -494,6 +494,19 @@ public abstract class TransportManagerJabberImpl
      */
     public abstract List<ContentPacketExtension> wrapupCandidateHarvest();
 
+    /**
+     * Starts sending the local candidates which have been left out of the
+     * offer or answer in <tt>transport-info</tt>s as they are gathered. The
+     * default implementation does nothing because candidates are sent in the
+     * offer or answer.
+     *
+     * @param transportInfoSender the <tt>TransportInfoSender</tt> to send the
+     * <tt>transport-info</tt>s with
+     */
+    public void startCandidateTrickle(TransportInfoSender transportInfoSender)
+    {
+    }
+
     /**
      * Looks through the <tt>cpExtList</tt> and returns the {@link
      * ContentPacketExtension} with the specified name.
@@ -0,0 +1,130 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.net.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+import org.bitlet.weupnp.*;
+import org.ice4j.ice.*;
+import org.ice4j.ice.harvest.*;
+import org.ice4j.socket.*;
+
+/**
+ * A UPnP harvester for a single call which maps a port on the UPnP gateway
+ * kept by an <tt>IceHarvesterCache</tt> instead of discovering the gateway
+ * itself, so that only the gateway is shared across calls and the harvests
+ * and statistics of concurrent calls are kept apart.
+ */
+public class UPNPGatewayHarvester
+    extends UPNPHarvester
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(UPNPGatewayHarvester.class);
+
+    /**
+     * The number of external ports tried before giving up on mapping one.
+     */
+    private static final int MAX_RETRIES = 5;
+
+    /**
+     * The cache which keeps the discovered UPnP gateway.
+     */
+    private final IceHarvesterCache cache;
+
+    /**
+     * Initializes a new <tt>UPNPGatewayHarvester</tt>.
+     *
+     * @param cache the cache which keeps the discovered UPnP gateway
+     */
+    public UPNPGatewayHarvester(IceHarvesterCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Maps a port on the UPnP gateway to a new local socket and gathers the
+     * candidates for it.
+     *
+     * @param component the <tt>Component</tt> to harvest candidates for
+     * @return the gathered candidates, which is empty if no UPnP gateway has
+     * been discovered or no port could be mapped
+     */
+    @Override
+    public Collection<LocalCandidate> harvest(Component component)
+    {
+        Collection<LocalCandidate> candidates = new HashSet<LocalCandidate>();
+        GatewayDevice gateway = cache.getUPNPGateway();
+
+        if (gateway == null)
+            return candidates;
+
+        IceSocketWrapper socket = null;
+        boolean mapped = false;
+
+        try
+        {
+            InetAddress localAddress = gateway.getLocalAddress();
+            String externalIP = gateway.getExternalIPAddress();
+            PortMappingEntry portMapping = new PortMappingEntry();
+
+            socket
+                = new IceUdpSocketWrapper(
+                        new MultiplexingDatagramSocket(0, localAddress));
+
+            int port = socket.getLocalPort();
+            int externalPort = port;
+
+            for (int i = 0; i < MAX_RETRIES; i++, externalPort++)
+            {
+                if (gateway.getSpecificPortMappingEntry(
+                            externalPort, "UDP", portMapping)
+                        || !gateway.addPortMapping(
+                                externalPort,
+                                port,
+                                localAddress.getHostAddress(),
+                                "UDP",
+                                "ice4j.org: " + port))
+                {
+                    continue;
+                }
+
+                mapped = true;
+                if (logger.isInfoEnabled())
+                {
+                    logger.info(
+                            "Add UPnP port mapping: " + externalIP + " "
+                                + externalPort);
+                }
+                for (LocalCandidate candidate
+                        : createUPNPCandidate(
+                                socket,
+                                externalIP,
+                                externalPort,
+                                component,
+                                gateway))
+                {
+                    if (component.addLocalCandidate(candidate))
+                        candidates.add(candidate);
+                }
+                break;
+            }
+        }
+        catch (Exception e)
+        {
+            logger.info("Exception while gathering UPnP candidates", e);
+        }
+        if (!mapped && (socket != null))
+            socket.close();
+        return candidates;
+    }
+}
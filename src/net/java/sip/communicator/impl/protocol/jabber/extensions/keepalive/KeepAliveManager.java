@@ -1,7 +1,5 @@
 package net.java.sip.communicator.impl.protocol.jabber.extensions.keepalive;
 
-import java.util.*;
-
 import net.java.sip.communicator.impl.protocol.jabber.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -29,14 +27,10 @@ public class KeepAliveManager
         Logger.getLogger(KeepAliveManager.class);
 
     /**
-     * The task sending packets
+     * The task sending packets, run on specified intervals by the
+     * <tt>AccountTaskScheduler</tt>.
      */
-    private KeepAliveSendTask keepAliveSendTask = null;
-
-    /**
-     * The timer executing tasks on specified intervals
-     */
-    private Timer keepAliveTimer;
+    private AccountTaskScheduler.Task keepAliveSendTask = null;
 
     /**
      * The last received packet from server.
@@ -105,15 +99,7 @@ public class KeepAliveManager
                 keepAliveSendTask.cancel();
                 keepAliveSendTask = null;
             }
-            if(keepAliveTimer != null)
-            {
-                logger.error("Those timer is not supposed to be available for "
-                    + parentProvider.getAccountID().getDisplayName());
-                keepAliveTimer.cancel();
-                keepAliveTimer = null;
-            }
 
-            keepAliveSendTask = new KeepAliveSendTask();
             waitingForPacketWithID = null;
 
             keepAliveCheckInterval =
@@ -121,10 +107,10 @@ public class KeepAliveManager
             if(keepAliveCheckInterval == 0)
                 keepAliveCheckInterval = 30000;
 
-            keepAliveTimer = new Timer("Jabber keepalive timer for <"
-                + parentProvider.getAccountID() + ">", true);
-            keepAliveTimer.scheduleAtFixedRate(
-                keepAliveSendTask,
+            keepAliveSendTask = AccountTaskScheduler.getInstance().schedule(
+                parentProvider.getAccountID(),
+                "Jabber keepalive",
+                new KeepAliveSendTask(),
                 keepAliveCheckInterval,
                 keepAliveCheckInterval);
         }
@@ -142,11 +128,6 @@ public class KeepAliveManager
                 keepAliveSendTask.cancel();
                 keepAliveSendTask = null;
             }
-            if(keepAliveTimer != null)
-            {
-                keepAliveTimer.cancel();
-                keepAliveTimer = null;
-            }
         }
     }
 
@@ -182,13 +163,14 @@ public class KeepAliveManager
 
     /**
      * Task sending packets on intervals.
-     * The task is runned on specified intervals by the keepAliveTimer
+     * The task is runned on specified intervals by the
+     * <tt>AccountTaskScheduler</tt>.
      */
     private class KeepAliveSendTask
-        extends TimerTask
+        implements Runnable
     {
         /**
-         * Minimal sleep interval between calls to this <tt>TimerTask</tt>.
+         * Minimal sleep interval between calls to this task.
          */
         private final long MIN_WAKE_UP_INTERVAL = 5000L; // 5 sec
 
@@ -200,7 +182,6 @@ public class KeepAliveManager
         /**
          * Sends a single <tt>KeepAliveEvent</tt>.
          */
-        @Override
         public void run()
         {
             /**
@@ -89,6 +89,12 @@ public class CallPeerMediaHandlerSipImpl
      */
     private Object offerAnswerLock = new Object();
 
+    /**
+     * The last offer we have answered or <tt>null</tt> if we have sent an
+     * offer or received an answer since.
+     */
+    private String lastAnsweredOffer = null;
+
     /**
      * Creates a new handler that will be managing media streams for
      * <tt>peer</tt>.
@@ -123,20 +129,35 @@ public class CallPeerMediaHandlerSipImpl
     public String createOffer()
         throws OperationFailedException
     {
-        SessionDescription offer
-            = (localSess == null)
-                ? createFirstOffer()
-                : createUpdateOffer(localSess);
-
-        if (getConfigurationService().getBoolean(
-                ProtocolProviderServiceSipImpl
-                        .USE_SESSION_LEVEL_DIRECTION_IN_SDP,
-                false))
+        CallSetupTrace.Span span
+            = CallSetupTrace.begin(getPeer(), "sdp.createOffer");
+
+        try
         {
-            SdpUtils.setSessionDirection(offer);
-        }
+            synchronized (offerAnswerLock)
+            {
+                lastAnsweredOffer = null;
+            }
+
+            SessionDescription offer
+                = (localSess == null)
+                    ? createFirstOffer()
+                    : createUpdateOffer(localSess);
+
+            if (getConfigurationService().getBoolean(
+                    ProtocolProviderServiceSipImpl
+                            .USE_SESSION_LEVEL_DIRECTION_IN_SDP,
+                    false))
+            {
+                SdpUtils.setSessionDirection(offer);
+            }
 
-        return offer.toString();
+            return offer.toString();
+        }
+        finally
+        {
+            CallSetupTrace.end(span);
+        }
     }
 
     /**
@@ -422,14 +443,69 @@ public class CallPeerMediaHandlerSipImpl
         throws OperationFailedException,
                IllegalArgumentException
     {
-        SessionDescription offer = SdpUtils.parseSdpString(offerString);
+        CallSetupTrace.Span span
+            = CallSetupTrace.begin(getPeer(), "sdp.processOffer");
+
+        try
+        {
+            return doProcessOffer(offerString);
+        }
+        finally
+        {
+            CallSetupTrace.end(span);
+        }
+    }
 
+    /**
+     * Implements {@link #processOffer(String)}.
+     *
+     * @param offerString The SDP offer that we'd like to parse, handle and get
+     * a response for.
+     * @return A <tt>String</tt> containing the SDP response representing the
+     * current state of this <tt>MediaHandler</tt>.
+     * @throws OperationFailedException if parsing or handling
+     * <tt>offerString</tt> fails or we have a problem while creating the
+     * response.
+     * @throws IllegalArgumentException if there's a problem with the format
+     * or semantics of the <tt>offerString</tt>.
+     */
+    private String doProcessOffer(String offerString)
+        throws OperationFailedException,
+               IllegalArgumentException
+    {
         synchronized (offerAnswerLock)
         {
+            /*
+             * An offer which is identical to the previous one, e.g. a session
+             * refresh, needs neither to be parsed nor to be processed again.
+             * RFC 3264, section 8 only allows an unchanged o= line for an
+             * unchanged offer but some peers do not bump the version when
+             * they change it, so the whole offer is compared.
+             */
+            if ((localSess != null)
+                    && isUnchangedOffer(lastAnsweredOffer, offerString)
+                    && getConfigurationService().getBoolean(
+                            ProtocolProviderServiceSipImpl
+                                    .REUSE_ANSWER_FOR_UNCHANGED_OFFER,
+                            true))
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug(
+                            "Answering an unchanged offer from "
+                                + getPeer().getAddress()
+                                + " with the previous answer.");
+                }
+                return localSess.toString();
+            }
+
+            SessionDescription offer = SdpUtils.parseSdpString(offerString);
             SessionDescription answer = (localSess == null)
                     ? processFirstOffer(offer)
                     : processUpdateOffer(offer, localSess);
 
+            lastAnsweredOffer = offerString;
+
             if (getConfigurationService().getBoolean(
                     ProtocolProviderServiceSipImpl
                             .USE_SESSION_LEVEL_DIRECTION_IN_SDP,
@@ -442,6 +518,24 @@ public class CallPeerMediaHandlerSipImpl
         }
     }
 
+    /**
+     * Determines whether an offer is identical to the last one answered, in
+     * which case it is answered with the previous answer.
+     *
+     * @param lastAnsweredOffer the last offer answered or <tt>null</tt> if
+     * there is none
+     * @param offerString the offer to answer
+     * @return <tt>true</tt> if <tt>offerString</tt> is the same as
+     * <tt>lastAnsweredOffer</tt>; otherwise, <tt>false</tt>
+     */
+    static boolean isUnchangedOffer(
+            String lastAnsweredOffer,
+            String offerString)
+    {
+        return (lastAnsweredOffer != null)
+            && lastAnsweredOffer.equals(offerString);
+    }
+
     /**
      * Parses and handles the specified <tt>SessionDescription offer</tt> and
      * returns and SDP answer representing the current state of this media
@@ -1342,7 +1436,17 @@ public class CallPeerMediaHandlerSipImpl
         throws OperationFailedException,
                IllegalArgumentException
     {
-        processAnswer(SdpUtils.parseSdpString(answer));
+        CallSetupTrace.Span span
+            = CallSetupTrace.begin(getPeer(), "sdp.processAnswer");
+
+        try
+        {
+            processAnswer(SdpUtils.parseSdpString(answer));
+        }
+        finally
+        {
+            CallSetupTrace.end(span);
+        }
     }
 
     /**
@@ -1368,6 +1472,7 @@ public class CallPeerMediaHandlerSipImpl
     {
         synchronized (offerAnswerLock)
         {
+            lastAnsweredOffer = null;
             doNonSynchronisedProcessAnswer(answer);
         }
     }
@@ -1469,6 +1469,8 @@ public class CallPeerSipImpl
 
             processExtraHeaders(invite);
 
+            // ended by the final response or the timeout of the transaction
+            CallSetupTrace.begin(this, "sip.invite");
             inviteTran.sendRequest();
             if (logger.isDebugEnabled())
                 logger.debug("sent request:\n" + inviteTran.getRequest());
@@ -471,6 +471,19 @@ public class CallSipImpl
                 .getDefaultJainSipProvider();
         }
 
+        /*
+         * The transaction is created with the next hop of the request, so
+         * this is where ProxyRouter and the DNS lookups (NAPTR, SRV, A/AAAA)
+         * of the address resolver take their time.
+         */
+        CallSetupTrace.Span routeSpan
+            = getSetupTrace().begin(
+                    "sip.route",
+                    (calleeURI instanceof SipURI)
+                        ? ((SipURI) calleeURI).getUser() + "@"
+                            + ((SipURI) calleeURI).getHost()
+                        : calleeURI.toString());
+
         try
         {
             inviteTransaction = jainSipProvider.getNewClientTransaction(invite);
@@ -482,6 +495,10 @@ public class CallSipImpl
                     + "This is most probably a network connection error.",
                 OperationFailedException.INTERNAL_ERROR, ex, logger);
         }
+        finally
+        {
+            routeSpan.end();
+        }
 
         // create the call peer
         CallPeerSipImpl callPeer
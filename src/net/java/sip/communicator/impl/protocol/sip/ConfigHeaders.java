@@ -56,6 +56,49 @@ public class ConfigHeaders
     private final static String ACC_PROPERTY_CONFIG_HEADER_METHOD
         = "Method";
 
+    /**
+     * The name of the custom header.
+     */
+    private final String name;
+
+    /**
+     * The value of the custom header which may contain params to be replaced
+     * with values from the request.
+     */
+    private final String value;
+
+    /**
+     * The method of the requests the header is to be attached to or
+     * <tt>null</tt> if it is to be attached to all requests.
+     */
+    private final String method;
+
+    /**
+     * The header created once and cloned for every request if <tt>value</tt>
+     * does not contain any params or <tt>null</tt> if the header has to be
+     * created for every request.
+     */
+    private final Header template;
+
+    /**
+     * Creates a custom header definition.
+     *
+     * @param name the name of the header.
+     * @param value the value of the header.
+     * @param method the method of the requests to attach the header to or
+     * <tt>null</tt> to attach it to all requests.
+     * @param template the pre-created header or <tt>null</tt> if it has to be
+     * created for every request.
+     */
+    private ConfigHeaders(
+        String name, String value, String method, Header template)
+    {
+        this.name = name;
+        this.value = value;
+        this.method = method;
+        this.template = template;
+    }
+
     /**
      * Attach any custom headers pre configured for the account. Added only
      * to message Requests.
@@ -67,6 +110,8 @@ public class ConfigHeaders
      * Name is the header name to use and Value is its value. The optional
      * property is whether to use a specific request method to attach headers to
      * or if missing we will attach it to all requests.
+     * The properties are only parsed once per account, see
+     * <tt>SipHeaderTemplates</tt>.
      *
      * @param message the message that we'd like to attach custom headers to.
      * @param protocolProvider the protocol provider to check for configured
@@ -81,9 +126,53 @@ public class ConfigHeaders
 
         Request request = (Request)message;
 
-        Map<String, String> props
-            = protocolProvider.getAccountID().getAccountProperties();
+        for(ConfigHeaders header
+                : protocolProvider.getHeaderTemplates().getConfigHeaders())
+        {
+            // if there is a method setting and is different from
+            // current request method skip this header
+            if(header.method != null
+                && !request.getMethod().equalsIgnoreCase(header.method))
+                continue;
+
+            try
+            {
+                Header customHeader;
+
+                if(header.template != null)
+                {
+                    customHeader = (Header)header.template.clone();
+                }
+                else
+                {
+                    customHeader = protocolProvider.getHeaderFactory()
+                        .createHeader(
+                            header.name,
+                            processParams(header.value, request));
+                }
 
+                request.setHeader(customHeader);
+            }
+            catch(Exception e)
+            {
+                logger.error("Cannot create custom header", e);
+            }
+        }
+    }
+
+    /**
+     * Parses the custom headers configured in the account properties
+     * <tt>props</tt>. Headers whose value does not depend on the request are
+     * created right away so that they only have to be cloned when attached.
+     *
+     * @param props the account properties.
+     * @param headerFactory the factory to create the headers with.
+     * @return the custom headers configured in <tt>props</tt>.
+     */
+    static List<ConfigHeaders> parseConfigHeaders(
+        Map<String, String> props,
+        HeaderFactory headerFactory)
+    {
         Map<String,Map<String,String>> headers
             = new HashMap<String, Map<String, String>>();
 
@@ -122,38 +211,41 @@ public class ConfigHeaders
             headerValues.put(name, prefStr);
         }
 
+        List<ConfigHeaders> result = new ArrayList<ConfigHeaders>();
+
         // process the found custom headers
         for(Map<String, String> headerValues : headers.values())
         {
-            String method = headerValues.get(ACC_PROPERTY_CONFIG_HEADER_METHOD);
+            String name = headerValues.get(ACC_PROPERTY_CONFIG_HEADER_NAME);
+            String value = headerValues.get(ACC_PROPERTY_CONFIG_HEADER_VALUE);
 
-            // if there is a method setting and is different from
-            // current request method skip this header
             // if any of the required properties are missing skip (Name & Value)
-            if((method != null
-                && !request.getMethod().equalsIgnoreCase(method))
-                || !headerValues.containsKey(ACC_PROPERTY_CONFIG_HEADER_NAME)
-                || !headerValues.containsKey(ACC_PROPERTY_CONFIG_HEADER_VALUE))
+            if(name == null || value == null)
                 continue;
 
-            try
-            {
-
-                Header customHeader = protocolProvider.getHeaderFactory()
-                    .createHeader(
-                        headerValues.get(ACC_PROPERTY_CONFIG_HEADER_NAME),
-                        processParams(
-                            headerValues.get(ACC_PROPERTY_CONFIG_HEADER_VALUE),
-                            request)
-                    );
+            Header template = null;
 
-                request.setHeader(customHeader);
-            }
-            catch(Exception e)
+            if(value.indexOf("${") == -1)
             {
-                logger.error("Cannot create custom header", e);
+                try
+                {
+                    template = headerFactory.createHeader(name, value);
+                }
+                catch(Exception e)
+                {
+                    logger.error("Cannot create custom header", e);
+                    continue;
+                }
             }
+
+            result.add(new ConfigHeaders(
+                name,
+                value,
+                headerValues.get(ACC_PROPERTY_CONFIG_HEADER_METHOD),
+                template));
         }
+
+        return result;
     }
 
     /**
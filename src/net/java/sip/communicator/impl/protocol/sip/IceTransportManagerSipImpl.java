@@ -83,22 +83,34 @@ public class IceTransportManagerSipImpl
                                       boolean            advertiseRtcpMux)
         throws OperationFailedException
     {
-        iceAgent = createIceAgent();
-        iceAgent.setControlling(true);
+        CallSetupTrace.Span span
+            = CallSetupTrace.begin(getCallPeer(), "ice.harvest");
+
+        try
+        {
+            iceAgent = createIceAgent();
+            iceAgent.setControlling(true);
 
-        //obviously we ARE the controlling agent since we are the ones creating
-        //the offer.
-        iceAgent.setControlling(true);
+            //obviously we ARE the controlling agent since we are the ones
+            //creating the offer.
+            iceAgent.setControlling(true);
 
-        //add the candidate attributes and set default candidates
-        for(MediaDescription mLine
-                : SdpUtils.extractMediaDescriptions(ourOffer))
+            //add the candidate attributes and set default candidates
+            for(MediaDescription mLine
+                    : SdpUtils.extractMediaDescriptions(ourOffer))
+            {
+                createIceStream(
+                        SdpUtils.getMediaType(mLine).toString(),
+                        iceAgent);
+            }
+
+            //now that our iceAgent is ready, reflect it on our offer.
+            IceSdpUtils.initSessionDescription(ourOffer, iceAgent);
+        }
+        finally
         {
-            createIceStream(SdpUtils.getMediaType(mLine).toString(), iceAgent);
+            CallSetupTrace.end(span);
         }
-
-        //now that our iceAgent is ready, reflect it on our offer.
-        IceSdpUtils.initSessionDescription(ourOffer, iceAgent);
     }
 
     /**
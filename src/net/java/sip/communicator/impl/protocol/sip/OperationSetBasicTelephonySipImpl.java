@@ -431,6 +431,12 @@ public class OperationSetBasicTelephonySipImpl
 
         int responseStatusCode = response.getStatusCode();
         boolean processed = false;
+
+        if (method.equals(Request.INVITE)
+                && (responseStatusCode >= Response.OK))
+        {
+            endInviteTrace(clientTransaction);
+        }
         switch (responseStatusCode)
         {
 
@@ -880,6 +886,8 @@ public class OperationSetBasicTelephonySipImpl
             {
                 callPeer.handleAuthenticationChallenge(retryTran);
             }
+            // ended like the first one by the final response or the timeout
+            CallSetupTrace.begin(callPeer, "sip.invite");
             retryTran.sendRequest();
         }
         catch (Exception exc)
@@ -944,6 +952,9 @@ public class OperationSetBasicTelephonySipImpl
             return true;
         }
 
+        if (Request.INVITE.equals(request.getMethod()))
+            endInviteTrace(timeoutEvent.getClientTransaction());
+
         // Try to hangup the peer by indicating that the call has failed.
         try
         {
@@ -965,6 +976,27 @@ public class OperationSetBasicTelephonySipImpl
         return true;
     }
 
+    /**
+     * Ends the span of the call setup trace which has been started when an
+     * INVITE has been sent, because the INVITE transaction has received its
+     * final response or has timed out.
+     *
+     * @param clientTransaction the INVITE transaction
+     */
+    private void endInviteTrace(ClientTransaction clientTransaction)
+    {
+        if (clientTransaction == null)
+            return;
+
+        CallPeerSipImpl callPeer
+            = activeCallsRepository.findCallPeer(
+                    clientTransaction.getDialog());
+        CallSetupTrace trace = CallSetupTrace.getTrace(callPeer);
+
+        if (trace != null)
+            trace.end("sip.invite", callPeer.getAddress());
+    }
+
     /**
      * Process an asynchronously reported IO Exception. Asynchronous IO
      * Exceptions may occur as a result of errors during retransmission of
@@ -174,6 +174,46 @@ public class OperationSetDTMFSipImpl
         }
     }
 
+    /**
+     * Sends a whole DTMF tone as a single SIP INFO request carrying its
+     * duration if this account is configured to use SIP INFO DTMF. The
+     * request is only sent once the previous INFO requests to
+     * <tt>callPeer</tt> have received their final responses and
+     * <tt>queue</tt> is told about the final response to it.
+     *
+     * @param callPeer the call peer to send <tt>tone</tt> to.
+     * @param tone the DTMF tone to send.
+     * @param duration the duration of <tt>tone</tt> in milliseconds.
+     * @param queue the <tt>DTMFQueue</tt> to tell about the outcome of the
+     * request.
+     * @return <tt>true</tt> if <tt>tone</tt> is being sent as a SIP INFO
+     * request; <tt>false</tt> otherwise.
+     * @throws OperationFailedException if sending the request fails right
+     * away.
+     */
+    @Override
+    protected synchronized boolean sendDTMFTone(
+            CallPeer callPeer,
+            DTMFTone tone,
+            int duration,
+            DTMFQueue queue)
+        throws OperationFailedException
+    {
+        if(this.dtmfMethod != DTMFMethod.SIP_INFO_DTMF)
+            return false;
+        if (! (callPeer instanceof CallPeerSipImpl))
+        {
+            throw new IllegalArgumentException();
+        }
+
+        dtmfModeInfo.sendDTMF(
+                (CallPeerSipImpl) callPeer,
+                tone,
+                duration,
+                queue);
+        return true;
+    }
+
     /**
      * Returns DTMFInfo mode implementation.
      * @return DTMFInfo mode implementation.
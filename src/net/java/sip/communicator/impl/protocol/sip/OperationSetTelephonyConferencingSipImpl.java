@@ -551,39 +551,26 @@ public class OperationSetTelephonyConferencingSipImpl
                 return null;
             }
 
-            ConferenceInfoDocument currentConfInfo
-                    = getCurrentConferenceInfo(callPeer);
-            ConferenceInfoDocument lastSentConfInfo
-                    = callPeer.getLastConferenceInfoSent();
+            //Request a full document until the rest of the code can handle a
+            //return value of null in case no NOTIFY needs to be sent.
+            ConferenceInfoState.Notification confInfo
+                    = createConferenceInfoNotification(callPeer, true);
 
-            //Uncomment this when the rest of the code can handle a return value
-            //of null in case no NOTIFY needs to be sent.
-            /*
-            ConferenceInfoDocument diff
-                    = lastSentConfInfo == null
-                      ? currentConfInfo
-                      :getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
-            */
-            ConferenceInfoDocument diff = currentConfInfo;
-
-            if (diff == null)
+            if (confInfo == null)
                 return null;
             else
             {
-                int newVersion
-                        = lastSentConfInfo == null
-                        ? 1
-                        : lastSentConfInfo.getVersion() + 1;
-                diff.setVersion(newVersion);
-                currentConfInfo.setVersion(newVersion);
-
-                // We save currentConfInfo, because it is of state "full", while
-                // diff could be a partial
-                callPeer.setLastConferenceInfoSent(currentConfInfo);
+                callPeer.setLastConferenceInfoSent(confInfo);
                 callPeer.setLastConferenceInfoSentTimestamp(
                         System.currentTimeMillis());
 
-                String xml = diff.toXml();
+                ConferenceNotifyScheduler scheduler
+                        = getConferenceNotifyScheduler(callPeer);
+
+                if (scheduler != null)
+                    scheduler.notificationSent();
+
+                String xml = confInfo.toXml();
                 byte[] notifyContent;
                 try
                 {
@@ -891,65 +878,42 @@ public class OperationSetTelephonyConferencingSipImpl
                         OperationFailedException.INTERNAL_ERROR);
             }
 
-            final long timeSinceLastNotify = System.currentTimeMillis()
-                    - callPeer.getLastConferenceInfoSentTimestamp();
-            if (timeSinceLastNotify < MIN_NOTIFY_INTERVAL)
-            {
-                if (callPeer.isConfInfoScheduled())
-                    return;
-
-                logger.info("Scheduling to send a conference-info NOTIFY to "
-                        + callPeer);
-                callPeer.setConfInfoScheduled(true);
-                new Thread(new Runnable(){
-                    @Override
-                    public void run()
-                    {
-                        try
-                        {
-                            Thread.sleep(1 + MIN_NOTIFY_INTERVAL
-                                         - timeSinceLastNotify);
-                        }
-                        catch (InterruptedException ie) {}
+            ConferenceNotifyScheduler scheduler
+                    = getConferenceNotifyScheduler(callPeer);
 
-                        try
-                        {
-                            ConferenceEventPackageNotifier.this.notify(
-                                    subscription, subscriptionState, reason);
-                        }
-                        catch (OperationFailedException e)
+            // the peer has already been removed from its call
+            if (scheduler == null)
+                return;
+
+            if (!scheduler.schedule(
+                    callPeer,
+                    MIN_NOTIFY_INTERVAL,
+                    new Runnable()
+                    {
+                        public void run()
                         {
-                            logger.error("Failed to send NOTIFY request");
+                            try
+                            {
+                                ConferenceEventPackageNotifier.this.notify(
+                                        subscription,
+                                        subscriptionState,
+                                        reason);
+                            }
+                            catch (OperationFailedException e)
+                            {
+                                logger.error("Failed to send NOTIFY request");
+                            }
                         }
-                    }
-                }).start();
-
+                    }))
                 return;
-            }
-
-            ConferenceInfoDocument currentConfInfo
-                    = getCurrentConferenceInfo(callPeer);
-            ConferenceInfoDocument lastSentConfInfo
-                    = callPeer.getLastConferenceInfoSent();
 
-            ConferenceInfoDocument diff
-                    = lastSentConfInfo == null
-                      ? currentConfInfo
-                      :getConferenceInfoDiff(lastSentConfInfo, currentConfInfo);
+            ConferenceInfoState.Notification confInfo
+                    = createConferenceInfoNotification(callPeer, false);
 
-            if (diff == null)
-            {
-                callPeer.setConfInfoScheduled(false);
+            if (confInfo == null)
                 return; //no change -- no need to send NOTIFY
-            }
-
-            int newVersion
-                    = lastSentConfInfo == null
-                    ? 1
-                    : lastSentConfInfo.getVersion() + 1;
-            diff.setVersion(newVersion);
 
-            String xml = diff.toXml();
+            String xml = confInfo.toXml();
             byte[] notifyContent;
             try
             {
@@ -982,16 +946,15 @@ public class OperationSetTelephonyConferencingSipImpl
                     if (logger.isInfoEnabled())
                     {
                         logger.info("Sending conference-info NOTIFY (version "
-                                + newVersion +") to " + callPeer);
+                                + confInfo.getVersion() + ") to "
+                                + callPeer);
                     }
                     dialog.sendRequest(transac);
 
-                    // We save currentConfInfo, because it is of state "full",
-                    // while diff could be a partial
-                    currentConfInfo.setVersion(newVersion);
-                    callPeer.setLastConferenceInfoSent(currentConfInfo);
+                    callPeer.setLastConferenceInfoSent(confInfo);
                     callPeer.setLastConferenceInfoSentTimestamp(
                             System.currentTimeMillis());
+                    scheduler.notificationSent();
                 }
                 catch (SipException sex)
                 {
@@ -1006,8 +969,6 @@ public class OperationSetTelephonyConferencingSipImpl
 
             if (SubscriptionState.TERMINATED.equals(subscriptionState))
                 removeSubscription(callId, subscription);
-
-            callPeer.setConfInfoScheduled(false);
         }
     }
 }
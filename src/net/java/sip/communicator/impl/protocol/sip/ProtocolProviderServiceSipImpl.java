@@ -136,6 +136,15 @@ public class ProtocolProviderServiceSipImpl
             = "net.java.sip.communicator.impl.protocol.sip."
                     + "USE_SESSION_LEVEL_DIRECTION_IN_SDP";
 
+    /**
+     * The name of the property which, if enabled (the default), causes an
+     * offer which is identical to the last offer we have answered to be
+     * answered with the same answer without processing it again.
+     */
+    public static final String REUSE_ANSWER_FOR_UNCHANGED_OFFER
+            = "net.java.sip.communicator.impl.protocol.sip."
+                    + "REUSE_ANSWER_FOR_UNCHANGED_OFFER";
+
     /**
      * Default number of times that our requests can be forwarded.
      */
@@ -151,6 +160,11 @@ public class ProtocolProviderServiceSipImpl
      */
     private UserAgentHeader userAgentHeader = null;
 
+    /**
+     * The templates of the headers we attach to all our messages.
+     */
+    private SipHeaderTemplates headerTemplates = null;
+
     /**
      * The name that we want to send others when calling or chatting with them.
      */
@@ -450,6 +464,10 @@ public class ProtocolProviderServiceSipImpl
             headerFactory = new HeaderFactoryImpl();
             addressFactory = new AddressFactoryImpl();
 
+            headerTemplates = new SipHeaderTemplates(this);
+            SipActivator.getNetworkAddressManagerService()
+                .addNetworkConfigurationChangeListener(headerTemplates);
+
             //initialize our display name
             ourDisplayName = accountID.getAccountPropertyString(
                                     ProtocolProviderFactory.DISPLAY_NAME);
@@ -1138,6 +1156,15 @@ public class ProtocolProviderServiceSipImpl
                 opSetTypingNotif = null;
             }
 
+            // only empty the templates: messages may still be created (e.g.
+            // an unREGISTER) while we are shutting down
+            if(headerTemplates != null)
+            {
+                SipActivator.getNetworkAddressManagerService()
+                    .removeNetworkConfigurationChangeListener(headerTemplates);
+                headerTemplates.invalidate();
+            }
+
             headerFactory = null;
             messageFactory = null;
             addressFactory = null;
@@ -1197,9 +1224,8 @@ public class ProtocolProviderServiceSipImpl
             InetSocketAddress targetAddress =
                         getIntendedDestination(intendedDestination);
 
-            InetAddress localAddress = SipActivator
-                .getNetworkAddressManagerService().getLocalHost(
-                    targetAddress.getAddress());
+            InetAddress localAddress
+                = headerTemplates.getLocalHost(targetAddress.getAddress());
 
             int localPort = srcListeningPoint.getPort();
             String transport = srcListeningPoint.getTransport();
@@ -1215,12 +1241,10 @@ public class ProtocolProviderServiceSipImpl
                 localPort = localSockAddr.getPort();
             }
 
-            ViaHeader viaHeader = headerFactory.createViaHeader(
-                localAddress.getHostAddress(),
-                localPort,
+            ViaHeader viaHeader = headerTemplates.getViaHeader(
                 transport,
-                null
-                );
+                localAddress,
+                localPort);
             viaHeaders.add(viaHeader);
             if (logger.isDebugEnabled())
                 logger.debug("generated via headers:" + viaHeader);
@@ -1332,17 +1356,10 @@ public class ProtocolProviderServiceSipImpl
         try
         {
             //find the address to use with the target
-            InetAddress localAddress = SipActivator
-                .getNetworkAddressManagerService()
-                .getLocalHost(targetAddress.getAddress());
-
-            SipURI contactURI = addressFactory.createSipURI(
-                getAccountID().getUserID()
-                , localAddress.getHostAddress() );
+            InetAddress localAddress
+                = headerTemplates.getLocalHost(targetAddress.getAddress());
 
             String transport = srcListeningPoint.getTransport();
-            contactURI.setTransportParam(transport);
-
             int localPort = srcListeningPoint.getPort();
 
             //if we are using tcp, make sure that we include the port of the
@@ -1359,31 +1376,8 @@ public class ProtocolProviderServiceSipImpl
                 localPort = localSockAddr.getPort();
             }
 
-            contactURI.setPort(localPort);
-
-            // set a custom param to ease incoming requests dispatching in case
-            // we have several registrar accounts with the same username
-            String paramValue = getContactAddressCustomParamValue();
-            if (paramValue != null)
-            {
-                contactURI.setParameter(
-                        SipStackSharing.CONTACT_ADDRESS_CUSTOM_PARAM_NAME,
-                        paramValue);
-            }
-
-            Address contactAddress = addressFactory.createAddress( contactURI );
-
-            String ourDisplayName = getOurDisplayName();
-            if (ourDisplayName != null)
-            {
-                contactAddress.setDisplayName(ourDisplayName);
-            }
-            registrationContactHeader = headerFactory.createContactHeader(
-                contactAddress);
-
-            if (logger.isDebugEnabled())
-                logger.debug("generated contactHeader:"
-                        + registrationContactHeader);
+            registrationContactHeader = headerTemplates.getContactHeader(
+                transport, localAddress, localPort);
         }
         catch (ParseException ex)
         {
@@ -1448,6 +1442,16 @@ public class ProtocolProviderServiceSipImpl
         return headerFactory;
     }
 
+    /**
+     * Returns the templates of the headers we attach to all our messages.
+     *
+     * @return the templates of the headers we attach to all our messages.
+     */
+    public SipHeaderTemplates getHeaderTemplates()
+    {
+        return headerTemplates;
+    }
+
     /**
      * Returns the Message Factory used to create SIP messages.
      *
@@ -1648,6 +1652,9 @@ public class ProtocolProviderServiceSipImpl
             , registrarPort
             , getRegistrarTransport()
             , this);
+
+        // the registrar determines the custom contact parameter
+        headerTemplates.invalidate();
     }
 
     /**
@@ -1665,6 +1672,9 @@ public class ProtocolProviderServiceSipImpl
         //Initialize our connection with the registrar
         this.sipRegistrarConnection
                = new SipRegistrarlessConnection(this, registrarTransport);
+
+        // the registrar determines the custom contact parameter
+        headerTemplates.invalidate();
     }
 
     /**
@@ -1987,6 +1997,10 @@ public class ProtocolProviderServiceSipImpl
 
             ourDisplayName = newDisplayName;
 
+            // the display name is part of our contact header
+            if(headerTemplates != null)
+                headerTemplates.invalidate();
+
             OperationSetServerStoredAccountInfoSipImpl accountInfoOpSet
                 = (OperationSetServerStoredAccountInfoSipImpl)getOperationSet(
                     OperationSetServerStoredAccountInfo.class);
@@ -81,12 +81,26 @@ public class ServerStoredContactListSipImpl
      */
     private final XCapClient xCapClient = new XCapClientImpl();
 
+    /**
+     * Collects the changes to the resource-lists document so that they are
+     * written in a single request or <tt>null</tt> if every change is written
+     * right away.
+     */
+    private final XCapWriteCoalescer writeCoalescer;
 
     /**
      * Current presence rules.
      */
     private RulesetType presRules;
 
+    /**
+     * Whether <tt>presRules</tt> have been changed along with resource-lists
+     * changes which have not been written yet, in which case they are written
+     * right after them so that the two documents on the server never
+     * disagree.
+     */
+    private boolean presRulesPending = false;
+
     /**
      * Creates a ServerStoredContactList wrapper for the specified BuddyList.
      *
@@ -99,6 +113,28 @@ public class ServerStoredContactListSipImpl
             OperationSetPresenceSipImpl parentOperationSet)
     {
         super(sipProvider, parentOperationSet);
+
+        long window
+            = SipActivator.getConfigurationService().getLong(
+                    XCapWriteCoalescer.WINDOW_PROPERTY_NAME, 0);
+
+        if (window > 0)
+        {
+            writeCoalescer
+                = new XCapWriteCoalescer(
+                        this,
+                        new XCapWriteCoalescer.Writer()
+                        {
+                            public void write()
+                                throws XCapException
+                            {
+                                writePendingChanges();
+                            }
+                        },
+                        window);
+        }
+        else
+            writeCoalescer = null;
     }
 
     /**
@@ -189,14 +225,27 @@ public class ServerStoredContactListSipImpl
         parentGroup.addContact(newContact);
         if (newContact.isPersistent())
         {
+            final ContactGroupSipImpl finalParentGroup = parentGroup;
+            final ContactSipImpl finalNewContact = newContact;
+
             // Update resoure-lists
             try
             {
-                updateResourceLists();
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        finalParentGroup.removeContact(finalNewContact);
+                    }
+
+                    public void fireReverted()
+                    {
+                        fireContactRemoved(finalParentGroup, finalNewContact);
+                    }
+                });
             }
             catch (XCapException e)
             {
-                parentGroup.removeContact(newContact);
                 throw new OperationFailedException(
                         "Error while creating XCAP contact",
                         OperationFailedException.NETWORK_FAILURE, e);
@@ -238,7 +287,7 @@ public class ServerStoredContactListSipImpl
      *                                  communication.
      */
     @Override
-    synchronized public void removeContact(ContactSipImpl contact)
+    synchronized public void removeContact(final ContactSipImpl contact)
             throws OperationFailedException
     {
         if (contact == null)
@@ -250,11 +299,35 @@ public class ServerStoredContactListSipImpl
         if(logger.isTraceEnabled())
             logger.trace("removeContact " + contact.getUri());
 
-        ContactGroupSipImpl parentGroup =
+        final ContactGroupSipImpl parentGroup =
                 (ContactGroupSipImpl) contact.getParentContactGroup();
         parentGroup.removeContact(contact);
         if (contact.isPersistent())
         {
+            // Update resoure-lists first so that the pres-rules are written
+            // along with them if writes are coalesced.
+            try
+            {
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        parentGroup.addContact(contact);
+                    }
+
+                    public void fireReverted()
+                    {
+                        fireContactAdded(parentGroup, contact);
+                    }
+                });
+            }
+            catch (XCapException e)
+            {
+                throw new OperationFailedException(
+                        "Error while removing XCAP contact",
+                        OperationFailedException.NETWORK_FAILURE, e);
+            }
+
             try
             {
                 // when removing contact add it to polite block list, cause
@@ -273,19 +346,6 @@ public class ServerStoredContactListSipImpl
             {
                 logger.error("Error while removing XCAP contact", e);
             }
-
-            // Update resoure-lists
-            try
-            {
-                updateResourceLists();
-            }
-            catch (XCapException e)
-            {
-                parentGroup.removeContact(contact);
-                throw new OperationFailedException(
-                        "Error while removing XCAP contact",
-                        OperationFailedException.NETWORK_FAILURE, e);
-            }
         }
         fireContactRemoved(parentGroup, contact);
     }
@@ -303,8 +363,8 @@ public class ServerStoredContactListSipImpl
      */
     @Override
     public void moveContactToGroup(
-            ContactSipImpl contact,
-            ContactGroupSipImpl newParentGroup)
+            final ContactSipImpl contact,
+            final ContactGroupSipImpl newParentGroup)
             throws OperationFailedException
     {
         if (contact == null)
@@ -323,11 +383,11 @@ public class ServerStoredContactListSipImpl
                     "Contact " + contact.getUri() + " already exists.",
                     OperationFailedException.SUBSCRIPTION_ALREADY_EXISTS);
         }
-        ContactGroupSipImpl oldParentGroup =
+        final ContactGroupSipImpl oldParentGroup =
                 (ContactGroupSipImpl) contact.getParentContactGroup();
         oldParentGroup.removeContact(contact);
 
-        boolean wasContactPersistent = contact.isPersistent();
+        final boolean wasContactPersistent = contact.isPersistent();
 
         // if contact is not persistent we make it persistent if
         // new parent is persistent
@@ -340,12 +400,24 @@ public class ServerStoredContactListSipImpl
         {
             try
             {
-                updateResourceLists();
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        newParentGroup.removeContact(contact);
+                        contact.setPersistent(wasContactPersistent);
+                        oldParentGroup.addContact(contact);
+                    }
+
+                    public void fireReverted()
+                    {
+                        fireContactMoved(
+                                newParentGroup, oldParentGroup, contact);
+                    }
+                });
             }
             catch (XCapException e)
             {
-                newParentGroup.removeContact(contact);
-                oldParentGroup.addContact(contact);
                 throw new OperationFailedException(
                         "Error while moving XCAP contact",
                         OperationFailedException.NETWORK_FAILURE, e);
@@ -389,15 +461,15 @@ public class ServerStoredContactListSipImpl
      */
     @Override
     synchronized public void renameContact(
-            ContactSipImpl contact,
-            String newName)
+            final ContactSipImpl contact,
+            final String newName)
     {
         if (contact == null)
         {
             throw new IllegalArgumentException(
                     "Renaming contact cannot be null");
         }
-        String oldName = contact.getDisplayName();
+        final String oldName = contact.getDisplayName();
         if (oldName.equals(newName))
         {
             return;
@@ -407,11 +479,26 @@ public class ServerStoredContactListSipImpl
         {
             try
             {
-                updateResourceLists();
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        contact.setDisplayName(oldName);
+                    }
+
+                    public void fireReverted()
+                    {
+                        parentOperationSet.fireContactPropertyChangeEvent(
+                                ContactPropertyChangeEvent
+                                    .PROPERTY_DISPLAY_NAME,
+                                contact,
+                                newName,
+                                oldName);
+                    }
+                });
             }
             catch (XCapException e)
             {
-                contact.setDisplayName(oldName);
                 throw new IllegalStateException(
                         "Error while renaming XCAP group", e);
             }
@@ -440,7 +527,7 @@ public class ServerStoredContactListSipImpl
      */
     @Override
     synchronized public ContactGroupSipImpl createGroup(
-            ContactGroupSipImpl parentGroup, String groupName,
+            final ContactGroupSipImpl parentGroup, String groupName,
             boolean persistent)
             throws OperationFailedException
     {
@@ -464,7 +551,7 @@ public class ServerStoredContactListSipImpl
                     String.format("Group %1s already exists.", groupName),
                     OperationFailedException.CONTACT_GROUP_ALREADY_EXISTS);
         }
-        ContactGroupSipImpl subGroup =
+        final ContactGroupSipImpl subGroup =
                 new ContactGroupSipImpl(groupName, sipProvider);
         subGroup.setPersistent(persistent);
         parentGroup.addSubgroup(subGroup);
@@ -472,11 +559,23 @@ public class ServerStoredContactListSipImpl
         {
             try
             {
-                updateResourceLists();
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        parentGroup.removeSubGroup(subGroup);
+                    }
+
+                    public void fireReverted()
+                    {
+                        fireGroupEvent(
+                                subGroup,
+                                ServerStoredGroupEvent.GROUP_REMOVED_EVENT);
+                    }
+                });
             }
             catch (XCapException e)
             {
-                parentGroup.removeSubGroup(subGroup);
                 throw new OperationFailedException(
                         "Error while creating XCAP group",
                         OperationFailedException.NETWORK_FAILURE, e);
@@ -493,7 +592,7 @@ public class ServerStoredContactListSipImpl
      * @param group the group to delete.
      */
     @Override
-    synchronized public void removeGroup(ContactGroupSipImpl group)
+    synchronized public void removeGroup(final ContactGroupSipImpl group)
     {
         if (group == null)
         {
@@ -507,14 +606,27 @@ public class ServerStoredContactListSipImpl
         {
             logger.trace("removeGroup " + group.getGroupName());
         }
-        ContactGroupSipImpl parentGroup =
+        final ContactGroupSipImpl parentGroup =
                 (ContactGroupSipImpl) group.getParentContactGroup();
         parentGroup.removeSubGroup(group);
         if (group.isPersistent())
         {
             try
             {
-                updateResourceLists();
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        parentGroup.addSubgroup(group);
+                    }
+
+                    public void fireReverted()
+                    {
+                        fireGroupEvent(
+                                group,
+                                ServerStoredGroupEvent.GROUP_CREATED_EVENT);
+                    }
+                });
 
                 Iterator<Contact>  iter = group.contacts();
                 boolean updateRules = false;
@@ -531,7 +643,6 @@ public class ServerStoredContactListSipImpl
             }
             catch (XCapException e)
             {
-                parentGroup.addSubgroup(group);
                 throw new IllegalStateException(
                         "Error while removing XCAP group", e);
             }
@@ -547,7 +658,7 @@ public class ServerStoredContactListSipImpl
      */
     @Override
     synchronized public void renameGroup(
-            ContactGroupSipImpl group,
+            final ContactGroupSipImpl group,
             String newName)
     {
         if (group == null)
@@ -558,7 +669,7 @@ public class ServerStoredContactListSipImpl
         {
             throw new IllegalArgumentException("Root group cannot be renamed");
         }
-        String oldName = group.getGroupName();
+        final String oldName = group.getGroupName();
         if (oldName.equals(newName))
         {
             return;
@@ -576,11 +687,23 @@ public class ServerStoredContactListSipImpl
         {
             try
             {
-                updateResourceLists();
+                updateResourceLists(new XCapWriteCoalescer.Change()
+                {
+                    public void revert()
+                    {
+                        group.setName(oldName);
+                    }
+
+                    public void fireReverted()
+                    {
+                        fireGroupEvent(
+                                group,
+                                ServerStoredGroupEvent.GROUP_RENAMED_EVENT);
+                    }
+                });
             }
             catch (XCapException e)
             {
-                group.setName(oldName);
                 throw new IllegalStateException(
                         "Error while renaming XCAP group", e);
             }
@@ -813,6 +936,8 @@ public class ServerStoredContactListSipImpl
     @Override
     synchronized public void destroy()
     {
+        if (writeCoalescer != null)
+            writeCoalescer.shutdown();
         xCapClient.disconnect();
 
         List<ContactSipImpl> contacts = getAllContacts(rootGroup);
@@ -1378,12 +1503,100 @@ public class ServerStoredContactListSipImpl
     }
 
     /**
-     * Puts pres-rules to the server.
+     * Puts resource-lists containing <tt>change</tt> to the server. If writes
+     * are coalesced, the change is only queued and reverted later on if
+     * writing it fails. Otherwise, the change is reverted before the
+     * exception is thrown.
+     *
+     * @param change the change that has been applied to the contact list.
+     * @throws XCapException if there is some error during operation.
+     */
+    private void updateResourceLists(XCapWriteCoalescer.Change change)
+            throws XCapException
+    {
+        if (writeCoalescer != null)
+        {
+            writeCoalescer.submit(change);
+            return;
+        }
+
+        try
+        {
+            updateResourceLists();
+        }
+        catch (XCapException e)
+        {
+            change.revert();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the resource-lists changes collected by <tt>writeCoalescer</tt>
+     * and the pres-rules changed along with them. If the resource-lists
+     * cannot be written, the pres-rules are not written either and are
+     * reloaded from the server the next time they are needed, since the
+     * changes they carry are about to be reverted.
+     *
+     * @throws XCapException if the resource-lists cannot be written.
+     */
+    private synchronized void writePendingChanges()
+            throws XCapException
+    {
+        boolean writePresRules = presRulesPending;
+
+        presRulesPending = false;
+        try
+        {
+            updateResourceLists();
+        }
+        catch (XCapException e)
+        {
+            if (writePresRules)
+                presRules = null;
+            throw e;
+        }
+
+        if (writePresRules)
+        {
+            try
+            {
+                putPresRules();
+            }
+            catch (XCapException e)
+            {
+                logger.error("Cannot save presence rules!", e);
+                presRules = null;
+            }
+        }
+    }
+
+    /**
+     * Puts pres-rules to the server. If resource-lists changes are waiting to
+     * be written by <tt>writeCoalescer</tt>, the pres-rules are only written
+     * after them.
      *
      * @throws XCapException if there is some error during operation.
      */
     synchronized void updatePresRules()
             throws XCapException
+    {
+        if ((writeCoalescer != null)
+                && (writeCoalescer.getPendingChangeCount() != 0))
+        {
+            presRulesPending = true;
+            return;
+        }
+        putPresRules();
+    }
+
+    /**
+     * Puts pres-rules to the server right away.
+     *
+     * @throws XCapException if there is some error during operation.
+     */
+    private synchronized void putPresRules()
+            throws XCapException
     {
         if (!xCapClient.isConnected() || !xCapClient.isPresRulesSupported())
         {
@@ -0,0 +1,253 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Hands the processing of JAIN-SIP events over to a shared thread pool so that
+ * a slow <tt>MethodProcessor</tt> does not block the JAIN-SIP event thread.
+ * Events are grouped by a key (the Call-ID of the message they carry) and all
+ * events with the same key are executed serially and in the order they have
+ * been dispatched in, while events with different keys may run in parallel.
+ */
+public class SipEventDispatcher
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>SipEventDispatcher</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(SipEventDispatcher.class);
+
+    /**
+     * The name of the property which enables the dispatching of the events
+     * received from JAIN-SIP to a thread pool instead of processing them on
+     * the JAIN-SIP event thread.
+     */
+    public static final String ASYNC_DISPATCH_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.sip.ASYNC_EVENT_DISPATCH";
+
+    /**
+     * The name of the property which specifies the maximum number of threads
+     * that process dispatched events in parallel.
+     */
+    public static final String POOL_SIZE_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.sip.EVENT_DISPATCH_POOL_SIZE";
+
+    /**
+     * The default maximum number of threads that process dispatched events in
+     * parallel.
+     */
+    public static final int DEFAULT_POOL_SIZE = 8;
+
+    /**
+     * The number of seconds an idle pool thread is kept alive.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The pool executing the <tt>SerialQueue</tt>s.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The <tt>SerialQueue</tt>s which currently have pending events mapped by
+     * their key. A queue is removed as soon as it has been drained so that
+     * terminated dialogs do not leak entries.
+     */
+    private final Map<String, SerialQueue> queues
+        = new HashMap<String, SerialQueue>();
+
+    /**
+     * Initializes a new <tt>SipEventDispatcher</tt> which executes events on
+     * at most <tt>poolSize</tt> threads.
+     *
+     * @param poolSize the maximum number of threads to execute events on.
+     */
+    public SipEventDispatcher(int poolSize)
+    {
+        if (poolSize < 1)
+            poolSize = DEFAULT_POOL_SIZE;
+
+        executor
+            = new ThreadPoolExecutor(
+                    poolSize, poolSize,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("SipEventDispatcher"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Schedules <tt>task</tt> for execution after all tasks previously
+     * dispatched with the same <tt>key</tt> have completed.
+     *
+     * @param key the key which determines the ordering of <tt>task</tt>
+     * (typically the Call-ID of the message it processes). Tasks dispatched
+     * with a <tt>null</tt> key are serialized together.
+     * @param task the task to execute.
+     */
+    public void dispatch(String key, Runnable task)
+    {
+        if (key == null)
+            key = "";
+
+        SerialQueue queue;
+        boolean schedule;
+
+        synchronized (queues)
+        {
+            queue = queues.get(key);
+            if (queue == null)
+            {
+                queue = new SerialQueue(key);
+                queues.put(key, queue);
+            }
+            queue.tasks.add(task);
+
+            schedule = !queue.scheduled;
+            if (schedule)
+                queue.scheduled = true;
+        }
+
+        if (schedule)
+            execute(queue);
+    }
+
+    /**
+     * Returns the number of keys which currently have pending or executing
+     * tasks.
+     *
+     * @return the number of keys which currently have pending or executing
+     * tasks.
+     */
+    public int getActiveKeyCount()
+    {
+        synchronized (queues)
+        {
+            return queues.size();
+        }
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks which have already been dispatched are
+     * still executed.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * Hands <tt>queue</tt> to the pool, dropping its tasks if the pool has
+     * already been shut down.
+     *
+     * @param queue the <tt>SerialQueue</tt> to execute.
+     */
+    private void execute(SerialQueue queue)
+    {
+        try
+        {
+            executor.execute(queue);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            int dropped;
+
+            synchronized (queues)
+            {
+                dropped = queue.tasks.size();
+                queue.tasks.clear();
+                queue.scheduled = false;
+                queues.remove(queue.key);
+            }
+            logger.warn("Dropped " + dropped + " SIP event(s) for "
+                    + queue.key + " because the dispatcher is shut down.");
+        }
+    }
+
+    /**
+     * The tasks dispatched with a specific key. Executes one task at a time and
+     * then gives way to the other keys by rescheduling itself in the pool.
+     */
+    private class SerialQueue
+        implements Runnable
+    {
+        /**
+         * The key the tasks of this queue have been dispatched with.
+         */
+        final String key;
+
+        /**
+         * The tasks waiting to be executed in dispatch order.
+         */
+        final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+        /**
+         * Whether this queue is currently waiting in or running on the pool.
+         */
+        boolean scheduled = false;
+
+        /**
+         * Initializes a new <tt>SerialQueue</tt> for <tt>key</tt>.
+         *
+         * @param key the key the tasks of this queue are dispatched with.
+         */
+        SerialQueue(String key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * Executes the oldest task of this queue and reschedules the queue if
+         * there are more tasks pending.
+         */
+        public void run()
+        {
+            Runnable task;
+
+            synchronized (queues)
+            {
+                task = tasks.poll();
+            }
+
+            if (task != null)
+            {
+                try
+                {
+                    task.run();
+                }
+                catch (Throwable t)
+                {
+                    logger.error("Error while processing SIP event for "
+                            + key, t);
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                }
+            }
+
+            boolean reschedule;
+
+            synchronized (queues)
+            {
+                reschedule = !tasks.isEmpty();
+                if (!reschedule)
+                {
+                    scheduled = false;
+                    queues.remove(key);
+                }
+            }
+
+            if (reschedule)
+                execute(this);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.net.*;
+import java.text.*;
+import java.util.*;
+
+import javax.sip.*;
+import javax.sip.address.*;
+import javax.sip.header.*;
+
+import net.java.sip.communicator.service.netaddr.event.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Keeps per-account templates of the headers that
+ * <tt>SipMessageFactory</tt> attaches to every message we create (the
+ * <tt>Contact</tt> and <tt>Via</tt> headers and the custom headers configured
+ * with <tt>ConfigHeaders</tt>) together with the local addresses they have
+ * been computed from. Templates are never handed out directly: callers always
+ * get a clone they are free to modify.
+ * <p>
+ * All templates are dropped whenever the network configuration changes and
+ * when one of the account details they depend on (display name, registrar)
+ * changes, so that they are recomputed the next time they are needed.
+ */
+public class SipHeaderTemplates
+    implements NetworkConfigurationChangeListener
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(SipHeaderTemplates.class);
+
+    /**
+     * The provider whose headers we keep.
+     */
+    private final ProtocolProviderServiceSipImpl protocolProvider;
+
+    /**
+     * The maximum number of destinations whose local address is remembered.
+     */
+    private static final int MAX_LOCAL_HOSTS = 32;
+
+    /**
+     * The local addresses we have found to be usable with a specific
+     * destination address. The destinations which have not been used for the
+     * longest time are forgotten once there are more than
+     * {@link #MAX_LOCAL_HOSTS} of them.
+     */
+    private final Map<InetAddress, InetAddress> localHosts
+        = new LinkedHashMap<InetAddress, InetAddress>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<InetAddress, InetAddress> eldest)
+            {
+                return size() > MAX_LOCAL_HOSTS;
+            }
+        };
+
+    /**
+     * The <tt>Contact</tt> header templates mapped by local
+     * transport/address/port.
+     */
+    private final Map<String, ContactHeader> contactTemplates
+        = new HashMap<String, ContactHeader>();
+
+    /**
+     * The <tt>Via</tt> header templates mapped by local
+     * transport/address/port.
+     */
+    private final Map<String, ViaHeader> viaTemplates
+        = new HashMap<String, ViaHeader>();
+
+    /**
+     * The custom headers configured for the account or <tt>null</tt> if they
+     * have not been parsed yet.
+     */
+    private List<ConfigHeaders> configHeaders = null;
+
+    /**
+     * Creates the header templates of <tt>protocolProvider</tt>.
+     *
+     * @param protocolProvider the provider whose headers we will keep.
+     */
+    SipHeaderTemplates(ProtocolProviderServiceSipImpl protocolProvider)
+    {
+        this.protocolProvider = protocolProvider;
+    }
+
+    /**
+     * Returns the local address to use when communicating with
+     * <tt>destination</tt>, querying the <tt>NetworkAddressManagerService</tt>
+     * only the first time a destination is seen.
+     *
+     * @param destination the address we are going to communicate with.
+     * @return the local address to use when communicating with
+     * <tt>destination</tt>.
+     */
+    public InetAddress getLocalHost(InetAddress destination)
+    {
+        InetAddress localHost;
+
+        synchronized (localHosts)
+        {
+            localHost = localHosts.get(destination);
+        }
+        if (localHost == null)
+        {
+            // the lookup may take a while so do not keep the other callers
+            // waiting for it.
+            localHost
+                = SipActivator.getNetworkAddressManagerService().getLocalHost(
+                        destination);
+            synchronized (localHosts)
+            {
+                localHosts.put(destination, localHost);
+            }
+        }
+        return localHost;
+    }
+
+    /**
+     * Returns a new <tt>ContactHeader</tt> for the specified local transport
+     * address created from a cached template.
+     *
+     * @param transport the transport of the listening point we use.
+     * @param localAddress the local address that we use.
+     * @param localPort the local port that we use.
+     * @return a new <tt>ContactHeader</tt> that can be attached to a message.
+     * @throws ParseException if creating the template fails.
+     */
+    public ContactHeader getContactHeader(
+            String transport,
+            InetAddress localAddress,
+            int localPort)
+        throws ParseException
+    {
+        String key = createKey(transport, localAddress, localPort);
+        ContactHeader template;
+
+        synchronized (contactTemplates)
+        {
+            template = contactTemplates.get(key);
+            if (template == null)
+            {
+                template
+                    = createContactHeader(transport, localAddress, localPort);
+                contactTemplates.put(key, template);
+
+                if (logger.isDebugEnabled())
+                    logger.debug("generated contactHeader:" + template);
+            }
+        }
+        return (ContactHeader) template.clone();
+    }
+
+    /**
+     * Returns a new <tt>ViaHeader</tt> for the specified local transport
+     * address created from a cached template.
+     *
+     * @param transport the transport of the listening point we use.
+     * @param localAddress the local address that we use.
+     * @param localPort the local port that we use.
+     * @return a new <tt>ViaHeader</tt> that can be attached to a request.
+     * @throws ParseException if creating the template fails.
+     * @throws InvalidArgumentException if <tt>localPort</tt> is invalid.
+     */
+    public ViaHeader getViaHeader(
+            String transport,
+            InetAddress localAddress,
+            int localPort)
+        throws ParseException,
+               InvalidArgumentException
+    {
+        String key = createKey(transport, localAddress, localPort);
+        ViaHeader template;
+
+        synchronized (viaTemplates)
+        {
+            template = viaTemplates.get(key);
+            if (template == null)
+            {
+                template
+                    = protocolProvider.getHeaderFactory().createViaHeader(
+                            localAddress.getHostAddress(),
+                            localPort,
+                            transport,
+                            null);
+                viaTemplates.put(key, template);
+            }
+        }
+        return (ViaHeader) template.clone();
+    }
+
+    /**
+     * Returns the custom headers configured for the account, parsing the
+     * account properties only the first time.
+     *
+     * @return the custom headers configured for the account.
+     */
+    public synchronized List<ConfigHeaders> getConfigHeaders()
+    {
+        if (configHeaders == null)
+        {
+            configHeaders
+                = ConfigHeaders.parseConfigHeaders(
+                        protocolProvider.getAccountID().getAccountProperties(),
+                        protocolProvider.getHeaderFactory());
+        }
+        return configHeaders;
+    }
+
+    /**
+     * Drops all templates so that they get recomputed the next time they are
+     * needed.
+     */
+    public void invalidate()
+    {
+        synchronized (localHosts)
+        {
+            localHosts.clear();
+        }
+        synchronized (contactTemplates)
+        {
+            contactTemplates.clear();
+        }
+        synchronized (viaTemplates)
+        {
+            viaTemplates.clear();
+        }
+        synchronized (this)
+        {
+            configHeaders = null;
+        }
+    }
+
+    /**
+     * Drops all templates as local addresses may no longer be valid.
+     *
+     * @param event the <tt>ChangeEvent</tt> describing the change.
+     */
+    public void configurationChanged(ChangeEvent event)
+    {
+        invalidate();
+    }
+
+    /**
+     * Creates a <tt>ContactHeader</tt> containing a SIP URI for the specified
+     * local transport address.
+     *
+     * @param transport the transport of the listening point we use.
+     * @param localAddress the local address that we use.
+     * @param localPort the local port that we use.
+     * @return the new <tt>ContactHeader</tt>.
+     * @throws ParseException if one of the values is not valid.
+     */
+    private ContactHeader createContactHeader(
+            String transport,
+            InetAddress localAddress,
+            int localPort)
+        throws ParseException
+    {
+        AddressFactory addressFactory = protocolProvider.getAddressFactory();
+
+        SipURI contactURI
+            = addressFactory.createSipURI(
+                    protocolProvider.getAccountID().getUserID(),
+                    localAddress.getHostAddress());
+
+        contactURI.setTransportParam(transport);
+        contactURI.setPort(localPort);
+
+        // set a custom param to ease incoming requests dispatching in case
+        // we have several registrar accounts with the same username
+        String paramValue
+            = protocolProvider.getContactAddressCustomParamValue();
+        if (paramValue != null)
+        {
+            contactURI.setParameter(
+                    SipStackSharing.CONTACT_ADDRESS_CUSTOM_PARAM_NAME,
+                    paramValue);
+        }
+
+        Address contactAddress = addressFactory.createAddress(contactURI);
+
+        String ourDisplayName = protocolProvider.getOurDisplayName();
+        if (ourDisplayName != null)
+            contactAddress.setDisplayName(ourDisplayName);
+
+        return
+            protocolProvider.getHeaderFactory().createContactHeader(
+                    contactAddress);
+    }
+
+    /**
+     * Creates the key of the templates for a local transport address.
+     *
+     * @param transport the transport of the listening point.
+     * @param localAddress the local address.
+     * @param localPort the local port.
+     * @return the key of the templates for the transport address.
+     */
+    private static String createKey(
+            String transport,
+            InetAddress localAddress,
+            int localPort)
+    {
+        return transport + '/' + localAddress.getHostAddress() + ':'
+            + localPort;
+    }
+}
@@ -24,6 +24,7 @@ import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 
 /**
@@ -82,6 +83,13 @@ public class SipStackSharing
     private final Set<ProtocolProviderServiceSipImpl> listeners
         = new HashSet<ProtocolProviderServiceSipImpl>();
 
+    /**
+     * The dispatcher which executes the processing of the events received from
+     * JAIN-SIP off the JAIN-SIP event thread or <tt>null</tt> if events are
+     * processed directly on the JAIN-SIP event thread.
+     */
+    private volatile SipEventDispatcher eventDispatcher = null;
+
     /**
      * The property indicating the preferred UDP and TCP
      * port to bind to for clear communications.
@@ -244,6 +252,18 @@ public class SipStackSharing
                             bindRetriesValue, false);
             this.createProvider(this.getPreferredSecurePort(),
                             bindRetriesValue, true);
+
+            ConfigurationService cfg = SipActivator.getConfigurationService();
+            if (cfg.getBoolean(
+                    SipEventDispatcher.ASYNC_DISPATCH_PROPERTY_NAME, false))
+            {
+                this.eventDispatcher
+                    = new SipEventDispatcher(
+                            cfg.getInt(
+                                SipEventDispatcher.POOL_SIZE_PROPERTY_NAME,
+                                SipEventDispatcher.DEFAULT_POOL_SIZE));
+            }
+
             this.stack.start();
             if (logger.isTraceEnabled())
                 logger.trace("started listening");
@@ -445,6 +465,13 @@ public class SipStackSharing
             }
 
             this.stack.stop();
+
+            if (this.eventDispatcher != null)
+            {
+                this.eventDispatcher.shutdown();
+                this.eventDispatcher = null;
+            }
+
             if (logger.isTraceEnabled())
                 logger.trace("stopped listening");
         }
@@ -547,11 +574,11 @@ public class SipStackSharing
      * @param event the event received for a
      * <tt>SipProvider</tt>.
      */
-    public void processDialogTerminated(DialogTerminatedEvent event)
+    public void processDialogTerminated(final DialogTerminatedEvent event)
     {
         try
         {
-            ProtocolProviderServiceSipImpl recipient
+            final ProtocolProviderServiceSipImpl recipient
                 = (ProtocolProviderServiceSipImpl) SipApplicationData
                     .getApplicationData(event.getDialog(),
                                         SipApplicationData.KEY_SERVICE);
@@ -564,7 +591,15 @@ public class SipStackSharing
             {
                 if (logger.isTraceEnabled())
                     logger.trace("service was found with dialog data");
-                recipient.processDialogTerminated(event);
+                deliver(
+                    event.getDialog().getCallId().getCallId(),
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            recipient.processDialogTerminated(event);
+                        }
+                    });
             }
         }
         catch(Throwable exc)
@@ -659,7 +694,7 @@ public class SipStackSharing
                 = getServiceData(event.getServerTransaction());
             if (service != null)
             {
-                service.processRequest(event);
+                deliverRequest(service, event);
             }
             else
             {
@@ -689,7 +724,7 @@ public class SipStackSharing
                         SipApplicationData.KEY_SERVICE,
                         service);
 
-                    service.processRequest(event);
+                    deliverRequest(service, event);
                 }
             }
         }
@@ -715,7 +750,7 @@ public class SipStackSharing
      *
      * @param event the event received for a <tt>SipProvider</tt>.
      */
-    public void processResponse(ResponseEvent event)
+    public void processResponse(final ResponseEvent event)
     {
         try
         {
@@ -734,7 +769,7 @@ public class SipStackSharing
                 return;
             }
 
-            ProtocolProviderServiceSipImpl service
+            final ProtocolProviderServiceSipImpl service
                 = getServiceData(transaction);
             if (service != null)
             {
@@ -748,7 +783,15 @@ public class SipStackSharing
                     SipApplicationData.setApplicationData(event.getDialog(),
                                     SipApplicationData.KEY_SERVICE, service);
                 }
-                service.processResponse(event);
+                deliver(
+                    getCallId(event.getResponse()),
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            service.processResponse(event);
+                        }
+                    });
             }
             else
             {
@@ -772,7 +815,7 @@ public class SipStackSharing
      *
      * @param event the event received for a <tt>SipProvider</tt>.
      */
-    public void processTimeout(TimeoutEvent event)
+    public void processTimeout(final TimeoutEvent event)
     {
         try
         {
@@ -786,7 +829,7 @@ public class SipStackSharing
                 transaction = event.getClientTransaction();
             }
 
-            ProtocolProviderServiceSipImpl recipient
+            final ProtocolProviderServiceSipImpl recipient
                 = getServiceData(transaction);
             if (recipient == null)
             {
@@ -796,7 +839,15 @@ public class SipStackSharing
             }
             else
             {
-                recipient.processTimeout(event);
+                deliver(
+                    getCallId(transaction.getRequest()),
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            recipient.processTimeout(event);
+                        }
+                    });
             }
         }
         catch(Throwable exc)
@@ -815,7 +866,8 @@ public class SipStackSharing
      * @param event the event received for a
      * <tt>SipProvider</tt>.
      */
-    public void processTransactionTerminated(TransactionTerminatedEvent event)
+    public void processTransactionTerminated(
+            final TransactionTerminatedEvent event)
     {
         try
         {
@@ -825,7 +877,7 @@ public class SipStackSharing
             else
                 transaction = event.getClientTransaction();
 
-            ProtocolProviderServiceSipImpl recipient
+            final ProtocolProviderServiceSipImpl recipient
                 = getServiceData(transaction);
 
             if (recipient == null)
@@ -836,7 +888,15 @@ public class SipStackSharing
             }
             else
             {
-                recipient.processTransactionTerminated(event);
+                deliver(
+                    getCallId(transaction.getRequest()),
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            recipient.processTransactionTerminated(event);
+                        }
+                    });
             }
         }
         catch(Throwable exc)
@@ -848,6 +908,93 @@ public class SipStackSharing
         }
     }
 
+    /**
+     * Hands <tt>event</tt> over to <tt>service</tt> either directly or through
+     * the <tt>SipEventDispatcher</tt> if dispatching off the JAIN-SIP event
+     * thread is enabled.
+     *
+     * @param service the <tt>ProtocolProviderServiceSipImpl</tt> which is to
+     * process <tt>event</tt>
+     * @param event the <tt>RequestEvent</tt> to be processed
+     */
+    private void deliverRequest(
+            final ProtocolProviderServiceSipImpl service,
+            final RequestEvent event)
+    {
+        deliver(
+            getCallId(event.getRequest()),
+            new Runnable()
+            {
+                public void run()
+                {
+                    service.processRequest(event);
+                }
+            });
+    }
+
+    /**
+     * Executes <tt>task</tt> on the current (JAIN-SIP event) thread or, if
+     * dispatching is enabled, after all tasks previously delivered for the same
+     * Call-ID have been executed by the <tt>SipEventDispatcher</tt>.
+     *
+     * Exceptions thrown by <tt>task</tt> on the dispatcher are logged the same
+     * way as the ones thrown on the JAIN-SIP event thread.
+     *
+     * @param callId the Call-ID of the message <tt>task</tt> processes
+     * @param task the processing of a JAIN-SIP event
+     */
+    private void deliver(String callId, final Runnable task)
+    {
+        SipEventDispatcher dispatcher = this.eventDispatcher;
+
+        if (dispatcher == null)
+        {
+            task.run();
+        }
+        else
+        {
+            dispatcher.dispatch(
+                callId,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            task.run();
+                        }
+                        catch(Throwable exc)
+                        {
+                            //any exception thrown within our code should be
+                            //caught here so that it gets logged the same way
+                            //as on the JAIN-SIP event thread.
+                            logApplicationException(
+                                    DialogTerminatedEvent.class,
+                                    exc);
+                        }
+                    }
+                });
+        }
+    }
+
+    /**
+     * Returns the value of the Call-ID header of <tt>message</tt>.
+     *
+     * @param message the <tt>Message</tt> to get the Call-ID of
+     * @return the Call-ID of <tt>message</tt> or <tt>null</tt> if
+     * <tt>message</tt> is <tt>null</tt> or has no Call-ID header
+     */
+    private static String getCallId(javax.sip.message.Message message)
+    {
+        if (message == null)
+            return null;
+
+        CallIdHeader callIdHeader
+            = (CallIdHeader) message.getHeader(CallIdHeader.NAME);
+
+        return (callIdHeader == null) ? null : callIdHeader.getCallId();
+    }
+
     /**
      * Find the <tt>ProtocolProviderServiceSipImpl</tt> (one of our
      * "candidate recipient" listeners) which this <tt>request</tt> should be
@@ -0,0 +1,228 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.impl.protocol.sip.xcap.*;
+import net.java.sip.communicator.service.protocol.media.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Coalesces the changes made to a server stored contact list within a short
+ * window into a single write of the XCAP document. Changes are applied
+ * locally right away and the document is written once the window has
+ * elapsed, so that bulk imports and group moves cost a single round-trip.
+ * <p>
+ * Writes are scheduled on the scheduler of <tt>MediaTaskExecutor</tt> shared
+ * by all accounts and executed on its executor while holding the lock of the
+ * contact list, so that the document always reflects the changes in the order
+ * they have been made.
+ * If a write fails (e.g. the server answers with 409 Conflict or 412
+ * Precondition Failed) all the changes it carried are reverted in reverse
+ * order and the corresponding events are fired.
+ */
+public class XCapWriteCoalescer
+{
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger
+        = Logger.getLogger(XCapWriteCoalescer.class);
+
+    /**
+     * The name of the property which specifies the number of milliseconds
+     * changes to the server stored contact list are collected before they are
+     * written to the server. Changes are written right away if it is not set
+     * or not positive.
+     */
+    public static final String WINDOW_PROPERTY_NAME
+        = "net.java.sip.communicator.impl.protocol.sip."
+            + "XCAP_WRITE_COALESCING_WINDOW";
+
+    /**
+     * Writes the current state of the contact list to the server.
+     */
+    public interface Writer
+    {
+        /**
+         * Writes the current state of the contact list to the server.
+         *
+         * @throws XCapException if the server has rejected the document or
+         * cannot be reached.
+         */
+        public void write()
+            throws XCapException;
+    }
+
+    /**
+     * A change applied to the contact list which has not been written to the
+     * server yet.
+     */
+    public interface Change
+    {
+        /**
+         * Reverts the change in the local contact list.
+         */
+        public void revert();
+
+        /**
+         * Fires the events announcing that the change has been reverted.
+         */
+        public void fireReverted();
+    }
+
+    /**
+     * The lock of the contact list, held while changes are written.
+     */
+    private final Object lock;
+
+    /**
+     * Writes the contact list to the server.
+     */
+    private final Writer writer;
+
+    /**
+     * The number of milliseconds changes are collected before being written.
+     */
+    private final long window;
+
+    /**
+     * The changes which have not been written yet in the order they have been
+     * made.
+     */
+    private final List<Change> pendingChanges = new ArrayList<Change>();
+
+    /**
+     * Whether a write of the pending changes has been scheduled.
+     */
+    private boolean writeScheduled = false;
+
+    /**
+     * Initializes a new <tt>XCapWriteCoalescer</tt>.
+     *
+     * @param lock the lock of the contact list.
+     * @param writer writes the contact list to the server.
+     * @param window the number of milliseconds changes are collected before
+     * being written.
+     */
+    public XCapWriteCoalescer(Object lock, Writer writer, long window)
+    {
+        this.lock = lock;
+        this.writer = writer;
+        this.window = window;
+    }
+
+    /**
+     * Adds a change which has been applied to the local contact list and
+     * schedules a write unless one is already pending.
+     *
+     * @param change the change to write.
+     */
+    public void submit(Change change)
+    {
+        synchronized (lock)
+        {
+            pendingChanges.add(change);
+
+            if (!writeScheduled)
+            {
+                final Runnable write
+                    = new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                flush();
+                            }
+                            catch (RuntimeException ex)
+                            {
+                                logger.error(
+                                        "Failed to write contact list",
+                                        ex);
+                            }
+                        }
+                    };
+
+                // The write blocks on the network so the scheduler only hands
+                // it over to the executor.
+                MediaTaskExecutor.getScheduler().schedule(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                MediaTaskExecutor.getExecutor().execute(write);
+                            }
+                        },
+                        window,
+                        TimeUnit.MILLISECONDS);
+                writeScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the pending changes right away. The changes are reverted if the
+     * write fails.
+     *
+     * @return <tt>true</tt> if there was nothing to write or the write has
+     * succeeded; otherwise, <tt>false</tt>.
+     */
+    public boolean flush()
+    {
+        synchronized (lock)
+        {
+            writeScheduled = false;
+            if (pendingChanges.isEmpty())
+                return true;
+
+            List<Change> changes = new ArrayList<Change>(pendingChanges);
+            pendingChanges.clear();
+
+            try
+            {
+                writer.write();
+                return true;
+            }
+            catch (XCapException ex)
+            {
+                logger.error("Failed to write " + changes.size()
+                        + " contact list change(s), reverting them", ex);
+
+                for (int i = changes.size() - 1; i >= 0; i--)
+                    changes.get(i).revert();
+                for (int i = changes.size() - 1; i >= 0; i--)
+                    changes.get(i).fireReverted();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of changes which have not been written yet.
+     *
+     * @return the number of changes which have not been written yet.
+     */
+    public int getPendingChangeCount()
+    {
+        synchronized (lock)
+        {
+            return pendingChanges.size();
+        }
+    }
+
+    /**
+     * Writes the pending changes. The write scheduled for them, if any, finds
+     * nothing left to write.
+     */
+    public void shutdown()
+    {
+        flush();
+    }
+}
@@ -20,6 +20,7 @@ import net.java.sip.communicator.impl.protocol.sip.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.OperationFailedException;
 import net.java.sip.communicator.service.protocol.event.*;
+import net.java.sip.communicator.service.protocol.media.*;
 import net.java.sip.communicator.util.*;
 
 import org.jitsi.service.protocol.*;
@@ -58,6 +59,16 @@ public class DTMFInfo
     private Hashtable<CallPeer, Object[]>
         currentlyTransmittingTones = new Hashtable<CallPeer, Object[]>();
 
+    /**
+     * The INFO requests of each call peer, oldest first. The first of them has
+     * been sent and waits for its final response, the others wait for their
+     * turn: a request sent before the final response to the previous one may
+     * overtake it and then be rejected for its lower CSeq (RFC 3261, section
+     * 12.2.2).
+     */
+    private final Map<CallPeerSipImpl, LinkedList<PendingInfo>> pendingInfos
+        = new HashMap<CallPeerSipImpl, LinkedList<PendingInfo>>();
+
     /**
      * Involved protocol provider service.
      */
@@ -120,7 +131,8 @@ public class DTMFInfo
                 long startTime = (Long)toneInfo[1];
                 sayInfo(callPeer,
                     (DTMFTone) toneInfo[0],
-                     System.currentTimeMillis() - startTime);
+                     System.currentTimeMillis() - startTime,
+                     null);
             } catch (OperationFailedException ex)
             {
                 logger.error("Error stoping dtmf ");
@@ -129,18 +141,190 @@ public class DTMFInfo
     }
 
     /**
-     * This is just a copy of the bye method from the OpSetBasicTelephony,
-     * which was enhanced with a body in order to send the DTMF tone
+     * Sends a whole tone of a known duration at once, as soon as the INFO
+     * requests sent to <tt>callPeer</tt> before have received their final
+     * responses.
+     *
+     * @param callPeer destination of the DTMF tone
+     * @param tone DTMF tone to send
+     * @param duration the duration of the tone in milliseconds
+     * @param queue the <tt>DTMFQueue</tt> to tell when the INFO request has
+     * received a successful final response or has failed
+     * @throws OperationFailedException if sending the INFO request fails right
+     * away, in which case <tt>queue</tt> is not told
+     */
+    public void sendDTMF(
+            CallPeerSipImpl callPeer,
+            DTMFTone tone,
+            long duration,
+            DTMFQueue queue)
+        throws OperationFailedException
+    {
+        sayInfo(callPeer, tone, duration, queue);
+    }
+
+    /**
+     * Sends the INFO request of a DTMF tone if no INFO request sent to
+     * <tt>callPeer</tt> is waiting for its final response or queues it
+     * otherwise.
      *
      * @param callPeer destination of the DTMF tone
      * @param dtmftone DTMF tone to send
      * @param duration the duration of the tone
-     * @throws OperationFailedException
+     * @param queue the <tt>DTMFQueue</tt> to tell about the outcome of the
+     * request or <tt>null</tt>
+     * @throws OperationFailedException if sending the INFO request fails right
+     * away
      */
     private void sayInfo(CallPeerSipImpl callPeer,
-                         DTMFTone dtmftone, long duration)
+                         DTMFTone dtmftone, long duration,
+                         DTMFQueue queue)
         throws OperationFailedException
     {
+        PendingInfo info = new PendingInfo(callPeer, dtmftone, duration, queue);
+
+        synchronized (pendingInfos)
+        {
+            LinkedList<PendingInfo> infos = pendingInfos.get(callPeer);
+
+            if (infos == null)
+            {
+                infos = new LinkedList<PendingInfo>();
+                pendingInfos.put(callPeer, infos);
+            }
+            infos.add(info);
+            // sent by sendNextInfo once the previous ones have completed
+            if (infos.size() > 1)
+                return;
+        }
+
+        boolean sent;
+
+        try
+        {
+            sent = sendInfo(info);
+        }
+        catch (OperationFailedException ofe)
+        {
+            sendNextInfo(info);
+            throw ofe;
+        }
+        if (!sent)
+        {
+            info.succeeded();
+            sendNextInfo(info);
+        }
+    }
+
+    /**
+     * Forgets an INFO request which has received its final response or has
+     * failed and sends the next INFO request waiting for it, if any.
+     *
+     * @param completed the INFO request which has completed
+     */
+    private void sendNextInfo(PendingInfo completed)
+    {
+        CallPeerSipImpl callPeer = completed.callPeer;
+
+        while (completed != null)
+        {
+            PendingInfo next;
+
+            synchronized (pendingInfos)
+            {
+                LinkedList<PendingInfo> infos = pendingInfos.get(callPeer);
+
+                if ((infos == null) || (infos.peek() != completed))
+                    return;
+                infos.removeFirst();
+                next = infos.peek();
+                if (next == null)
+                {
+                    pendingInfos.remove(callPeer);
+                    return;
+                }
+            }
+
+            try
+            {
+                if (sendInfo(next))
+                    completed = null;
+                else
+                {
+                    next.succeeded();
+                    completed = next;
+                }
+            }
+            catch (OperationFailedException ofe)
+            {
+                logger.error("Failed to send DTMF tone to " + callPeer, ofe);
+                next.failed(ofe);
+                completed = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the INFO request which has been sent in a specific client
+     * transaction and is waiting for its final response.
+     *
+     * @param clientTransaction the client transaction
+     * @return the INFO request sent in <tt>clientTransaction</tt> or
+     * <tt>null</tt>
+     */
+    private PendingInfo findSentInfo(ClientTransaction clientTransaction)
+    {
+        synchronized (pendingInfos)
+        {
+            for (LinkedList<PendingInfo> infos : pendingInfos.values())
+            {
+                PendingInfo info = infos.peek();
+
+                if ((info != null)
+                        && (info.clientTransaction == clientTransaction))
+                    return info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fails the INFO request sent in a client transaction which has ended
+     * without a final response, e.g. because it has timed out, and sends the
+     * next INFO request.
+     *
+     * @param clientTransaction the client transaction
+     */
+    private void infoTransactionEnded(ClientTransaction clientTransaction)
+    {
+        PendingInfo info = findSentInfo(clientTransaction);
+
+        if (info != null)
+        {
+            logger.error("DTMF send failed: no final response");
+            info.failed(
+                    new OperationFailedException(
+                            "No final response to the INFO request",
+                            OperationFailedException.NETWORK_FAILURE));
+            sendNextInfo(info);
+        }
+    }
+
+    /**
+     * This is just a copy of the bye method from the OpSetBasicTelephony,
+     * which was enhanced with a body in order to send the DTMF tone
+     *
+     * @param pendingInfo the DTMF tone to send and its destination
+     * @return <tt>true</tt> if the INFO request has been sent;
+     * <tt>false</tt> if the dialog has already terminated
+     * @throws OperationFailedException
+     */
+    private boolean sendInfo(PendingInfo pendingInfo)
+        throws OperationFailedException
+    {
+        CallPeerSipImpl callPeer = pendingInfo.callPeer;
+        DTMFTone dtmftone = pendingInfo.tone;
+        long duration = pendingInfo.duration;
         Request info = pps.getMessageFactory().createRequest(
                         callPeer.getDialog(), Request.INFO);
 
@@ -193,9 +377,13 @@ public class DTMFInfo
                 //throw an exception. simply log and get lost.
                 logger.warn("Trying to send a dtmf tone inside a "
                             +"TERMINATED dialog.");
-                return;
+                return false;
             }
 
+            synchronized (pendingInfos)
+            {
+                pendingInfo.clientTransaction = clientTransaction;
+            }
             callPeer.getDialog().sendRequest(clientTransaction);
             if (logger.isDebugEnabled())
                 logger.debug("sent request:\n" + info);
@@ -207,6 +395,7 @@ public class DTMFInfo
                 , OperationFailedException.NETWORK_FAILURE
                 , ex);
         }
+        return true;
     }
 
     /**
@@ -281,6 +470,9 @@ public class DTMFInfo
                             }
                             else
                                 logger.error("DTMF send failed: " + statusCode);
+
+                            if (statusCode >= 200)
+                                infoResponded(clientTransaction, statusCode);
                         }
                     }
                 }
@@ -289,6 +481,69 @@ public class DTMFInfo
         return processed;
     }
 
+    /**
+     * Reports the final response to an INFO request to the
+     * <tt>DTMFQueue</tt> which has sent it, if any, and sends the next INFO
+     * request.
+     *
+     * @param clientTransaction the transaction of the INFO request
+     * @param statusCode the status code of the final response
+     */
+    private void infoResponded(
+            ClientTransaction clientTransaction,
+            int statusCode)
+    {
+        PendingInfo info = findSentInfo(clientTransaction);
+
+        if (info == null)
+            return;
+
+        if (statusCode < 300)
+            info.succeeded();
+        else
+        {
+            info.failed(
+                    new OperationFailedException(
+                            "The INFO request failed: " + statusCode,
+                            OperationFailedException.GENERAL_ERROR));
+        }
+        sendNextInfo(info);
+    }
+
+    /**
+     * Fails the INFO request whose transaction has timed out and sends the
+     * next one.
+     *
+     * @param timeoutEvent the timeout event
+     * @return <tt>false</tt> to let the other processors handle the timeout
+     */
+    @Override
+    public boolean processTimeout(TimeoutEvent timeoutEvent)
+    {
+        if (!timeoutEvent.isServerTransaction())
+            infoTransactionEnded(timeoutEvent.getClientTransaction());
+        return false;
+    }
+
+    /**
+     * Fails the INFO request whose transaction has terminated without a final
+     * response, if any, and sends the next one.
+     *
+     * @param transactionTerminatedEvent the transaction terminated event
+     * @return <tt>false</tt> to let the other processors handle the event
+     */
+    @Override
+    public boolean processTransactionTerminated(
+        TransactionTerminatedEvent transactionTerminatedEvent)
+    {
+        if (!transactionTerminatedEvent.isServerTransaction())
+        {
+            infoTransactionEnded(
+                    transactionTerminatedEvent.getClientTransaction());
+        }
+        return false;
+    }
+
     /*
      * Receives dtmf info requests.
      */
@@ -459,4 +714,79 @@ public class DTMFInfo
             dtmfListeners.remove(listener);
         }
     }
+
+    /**
+     * An INFO request of a DTMF tone which has been sent and waits for its
+     * final response or waits to be sent.
+     */
+    private static class PendingInfo
+    {
+        /**
+         * The destination of the tone.
+         */
+        final CallPeerSipImpl callPeer;
+
+        /**
+         * The tone.
+         */
+        final DTMFTone tone;
+
+        /**
+         * The duration of the tone in milliseconds.
+         */
+        final long duration;
+
+        /**
+         * The <tt>DTMFQueue</tt> to tell about the outcome of the request or
+         * <tt>null</tt>.
+         */
+        final DTMFQueue queue;
+
+        /**
+         * The transaction the request has been sent in or <tt>null</tt> if it
+         * has not been sent yet. Synchronized using <tt>pendingInfos</tt>.
+         */
+        ClientTransaction clientTransaction;
+
+        /**
+         * Initializes a new <tt>PendingInfo</tt>.
+         *
+         * @param callPeer the destination of the tone
+         * @param tone the tone
+         * @param duration the duration of the tone in milliseconds
+         * @param queue the <tt>DTMFQueue</tt> to tell about the outcome of
+         * the request or <tt>null</tt>
+         */
+        PendingInfo(
+                CallPeerSipImpl callPeer,
+                DTMFTone tone,
+                long duration,
+                DTMFQueue queue)
+        {
+            this.callPeer = callPeer;
+            this.tone = tone;
+            this.duration = duration;
+            this.queue = queue;
+        }
+
+        /**
+         * Reports that the request has succeeded.
+         */
+        void succeeded()
+        {
+            if (queue != null)
+                queue.toneSent();
+        }
+
+        /**
+         * Reports that the request has failed.
+         *
+         * @param cause the failure
+         */
+        void failed(OperationFailedException cause)
+        {
+            if (queue != null)
+                queue.toneFailed(cause);
+        }
+    }
 }
@@ -12,8 +12,11 @@ import static javax.sip.ListeningPoint.UDP;
 import static net.java.sip.communicator.service.protocol.ProtocolProviderFactory.SERVER_ADDRESS;
 import static net.java.sip.communicator.service.protocol.ProtocolProviderFactory.USER_ID;
 
+import java.lang.reflect.*;
 import java.net.*;
 import java.text.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 import javax.sip.*;
 
@@ -24,6 +27,14 @@ import net.java.sip.communicator.util.*;
 /**
  * Implementation of the autodetect proxy connection. Tries to resolve a SIP-
  * server by querying DNS in this order: NAPTR-SRV-A; SRV-A; A.
+ * <p>
+ * The order in which addresses are returned is the one mandated by RFC 3263,
+ * but the queries of each step are issued in parallel ahead of time: the SRV
+ * queries for all NAPTR replacements (or, without NAPTR records, for all
+ * transports) are sent together, and the A/AAAA queries for all targets of an
+ * SRV record set are sent as soon as the set is known. The first usable
+ * address is therefore returned as soon as its own lookup completes while the
+ * lookups for the failover addresses continue in the background.
  *
  * @author Ingo Bauersachs
  */
@@ -88,6 +99,28 @@ public class AutoProxyConnection
     private final static Logger logger
         = Logger.getLogger(AutoProxyConnection.class);
 
+    /**
+     * The maximum number of DNS queries issued in parallel by all instances.
+     */
+    private final static int MAX_PARALLEL_LOOKUPS = 8;
+
+    /**
+     * The pool executing the DNS queries of all instances.
+     */
+    private final static ExecutorService lookupExecutor;
+
+    static
+    {
+        ThreadPoolExecutor executor
+            = new ThreadPoolExecutor(
+                    MAX_PARALLEL_LOOKUPS, MAX_PARALLEL_LOOKUPS,
+                    60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new DaemonThreadFactory("AutoProxyConnection-DNS"));
+        executor.allowCoreThreadTimeOut(true);
+        lookupExecutor = executor;
+    }
+
     private State state;
     private String address;
     private int port;
@@ -109,6 +142,27 @@ public class AutoProxyConnection
     private InetSocketAddress socketAddresses[];
     private int socketAddressIndex;
 
+    /**
+     * The pending or completed NAPTR query for <tt>address</tt>.
+     */
+    private Future<String[][]> naptrLookup;
+
+    /**
+     * The SRV queries for <tt>address</tt>, one for each of
+     * <tt>transports</tt>.
+     */
+    private List<Future<SRVRecord[]>> srvLookups;
+
+    /**
+     * The SRV queries for the replacements of <tt>naptrRecords</tt>.
+     */
+    private List<Future<SRVRecord[]>> naptrSrvLookups;
+
+    /**
+     * The A/AAAA queries for the targets of <tt>srvRecords</tt>.
+     */
+    private List<Future<InetSocketAddress[]>> hostLookups;
+
     /**
      * Creates a new instance of this class. Uses the server from the account.
      *
@@ -193,6 +247,7 @@ public class AutoProxyConnection
         switch(state)
         {
             case New:
+                startNaptrLookup();
                 state = State.Naptr;
                 return getNextAddressFromDns();
             case IP:
@@ -219,14 +274,16 @@ public class AutoProxyConnection
                 }
                 return false;
             case Naptr:
-                naptrRecords = nu.getNAPTRRecords(address);
+                naptrRecords = await(naptrLookup);
                 if(naptrRecords != null && naptrRecords.length > 0)
                 {
+                    startNaptrSrvLookups();
                     state = State.NaptrSrv;
                     naptrIndex = 0;
                 }
                 else
                 {
+                    startSrvLookups();
                     hadSrvResults = false;
                     state = State.Srv;
                     srvTransportIndex = 0;
@@ -236,10 +293,10 @@ public class AutoProxyConnection
             case NaptrSrv:
                 for(; naptrIndex < naptrRecords.length; naptrIndex++)
                 {
-                    srvRecords = nu.getSRVRecords(
-                        naptrRecords[naptrIndex][2]);
+                    srvRecords = await(naptrSrvLookups.get(naptrIndex));
                     if(srvRecords != null && srvRecords.length > 0)
                     {
+                        startHostLookups();
                         state = State.NaptrSrvHosts;
                         if(TLS.equalsIgnoreCase(naptrRecords[naptrIndex][1]))
                             transport = TLS;
@@ -259,9 +316,7 @@ public class AutoProxyConnection
             case NaptrSrvHosts:
                 for(; srvRecordsIndex < srvRecords.length; srvRecordsIndex++)
                 {
-                    socketAddresses = nu.getAandAAAARecords(
-                        srvRecords[srvRecordsIndex].getTarget(),
-                        srvRecords[srvRecordsIndex].getPort());
+                    socketAddresses = await(hostLookups.get(srvRecordsIndex));
                     if(socketAddresses != null && socketAddresses.length > 0)
                     {
                         state = State.NaptrSrvHostIPs;
@@ -287,16 +342,10 @@ public class AutoProxyConnection
             case Srv:
                 for(;srvTransportIndex < transports.length; srvTransportIndex++)
                 {
-                    srvRecords = nu.getSRVRecords(
-                        (TLS.equals(transports[srvTransportIndex])
-                            ? "sips"
-                            : "sip"),
-                        (UDP.equalsIgnoreCase(transports[srvTransportIndex])
-                            ? UDP
-                            : TCP),
-                        address);
+                    srvRecords = await(srvLookups.get(srvTransportIndex));
                     if(srvRecords != null && srvRecords.length > 0)
                     {
+                        startHostLookups();
                         hadSrvResults = true;
                         state = State.SrvHosts;
                         srvRecordsIndex = 0;
@@ -323,9 +372,7 @@ public class AutoProxyConnection
                 }
                 for(; srvRecordsIndex < srvRecords.length; srvRecordsIndex++)
                 {
-                    socketAddresses = nu.getAandAAAARecords(
-                        srvRecords[srvRecordsIndex].getTarget(),
-                        srvRecords[srvRecordsIndex].getPort());
+                    socketAddresses = await(hostLookups.get(srvRecordsIndex));
                     if(socketAddresses != null && socketAddresses.length > 0)
                     {
                         state = State.SrvHostIPs;
@@ -368,6 +415,149 @@ public class AutoProxyConnection
         return false;
     }
 
+    /**
+     * Starts the NAPTR query for <tt>address</tt>.
+     */
+    private void startNaptrLookup()
+    {
+        final String domain = address;
+
+        naptrLookup = lookupExecutor.submit(new Callable<String[][]>()
+        {
+            public String[][] call()
+                throws ParseException, DnssecException
+            {
+                return nu.getNAPTRRecords(domain);
+            }
+        });
+    }
+
+    /**
+     * Starts the SRV queries for <tt>address</tt> for all transports. They
+     * are only needed when there are no NAPTR records.
+     */
+    private void startSrvLookups()
+    {
+        final String domain = address;
+
+        srvLookups = new ArrayList<Future<SRVRecord[]>>(transports.length);
+        for(final String t : transports)
+        {
+            srvLookups.add(lookupExecutor.submit(new Callable<SRVRecord[]>()
+            {
+                public SRVRecord[] call()
+                    throws ParseException, DnssecException
+                {
+                    return nu.getSRVRecords(
+                        TLS.equals(t) ? "sips" : "sip",
+                        UDP.equalsIgnoreCase(t) ? UDP : TCP,
+                        domain);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Starts the SRV queries for the replacements of all
+     * <tt>naptrRecords</tt>.
+     */
+    private void startNaptrSrvLookups()
+    {
+        naptrSrvLookups
+            = new ArrayList<Future<SRVRecord[]>>(naptrRecords.length);
+        for(final String[] naptr : naptrRecords)
+        {
+            naptrSrvLookups.add(
+                lookupExecutor.submit(new Callable<SRVRecord[]>()
+                {
+                    public SRVRecord[] call()
+                        throws ParseException, DnssecException
+                    {
+                        return nu.getSRVRecords(naptr[2]);
+                    }
+                }));
+        }
+    }
+
+    /**
+     * Starts the A/AAAA queries for the targets of all <tt>srvRecords</tt>,
+     * replacing the queries for the previous SRV record set.
+     */
+    private void startHostLookups()
+    {
+        cancel(hostLookups);
+        hostLookups
+            = new ArrayList<Future<InetSocketAddress[]>>(srvRecords.length);
+        for(final SRVRecord srv : srvRecords)
+        {
+            hostLookups.add(
+                lookupExecutor.submit(new Callable<InetSocketAddress[]>()
+                {
+                    public InetSocketAddress[] call()
+                        throws ParseException, DnssecException
+                    {
+                        return nu.getAandAAAARecords(
+                            srv.getTarget(), srv.getPort());
+                    }
+                }));
+        }
+    }
+
+    /**
+     * Waits for the result of a DNS query started by this instance.
+     *
+     * @param lookup the query to wait for.
+     * @return the result of the query or <tt>null</tt> if the current thread
+     * was interrupted while waiting.
+     * @throws DnssecException When a DNSSEC failure occured during the lookup.
+     * @throws ParseException When a domain name is invalid.
+     */
+    private static <T> T await(Future<T> lookup)
+        throws DnssecException, ParseException
+    {
+        try
+        {
+            return lookup.get();
+        }
+        catch(InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch(CancellationException ex)
+        {
+            return null;
+        }
+        catch(ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if(cause instanceof DnssecException)
+                throw (DnssecException) cause;
+            if(cause instanceof ParseException)
+                throw (ParseException) cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new UndeclaredThrowableException(cause);
+        }
+    }
+
+    /**
+     * Cancels the queries in <tt>lookups</tt>, interrupting the ones which are
+     * already running.
+     *
+     * @param lookups the queries to cancel, may be <tt>null</tt>.
+     */
+    private static void cancel(List<? extends Future<?>> lookups)
+    {
+        if(lookups == null)
+            return;
+
+        for(Future<?> lookup : lookups)
+            lookup.cancel(true);
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -380,6 +570,18 @@ public class AutoProxyConnection
         super.reset();
         state = State.New;
 
+        if(naptrLookup != null)
+        {
+            naptrLookup.cancel(true);
+            naptrLookup = null;
+        }
+        cancel(srvLookups);
+        srvLookups = null;
+        cancel(naptrSrvLookups);
+        naptrSrvLookups = null;
+        cancel(hostLookups);
+        hostLookups = null;
+
         //determine the hostname of the proxy for autodetection:
         //1) server part of the user ID
         //2) name of the registrar when the user ID contains no domain
@@ -193,7 +193,7 @@ public class SdpUtils
      * @param rtpmap an SDP <tt>Attribute</tt> mapping the <tt>payloadType</tt>
      * to an encoding name.
      * @param fmtp a list of format specific parameters
-     * @param advp list of advanced parameters
+     * @param advancedAttrMap the advanced parameters or <tt>null</tt>
      * @param ptRegistry the {@link DynamicPayloadTypeRegistry} that we are to
      * use in case <tt>payloadType</tt> is dynamic and <tt>rtpmap</tt> is
      * <tt>null</tt> (in which case we can hope its in the registry).
@@ -210,7 +210,7 @@ public class SdpUtils
                                         Attribute                  rtpmap,
                                         Attribute                  fmtp,
                                         float                      frameRate,
-                                        List<Attribute>            advp,
+                                        Map<String, String> advancedAttrMap,
                                         DynamicPayloadTypeRegistry ptRegistry)
         throws SdpException
     {
@@ -282,14 +282,10 @@ public class SdpUtils
 
         //Format parameters
         Map<String, String> fmtParamsMap = null;
-        Map<String, String> advancedAttrMap = null;
 
         if (fmtp != null)
             fmtParamsMap = parseFmtpAttribute(fmtp);
 
-        if (advp != null)
-            advancedAttrMap = parseAdvancedAttributes(advp);
-
         // Many implementations use opus as "opus/48000", while the specification
         // mandates "opus/48000/2". Our upper layers only support 2 channels, so
         // we patch it here.
@@ -1020,6 +1016,35 @@ public class SdpUtils
             // do nothing
         }
 
+        /*
+         * Index the rtpmap and fmtp attributes by payload type and parse the
+         * advanced attributes (which pertain to all payload types) once rather
+         * than scanning all attributes for each payload type.
+         */
+        Map<String, Attribute> rtpmaps = new HashMap<String, Attribute>();
+        Map<String, Attribute> fmtps = new HashMap<String, Attribute>();
+        Map<String, String> advancedAttrMap = null;
+
+        try
+        {
+            Vector<Attribute> mediaAttributes = mediaDesc.getAttributes(false);
+
+            indexPayloadTypeSpecificAttributes(
+                    mediaAttributes, SdpConstants.RTPMAP, rtpmaps);
+            indexPayloadTypeSpecificAttributes(mediaAttributes, "fmtp", fmtps);
+
+            List<Attribute> advp
+                = findAdvancedAttributes(mediaAttributes);
+
+            if (advp != null)
+                advancedAttrMap = parseAdvancedAttributes(advp);
+        }
+        catch(SdpException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Problem parsing media attributes", e);
+        }
+
         for(String ptStr : formatStrings)
         {
             byte pt;
@@ -1036,63 +1061,18 @@ public class SdpUtils
                 continue;
             }
 
-            Attribute rtpmap = null;
-            try
-            {
-                rtpmap = findPayloadTypeSpecificAttribute(
-                    mediaDesc.getAttributes(false), SdpConstants.RTPMAP,
-                    Byte.toString(pt));
-            }
-            catch (SdpException e)
-            {
-                //there was a problem parsing the rtpmap. try to ignore.
-                if (logger.isDebugEnabled())
-                {
-                    logger.debug(
-                            rtpmap
-                                + " does not seem like a valid rtpmap:"
-                                + " attribute",
-                            e);
-                }
-            }
-
-            Attribute fmtp = null;
-
-            try
-            {
-                fmtp = findPayloadTypeSpecificAttribute(
-                    mediaDesc.getAttributes(false), "fmtp", ptStr);
-            }
-            catch (SdpException e)
-            {
-                //there was a problem parsing the fmtp: try to ignore.
-                if (logger.isDebugEnabled())
-                {
-                    logger.debug(
-                            fmtp
-                                + " does not seem like a valid fmtp: attribute",
-                            e);
-                }
-            }
-
-            List<Attribute> advp = null;
-
-            try
-            {
-                advp = findAdvancedAttributes(mediaDesc.getAttributes(false),
-                        ptStr);
-            }
-            catch(SdpException e)
-            {
-                if (logger.isDebugEnabled())
-                    logger.debug("Problem parsing advanced attributes", e);
-            }
+            Attribute rtpmap = rtpmaps.get(Byte.toString(pt));
+            Attribute fmtp = fmtps.get(ptStr);
 
             MediaFormat mediaFormat = null;
             try
             {
                 mediaFormat = createFormat(
-                    pt, rtpmap, fmtp, frameRate, advp, ptRegistry);
+                    pt, rtpmap, fmtp, frameRate,
+                    (advancedAttrMap == null)
+                        ? null
+                        : new Hashtable<String, String>(advancedAttrMap),
+                    ptRegistry);
             }
             catch (SdpException e)
             {
@@ -1212,21 +1192,20 @@ public class SdpUtils
     }
 
     /**
-     * Tries to find advanced attributes (i.e. that are not fmtp or rtpmap
-     * pertaining to the specified <tt>payloadType</tt> in the
-     * <tt>mediaAttributes</tt> list and returns them if they exists.
+     * Tries to find advanced attributes (i.e. that are not fmtp or rtpmap) in
+     * the <tt>mediaAttributes</tt> list and returns them if they exists. They
+     * are not matched against a payload type because they may pertain to the
+     * whole stream.
      *
      * @param mediaAttributes the list of <tt>Attribute</tt> fields where we
      * are to look for the attribute
-     * @param payloadType the payloadType that we are trying to find
-     * @return the list of advanced <tt>Attribute</tt> and whose value pertains
-     * to <tt>payloadType</tt> or <tt>null</tt> if no such attributes were found
+     * @return the list of advanced <tt>Attribute</tt> or <tt>null</tt> if no
+     * such attributes were found
      * @throws SdpException when ... well never really, it's there just for ...
      * fun?
      */
     private static List<Attribute> findAdvancedAttributes(
-                                    Vector<Attribute> mediaAttributes,
-                                    String            payloadType)
+                                    Vector<Attribute> mediaAttributes)
         throws SdpException
     {
         if( mediaAttributes == null || mediaAttributes.size() == 0)
@@ -1265,49 +1244,57 @@ public class SdpUtils
     }
 
     /**
-     * Tries to find an attribute with the specified <tt>attibuteName</tt>
-     * pertaining to the specified <tt>payloadType</tt> in the
-     * <tt>mediaAttributes</tt> list and returns it if it exists.
+     * Indexes the attributes with the specified <tt>attributeName</tt> in the
+     * <tt>mediaAttributes</tt> list by the payload type their value pertains
+     * to. Only the first attribute is kept for a given payload type.
      *
      * @param mediaAttributes the list of <tt>Attribute</tt> fields where we
-     * are to look for the attribute.
-     * @param payloadType the payloadType that we are trying to find.
-     * @param attributeName the name of the attribute we are looking for.
-     * @return the first Attribute whose name matches <tt>attributeName</tt>
-     * and whose value pertains to <tt>payloadType</tt> or <tt>null</tt> if no
-     * such attribute was found.
-     * @throws SdpException when ... well never really, it's there just for ...
-     * fun?
+     * are to look for the attributes.
+     * @param attributeName the name of the attributes we are looking for.
+     * @param index the <tt>Map</tt> to put the attributes into, by payload
+     * type. An attribute which cannot be parsed is left out.
      */
-    private static Attribute findPayloadTypeSpecificAttribute(
-                                    Vector<Attribute> mediaAttributes,
-                                    String            attributeName,
-                                    String            payloadType)
-        throws SdpException
+    static void indexPayloadTypeSpecificAttributes(
+                                    Vector<Attribute>      mediaAttributes,
+                                    String                 attributeName,
+                                    Map<String, Attribute> index)
     {
         if( mediaAttributes == null || mediaAttributes.size() == 0)
-            return null;
+            return;
 
         for (Attribute attr : mediaAttributes)
         {
-            if(!attributeName.equals(attr.getName()))
-                continue;
+            String attrValue;
 
-            String attrValue = attr.getValue();
+            try
+            {
+                if(!attributeName.equals(attr.getName()))
+                    continue;
+
+                attrValue = attr.getValue();
+            }
+            catch (SdpParseException e)
+            {
+                if (logger.isDebugEnabled())
+                    logger.debug("Skipping unparsable attribute " + attr, e);
+                continue;
+            }
 
             if(attrValue == null)
                 continue;
 
             attrValue = attrValue.trim();
 
-            if(!attrValue.startsWith(payloadType + " "))
+            int spaceIndex = attrValue.indexOf(' ');
+
+            if (spaceIndex == -1)
                 continue;
 
-            //that's it! we have the attribute we are looking for.
-            return attr;
-        }
+            String payloadType = attrValue.substring(0, spaceIndex);
 
-        return null;
+            if (!index.containsKey(payloadType))
+                index.put(payloadType, attr);
+        }
     }
 
     /**
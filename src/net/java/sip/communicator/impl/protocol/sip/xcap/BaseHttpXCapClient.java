@@ -25,8 +25,12 @@ import org.apache.http.*;
 import org.apache.http.auth.*;
 import org.apache.http.client.*;
 import org.apache.http.client.methods.*;
+import org.apache.http.conn.*;
 import org.apache.http.entity.*;
 import org.apache.http.impl.client.*;
+import org.apache.http.impl.conn.*;
+import org.apache.http.util.*;
+import org.jitsi.service.fileaccess.*;
 import org.osgi.framework.*;
 
 /**
@@ -65,6 +69,17 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
     public static final String XCAP_ERROR_CONTENT_TYPE
             = "application/xcap-error+xml";
 
+    /**
+     * The maximum number of connections kept alive to the XCAP server.
+     */
+    private static final int MAX_CONNECTIONS = 4;
+
+    /**
+     * The name of the directory in the cache that the XCAP documents are
+     * stored in.
+     */
+    private static final String CACHE_DIR_NAME = "xcap";
+
     /**
      * Current server uri.
      */
@@ -95,6 +110,19 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
      */
     private CertificateService certificateVerification;
 
+    /**
+     * The HTTP client shared by all requests to the current server. Keeps its
+     * connections alive in a pool so that subsequent requests do not need to
+     * establish new (TLS) connections.
+     */
+    private DefaultHttpClient httpClient;
+
+    /**
+     * The documents downloaded from the current server together with their
+     * ETags or <tt>null</tt> if they cannot be cached.
+     */
+    private XCapDocumentCache documentCache;
+
     /**
      * Creates an instance of this XCAP client.
      */
@@ -130,6 +158,21 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
         this.userAddress = (Address) userAddress.clone();
         this.username = username;
         this.password = password == null ? "" : password;
+
+        PoolingClientConnectionManager connectionManager
+            = new PoolingClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        try
+        {
+            httpClient = createHttpClient(connectionManager);
+        }
+        catch (IOException e)
+        {
+            connectionManager.shutdown();
+            throw new XCapException(e.getMessage(), e);
+        }
+        documentCache = createDocumentCache();
         connected = true;
     }
 
@@ -148,6 +191,12 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
      */
     public void disconnect()
     {
+        if (httpClient != null)
+        {
+            httpClient.getConnectionManager().shutdown();
+            httpClient = null;
+        }
+        documentCache = null;
         this.uri = null;
         this.userAddress = null;
         this.password = null;
@@ -169,7 +218,9 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
     }
 
     /**
-     * Gets resource from the server.
+     * Gets resource from the server. If the resource has been downloaded
+     * before, it is only downloaded again if its ETag has changed and the
+     * cached copy is returned otherwise.
      *
      * @param uri the resource uri.
      * @return the server response.
@@ -179,16 +230,44 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
     protected XCapHttpResponse get(URI uri)
             throws XCapException
     {
-        DefaultHttpClient httpClient = null;
         try
         {
-            httpClient = createHttpClient();
+            XCapDocumentCache documentCache = this.documentCache;
+            XCapHttpResponse cached
+                = (documentCache == null) ? null : documentCache.get(uri);
 
             HttpGet getMethod = new HttpGet(uri);
-            getMethod.setHeader("Connection", "close");
-
-            HttpResponse response = httpClient.execute(getMethod);
-            XCapHttpResponse result = createResponse(response);
+            if (cached != null)
+                getMethod.setHeader(HEADER_IF_NONE_MATCH, cached.getETag());
+
+            HttpResponse response = getHttpClient().execute(getMethod);
+            XCapHttpResponse result;
+            if (cached != null
+                    && response.getStatusLine().getStatusCode()
+                            == HttpStatus.SC_NOT_MODIFIED)
+            {
+                EntityUtils.consume(response.getEntity());
+                result = cached;
+            }
+            else
+            {
+                result = createResponse(response);
+                if (documentCache != null)
+                {
+                    if (result.getHttpCode() == HttpStatus.SC_OK)
+                    {
+                        documentCache.put(
+                                uri,
+                                result.getETag(),
+                                result.getContentType(),
+                                result.getContent());
+                    }
+                    else if (result.getHttpCode() == HttpStatus.SC_NOT_FOUND)
+                    {
+                        documentCache.remove(uri);
+                    }
+                }
+            }
             if (logger.isDebugEnabled())
             {
                 byte[] contentBytes = result.getContent();
@@ -227,11 +306,6 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
             showError(e, null, errorMessage);
             throw new XCapException(errorMessage, e);
         }
-        finally
-        {
-            if(httpClient != null)
-                httpClient.getConnectionManager().shutdown();
-        }
     }
 
     /**
@@ -276,14 +350,10 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
     public XCapHttpResponse put(XCapResource resource)
             throws XCapException
     {
-        DefaultHttpClient httpClient = null;
         try
         {
-            httpClient = createHttpClient();
-
             URI resourceUri = getResourceURI(resource.getId());
             HttpPut putMethod = new HttpPut(resourceUri);
-            putMethod.setHeader("Connection", "close");
             StringEntity stringEntity = new StringEntity(resource.getContent());
             stringEntity.setContentType(resource.getContentType());
             stringEntity.setContentEncoding("UTF-8");
@@ -298,8 +368,30 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
                 );
                 logger.debug(logMessage);
             }
-            HttpResponse response = httpClient.execute(putMethod);
-            return createResponse(response);
+            HttpResponse response = getHttpClient().execute(putMethod);
+            XCapHttpResponse result = createResponse(response);
+
+            // the server stores exactly what we have sent, so there is no
+            // need to download it again as long as the ETag does not change
+            XCapDocumentCache documentCache = this.documentCache;
+            if (documentCache != null)
+            {
+                int httpCode = result.getHttpCode();
+                if (httpCode == HttpStatus.SC_OK
+                        || httpCode == HttpStatus.SC_CREATED)
+                {
+                    documentCache.put(
+                            resourceUri,
+                            result.getETag(),
+                            resource.getContentType(),
+                            EntityUtils.toByteArray(stringEntity));
+                }
+                else
+                {
+                    documentCache.remove(resourceUri);
+                }
+            }
+            return result;
         }
         catch (IOException e)
         {
@@ -308,11 +400,6 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
                     resource.getId().toString());
             throw new XCapException(errorMessage, e);
         }
-        finally
-        {
-            if(httpClient != null)
-                httpClient.getConnectionManager().shutdown();
-        }
     }
 
     /**
@@ -327,14 +414,14 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
             throws XCapException
     {
         assertConnected();
-        DefaultHttpClient httpClient = null;
         try
         {
-            httpClient = createHttpClient();
-
             URI resourceUri = getResourceURI(resourceId);
             HttpDelete deleteMethod = new HttpDelete(resourceUri);
-            deleteMethod.setHeader("Connection", "close");
+
+            XCapDocumentCache documentCache = this.documentCache;
+            if (documentCache != null)
+                documentCache.remove(resourceUri);
 
             if (logger.isDebugEnabled())
             {
@@ -344,7 +431,7 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
                 );
                 logger.debug(logMessage);
             }
-            HttpResponse response = httpClient.execute(deleteMethod);
+            HttpResponse response = getHttpClient().execute(deleteMethod);
             return createResponse(response);
         }
         catch (IOException e)
@@ -354,11 +441,6 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
                     resourceId.toString());
             throw new XCapException(errorMessage, e);
         }
-        finally
-        {
-            if(httpClient != null)
-                httpClient.getConnectionManager().shutdown();
-        }
     }
 
     /**
@@ -414,12 +496,33 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
         }
     }
 
+    /**
+     * Returns the HTTP client shared by all requests to the current server.
+     *
+     * @return the HTTP client.
+     * @throws IllegalStateException if the user is not connected.
+     */
+    private DefaultHttpClient getHttpClient()
+    {
+        DefaultHttpClient httpClient = this.httpClient;
+
+        if (httpClient == null)
+        {
+            throw new IllegalStateException(
+                    "User is not connected to the server");
+        }
+        return httpClient;
+    }
+
     /**
      * Creates HTTP client with special parameters.
      *
+     * @param connectionManager the connection manager the client will keep
+     * its connections in.
      * @return the HTTP client.
      */
-    private DefaultHttpClient createHttpClient()
+    private DefaultHttpClient createHttpClient(
+            ClientConnectionManager connectionManager)
         throws IOException
     {
         XCapCredentialsProvider credentialsProvider
@@ -429,7 +532,41 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
             new UsernamePasswordCredentials(getUserName(), password));
 
         return HttpUtils.getHttpClient(
-            null , null, uri.getHost(), credentialsProvider);
+            null , null, uri.getHost(), credentialsProvider,
+            connectionManager);
+    }
+
+    /**
+     * Creates the cache of the documents downloaded from the current server.
+     * The documents of every server and user are kept in a separate
+     * directory.
+     *
+     * @return the document cache or <tt>null</tt> if the documents cannot be
+     * cached.
+     */
+    private XCapDocumentCache createDocumentCache()
+    {
+        FileAccessService fileAccessService
+            = SipActivator.getFileAccessService();
+
+        if (fileAccessService == null)
+            return null;
+
+        try
+        {
+            File directory
+                = fileAccessService.getPrivatePersistentDirectory(
+                        CACHE_DIR_NAME + File.separator
+                            + Sha1Crypto.encode(uri + "#" + username),
+                        FileCategory.CACHE);
+
+            return new XCapDocumentCache(directory);
+        }
+        catch (Exception e)
+        {
+            logger.warn("XCAP documents will not be cached", e);
+            return null;
+        }
     }
 
     /**
@@ -458,6 +595,11 @@ public abstract class BaseHttpXCapClient implements HttpXCapClient
             xcapHttpResponse.setContent(content);
             xcapHttpResponse.setETag(eTag);
         }
+        else
+        {
+            // release the connection back to the pool
+            EntityUtils.consume(response.getEntity());
+        }
         xcapHttpResponse.setHttpCode(statusCode);
         return xcapHttpResponse;
     }
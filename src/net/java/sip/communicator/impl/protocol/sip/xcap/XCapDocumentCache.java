@@ -0,0 +1,345 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip.xcap;
+
+import java.io.*;
+import java.net.URI;
+import java.security.*;
+import java.util.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * On-disk cache of the XCAP documents downloaded from a single XCAP root. Every
+ * document is stored together with the ETag the server has returned for it, so
+ * that it can be revalidated with a conditional GET (<tt>If-None-Match</tt>)
+ * and only downloaded again if it has changed on the server.
+ * <p>
+ * Each document is kept in its own file named after the SHA-1 of its URI. The
+ * most recently used entries are also kept in memory once they have been read,
+ * and the least recently written files are deleted once there are more than
+ * {@link #MAX_FILES} of them.
+ */
+public class XCapDocumentCache
+{
+    /**
+     * Class logger.
+     */
+    private static final Logger logger =
+            Logger.getLogger(XCapDocumentCache.class);
+
+    /**
+     * The extension of the files the documents are stored in.
+     */
+    private static final String FILE_EXTENSION = ".xcap";
+
+    /**
+     * The maximum number of documents kept in memory.
+     */
+    private static final int MAX_ENTRIES = 32;
+
+    /**
+     * The maximum number of documents kept on disk.
+     */
+    static final int MAX_FILES = 128;
+
+    /**
+     * The directory the documents are stored in.
+     */
+    private final File directory;
+
+    /**
+     * The most recently used documents mapped by their URI.
+     */
+    private final Map<URI, XCapHttpResponse> entries
+        = new LinkedHashMap<URI, XCapHttpResponse>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<URI, XCapHttpResponse> eldest)
+            {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    /**
+     * Creates a cache storing its documents in <tt>directory</tt>.
+     *
+     * @param directory the directory to store the documents in. It is created
+     * when the first document is stored.
+     */
+    public XCapDocumentCache(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached document for <tt>uri</tt>.
+     *
+     * @param uri the URI of the document.
+     * @return a new <tt>XCapHttpResponse</tt> with code 200 holding a copy of
+     * the cached document and its ETag or <tt>null</tt> if there is no
+     * document for <tt>uri</tt> in the cache.
+     */
+    public synchronized XCapHttpResponse get(URI uri)
+    {
+        XCapHttpResponse entry = entries.get(uri);
+
+        if (entry == null)
+        {
+            entry = read(uri);
+            if (entry == null)
+                return null;
+            entries.put(uri, entry);
+        }
+
+        // the caller owns the returned content and may well modify it
+        return
+            createEntry(
+                    entry.getETag(),
+                    entry.getContentType(),
+                    entry.getContent().clone());
+    }
+
+    /**
+     * Stores the document for <tt>uri</tt>. Documents without an ETag cannot
+     * be revalidated and are therefore removed from the cache instead.
+     *
+     * @param uri the URI of the document.
+     * @param eTag the ETag the server has returned for the document.
+     * @param contentType the content type of the document.
+     * @param content the document.
+     */
+    public synchronized void put(
+            URI uri,
+            String eTag,
+            String contentType,
+            byte[] content)
+    {
+        if (eTag == null || content == null)
+        {
+            remove(uri);
+            return;
+        }
+
+        XCapHttpResponse entry
+            = createEntry(eTag, contentType, content.clone());
+
+        entries.put(uri, entry);
+        write(uri, entry);
+    }
+
+    /**
+     * Removes the document for <tt>uri</tt> from the cache.
+     *
+     * @param uri the URI of the document.
+     */
+    public synchronized void remove(URI uri)
+    {
+        entries.remove(uri);
+
+        try
+        {
+            File file = getFile(uri);
+            if (file.exists() && !file.delete())
+                logger.warn("Failed to delete cached XCAP document " + file);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to delete cached XCAP document " + uri, e);
+        }
+    }
+
+    /**
+     * Creates a cache entry.
+     *
+     * @param eTag the ETag of the document.
+     * @param contentType the content type of the document.
+     * @param content the document.
+     * @return an <tt>XCapHttpResponse</tt> with code 200 holding the document.
+     */
+    private static XCapHttpResponse createEntry(
+            String eTag,
+            String contentType,
+            byte[] content)
+    {
+        XCapHttpResponse entry = new XCapHttpResponse();
+
+        entry.setHttpCode(200);
+        entry.setETag(eTag);
+        entry.setContentType(contentType);
+        entry.setContent(content);
+        return entry;
+    }
+
+    /**
+     * Returns the file the document for <tt>uri</tt> is stored in.
+     *
+     * @param uri the URI of the document.
+     * @return the file the document for <tt>uri</tt> is stored in.
+     * @throws IOException if the name of the file cannot be computed.
+     */
+    private File getFile(URI uri)
+        throws IOException
+    {
+        try
+        {
+            return new File(directory,
+                Sha1Crypto.encode(uri.toString().getBytes("UTF-8"))
+                    + FILE_EXTENSION);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the document for <tt>uri</tt> from disk.
+     *
+     * @param uri the URI of the document.
+     * @return the document or <tt>null</tt> if it is not stored or cannot be
+     * read.
+     */
+    private XCapHttpResponse read(URI uri)
+    {
+        DataInputStream in = null;
+        try
+        {
+            File file = getFile(uri);
+
+            if (!file.isFile())
+                return null;
+
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+
+            // guard against hash collisions
+            if (!uri.toString().equals(in.readUTF()))
+                return null;
+
+            String eTag = in.readUTF();
+            String contentType = in.readUTF();
+            byte[] content = new byte[in.readInt()];
+
+            in.readFully(content);
+            return
+                createEntry(
+                        eTag,
+                        (contentType.length() == 0) ? null : contentType,
+                        content);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to read cached XCAP document " + uri, e);
+            return null;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Writes the document for <tt>uri</tt> to disk. The document is written to
+     * a temporary file which then replaces the previous one so that a
+     * crash cannot leave a truncated document behind. If the write fails, the
+     * memory entry is still used for as long as the account is online.
+     *
+     * @param uri the URI of the document.
+     * @param entry the document.
+     */
+    private void write(URI uri, XCapHttpResponse entry)
+    {
+        File tmp = null;
+        DataOutputStream out = null;
+        try
+        {
+            File file = getFile(uri);
+
+            if (!directory.exists() && !directory.mkdirs())
+            {
+                throw new IOException(
+                    "Failed to create directory: "
+                        + directory.getAbsolutePath());
+            }
+
+            tmp = File.createTempFile(file.getName(), ".tmp", directory);
+            out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeUTF(uri.toString());
+            out.writeUTF(entry.getETag());
+            out.writeUTF(
+                entry.getContentType() == null ? "" : entry.getContentType());
+            out.writeInt(entry.getContent().length);
+            out.write(entry.getContent());
+            out.close();
+            out = null;
+
+            // File.renameTo does not replace existing files on all platforms
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+            {
+                throw new IOException(
+                    "Failed to rename " + tmp + " to " + file);
+            }
+            tmp = null;
+
+            evictFiles();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to cache XCAP document " + uri, e);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(out);
+            if (tmp != null)
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Deletes the least recently written documents from disk if there are more
+     * than {@link #MAX_FILES} of them.
+     */
+    private void evictFiles()
+    {
+        File[] files
+            = directory.listFiles(
+                    new FilenameFilter()
+                    {
+                        public boolean accept(File dir, String name)
+                        {
+                            return name.endsWith(FILE_EXTENSION);
+                        }
+                    });
+
+        if (files == null || files.length <= MAX_FILES)
+            return;
+
+        Arrays.sort(
+                files,
+                new Comparator<File>()
+                {
+                    public int compare(File f1, File f2)
+                    {
+                        long m1 = f1.lastModified();
+                        long m2 = f2.lastModified();
+
+                        return (m1 < m2) ? -1 : ((m1 == m2) ? 0 : 1);
+                    }
+                });
+        for (int i = 0; i < files.length - MAX_FILES; i++)
+        {
+            if (!files[i].delete())
+            {
+                logger.warn(
+                    "Failed to delete cached XCAP document " + files[i]);
+            }
+        }
+    }
+}
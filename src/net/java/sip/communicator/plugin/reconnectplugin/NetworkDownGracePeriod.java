@@ -0,0 +1,115 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.plugin.reconnectplugin;
+
+import java.net.*;
+import java.util.*;
+
+/**
+ * The time the providers are kept registered after the last network interface
+ * has gone down. Remembers the local addresses we had before the outage so
+ * that, once the network is back, they can be compared with the new ones:
+ * connections bound to an address which is gone cannot have survived.
+ */
+class NetworkDownGracePeriod
+{
+    /**
+     * The timer the expiry is scheduled on.
+     */
+    private final Timer timer;
+
+    /**
+     * Executed when the grace period expires without having been cancelled.
+     */
+    private final Runnable expiryHandler;
+
+    /**
+     * The local addresses we had before the outage.
+     */
+    private final Set<InetAddress> addressesBeforeOutage
+        = new HashSet<InetAddress>();
+
+    /**
+     * The task executing {@link #expiryHandler} or <tt>null</tt> if the grace
+     * period is not running.
+     */
+    private TimerTask expiryTask = null;
+
+    /**
+     * Initializes a new <tt>NetworkDownGracePeriod</tt>.
+     *
+     * @param timer the timer to schedule the expiry on
+     * @param expiryHandler executed when the grace period expires without
+     * having been cancelled
+     */
+    NetworkDownGracePeriod(Timer timer, Runnable expiryHandler)
+    {
+        this.timer = timer;
+        this.expiryHandler = expiryHandler;
+    }
+
+    /**
+     * Starts the grace period unless it is already running.
+     *
+     * @param period the length of the grace period in milliseconds
+     * @param addresses the local addresses we had before the outage
+     */
+    synchronized void start(long period, Collection<InetAddress> addresses)
+    {
+        if (expiryTask != null)
+            return;
+
+        addressesBeforeOutage.clear();
+        addressesBeforeOutage.addAll(addresses);
+
+        expiryTask
+            = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    synchronized (NetworkDownGracePeriod.this)
+                    {
+                        if (expiryTask != this)
+                            return;
+                        expiryTask = null;
+                    }
+                    expiryHandler.run();
+                }
+            };
+        timer.schedule(expiryTask, period);
+    }
+
+    /**
+     * Cancels the grace period because the network is back.
+     *
+     * @return <tt>true</tt> if the grace period was running; <tt>false</tt> if
+     * it has not been started or has already expired
+     */
+    synchronized boolean cancel()
+    {
+        if (expiryTask == null)
+            return false;
+
+        expiryTask.cancel();
+        expiryTask = null;
+        return true;
+    }
+
+    /**
+     * Determines whether all the local addresses we had before the outage are
+     * back.
+     *
+     * @param addresses the current local addresses
+     * @return <tt>true</tt> if <tt>addresses</tt> contains all the addresses
+     * we had before the outage
+     */
+    synchronized boolean isAddressesBack(Collection<InetAddress> addresses)
+    {
+        return addresses.containsAll(addressesBeforeOutage);
+    }
+}
@@ -6,6 +6,7 @@
  */
 package net.java.sip.communicator.plugin.reconnectplugin;
 
+import java.net.*;
 import java.util.*;
 
 import net.java.sip.communicator.service.gui.*;
@@ -173,6 +174,34 @@ public class ReconnectPluginActivator
         "net.java.sip.communicator.plugin.reconnectplugin." +
             "ATLEAST_ONE_SUCCESSFUL_CONNECTION";
 
+    /**
+     * The name of the property which specifies the number of seconds
+     * providers are kept registered after the last network interface has gone
+     * down. If the network comes back within this period with all the local
+     * addresses we had before, connections which have survived the outage are
+     * kept instead of logging in again, and providers whose connection has
+     * died report it themselves and are reconnected as usual. If an address
+     * has changed, all providers are reconnected as no connection bound to it
+     * can have survived. Providers are unregistered right away if it is not
+     * set or not positive.
+     */
+    public static final String NETWORK_DOWN_GRACE_PERIOD_PROP =
+        "net.java.sip.communicator.plugin.reconnectplugin." +
+            "NETWORK_DOWN_GRACE_PERIOD";
+
+    /**
+     * The grace period unregistering all providers once the network has been
+     * down for longer than {@link #NETWORK_DOWN_GRACE_PERIOD_PROP}.
+     */
+    private NetworkDownGracePeriod networkDownGracePeriod = null;
+
+    /**
+     * The local addresses of the connected interfaces mapped by interface
+     * name.
+     */
+    private Map<String, Set<InetAddress>> interfaceAddresses
+        = new HashMap<String, Set<InetAddress>>();
+
     /**
      * Timer used to filter out too frequent "network down" notifications
      * on Android.
@@ -209,6 +238,21 @@ public class ReconnectPluginActivator
         if(timer == null)
             timer = new Timer("Reconnect timer", true);
 
+        networkDownGracePeriod
+            = new NetworkDownGracePeriod(
+                    timer,
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            synchronized(ReconnectPluginActivator.this)
+                            {
+                                if(connectedInterfaces.isEmpty())
+                                    unregisterAll();
+                            }
+                        }
+                    });
+
         this.networkAddressManagerService
             = ServiceUtils.getService(
                     bundleContext,
@@ -459,7 +503,27 @@ public class ReconnectPluginActivator
      */
     public synchronized void configurationChanged(ChangeEvent event)
     {
-        if(event.getType() == ChangeEvent.IFACE_UP)
+        if(event.getType() == ChangeEvent.ADDRESS_UP)
+        {
+            Set<InetAddress> addresses
+                = interfaceAddresses.get((String)event.getSource());
+
+            if(addresses == null)
+            {
+                addresses = new HashSet<InetAddress>();
+                interfaceAddresses.put((String)event.getSource(), addresses);
+            }
+            addresses.add(event.getAddress());
+        }
+        else if(event.getType() == ChangeEvent.ADDRESS_DOWN)
+        {
+            Set<InetAddress> addresses
+                = interfaceAddresses.get((String)event.getSource());
+
+            if(addresses != null)
+                addresses.remove(event.getAddress());
+        }
+        else if(event.getType() == ChangeEvent.IFACE_UP)
         {
             // no connection so one is up, lets connect
             if(connectedInterfaces.isEmpty())
@@ -489,8 +553,10 @@ public class ReconnectPluginActivator
         else if(event.getType() == ChangeEvent.IFACE_DOWN)
         {
             String ifaceName = (String)event.getSource();
+            List<InetAddress> addressesBeforeOutage = getLocalAddresses();
 
             connectedInterfaces.remove(ifaceName);
+            interfaceAddresses.remove(ifaceName);
 
             // one is down and at least one more is connected
             if(connectedInterfaces.size() > 0)
@@ -520,30 +586,20 @@ public class ReconnectPluginActivator
             }
             else
             {
-                // we must disconnect every pp and put all to be need of reconnecting
-                needsReconnection.addAll(autoReconnEnabledProviders.keySet());
-                // there can by and some that are currently going to reconnect
-                // must take care of them too, cause there is no net and they won't succeed
-                needsReconnection.addAll(currentlyReconnecting.keySet());
-
-                Iterator<ProtocolProviderService> iter =
-                    needsReconnection.iterator();
-                while (iter.hasNext())
-                {
-                    ProtocolProviderService pp = iter.next();
+                connectedInterfaces.clear();
 
-                    // if provider is scheduled for reconnect,
-                    // cancel it there is no network
-                    if(currentlyReconnecting.containsKey(pp))
-                    {
-                        currentlyReconnecting.remove(pp).cancel();
-                    }
+                long gracePeriod = getConfigurationService().getLong(
+                    NETWORK_DOWN_GRACE_PERIOD_PROP, 0);
 
-                    // don't reconnect just unregister if needed.
-                    unregister(pp, false, null, null);
+                if(gracePeriod <= 0 || networkDownGracePeriod == null)
+                {
+                    unregisterAll();
+                }
+                else
+                {
+                    networkDownGracePeriod.start(
+                        gracePeriod*1000, addressesBeforeOutage);
                 }
-
-                connectedInterfaces.clear();
 
                 onNetworkDown();
             }
@@ -557,6 +613,50 @@ public class ReconnectPluginActivator
         }
     }
 
+    /**
+     * Returns the local addresses of all connected interfaces.
+     *
+     * @return the local addresses of all connected interfaces
+     */
+    private List<InetAddress> getLocalAddresses()
+    {
+        List<InetAddress> addresses = new ArrayList<InetAddress>();
+
+        for(Set<InetAddress> ifaceAddresses : interfaceAddresses.values())
+            addresses.addAll(ifaceAddresses);
+        return addresses;
+    }
+
+    /**
+     * Unregisters all providers as there is no network and marks them for
+     * reconnection once it comes back.
+     */
+    private void unregisterAll()
+    {
+        // we must disconnect every pp and put all to be need of reconnecting
+        needsReconnection.addAll(autoReconnEnabledProviders.keySet());
+        // there can by and some that are currently going to reconnect
+        // must take care of them too, cause there is no net and they won't succeed
+        needsReconnection.addAll(currentlyReconnecting.keySet());
+
+        Iterator<ProtocolProviderService> iter =
+            needsReconnection.iterator();
+        while (iter.hasNext())
+        {
+            ProtocolProviderService pp = iter.next();
+
+            // if provider is scheduled for reconnect,
+            // cancel it there is no network
+            if(currentlyReconnecting.containsKey(pp))
+            {
+                currentlyReconnecting.remove(pp).cancel();
+            }
+
+            // don't reconnect just unregister if needed.
+            unregister(pp, false, null, null);
+        }
+    }
+
     /**
      * Unregisters the ProtocolProvider. Make sure to do it in separate thread
      * so we don't block other processing.
@@ -1022,6 +1122,25 @@ public class ReconnectPluginActivator
      */
     private void onNetworkUp()
     {
+        // the network is back before we gave up on the connections
+        if(networkDownGracePeriod != null && networkDownGracePeriod.cancel())
+        {
+            if(networkDownGracePeriod.isAddressesBack(getLocalAddresses()))
+            {
+                if (logger.isInfoEnabled())
+                    logger.info("Network is back, keeping current connections");
+            }
+            else
+            {
+                if (logger.isInfoEnabled())
+                    logger.info("Network is back with other addresses, "
+                        + "reconnecting");
+
+                // the connections were bound to addresses we no longer have
+                needsReconnection.addAll(autoReconnEnabledProviders.keySet());
+            }
+        }
+
         if(delayedNetworkDown != null)
         {
             delayedNetworkDown.cancel();
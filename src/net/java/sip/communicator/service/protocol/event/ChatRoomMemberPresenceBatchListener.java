@@ -0,0 +1,30 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+import java.util.*;
+
+/**
+ * A <tt>ChatRoomMemberPresenceListener</tt> which is able to process several
+ * changes in the presence of the members of a chat room at once, e.g. the
+ * whole list of the members reported when joining a large chat room. Chat
+ * rooms which batch presence changes deliver them to such listeners in a
+ * single call rather than one by one.
+ */
+public interface ChatRoomMemberPresenceBatchListener
+    extends ChatRoomMemberPresenceListener
+{
+    /**
+     * Called to notify interested parties that the presence of several members
+     * of a particular chat room has changed.
+     *
+     * @param evts the <tt>ChatRoomMemberPresenceChangeEvent</tt>s in the
+     * order in which the changes have occurred
+     */
+    public void membersPresenceChanged(
+            List<ChatRoomMemberPresenceChangeEvent> evts);
+}
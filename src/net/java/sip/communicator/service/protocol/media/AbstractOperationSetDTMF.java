@@ -11,6 +11,7 @@ import org.jitsi.service.configuration.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.service.neomedia.codec.*;
 import org.jitsi.service.neomedia.format.*;
+import org.jitsi.service.protocol.DTMFTone;
 import org.jitsi.util.*;
 
 import java.util.*;
@@ -45,6 +46,13 @@ public abstract class AbstractOperationSetDTMF
      */
     protected int volume;
 
+    /**
+     * The queues of the sequences of tones being sent to the
+     * <tt>CallPeer</tt>s.
+     */
+    private final Map<CallPeer, DTMFQueue> queues
+        = new WeakHashMap<CallPeer, DTMFQueue>();
+
     /**
      * Creates the <tt>AbstractOperationSetDTMF</tt> and initialize
      * some settings.
@@ -59,6 +67,123 @@ public abstract class AbstractOperationSetDTMF
         this.volume = getVolumeSetting(pps);
     }
 
+    /**
+     * Creates the <tt>AbstractOperationSetDTMF</tt> with specific settings
+     * rather than the ones of an account.
+     *
+     * @param dtmfMethod the DTMF method used to send tones
+     * @param minimalToneDuration the minimal tone duration
+     * @param maximalToneDuration the maximal tone duration
+     * @param volume the tone volume
+     */
+    AbstractOperationSetDTMF(
+            DTMFMethod dtmfMethod,
+            int minimalToneDuration,
+            int maximalToneDuration,
+            int volume)
+    {
+        this.dtmfMethod = dtmfMethod;
+        this.minimalToneDuration = minimalToneDuration;
+        this.maximalToneDuration = maximalToneDuration;
+        this.volume = volume;
+    }
+
+    /**
+     * Queues a sequence of DTMF tones to be sent to <tt>callPeer</tt> on a
+     * scheduler thread and returns without waiting for them to be sent.
+     * Sequences queued for the same <tt>callPeer</tt> are sent in the order in
+     * which they have been queued. A tone which fails to be sent, e.g. because
+     * <tt>callPeer</tt> has rejected its INFO request, drops the rest of the
+     * queue.
+     *
+     * @param callPeer the call peer to send the tones to.
+     * @param tones the values of the tones to send; a comma stands for a
+     * pause.
+     * @param toneDuration the duration of each tone in milliseconds.
+     * @param pauseDuration the duration of the silence between two tones in
+     * milliseconds.
+     */
+    public void sendDTMF(
+            CallPeer callPeer,
+            String tones,
+            int toneDuration,
+            int pauseDuration)
+    {
+        if (callPeer == null || tones == null)
+        {
+            throw new NullPointerException("Argument is null");
+        }
+        if (pauseDuration < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Negative pause duration: " + pauseDuration);
+        }
+
+        List<DTMFTone> sequence = DTMFQueue.parse(tones);
+        DTMFQueue queue;
+
+        synchronized (queues)
+        {
+            queue = queues.get(callPeer);
+            if (queue == null)
+            {
+                queue = new DTMFQueue(this, callPeer);
+                queues.put(callPeer, queue);
+            }
+        }
+        queue.add(
+                sequence,
+                Math.max(toneDuration, minimalToneDuration),
+                pauseDuration);
+    }
+
+    /**
+     * Drops the queued DTMF tones which have not been sent to
+     * <tt>callPeer</tt> yet.
+     *
+     * @param callPeer the call peer to stop sending queued tones to.
+     */
+    public void cancelDTMF(CallPeer callPeer)
+    {
+        DTMFQueue queue;
+
+        synchronized (queues)
+        {
+            queue = queues.get(callPeer);
+        }
+        if (queue != null)
+            queue.cancel();
+    }
+
+    /**
+     * Sends a whole DTMF tone of a specific duration at once if the DTMF
+     * method in use carries the duration along with the tone, so that a
+     * queued tone does not have to be started and then stopped. The default
+     * implementation does not.
+     *
+     * @param callPeer the call peer to send <tt>tone</tt> to.
+     * @param tone the DTMF tone to send.
+     * @param duration the duration of <tt>tone</tt> in milliseconds.
+     * @param queue the <tt>DTMFQueue</tt> to tell through
+     * {@link DTMFQueue#toneSent()} or {@link DTMFQueue#toneFailed(Throwable)}
+     * once <tt>tone</tt> has been sent, because it is not to send the next
+     * tone before.
+     * @return <tt>true</tt> if <tt>tone</tt> is being sent; <tt>false</tt> if
+     * it is to be sent by {@link #startSendingDTMF(CallPeer, DTMFTone)} and
+     * {@link #stopSendingDTMF(CallPeer)}.
+     * @throws OperationFailedException if sending <tt>tone</tt> fails right
+     * away, in which case <tt>queue</tt> is not told.
+     */
+    protected boolean sendDTMFTone(
+            CallPeer callPeer,
+            DTMFTone tone,
+            int duration,
+            DTMFQueue queue)
+        throws OperationFailedException
+    {
+        return false;
+    }
+
     /**
      * Gets the minimal DTMF tone duration for this account.
      *
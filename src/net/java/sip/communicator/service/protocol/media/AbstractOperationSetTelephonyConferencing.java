@@ -8,6 +8,7 @@ package net.java.sip.communicator.service.protocol.media;
 
 import java.beans.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
@@ -162,6 +163,23 @@ public abstract class AbstractOperationSetTelephonyConferencing<
      */
     protected final ProtocolProviderServiceT parentProvider;
 
+    /**
+     * The states of the telephony conferences, as described in the
+     * Conference Information documents sent to their participants, by
+     * <tt>CallConference</tt>.
+     */
+    private final Map<CallConference, ConferenceInfoState> conferenceInfoStates
+        = new WeakHashMap<CallConference, ConferenceInfoState>();
+
+    /**
+     * The schedulers which limit the rate of the Conference Information
+     * notifications sent to the participants of the telephony conferences, by
+     * <tt>CallConference</tt>.
+     */
+    private final Map<CallConference, ConferenceNotifyScheduler>
+        conferenceNotifySchedulers
+            = new WeakHashMap<CallConference, ConferenceNotifyScheduler>();
+
     /**
      * Initializes a new <tt>AbstractOperationSetTelephonyConferencing</tt>
      * instance which is to provide telephony conferencing services for the
@@ -350,13 +368,47 @@ public abstract class AbstractOperationSetTelephonyConferencing<
     public Call createConfCall(String[] callees, CallConference conference)
         throws OperationFailedException
     {
-        List<CalleeAddressT> calleeAddresses
-            = new ArrayList<CalleeAddressT>(callees.length);
+        /*
+         * The callees are set up concurrently: first their addresses are
+         * resolved so that an invalid one fails the conference before any
+         * callee is invited, then they are invited.
+         */
+        ConferenceSetupExecutor executor
+            = ConferenceSetupExecutor.getInstance();
+        final long[] parseTimes = new long[callees.length];
+        final long[] inviteTimes = new long[callees.length];
+        long startTime = System.nanoTime();
+        List<Callable<CalleeAddressT>> parseTasks
+            = new ArrayList<Callable<CalleeAddressT>>(callees.length);
+
+        for (int i = 0; i < callees.length; i++)
+        {
+            final int index = i;
+            final String callee = callees[i];
 
-        for (String callee : callees)
-            calleeAddresses.add(parseAddressString(callee));
+            parseTasks.add(
+                    new Callable<CalleeAddressT>()
+                    {
+                        public CalleeAddressT call()
+                            throws OperationFailedException
+                        {
+                            long time = System.nanoTime();
 
-        MediaAwareCallT call = createOutgoingCall();
+                            try
+                            {
+                                return parseAddressString(callee);
+                            }
+                            finally
+                            {
+                                parseTimes[index] = System.nanoTime() - time;
+                            }
+                        }
+                    });
+        }
+
+        List<CalleeAddressT> calleeAddresses = executor.invokeAll(parseTasks);
+        long parseEndTime = System.nanoTime();
+        final MediaAwareCallT call = createOutgoingCall();
 
         if (conference == null)
             conference = call.getConference();
@@ -364,12 +416,87 @@ public abstract class AbstractOperationSetTelephonyConferencing<
             call.setConference(conference);
         conference.setConferenceFocus(true);
 
-        for (CalleeAddressT calleeAddress : calleeAddresses)
-            doInviteCalleeToCall(calleeAddress, call);
+        long callEndTime = System.nanoTime();
+        List<Callable<CallPeer>> inviteTasks
+            = new ArrayList<Callable<CallPeer>>(calleeAddresses.size());
+
+        for (int i = 0; i < calleeAddresses.size(); i++)
+        {
+            final int index = i;
+            final CalleeAddressT calleeAddress = calleeAddresses.get(i);
+
+            inviteTasks.add(
+                    new Callable<CallPeer>()
+                    {
+                        public CallPeer call()
+                            throws OperationFailedException
+                        {
+                            long time = System.nanoTime();
+
+                            try
+                            {
+                                return doInviteCalleeToCall(
+                                        calleeAddress,
+                                        call);
+                            }
+                            finally
+                            {
+                                inviteTimes[index] = System.nanoTime() - time;
+                            }
+                        }
+                    });
+        }
+
+        try
+        {
+            executor.invokeAll(inviteTasks);
+        }
+        finally
+        {
+            if (logger.isInfoEnabled())
+            {
+                long endTime = System.nanoTime();
+                StringBuilder msg
+                    = new StringBuilder("Set up a conference with ")
+                        .append(callees.length)
+                        .append(" callee(s): resolving addresses ")
+                        .append(toMillis(parseEndTime - startTime))
+                        .append(" ms, creating the call ")
+                        .append(toMillis(callEndTime - parseEndTime))
+                        .append(" ms, inviting ")
+                        .append(toMillis(endTime - callEndTime))
+                        .append(" ms, total ")
+                        .append(toMillis(endTime - startTime))
+                        .append(" ms.");
+
+                for (int i = 0; i < callees.length; i++)
+                {
+                    msg.append(' ')
+                        .append(callees[i])
+                        .append(": ")
+                        .append(toMillis(parseTimes[i]))
+                        .append('+')
+                        .append(toMillis(inviteTimes[i]))
+                        .append(" ms;");
+                }
+                logger.info(msg);
+            }
+        }
 
         return call;
     }
 
+    /**
+     * Converts a number of nanoseconds into milliseconds.
+     *
+     * @param nanos the number of nanoseconds
+     * @return the number of milliseconds in <tt>nanos</tt>
+     */
+    private static long toMillis(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
     /**
      * Creates a new outgoing <tt>Call</tt> into which conference callees are to
      * be invited by this <tt>OperationSetTelephonyConferencing</tt>.
@@ -1000,84 +1127,160 @@ public abstract class AbstractOperationSetTelephonyConferencing<
     }
 
     /**
-     * Creates a <tt>ConferenceInfoDocument</tt> which describes the current
-     * state of the conference in which <tt>callPeer</tt> participates. The
-     * created document contains a "full" description (as opposed to a partial
-     * description, see RFC4575).
+     * Creates the Conference Information (RFC4575) notification to be sent to
+     * <tt>callPeer</tt> in order to bring it up to date with the current state
+     * of the conference in which it participates. Unless <tt>full</tt> is
+     * <tt>true</tt> and if partial notifications are enabled, the returned
+     * notification only describes the users which have changed since the
+     * last notification sent to <tt>callPeer</tt>.
      *
-     * @return a <tt>ConferenceInfoDocument</tt> which describes the current
-     * state of the conference in which this <tt>CallPeer</tt> participates.
+     * @param callPeer the <tt>CallPeer</tt> to be notified
+     * @param full <tt>true</tt> to describe the whole conference even if
+     * nothing has changed since the last notification sent to
+     * <tt>callPeer</tt>
+     * @return the notification to be sent to <tt>callPeer</tt> or
+     * <tt>null</tt> if nothing has changed since the last notification sent to
+     * it
      */
-    protected ConferenceInfoDocument getCurrentConferenceInfo(
-            MediaAwareCallPeer<?,?,?> callPeer)
+    protected ConferenceInfoState.Notification createConferenceInfoNotification(
+            MediaAwareCallPeer<?,?,?> callPeer,
+            boolean full)
     {
-        ConferenceInfoDocument confInfo;
-        try
-        {
-           confInfo = new ConferenceInfoDocument();
-        }
-        catch (XMLException e)
-        {
-            return null;
-        }
-        confInfo.setState(ConferenceInfoDocument.State.FULL);
-        confInfo.setEntity(getLocalEntity(callPeer));
-
         Call call = callPeer.getCall();
         if (call == null)
             return null;
 
         List<CallPeer> conferenceCallPeers = CallConference.getCallPeers(call);
-        confInfo.setUserCount(
-                1 /* the local peer/user */ + conferenceCallPeers.size());
-
-        /* The local user */
-        addPeerToConferenceInfo(confInfo, callPeer, false);
+        List<ConferenceInfoState.UserState> users
+            = new ArrayList<ConferenceInfoState.UserState>(
+                    conferenceCallPeers.size());
 
         /* Remote users */
         for (CallPeer conferenceCallPeer : conferenceCallPeers)
         {
             if (conferenceCallPeer instanceof MediaAwareCallPeer<?,?,?>)
             {
-                addPeerToConferenceInfo(
-                        confInfo,
-                        (MediaAwareCallPeer<?,?,?>)conferenceCallPeer,
-                        true);
+                users.add(
+                        createUserState(
+                                (MediaAwareCallPeer<?,?,?>) conferenceCallPeer,
+                                true));
+            }
+        }
+
+        ConferenceInfoState state = getConferenceInfoState(call);
+
+        state.update(users);
+
+        return
+            state.createNotification(
+                    getLocalEntity(callPeer),
+                    getConferenceInfoSid(callPeer),
+                    /* The local user */
+                    createUserState(callPeer, false),
+                    callPeer.getLastConferenceInfoSent(),
+                    isPartialNotificationEnabled(),
+                    full);
+    }
+
+    /**
+     * Returns the <tt>ConferenceInfoState</tt> of the telephony conference in
+     * which a specific <tt>Call</tt> participates, creating it if necessary.
+     *
+     * @param call the <tt>Call</tt>
+     * @return the <tt>ConferenceInfoState</tt> of the telephony conference in
+     * which <tt>call</tt> participates
+     */
+    private ConferenceInfoState getConferenceInfoState(Call call)
+    {
+        CallConference conference = call.getConference();
+
+        synchronized (conferenceInfoStates)
+        {
+            ConferenceInfoState state = conferenceInfoStates.get(conference);
+
+            if (state == null)
+            {
+                state = new ConferenceInfoState();
+                conferenceInfoStates.put(conference, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Returns the <tt>ConferenceNotifyScheduler</tt> which limits the rate of
+     * the Conference Information notifications sent to the participants of
+     * the telephony conference in which a specific <tt>CallPeer</tt>
+     * participates, creating it if necessary.
+     *
+     * @param callPeer the <tt>CallPeer</tt>
+     * @return the <tt>ConferenceNotifyScheduler</tt> of the telephony
+     * conference in which <tt>callPeer</tt> participates or <tt>null</tt> if
+     * <tt>callPeer</tt> has already been removed from its call and is not to
+     * be notified anymore
+     */
+    protected ConferenceNotifyScheduler getConferenceNotifyScheduler(
+            MediaAwareCallPeer<?,?,?> callPeer)
+    {
+        Call call = callPeer.getCall();
+        CallConference conference
+            = (call == null) ? null : call.getConference();
+
+        if (conference == null)
+            return null;
+
+        synchronized (conferenceNotifySchedulers)
+        {
+            ConferenceNotifyScheduler scheduler
+                = conferenceNotifySchedulers.get(conference);
+
+            if (scheduler == null)
+            {
+                scheduler = new ConferenceNotifyScheduler();
+                conferenceNotifySchedulers.put(conference, scheduler);
             }
+            return scheduler;
         }
+    }
 
-        return confInfo;
+    /**
+     * Returns the value of the <tt>sid</tt> attribute of the
+     * <tt>conference-info</tt> element of the notifications sent to
+     * <tt>callPeer</tt>. This is not part of RFC4575 and the default
+     * implementation returns <tt>null</tt> i.e. does not add the attribute.
+     *
+     * @param callPeer the <tt>CallPeer</tt> to be notified
+     * @return the value of the <tt>sid</tt> attribute or <tt>null</tt>
+     */
+    protected String getConferenceInfoSid(MediaAwareCallPeer<?,?,?> callPeer)
+    {
+        return null;
     }
 
     /**
-     * Adds a <tt>user</tt> element to <tt>confInfo</tt> which describes
-     * <tt>callPeer</tt>, or the local peer if <tt>remote</tt> is <tt>false</tt>.
+     * Describes <tt>callPeer</tt>, or the local peer if <tt>remote</tt> is
+     * <tt>false</tt>, as a <tt>user</tt> element of a Conference Information
+     * document.
      *
-     * @param confInfo the <tt>ConferenceInformationDocument</tt> to which to
-     * add a <tt>user</tt> element
      * @param callPeer the <tt>CallPeer</tt> which should be described
      * @param remote <tt>true</tt> to describe <tt>callPeer</tt>, or
      * <tt>false</tt> to describe the local peer.
+     * @return the description of <tt>callPeer</tt> or of the local peer
      */
-    private void addPeerToConferenceInfo(
-            ConferenceInfoDocument confInfo,
+    private ConferenceInfoState.UserState createUserState(
             MediaAwareCallPeer<?,?,?> callPeer,
             boolean remote)
     {
         String entity
             = remote ? callPeer.getEntity() : getLocalEntity(callPeer);
-        ConferenceInfoDocument.User user = confInfo.addNewUser(entity);
-
         String displayName
             = remote ? callPeer.getDisplayName() : getLocalDisplayName();
-        user.setDisplayText(displayName);
-
-        ConferenceInfoDocument.Endpoint endpoint = user.addNewEndpoint(entity);
-
-        endpoint.setStatus(
-            remote
+        ConferenceInfoDocument.EndpointStatusType status
+            = remote
                 ? getEndpointStatus(callPeer)
-                : ConferenceInfoDocument.EndpointStatusType.connected);
+                : ConferenceInfoDocument.EndpointStatusType.connected;
+        List<ConferenceInfoState.MediaState> medias
+            = new ArrayList<ConferenceInfoState.MediaState>(2);
 
         CallPeerMediaHandler<?> mediaHandler
             = callPeer.getMediaHandler();
@@ -1142,16 +1345,24 @@ public abstract class AbstractOperationSetTelephonyConferencing<
 
                 if ((srcId != -1) || (direction != MediaDirection.INACTIVE))
                 {
-                    ConferenceInfoDocument.Media media
-                        = endpoint.addNewMedia(mediaType.toString());
-
-                    media.setType(mediaType.toString());
-                    if (srcId != -1)
-                        media.setSrcId(Long.toString(srcId));
-                    media.setStatus(direction.toString());
+                    medias.add(
+                            new ConferenceInfoState.MediaState(
+                                    mediaType.toString(),
+                                    mediaType.toString(),
+                                    (srcId == -1)
+                                        ? null
+                                        : Long.toString(srcId),
+                                    direction.toString()));
                 }
             }
         }
+
+        return
+            new ConferenceInfoState.UserState(
+                    entity,
+                    displayName,
+                    status,
+                    medias);
     }
 
     /**
@@ -1225,124 +1436,6 @@ public abstract class AbstractOperationSetTelephonyConferencing<
         return null;
     }
 
-    /**
-     * @param from A document with state <tt>full</tt> from which to generate a
-     * "diff".
-     * @param to A document with state <tt>full</tt> to which to generate a
-     * "diff"
-     * @return a <tt>ConferenceInfoDocument</tt>, such that when it is applied
-     * to <tt>from</tt> using the procedure defined in section 4.6 of RFC4575,
-     * the result is <tt>to</tt>. May return <tt>null</tt> if <tt>from</tt> and
-     * <tt>to</tt> are not found to be different (that is, in case no document
-     * needs to be sent)
-     */
-    protected ConferenceInfoDocument getConferenceInfoDiff(
-            ConferenceInfoDocument from,
-            ConferenceInfoDocument to)
-        throws IllegalArgumentException
-    {
-        if (from.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'from' document needs to "
-                    + "have state=full");
-        if (to.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'to' document needs to "
-                    + "have state=full");
-
-        if (!isPartialNotificationEnabled())
-        {
-            return conferenceInfoDocumentsMatch(from, to)
-                ? null
-                : to;
-        }
-
-        ConferenceInfoDocument diff;
-        try
-        {
-            diff = new ConferenceInfoDocument();
-        }
-        catch (XMLException e)
-        {
-            return conferenceInfoDocumentsMatch(from, to)
-                    ? null
-                    : to;
-        }
-
-        diff.setState(ConferenceInfoDocument.State.PARTIAL);
-        diff.setUsersState(ConferenceInfoDocument.State.PARTIAL);
-
-        //temporary, used for xmpp only
-        String sid = to.getSid();
-        if (sid != null && !sid.equals(""))
-            diff.setSid(to.getSid());
-
-        diff.setUserCount(to.getUserCount());
-        diff.setEntity(to.getEntity());
-
-        boolean needsPartial = false;
-        boolean hasDifference = false;
-        if (!from.getEntity().equals(to.getEntity())
-                || from.getUserCount() != to.getUserCount())
-        {
-            hasDifference = true;
-        }
-
-        // find users which have been removed in 'to'
-        for (ConferenceInfoDocument.User user : from.getUsers())
-        {
-            if(to.getUser(user.getEntity()) == null)
-            {
-                ConferenceInfoDocument.User deletedUser
-                        = diff.addNewUser(user.getEntity());
-                deletedUser.setState(ConferenceInfoDocument.State.DELETED);
-                hasDifference = true;
-                needsPartial = true;
-            }
-        }
-
-        for (ConferenceInfoDocument.User toUser : to.getUsers())
-        {
-            ConferenceInfoDocument.User fromUser
-                    = from.getUser(toUser.getEntity());
-            if (!usersMatch(toUser, fromUser))
-            {
-                hasDifference = true;
-                diff.addUser(toUser);
-            }
-            else
-            {
-                //if there is a "user" element which didn't change, we skip it
-                //and we need to send state=partial, because otherwise it will
-                //be removed by the recipient
-                needsPartial = true;
-            }
-        }
-
-        if (logger.isDebugEnabled())
-        {
-            logger.debug("Generated partial notification. From: " + from
-                    + "\nTo: " + to + "\nDiff: " + diff + "(hasDifference: "
-                    + hasDifference + ")");
-        }
-
-        if (!hasDifference)
-            return null;
-
-        /*
-         * In some cases (when all the user elements have changed, and none have
-         * been removed) we are essentially generating a full document, but
-         * marking it 'partial'. In this case it is better to send the full
-         * document, just in case the receiver lost the previous document
-         * somehow.
-         */
-        if (!needsPartial)
-        {
-            diff.setState(ConferenceInfoDocument.State.FULL);
-            diff.setUsersState(ConferenceInfoDocument.State.FULL);
-        }
-
-        return diff;
-    }
-
     /**
      * Updates the conference-related properties of a specific <tt>CallPeer</tt>
      * such as <tt>conferenceFocus</tt> and <tt>conferenceMembers</tt> with
@@ -1472,156 +1565,6 @@ public abstract class AbstractOperationSetTelephonyConferencing<
         return setConferenceInfoDocument(callPeer, newDocument);
     }
 
-    /**
-     * @param a A document with state <tt>full</tt> which to compare to
-     * <tt>b</tt>
-     * @param b A document with state <tt>full</tt> which to compare to
-     * <tt>a</tt>
-     * @return <tt>false</tt> if the two documents are found to be different,
-     * <tt>true</tt> otherwise (that is, it can return true for non-identical
-     * documents).
-     */
-    private boolean conferenceInfoDocumentsMatch(
-            ConferenceInfoDocument a,
-            ConferenceInfoDocument b)
-    {
-        if (a.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'a' document needs to"
-                    + "have state=full");
-        if (b.getState() != ConferenceInfoDocument.State.FULL)
-            throw new IllegalArgumentException("The 'b' document needs to"
-                    + "have state=full");
-
-        if (!stringsMatch(a.getEntity(), b.getEntity()))
-            return false;
-        else if (a.getUserCount() != b.getUserCount())
-            return false;
-        else if (a.getUsers().size() != b.getUsers().size())
-            return false;
-
-        for(ConferenceInfoDocument.User aUser : a.getUsers())
-        {
-            if (!usersMatch(aUser, b.getUser(aUser.getEntity())))
-                return false;
-        }
-        return true;
-    }
-
-    /**
-     * Checks whether two <tt>ConferenceInfoDocument.User</tt> instances
-     * match according to the needs of our implementation. Can return
-     * <tt>true</tt> for users which are not identical.
-     *
-     * @param a A <tt>ConferenceInfoDocument.User</tt> to compare
-     * @param b A <tt>ConferenceInfoDocument.User</tt> to compare
-     * @return <tt>false</tt> if <tt>a</tt> and <tt>b</tt> are found to be
-     * different in a way that is significant for our needs, <tt>true</tt>
-     * otherwise.
-     */
-    private boolean usersMatch(
-            ConferenceInfoDocument.User a,
-            ConferenceInfoDocument.User b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        else if (!stringsMatch(a.getEntity(), b.getEntity()))
-            return false;
-        else if (!stringsMatch(a.getDisplayText(), b.getDisplayText()))
-            return false;
-        else if (a.getEndpoints().size() != b.getEndpoints().size())
-            return false;
-
-        for (ConferenceInfoDocument.Endpoint aEndpoint : a.getEndpoints())
-        {
-            if (!endpointsMatch(aEndpoint, b.getEndpoint(aEndpoint.getEntity())))
-                return false;
-        }
-
-        return true;
-    }
-
-    /**
-     * Checks whether two <tt>ConferenceInfoDocument.Endpoint</tt> instances
-     * match according to the needs of our implementation. Can return
-     * <tt>true</tt> for endpoints which are not identical.
-     *
-     * @param a A <tt>ConferenceInfoDocument.Endpoint</tt> to compare
-     * @param b A <tt>ConferenceInfoDocument.Endpoint</tt> to compare
-     * @return <tt>false</tt> if <tt>a</tt> and <tt>b</tt> are found to be
-     * different in a way that is significant for our needs, <tt>true</tt>
-     * otherwise.
-     */
-    private boolean endpointsMatch(
-            ConferenceInfoDocument.Endpoint a,
-            ConferenceInfoDocument.Endpoint b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        else if (!stringsMatch(a.getEntity(), b.getEntity()))
-            return false;
-        else if (a.getStatus() != b.getStatus())
-            return false;
-        else if (a.getMedias().size() != b.getMedias().size())
-            return false;
-
-        for (ConferenceInfoDocument.Media aMedia : a.getMedias())
-        {
-            if (!mediasMatch(aMedia, b.getMedia(aMedia.getId())))
-                return false;
-        }
-        return true;
-    }
-
-    /**
-     * Checks whether two <tt>ConferenceInfoDocument.Media</tt> instances
-     * match according to the needs of our implementation. Can return
-     * <tt>true</tt> for endpoints which are not identical.
-     *
-     * @param a A <tt>ConferenceInfoDocument.Media</tt> to compare
-     * @param b A <tt>ConferenceInfoDocument.Media</tt> to compare
-     * @return <tt>false</tt> if <tt>a</tt> and <tt>b</tt> are found to be
-     * different in a way that is significant for our needs, <tt>true</tt>
-     * otherwise.
-     */
-    private boolean mediasMatch(
-            ConferenceInfoDocument.Media a,
-            ConferenceInfoDocument.Media b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        else if (!stringsMatch(a.getId(), b.getId()))
-            return false;
-        else if (!stringsMatch(a.getSrcId(), b.getSrcId()))
-            return false;
-        else if (!stringsMatch(a.getType(), b.getType()))
-            return false;
-        else if (!stringsMatch(a.getStatus(), b.getStatus()))
-            return false;
-
-        return true;
-    }
-
-    /**
-     * @param a A <tt>String</tt> to compare to <tt>b</tt>
-     * @param b A <tt>String</tt> to compare to <tt>a</tt>
-     * @return <tt>true</tt> if and only if <tt>a</tt> and <tt>b</tt> are both
-     * <tt>null</tt>, or they are equal as <tt>String</tt>s
-     */
-    private boolean stringsMatch(String a, String b)
-    {
-        if (a == null && b == null)
-            return true;
-        else if (a == null || b == null)
-            return false;
-        return a.equals(b);
-    }
-
     /**
      * Checks whether sending of RFC4575 partial notifications is enabled in
      * the configuration. If disabled, RFC4575 documents will always be sent
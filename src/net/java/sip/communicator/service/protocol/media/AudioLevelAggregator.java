@@ -0,0 +1,339 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.neomedia.event.*;
+
+/**
+ * Samples the audio levels reported by a <tt>MediaStream</tt> at packet rate
+ * and delivers them to a listener in batches, one per interval. The highest
+ * level of each SSRC/CSRC within an interval is kept in primitive arrays which
+ * are reused from one interval to the next, so that recording a level does
+ * not allocate. A delivery is only scheduled, on the scheduler shared by the
+ * media tasks, when a level is recorded, i.e. silent or idle streams do not
+ * cause any work.
+ */
+public class AudioLevelAggregator
+    implements CsrcAudioLevelListener,
+               SimpleAudioLevelListener
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>AudioLevelAggregator</tt> class and
+     * its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(AudioLevelAggregator.class);
+
+    /**
+     * The name of the property which specifies the number of milliseconds
+     * audio levels are collected for before being delivered. <tt>0</tt>
+     * delivers each level as soon as it is reported.
+     */
+    public static final String INTERVAL_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "AUDIO_LEVEL_INTERVAL";
+
+    /**
+     * The default number of milliseconds audio levels are collected for.
+     */
+    public static final long DEFAULT_INTERVAL = 100;
+
+    /**
+     * The listener the CSRC audio levels are delivered to or <tt>null</tt>.
+     */
+    private final CsrcAudioLevelListener csrcListener;
+
+    /**
+     * The listener the stream audio levels are delivered to or <tt>null</tt>.
+     */
+    private final SimpleAudioLevelListener simpleListener;
+
+    /**
+     * The number of milliseconds audio levels are collected for.
+     */
+    private final long interval;
+
+    /**
+     * Delivers the collected audio levels.
+     */
+    private final Runnable deliverer
+        = new Runnable()
+        {
+            public void run()
+            {
+                deliver();
+            }
+        };
+
+    /**
+     * The SSRCs/CSRCs whose levels have been reported in the current
+     * interval, in the order of their first report.
+     */
+    private long[] ssrcs = new long[8];
+
+    /**
+     * The highest levels of {@link #ssrcs} in the current interval.
+     */
+    private int[] levels = new int[8];
+
+    /**
+     * The number of valid elements of {@link #ssrcs} and {@link #levels}.
+     */
+    private int count = 0;
+
+    /**
+     * The highest stream level in the current interval or <tt>-1</tt>.
+     */
+    private int level = -1;
+
+    /**
+     * Whether a delivery has been scheduled.
+     */
+    private boolean scheduled = false;
+
+    /**
+     * Initializes a new <tt>AudioLevelAggregator</tt> which delivers CSRC
+     * audio levels.
+     *
+     * @param listener the listener to deliver the levels to
+     * @param interval the number of milliseconds levels are collected for
+     */
+    public AudioLevelAggregator(CsrcAudioLevelListener listener, long interval)
+    {
+        this(listener, null, interval);
+    }
+
+    /**
+     * Initializes a new <tt>AudioLevelAggregator</tt> which delivers stream
+     * audio levels.
+     *
+     * @param listener the listener to deliver the levels to
+     * @param interval the number of milliseconds levels are collected for
+     */
+    public AudioLevelAggregator(
+            SimpleAudioLevelListener listener,
+            long interval)
+    {
+        this(null, listener, interval);
+    }
+
+    /**
+     * Initializes a new <tt>AudioLevelAggregator</tt>.
+     *
+     * @param csrcListener the listener to deliver the CSRC levels to
+     * @param simpleListener the listener to deliver the stream levels to
+     * @param interval the number of milliseconds levels are collected for
+     */
+    private AudioLevelAggregator(
+            CsrcAudioLevelListener csrcListener,
+            SimpleAudioLevelListener simpleListener,
+            long interval)
+    {
+        this.csrcListener = csrcListener;
+        this.simpleListener = simpleListener;
+        this.interval = interval;
+    }
+
+    /**
+     * Returns a <tt>CsrcAudioLevelListener</tt> which delivers the levels to
+     * <tt>listener</tt> at the configured interval or <tt>listener</tt>
+     * itself if aggregation is disabled.
+     *
+     * @param listener the listener to deliver the levels to
+     * @return the listener to register with the <tt>MediaStream</tt>
+     */
+    public static CsrcAudioLevelListener aggregateCsrcLevels(
+            CsrcAudioLevelListener listener)
+    {
+        long interval = getConfiguredInterval();
+
+        return
+            (interval > 0)
+                ? new AudioLevelAggregator(listener, interval)
+                : listener;
+    }
+
+    /**
+     * Returns a <tt>SimpleAudioLevelListener</tt> which delivers the levels
+     * to <tt>listener</tt> at the configured interval or <tt>listener</tt>
+     * itself if aggregation is disabled.
+     *
+     * @param listener the listener to deliver the levels to
+     * @return the listener to register with the <tt>MediaStream</tt>
+     */
+    public static SimpleAudioLevelListener aggregateLevels(
+            SimpleAudioLevelListener listener)
+    {
+        long interval = getConfiguredInterval();
+
+        return
+            (interval > 0)
+                ? new AudioLevelAggregator(listener, interval)
+                : listener;
+    }
+
+    /**
+     * Records the CSRC audio levels reported by the stream.
+     *
+     * @param audioLevels pairs of SSRC/CSRC and level
+     */
+    public void audioLevelsReceived(long[] audioLevels)
+    {
+        if ((audioLevels == null) || (csrcListener == null))
+            return;
+
+        synchronized (this)
+        {
+            for (int i = 0; i + 1 < audioLevels.length; i += 2)
+            {
+                long ssrc = audioLevels[i];
+                int level = (int) audioLevels[i + 1];
+                int index = indexOf(ssrc);
+
+                if (index < 0)
+                {
+                    index = count++;
+                    if (index == ssrcs.length)
+                        grow();
+                    ssrcs[index] = ssrc;
+                    levels[index] = level;
+                }
+                else if (levels[index] < level)
+                    levels[index] = level;
+            }
+            scheduleDelivery();
+        }
+    }
+
+    /**
+     * Records the stream audio level reported by the stream.
+     *
+     * @param level the level
+     */
+    public void audioLevelChanged(int level)
+    {
+        if (simpleListener == null)
+            return;
+
+        synchronized (this)
+        {
+            if (this.level < level)
+                this.level = level;
+            scheduleDelivery();
+        }
+    }
+
+    /**
+     * Delivers the levels collected in the current interval and starts the
+     * next one.
+     */
+    void deliver()
+    {
+        long[] audioLevels = null;
+        int level;
+
+        synchronized (this)
+        {
+            scheduled = false;
+            if (count > 0)
+            {
+                audioLevels = new long[2 * count];
+                for (int i = 0; i < count; i++)
+                {
+                    audioLevels[2 * i] = ssrcs[i];
+                    audioLevels[2 * i + 1] = levels[i];
+                }
+                count = 0;
+            }
+            level = this.level;
+            this.level = -1;
+        }
+
+        try
+        {
+            if (audioLevels != null)
+                csrcListener.audioLevelsReceived(audioLevels);
+            if (level >= 0)
+                simpleListener.audioLevelChanged(level);
+        }
+        catch (Throwable t)
+        {
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+            logger.error("Failed to deliver audio levels", t);
+        }
+    }
+
+    /**
+     * Schedules the delivery of the levels collected in the current interval
+     * unless it has already been scheduled.
+     */
+    private void scheduleDelivery()
+    {
+        if (!scheduled)
+        {
+            scheduled = true;
+            MediaTaskExecutor.getScheduler().schedule(
+                    deliverer,
+                    interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the index of an SSRC/CSRC in {@link #ssrcs}.
+     *
+     * @param ssrc the SSRC/CSRC
+     * @return the index of <tt>ssrc</tt> or <tt>-1</tt>
+     */
+    private int indexOf(long ssrc)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (ssrcs[i] == ssrc)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Doubles the capacity of {@link #ssrcs} and {@link #levels}.
+     */
+    private void grow()
+    {
+        long[] newSsrcs = new long[2 * ssrcs.length];
+        int[] newLevels = new int[newSsrcs.length];
+
+        System.arraycopy(ssrcs, 0, newSsrcs, 0, ssrcs.length);
+        System.arraycopy(levels, 0, newLevels, 0, levels.length);
+        ssrcs = newSsrcs;
+        levels = newLevels;
+    }
+
+    /**
+     * Returns the configured number of milliseconds audio levels are
+     * collected for.
+     *
+     * @return the configured number of milliseconds audio levels are
+     * collected for
+     */
+    private static long getConfiguredInterval()
+    {
+        ConfigurationService cfg
+            = ProtocolMediaActivator.getConfigurationService();
+
+        return
+            (cfg == null)
+                ? DEFAULT_INTERVAL
+                : cfg.getLong(INTERVAL_PROPERTY_NAME, DEFAULT_INTERVAL);
+    }
+}
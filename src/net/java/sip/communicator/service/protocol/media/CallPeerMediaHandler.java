@@ -874,26 +874,24 @@ public abstract class CallPeerMediaHandler<T extends MediaAwareCallPeer<?,?,?>>
         if(mediaDevice == null)
             return Collections.emptyList();
 
-        Map<String, String> accountProperties
-            = getPeer().getProtocolProvider().getAccountID()
-                    .getAccountProperties();
+        AccountID accountID = getPeer().getProtocolProvider().getAccountID();
         String overrideEncodings
-            = accountProperties.get(ProtocolProviderFactory.OVERRIDE_ENCODINGS);
+            = accountID.getAccountPropertyString(
+                    ProtocolProviderFactory.OVERRIDE_ENCODINGS);
 
         if(Boolean.parseBoolean(overrideEncodings))
         {
             /*
              * The account properties associated with the CallPeer of this
              * CallPeerMediaHandler override the global EncodingConfiguration.
+             * It is only loaded again when they change.
              */
 
             EncodingConfiguration encodingConfiguration
-                = ProtocolMediaActivator.getMediaService()
-                        .createEmptyEncodingConfiguration();
+                = EncodingConfigurationCache.getInstance(accountID)
+                        .getEncodingConfiguration(
+                                accountID.getAccountProperties());
 
-            encodingConfiguration.loadProperties(
-                    accountProperties,
-                    ProtocolProviderFactory.ENCODING_PROP_PREFIX);
             return
                 mediaDevice.getSupportedFormats(
                         sendPreset, receivePreset,
@@ -0,0 +1,374 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.text.*;
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+/**
+ * Records when the phases of the setup of a <tt>Call</tt> (routing and
+ * transactions of the signalling, creation and processing of session
+ * descriptions, ICE harvesting and connectivity checks, etc.) start and how
+ * long they take, so that it can be told where the time between dialing and
+ * media flowing goes. The spans of a phase are identified by a name and,
+ * since a <tt>Call</tt> may have multiple peers, the address of the peer
+ * they concern. Once the setup with a peer has completed, i.e. it has
+ * connected, no more spans are recorded for it so that re-INVITEs and the like
+ * do not add to the trace.
+ * <p>
+ * When the <tt>Call</tt> ends its trace is written to the log category
+ * {@link #LOG_NAME} at level DEBUG so that it can be enabled and directed to a
+ * log file of its own.
+ * </p>
+ */
+public class CallSetupTrace
+{
+    /**
+     * The name of the log category the traces of ended calls are written to.
+     */
+    public static final String LOG_NAME
+        = "net.java.sip.communicator.CallSetupTrace";
+
+    /**
+     * The maximum number of spans recorded per call, which bounds the trace
+     * of a call with many peers or a setup which keeps failing over.
+     */
+    public static final int MAX_SPANS = 256;
+
+    /**
+     * The <tt>Logger</tt> the traces of ended calls are written to.
+     */
+    private static final Logger traceLogger = Logger.getLogger(LOG_NAME);
+
+    /**
+     * The time in milliseconds since the epoch at which this trace started.
+     */
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * The value of {@link System#nanoTime()} at which this trace started.
+     */
+    private final long startNanoTime = System.nanoTime();
+
+    /**
+     * The spans recorded so far in the order in which they started.
+     */
+    private final List<Span> spans = new ArrayList<Span>();
+
+    /**
+     * The addresses of the peers the setup with which has completed.
+     * Synchronized using {@link #spans}.
+     */
+    private final Set<String> completedPeers = new HashSet<String>();
+
+    /**
+     * Returns the trace of the <tt>Call</tt> of a <tt>CallPeer</tt>.
+     *
+     * @param callPeer the <tt>CallPeer</tt>
+     * @return the trace of the <tt>Call</tt> of <tt>callPeer</tt> or
+     * <tt>null</tt> if there is no such trace
+     */
+    public static CallSetupTrace getTrace(CallPeer callPeer)
+    {
+        Call call = (callPeer == null) ? null : callPeer.getCall();
+
+        return
+            (call instanceof MediaAwareCall)
+                ? ((MediaAwareCall<?,?,?>) call).getSetupTrace()
+                : null;
+    }
+
+    /**
+     * Starts a span of the trace of the <tt>Call</tt> of a <tt>CallPeer</tt>.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the span concerns
+     * @param name the name of the phase
+     * @return the started span or <tt>null</tt> if the <tt>Call</tt> of
+     * <tt>callPeer</tt> is not traced
+     */
+    public static Span begin(CallPeer callPeer, String name)
+    {
+        CallSetupTrace trace = getTrace(callPeer);
+
+        return
+            (trace == null) ? null : trace.begin(name, callPeer.getAddress());
+    }
+
+    /**
+     * Ends a span started by {@link #begin(CallPeer, String)}.
+     *
+     * @param span the span to end or <tt>null</tt>
+     */
+    public static void end(Span span)
+    {
+        if (span != null)
+            span.end();
+    }
+
+    /**
+     * Starts a span. The span is not recorded if the setup with <tt>peer</tt>
+     * has completed or if {@link #MAX_SPANS} spans have been recorded.
+     *
+     * @param name the name of the phase
+     * @param peer the address of the peer the span concerns or <tt>null</tt>
+     * @return the started span
+     */
+    public Span begin(String name, String peer)
+    {
+        Span span = new Span(name, peer, System.nanoTime());
+
+        synchronized (spans)
+        {
+            if ((spans.size() < MAX_SPANS) && !completedPeers.contains(peer))
+                spans.add(span);
+        }
+        return span;
+    }
+
+    /**
+     * Stops recording spans for a peer because the setup with it has
+     * completed. The spans which have been recorded for it and have not ended
+     * yet can still be ended.
+     *
+     * @param peer the address of the peer
+     */
+    public void setupCompleted(String peer)
+    {
+        synchronized (spans)
+        {
+            completedPeers.add(peer);
+        }
+    }
+
+    /**
+     * Ends the most recently started span of a phase which has not ended
+     * yet, e.g. because it has been started by another class or thread.
+     *
+     * @param name the name of the phase
+     * @param peer the address of the peer the span concerns or <tt>null</tt>
+     * @return <tt>true</tt> if a span has been ended
+     */
+    public boolean end(String name, String peer)
+    {
+        synchronized (spans)
+        {
+            for (int i = spans.size() - 1; i >= 0; i--)
+            {
+                Span span = spans.get(i);
+
+                if (!span.isEnded()
+                        && span.name.equals(name)
+                        && ((peer == null)
+                                ? (span.peer == null)
+                                : peer.equals(span.peer)))
+                {
+                    span.end();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records an event, i.e. a span which ends as soon as it starts.
+     *
+     * @param name the name of the event
+     * @param peer the address of the peer the event concerns or <tt>null</tt>
+     */
+    public void mark(String name, String peer)
+    {
+        begin(name, peer).end();
+    }
+
+    /**
+     * Returns the spans recorded so far in the order in which they started.
+     *
+     * @return the spans recorded so far
+     */
+    public List<Span> getSpans()
+    {
+        synchronized (spans)
+        {
+            return new ArrayList<Span>(spans);
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds since the epoch at which this trace
+     * started.
+     *
+     * @return the time at which this trace started
+     */
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    /**
+     * Writes this trace to the log category {@link #LOG_NAME}.
+     *
+     * @param call a description of the call this trace belongs to
+     */
+    public void log(String call)
+    {
+        if (traceLogger.isDebugEnabled())
+            traceLogger.debug("Setup trace of " + call + ":\n" + this);
+    }
+
+    /**
+     * Returns a description of this trace with one line per span, giving the
+     * time at which it started relative to the start of the trace, its
+     * duration, the name of its phase and the peer it concerns.
+     *
+     * @return a description of this trace
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder s
+            = new StringBuilder("started ")
+                .append(
+                        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")
+                            .format(new Date(startTime)));
+
+        for (Span span : getSpans())
+            s.append('\n').append(span);
+        return s.toString();
+    }
+
+    /**
+     * A phase of the setup of a call.
+     */
+    public class Span
+    {
+        /**
+         * The name of the phase.
+         */
+        private final String name;
+
+        /**
+         * The address of the peer this span concerns or <tt>null</tt>.
+         */
+        private final String peer;
+
+        /**
+         * The value of {@link System#nanoTime()} at which this span started.
+         */
+        private final long start;
+
+        /**
+         * The value of {@link System#nanoTime()} at which this span ended or
+         * <tt>-1</tt>.
+         */
+        private long end = -1;
+
+        /**
+         * Initializes a new <tt>Span</tt>.
+         *
+         * @param name the name of the phase
+         * @param peer the address of the peer the span concerns
+         * @param start the value of {@link System#nanoTime()} at which the
+         * span starts
+         */
+        Span(String name, String peer, long start)
+        {
+            this.name = name;
+            this.peer = peer;
+            this.start = start;
+        }
+
+        /**
+         * Ends this span unless it has already ended.
+         */
+        public synchronized void end()
+        {
+            if (end == -1)
+                end = System.nanoTime();
+        }
+
+        /**
+         * Returns whether this span has ended.
+         *
+         * @return <tt>true</tt> if this span has ended
+         */
+        public synchronized boolean isEnded()
+        {
+            return end != -1;
+        }
+
+        /**
+         * Returns the name of the phase.
+         *
+         * @return the name of the phase
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the address of the peer this span concerns.
+         *
+         * @return the address of the peer this span concerns or
+         * <tt>null</tt>
+         */
+        public String getPeer()
+        {
+            return peer;
+        }
+
+        /**
+         * Returns the number of milliseconds between the start of the trace
+         * and the start of this span.
+         *
+         * @return the offset of this span in milliseconds
+         */
+        public long getOffset()
+        {
+            return (start - startNanoTime) / 1000000;
+        }
+
+        /**
+         * Returns the duration of this span in milliseconds.
+         *
+         * @return the duration of this span in milliseconds or <tt>-1</tt> if
+         * it has not ended
+         */
+        public synchronized long getDuration()
+        {
+            return (end == -1) ? -1 : (end - start) / 1000000;
+        }
+
+        /**
+         * Returns a description of this span.
+         *
+         * @return a description of this span
+         */
+        @Override
+        public String toString()
+        {
+            long duration = getDuration();
+            StringBuilder s
+                = new StringBuilder("+")
+                    .append(getOffset())
+                    .append(" ms ")
+                    .append(name);
+
+            if (peer != null)
+                s.append(" [").append(peer).append(']');
+            if (duration == -1)
+                s.append(" (not ended)");
+            else
+                s.append(' ').append(duration).append(" ms");
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,853 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+/**
+ * The state of a conference hosted by the local peer as described to its
+ * participants in Conference Information (RFC4575) documents.
+ * <p>
+ * The state is shared by all the participants of the conference and tracks
+ * the revision at which each user has last changed or has been removed, so
+ * that the notification for a participant only has to describe the users
+ * which have changed since the last notification sent to it. The
+ * <tt>user</tt> elements are serialized once per change and the XML is shared
+ * by the notifications for all participants. No DOM is involved.
+ */
+public class ConferenceInfoState
+{
+    /**
+     * The users of the conference other than the local user, by entity, in
+     * the order in which they have joined.
+     */
+    private final Map<String, UserState> users
+        = new LinkedHashMap<String, UserState>();
+
+    /**
+     * The revisions at which the users in {@link #users} have last changed.
+     */
+    private final Map<String, Long> userRevisions
+        = new HashMap<String, Long>();
+
+    /**
+     * The revisions at which users have been removed from the conference, by
+     * entity.
+     */
+    private final Map<String, Long> deletedUsers
+        = new HashMap<String, Long>();
+
+    /**
+     * The current revision of the state which is incremented with each change.
+     */
+    private long revision = 0;
+
+    /**
+     * Returns the current revision of the state.
+     *
+     * @return the current revision of the state
+     */
+    public synchronized long getRevision()
+    {
+        return revision;
+    }
+
+    /**
+     * Updates the state with the current description of the users of the
+     * conference other than the local user. Users which are described the
+     * same way as before are not considered changed.
+     *
+     * @param newUsers the current description of the users of the conference
+     * other than the local user
+     * @return <tt>true</tt> if the state has changed
+     */
+    public synchronized boolean update(List<UserState> newUsers)
+    {
+        long newRevision = revision + 1;
+        boolean changed = false;
+        Set<String> entities = new HashSet<String>();
+
+        for (UserState user : newUsers)
+        {
+            String entity = user.getEntity();
+
+            if (!entities.add(entity))
+                continue;
+            if (user.equals(users.get(entity)))
+                continue;
+
+            users.put(entity, user);
+            userRevisions.put(entity, newRevision);
+            deletedUsers.remove(entity);
+            changed = true;
+        }
+
+        for (Iterator<String> i = users.keySet().iterator(); i.hasNext();)
+        {
+            String entity = i.next();
+
+            if (!entities.contains(entity))
+            {
+                i.remove();
+                userRevisions.remove(entity);
+                deletedUsers.put(entity, newRevision);
+                changed = true;
+            }
+        }
+
+        if (changed)
+            revision = newRevision;
+        return changed;
+    }
+
+    /**
+     * Creates the notification to be sent to a participant of the
+     * conference.
+     *
+     * @param entity the value of the <tt>entity</tt> attribute of the
+     * <tt>conference-info</tt> element
+     * @param sid the value of the <tt>sid</tt> attribute of the
+     * <tt>conference-info</tt> element or <tt>null</tt>
+     * @param localUser the description of the local user
+     * @param lastSent the last notification sent to the participant or
+     * <tt>null</tt>
+     * @param partial <tt>true</tt> to only describe the changes since
+     * <tt>lastSent</tt>, <tt>false</tt> to always describe the whole
+     * conference
+     * @param force <tt>true</tt> to create a notification describing the whole
+     * conference even if nothing has changed since <tt>lastSent</tt>
+     * @return the notification to be sent to the participant or <tt>null</tt>
+     * if nothing has changed since <tt>lastSent</tt>
+     */
+    public synchronized Notification createNotification(
+            String entity,
+            String sid,
+            UserState localUser,
+            Notification lastSent,
+            boolean partial,
+            boolean force)
+    {
+        int version = (lastSent == null) ? 1 : lastSent.getVersion() + 1;
+        int userCount = 1 /* the local user */ + users.size();
+        List<UserState> all = new ArrayList<UserState>(userCount);
+
+        all.add(localUser);
+        all.addAll(users.values());
+
+        if (force || (lastSent == null) || (lastSent.state != this))
+        {
+            return
+                new Notification(
+                        this, revision, version, true,
+                        entity, sid, userCount, localUser,
+                        all, Collections.<String>emptyList());
+        }
+
+        boolean headerChanged
+            = !objectsEqual(entity, lastSent.entity)
+                || (userCount != lastSent.userCount);
+        boolean localUserChanged = !localUser.equals(lastSent.localUser);
+
+        if (!partial)
+        {
+            if (!headerChanged
+                    && !localUserChanged
+                    && (revision == lastSent.revision))
+                return null;
+            return
+                new Notification(
+                        this, revision, version, true,
+                        entity, sid, userCount, localUser,
+                        all, Collections.<String>emptyList());
+        }
+
+        List<UserState> changedUsers = new ArrayList<UserState>();
+        List<String> deleted = new ArrayList<String>();
+
+        if (localUserChanged)
+        {
+            changedUsers.add(localUser);
+
+            String lastEntity = lastSent.localUser.getEntity();
+
+            if (!objectsEqual(localUser.getEntity(), lastEntity))
+                deleted.add(lastEntity);
+        }
+        if (revision != lastSent.revision)
+        {
+            for (UserState user : users.values())
+            {
+                if (userRevisions.get(user.getEntity()) > lastSent.revision)
+                    changedUsers.add(user);
+            }
+            for (Map.Entry<String, Long> e : deletedUsers.entrySet())
+            {
+                if (e.getValue() > lastSent.revision)
+                    deleted.add(e.getKey());
+            }
+        }
+
+        if (!headerChanged && changedUsers.isEmpty() && deleted.isEmpty())
+            return null;
+
+        /*
+         * If all the users have changed and none has been removed, the
+         * notification describes the whole conference anyway and it is better
+         * to say so, just in case the receiver lost the previous one somehow.
+         */
+        boolean full
+            = deleted.isEmpty() && (changedUsers.size() == all.size());
+
+        return
+            new Notification(
+                    this, revision, version, full,
+                    entity, sid, userCount, localUser,
+                    changedUsers, deleted);
+    }
+
+    /**
+     * Appends a value to XML, escaping the characters which may not appear
+     * literally in text content and attribute values.
+     *
+     * @param xml the XML to append to
+     * @param value the value to append
+     */
+    private static void appendEscaped(StringBuilder xml, String value)
+    {
+        for (int i = 0, length = value.length(); i < length; i++)
+        {
+            char c = value.charAt(i);
+
+            switch (c)
+            {
+            case '&':
+                xml.append("&amp;");
+                break;
+            case '<':
+                xml.append("&lt;");
+                break;
+            case '>':
+                xml.append("&gt;");
+                break;
+            case '"':
+                xml.append("&quot;");
+                break;
+            case '\'':
+                xml.append("&apos;");
+                break;
+            default:
+                xml.append(c);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Appends an attribute to XML unless its value is <tt>null</tt> or empty.
+     *
+     * @param xml the XML to append to
+     * @param name the name of the attribute
+     * @param value the value of the attribute
+     */
+    private static void appendAttribute(
+            StringBuilder xml,
+            String name,
+            String value)
+    {
+        if ((value != null) && (value.length() != 0))
+        {
+            xml.append(' ').append(name).append("=\"");
+            appendEscaped(xml, value);
+            xml.append('"');
+        }
+    }
+
+    /**
+     * Appends an element with text content to XML unless the text is
+     * <tt>null</tt> or empty.
+     *
+     * @param xml the XML to append to
+     * @param name the name of the element
+     * @param text the text content of the element
+     */
+    private static void appendElement(
+            StringBuilder xml,
+            String name,
+            String text)
+    {
+        if ((text != null) && (text.length() != 0))
+        {
+            xml.append('<').append(name).append('>');
+            appendEscaped(xml, text);
+            xml.append("</").append(name).append('>');
+        }
+    }
+
+    /**
+     * Determines whether two <tt>Object</tt>s are equal, either of them
+     * possibly being <tt>null</tt>.
+     *
+     * @param a an <tt>Object</tt>
+     * @param b an <tt>Object</tt>
+     * @return <tt>true</tt> if <tt>a</tt> and <tt>b</tt> are both
+     * <tt>null</tt> or equal
+     */
+    private static boolean objectsEqual(Object a, Object b)
+    {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    /**
+     * A Conference Information document to be sent to a participant of the
+     * conference. Once sent, it is kept as the reference the next
+     * notification for the same participant is computed against.
+     */
+    public static class Notification
+    {
+        /**
+         * The state the notification has been created from.
+         */
+        private final ConferenceInfoState state;
+
+        /**
+         * The revision of the state the notification describes.
+         */
+        private final long revision;
+
+        /**
+         * The value of the <tt>version</tt> attribute.
+         */
+        private final int version;
+
+        /**
+         * Whether the notification describes the whole conference.
+         */
+        private final boolean full;
+
+        /**
+         * The value of the <tt>entity</tt> attribute.
+         */
+        private final String entity;
+
+        /**
+         * The value of the <tt>sid</tt> attribute or <tt>null</tt>.
+         */
+        private final String sid;
+
+        /**
+         * The number of users in the conference.
+         */
+        private final int userCount;
+
+        /**
+         * The description of the local user.
+         */
+        private final UserState localUser;
+
+        /**
+         * The users described by the notification.
+         */
+        private final List<UserState> users;
+
+        /**
+         * The entities of the users the notification reports as removed.
+         */
+        private final List<String> deleted;
+
+        /**
+         * Initializes a new <tt>Notification</tt>.
+         *
+         * @param state the state the notification is created from
+         * @param revision the revision of <tt>state</tt> it describes
+         * @param version the value of the <tt>version</tt> attribute
+         * @param full whether the notification describes the whole
+         * conference
+         * @param entity the value of the <tt>entity</tt> attribute
+         * @param sid the value of the <tt>sid</tt> attribute or <tt>null</tt>
+         * @param userCount the number of users in the conference
+         * @param localUser the description of the local user
+         * @param users the users described by the notification
+         * @param deleted the entities of the users reported as removed
+         */
+        private Notification(
+                ConferenceInfoState state,
+                long revision,
+                int version,
+                boolean full,
+                String entity,
+                String sid,
+                int userCount,
+                UserState localUser,
+                List<UserState> users,
+                List<String> deleted)
+        {
+            this.state = state;
+            this.revision = revision;
+            this.version = version;
+            this.full = full;
+            this.entity = entity;
+            this.sid = sid;
+            this.userCount = userCount;
+            this.localUser = localUser;
+            this.users = users;
+            this.deleted = deleted;
+        }
+
+        /**
+         * Returns the value of the <tt>version</tt> attribute.
+         *
+         * @return the value of the <tt>version</tt> attribute
+         */
+        public int getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Returns whether the notification describes the whole conference
+         * (state "full") or only the changes since the previous one (state
+         * "partial").
+         *
+         * @return <tt>true</tt> if the notification describes the whole
+         * conference
+         */
+        public boolean isFull()
+        {
+            return full;
+        }
+
+        /**
+         * Returns the users described by the notification.
+         *
+         * @return the users described by the notification
+         */
+        public List<UserState> getUsers()
+        {
+            return Collections.unmodifiableList(users);
+        }
+
+        /**
+         * Returns the entities of the users the notification reports as
+         * removed from the conference.
+         *
+         * @return the entities of the users reported as removed
+         */
+        public List<String> getDeletedUsers()
+        {
+            return Collections.unmodifiableList(deleted);
+        }
+
+        /**
+         * Returns the XML representation of the notification, i.e. a
+         * <tt>conference-info</tt> element.
+         *
+         * @return the XML representation of the notification
+         */
+        public String toXml()
+        {
+            StringBuilder xml = new StringBuilder(256 + 256 * users.size());
+            String partialState
+                = (full
+                        ? ConferenceInfoDocument.State.FULL
+                        : ConferenceInfoDocument.State.PARTIAL)
+                    .toString();
+
+            xml.append('<')
+                .append(ConferenceInfoDocument.CONFERENCE_INFO_ELEMENT_NAME);
+            appendAttribute(
+                    xml,
+                    "xmlns",
+                    ConferenceInfoDocument.NAMESPACE);
+            appendAttribute(
+                    xml,
+                    ConferenceInfoDocument.VERSION_ATTR_NAME,
+                    Integer.toString(version));
+            if (!full)
+            {
+                appendAttribute(
+                        xml,
+                        ConferenceInfoDocument.STATE_ATTR_NAME,
+                        partialState);
+            }
+            appendAttribute(
+                    xml,
+                    ConferenceInfoDocument.ENTITY_ATTR_NAME,
+                    entity);
+            appendAttribute(xml, "sid", sid);
+            xml.append('>');
+
+            xml.append('<')
+                .append(
+                    ConferenceInfoDocument.CONFERENCE_DESCRIPTION_ELEMENT_NAME)
+                .append("/>");
+
+            xml.append('<')
+                .append(ConferenceInfoDocument.CONFERENCE_STATE_ELEMENT_NAME)
+                .append('>');
+            appendElement(
+                    xml,
+                    ConferenceInfoDocument.USER_COUNT_ELEMENT_NAME,
+                    Integer.toString(userCount));
+            xml.append("</")
+                .append(ConferenceInfoDocument.CONFERENCE_STATE_ELEMENT_NAME)
+                .append('>');
+
+            xml.append('<').append(ConferenceInfoDocument.USERS_ELEMENT_NAME);
+            if (!full)
+            {
+                appendAttribute(
+                        xml,
+                        ConferenceInfoDocument.STATE_ATTR_NAME,
+                        partialState);
+            }
+            xml.append('>');
+            for (String deletedEntity : deleted)
+            {
+                xml.append('<')
+                    .append(ConferenceInfoDocument.USER_ELEMENT_NAME);
+                appendAttribute(
+                        xml,
+                        ConferenceInfoDocument.ENTITY_ATTR_NAME,
+                        deletedEntity);
+                appendAttribute(
+                        xml,
+                        ConferenceInfoDocument.STATE_ATTR_NAME,
+                        ConferenceInfoDocument.State.DELETED.toString());
+                xml.append("/>");
+            }
+            for (UserState user : users)
+                xml.append(user.toXml());
+            xml.append("</")
+                .append(ConferenceInfoDocument.USERS_ELEMENT_NAME)
+                .append('>');
+
+            xml.append("</")
+                .append(ConferenceInfoDocument.CONFERENCE_INFO_ELEMENT_NAME)
+                .append('>');
+            return xml.toString();
+        }
+
+        /**
+         * Returns the XML representation of the notification.
+         *
+         * @return the XML representation of the notification
+         */
+        @Override
+        public String toString()
+        {
+            return toXml();
+        }
+    }
+
+    /**
+     * The description of a user of the conference and its only endpoint as
+     * reported in a <tt>user</tt> element. Instances are immutable.
+     */
+    public static class UserState
+    {
+        /**
+         * The entity of the user and of its endpoint.
+         */
+        private final String entity;
+
+        /**
+         * The display text of the user or <tt>null</tt>.
+         */
+        private final String displayText;
+
+        /**
+         * The status of the endpoint of the user or <tt>null</tt>.
+         */
+        private final ConferenceInfoDocument.EndpointStatusType status;
+
+        /**
+         * The media of the endpoint of the user.
+         */
+        private final List<MediaState> medias;
+
+        /**
+         * The XML representation of the user or <tt>null</tt> if it has not
+         * been needed yet.
+         */
+        private String xml;
+
+        /**
+         * Initializes a new <tt>UserState</tt>.
+         *
+         * @param entity the entity of the user and of its endpoint
+         * @param displayText the display text of the user or <tt>null</tt>
+         * @param status the status of the endpoint of the user or
+         * <tt>null</tt>
+         * @param medias the media of the endpoint of the user
+         */
+        public UserState(
+                String entity,
+                String displayText,
+                ConferenceInfoDocument.EndpointStatusType status,
+                List<MediaState> medias)
+        {
+            this.entity = entity;
+            this.displayText = displayText;
+            this.status = status;
+            this.medias = new ArrayList<MediaState>(medias);
+        }
+
+        /**
+         * Returns the entity of the user and of its endpoint.
+         *
+         * @return the entity of the user and of its endpoint
+         */
+        public String getEntity()
+        {
+            return entity;
+        }
+
+        /**
+         * Returns the display text of the user.
+         *
+         * @return the display text of the user or <tt>null</tt>
+         */
+        public String getDisplayText()
+        {
+            return displayText;
+        }
+
+        /**
+         * Returns the status of the endpoint of the user.
+         *
+         * @return the status of the endpoint of the user or <tt>null</tt>
+         */
+        public ConferenceInfoDocument.EndpointStatusType getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Returns the media of the endpoint of the user.
+         *
+         * @return the media of the endpoint of the user
+         */
+        public List<MediaState> getMedias()
+        {
+            return Collections.unmodifiableList(medias);
+        }
+
+        /**
+         * Returns the XML representation of the user, i.e. a <tt>user</tt>
+         * element. It is only built once.
+         *
+         * @return the XML representation of the user
+         */
+        public synchronized String toXml()
+        {
+            if (xml != null)
+                return xml;
+
+            StringBuilder xml = new StringBuilder(256);
+
+            xml.append('<').append(ConferenceInfoDocument.USER_ELEMENT_NAME);
+            appendAttribute(
+                    xml,
+                    ConferenceInfoDocument.ENTITY_ATTR_NAME,
+                    entity);
+            xml.append('>');
+            appendElement(
+                    xml,
+                    ConferenceInfoDocument.DISPLAY_TEXT_ELEMENT_NAME,
+                    displayText);
+
+            xml.append('<')
+                .append(ConferenceInfoDocument.ENDPOINT_ELEMENT_NAME);
+            appendAttribute(
+                    xml,
+                    ConferenceInfoDocument.ENTITY_ATTR_NAME,
+                    entity);
+            xml.append('>');
+            if (status != null)
+            {
+                appendElement(
+                        xml,
+                        ConferenceInfoDocument.STATUS_ELEMENT_NAME,
+                        status.toString());
+            }
+            for (MediaState media : medias)
+            {
+                xml.append('<')
+                    .append(ConferenceInfoDocument.MEDIA_ELEMENT_NAME);
+                appendAttribute(
+                        xml,
+                        ConferenceInfoDocument.ID_ATTR_NAME,
+                        media.getId());
+                xml.append('>');
+                appendElement(
+                        xml,
+                        ConferenceInfoDocument.TYPE_ELEMENT_NAME,
+                        media.getType());
+                appendElement(
+                        xml,
+                        ConferenceInfoDocument.SRC_ID_ELEMENT_NAME,
+                        media.getSrcId());
+                appendElement(
+                        xml,
+                        ConferenceInfoDocument.STATUS_ELEMENT_NAME,
+                        media.getStatus());
+                xml.append("</")
+                    .append(ConferenceInfoDocument.MEDIA_ELEMENT_NAME)
+                    .append('>');
+            }
+            xml.append("</")
+                .append(ConferenceInfoDocument.ENDPOINT_ELEMENT_NAME)
+                .append('>');
+
+            xml.append("</")
+                .append(ConferenceInfoDocument.USER_ELEMENT_NAME)
+                .append('>');
+
+            this.xml = xml.toString();
+            return this.xml;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof UserState))
+                return false;
+
+            UserState other = (UserState) obj;
+
+            return objectsEqual(entity, other.entity)
+                && objectsEqual(displayText, other.displayText)
+                && (status == other.status)
+                && medias.equals(other.medias);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return (entity == null) ? 0 : entity.hashCode();
+        }
+    }
+
+    /**
+     * The description of a media of the endpoint of a user as reported in a
+     * <tt>media</tt> element. Instances are immutable.
+     */
+    public static class MediaState
+    {
+        /**
+         * The value of the <tt>id</tt> attribute.
+         */
+        private final String id;
+
+        /**
+         * The type of the media.
+         */
+        private final String type;
+
+        /**
+         * The SSRC of the media or <tt>null</tt>.
+         */
+        private final String srcId;
+
+        /**
+         * The direction of the media.
+         */
+        private final String status;
+
+        /**
+         * Initializes a new <tt>MediaState</tt>.
+         *
+         * @param id the value of the <tt>id</tt> attribute
+         * @param type the type of the media
+         * @param srcId the SSRC of the media or <tt>null</tt>
+         * @param status the direction of the media
+         */
+        public MediaState(String id, String type, String srcId, String status)
+        {
+            this.id = id;
+            this.type = type;
+            this.srcId = srcId;
+            this.status = status;
+        }
+
+        /**
+         * Returns the value of the <tt>id</tt> attribute.
+         *
+         * @return the value of the <tt>id</tt> attribute
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+        /**
+         * Returns the type of the media.
+         *
+         * @return the type of the media
+         */
+        public String getType()
+        {
+            return type;
+        }
+
+        /**
+         * Returns the SSRC of the media.
+         *
+         * @return the SSRC of the media or <tt>null</tt>
+         */
+        public String getSrcId()
+        {
+            return srcId;
+        }
+
+        /**
+         * Returns the direction of the media.
+         *
+         * @return the direction of the media
+         */
+        public String getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof MediaState))
+                return false;
+
+            MediaState other = (MediaState) obj;
+
+            return objectsEqual(id, other.id)
+                && objectsEqual(type, other.type)
+                && objectsEqual(srcId, other.srcId)
+                && objectsEqual(status, other.status);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return (id == null) ? 0 : id.hashCode();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Limits the rate at which Conference Information notifications (SIP NOTIFY
+ * requests, XMPP COINs) are sent to the participants of a conference.
+ * <p>
+ * A participant which has not been notified within the minimum interval is
+ * notified right away. Otherwise a single notification is scheduled for the
+ * end of the interval and the changes which occur until then are merged into
+ * it, so that a burst of changes results in one update per interval per
+ * participant. Scheduled notifications are triggered by a timer thread shared
+ * by all conferences and sent on a pool of at most
+ * {@link #MAX_NOTIFIER_THREADS} daemon threads which only exist while there is
+ * work to do.
+ */
+public class ConferenceNotifyScheduler
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>ConferenceNotifyScheduler</tt> class
+     * and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(ConferenceNotifyScheduler.class);
+
+    /**
+     * The maximum number of threads sending scheduled notifications at the
+     * same time.
+     */
+    private static final int MAX_NOTIFIER_THREADS = 4;
+
+    /**
+     * The number of seconds an idle notifier thread waits for a new
+     * notification before it ends.
+     */
+    private static final long IDLE_THREAD_TIMEOUT = 60;
+
+    /**
+     * The thread triggering the scheduled notifications of all conferences.
+     */
+    private static ScheduledExecutorService timer;
+
+    /**
+     * The threads sending the scheduled notifications of all conferences.
+     */
+    private static ExecutorService executor;
+
+    /**
+     * The number of notifications which have been sent.
+     */
+    private long sentCount = 0;
+
+    /**
+     * The number of notifications which have been merged into a scheduled
+     * one.
+     */
+    private long suppressedCount = 0;
+
+    /**
+     * The number of notifications which have been scheduled for the end of
+     * the minimum interval.
+     */
+    private long scheduledCount = 0;
+
+    /**
+     * Determines whether a participant is to be notified right away. If it
+     * has been notified within <tt>minInterval</tt>, the notification is
+     * either scheduled for the end of the interval, i.e. <tt>notifier</tt>
+     * is run then, or merged into the one already scheduled.
+     *
+     * @param callPeer the participant to notify
+     * @param minInterval the minimum number of milliseconds between two
+     * notifications sent to <tt>callPeer</tt>
+     * @param notifier notifies <tt>callPeer</tt> when the scheduled
+     * notification is due
+     * @return <tt>true</tt> if <tt>callPeer</tt> is to be notified right away,
+     * <tt>false</tt> if the notification has been scheduled or merged
+     */
+    public boolean schedule(
+            final MediaAwareCallPeer<?,?,?> callPeer,
+            long minInterval,
+            Runnable notifier)
+    {
+        return
+            schedule(
+                    new Participant()
+                    {
+                        public boolean isScheduled()
+                        {
+                            return callPeer.isConfInfoScheduled();
+                        }
+
+                        public void setScheduled(boolean scheduled)
+                        {
+                            callPeer.setConfInfoScheduled(scheduled);
+                        }
+
+                        public long getLastSentTimestamp()
+                        {
+                            return
+                                callPeer.getLastConferenceInfoSentTimestamp();
+                        }
+
+                        @Override
+                        public String toString()
+                        {
+                            return callPeer.toString();
+                        }
+                    },
+                    minInterval,
+                    notifier);
+    }
+
+    /**
+     * Implements {@link #schedule(MediaAwareCallPeer, long, Runnable)} for any
+     * <tt>Participant</tt>.
+     *
+     * @param participant the participant to notify
+     * @param minInterval the minimum number of milliseconds between two
+     * notifications sent to <tt>participant</tt>
+     * @param notifier notifies <tt>participant</tt> when the scheduled
+     * notification is due
+     * @return <tt>true</tt> if <tt>participant</tt> is to be notified right
+     * away, <tt>false</tt> if the notification has been scheduled or merged
+     */
+    boolean schedule(
+            final Participant participant,
+            long minInterval,
+            final Runnable notifier)
+    {
+        long delay;
+
+        synchronized (this)
+        {
+            if (participant.isScheduled())
+            {
+                suppressedCount++;
+                return false;
+            }
+
+            delay
+                = participant.getLastSentTimestamp()
+                    + minInterval
+                    - System.currentTimeMillis();
+            if (delay <= 0)
+                return true;
+
+            participant.setScheduled(true);
+            scheduledCount++;
+        }
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Scheduling a conference-info notification to "
+                        + participant + " in " + delay + " ms");
+        }
+
+        getTimer().schedule(
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        getExecutor().execute(
+                                new Runnable()
+                                {
+                                    public void run()
+                                    {
+                                        /*
+                                         * Changes which occur from now on
+                                         * may not be part of the notification
+                                         * and have to schedule another one.
+                                         */
+                                        participant.setScheduled(false);
+                                        notifier.run();
+                                    }
+                                });
+                    }
+                },
+                delay + 1,
+                TimeUnit.MILLISECONDS);
+        return false;
+    }
+
+    /**
+     * Accounts for a notification which has been sent.
+     */
+    public synchronized void notificationSent()
+    {
+        sentCount++;
+    }
+
+    /**
+     * Returns the number of notifications which have been sent.
+     *
+     * @return the number of notifications which have been sent
+     */
+    public synchronized long getSentCount()
+    {
+        return sentCount;
+    }
+
+    /**
+     * Returns the number of notifications which have been merged into a
+     * scheduled one rather than being sent.
+     *
+     * @return the number of notifications which have been merged into a
+     * scheduled one
+     */
+    public synchronized long getSuppressedCount()
+    {
+        return suppressedCount;
+    }
+
+    /**
+     * Returns the number of notifications which have been scheduled for the
+     * end of the minimum interval.
+     *
+     * @return the number of notifications which have been scheduled
+     */
+    public synchronized long getScheduledCount()
+    {
+        return scheduledCount;
+    }
+
+    /**
+     * Returns the thread triggering the scheduled notifications, creating it
+     * if necessary.
+     *
+     * @return the thread triggering the scheduled notifications
+     */
+    private static synchronized ScheduledExecutorService getTimer()
+    {
+        if (timer == null)
+        {
+            timer
+                = Executors.newSingleThreadScheduledExecutor(
+                        new DaemonThreadFactory("ConferenceNotifyScheduler"));
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the threads sending the scheduled notifications, creating them
+     * if necessary.
+     *
+     * @return the threads sending the scheduled notifications
+     */
+    private static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            ThreadPoolExecutor notifiers
+                = new ThreadPoolExecutor(
+                        MAX_NOTIFIER_THREADS, MAX_NOTIFIER_THREADS,
+                        IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new DaemonThreadFactory(
+                                "ConferenceNotifyScheduler.notifier"));
+
+            notifiers.allowCoreThreadTimeOut(true);
+            executor = notifiers;
+        }
+        return executor;
+    }
+
+    /**
+     * The state of the notifications of a participant the scheduler reads and
+     * updates.
+     */
+    interface Participant
+    {
+        /**
+         * Returns whether a notification is scheduled.
+         *
+         * @return <tt>true</tt> if a notification is scheduled
+         */
+        boolean isScheduled();
+
+        /**
+         * Sets whether a notification is scheduled.
+         *
+         * @param scheduled <tt>true</tt> if a notification is scheduled
+         */
+        void setScheduled(boolean scheduled);
+
+        /**
+         * Returns the time the last notification has been sent at.
+         *
+         * @return the time in milliseconds the last notification has been
+         * sent at
+         */
+        long getLastSentTimestamp();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Runs the per-callee steps of setting up a conference call, i.e. resolving
+ * the addresses of the callees and inviting them, concurrently on the executor
+ * shared by the media tasks, so that the setup of a conference takes about as
+ * long as the setup of its slowest callee rather than the sum of the setups of
+ * all callees. At most {@link #THREADS_PROPERTY_NAME} callees of a conference
+ * are set up at the same time.
+ */
+public class ConferenceSetupExecutor
+{
+    /**
+     * The name of the property which specifies the maximum number of callees
+     * set up concurrently. <tt>1</tt> sets callees up one after the other on
+     * the calling thread.
+     */
+    public static final String THREADS_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "CONFERENCE_SETUP_THREADS";
+
+    /**
+     * The default maximum number of callees set up concurrently.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * The <tt>ConferenceSetupExecutor</tt> shared by all conferences.
+     */
+    private static ConferenceSetupExecutor instance;
+
+    /**
+     * The maximum number of callees set up concurrently.
+     */
+    private final int threads;
+
+    /**
+     * The executor setting up the callees or <tt>null</tt> if they are set up
+     * on the calling thread.
+     */
+    private final Executor executor;
+
+    /**
+     * Initializes a new <tt>ConferenceSetupExecutor</tt> which sets the
+     * callees up on the executor shared by the media tasks.
+     *
+     * @param threads the maximum number of callees to set up concurrently
+     */
+    public ConferenceSetupExecutor(int threads)
+    {
+        this(threads, (threads > 1) ? MediaTaskExecutor.getExecutor() : null);
+    }
+
+    /**
+     * Initializes a new <tt>ConferenceSetupExecutor</tt>.
+     *
+     * @param threads the maximum number of callees to set up concurrently
+     * @param executor the executor to set the callees up on or <tt>null</tt>
+     * to set them up on the calling thread
+     */
+    ConferenceSetupExecutor(int threads, Executor executor)
+    {
+        this.threads = threads;
+        this.executor = (threads > 1) ? executor : null;
+    }
+
+    /**
+     * Returns the <tt>ConferenceSetupExecutor</tt> shared by all conferences,
+     * creating it if necessary.
+     *
+     * @return the <tt>ConferenceSetupExecutor</tt> shared by all conferences
+     */
+    public static synchronized ConferenceSetupExecutor getInstance()
+    {
+        if (instance == null)
+        {
+            ConfigurationService cfg
+                = ProtocolMediaActivator.getConfigurationService();
+
+            instance
+                = new ConferenceSetupExecutor(
+                        (cfg == null)
+                            ? DEFAULT_THREADS
+                            : cfg.getInt(
+                                    THREADS_PROPERTY_NAME,
+                                    DEFAULT_THREADS));
+        }
+        return instance;
+    }
+
+    /**
+     * Runs tasks concurrently and waits for all of them to complete.
+     *
+     * @param tasks the tasks to run
+     * @return the results of <tt>tasks</tt> in the order of <tt>tasks</tt>
+     * @throws OperationFailedException if any of <tt>tasks</tt> fails; the
+     * failure of the first of them in the order of <tt>tasks</tt> is reported
+     * once all of them have completed
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+        throws OperationFailedException
+    {
+        List<T> results = new ArrayList<T>(tasks.size());
+
+        if ((executor == null) || (tasks.size() < 2))
+        {
+            for (Callable<T> task : tasks)
+                results.add(call(task));
+            return results;
+        }
+
+        /*
+         * Keep at most threads tasks submitted to the shared executor at a
+         * time and submit the next one whenever one completes.
+         */
+        CompletionService<T> completionService
+            = new ExecutorCompletionService<T>(executor);
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+
+        try
+        {
+            for (Callable<T> task : tasks)
+            {
+                if (futures.size() >= threads)
+                    completionService.take();
+                futures.add(completionService.submit(task));
+            }
+            for (int i = Math.min(threads, futures.size()); i > 0; i--)
+                completionService.take();
+        }
+        catch (InterruptedException ie)
+        {
+            for (Future<T> future : futures)
+                future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new OperationFailedException(
+                    "Interrupted while setting up the conference",
+                    OperationFailedException.GENERAL_ERROR,
+                    ie);
+        }
+
+        for (Future<T> future : futures)
+        {
+            try
+            {
+                results.add(future.get());
+            }
+            catch (ExecutionException ee)
+            {
+                throw toOperationFailedException(ee.getCause());
+            }
+            catch (InterruptedException ie)
+            {
+                /*
+                 * All tasks have been taken from the completion service so
+                 * Future#get does not block.
+                 */
+                Thread.currentThread().interrupt();
+                throw toOperationFailedException(ie);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs a task on the calling thread.
+     *
+     * @param task the task to run
+     * @return the result of <tt>task</tt>
+     * @throws OperationFailedException if <tt>task</tt> fails
+     */
+    private static <T> T call(Callable<T> task)
+        throws OperationFailedException
+    {
+        try
+        {
+            return task.call();
+        }
+        catch (Exception e)
+        {
+            throw toOperationFailedException(e);
+        }
+    }
+
+    /**
+     * Returns the <tt>OperationFailedException</tt> which reports a failure
+     * of a task.
+     *
+     * @param t the failure of the task
+     * @return the <tt>OperationFailedException</tt> which reports <tt>t</tt>
+     */
+    private static OperationFailedException toOperationFailedException(
+            Throwable t)
+    {
+        if (t instanceof OperationFailedException)
+            return (OperationFailedException) t;
+        else if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        else if (t instanceof Error)
+            throw (Error) t;
+        else
+        {
+            return
+                new OperationFailedException(
+                        "Failed to set up the conference",
+                        OperationFailedException.INTERNAL_ERROR,
+                        t);
+        }
+    }
+}
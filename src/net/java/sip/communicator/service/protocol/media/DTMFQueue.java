@@ -0,0 +1,396 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.lang.ref.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.protocol.DTMFTone;
+
+/**
+ * Sends the DTMF tones of sequences such as IVR menu choices and conference
+ * PINs to a <tt>CallPeer</tt> one after the other, pacing them on the
+ * scheduler shared by the media tasks rather than on the thread which has
+ * queued them. Each tone is either started and, once its duration has
+ * elapsed, stopped through an <tt>OperationSetDTMF</tt> or, if the DTMF method
+ * of an <tt>AbstractOperationSetDTMF</tt> carries the duration along with the
+ * tone (e.g. SIP INFO), sent whole. A tone sent whole is only followed by the
+ * next one once the <tt>AbstractOperationSetDTMF</tt> has reported through
+ * {@link #toneSent()} that it has been sent, e.g. that its INFO request has
+ * received a successful final response.
+ */
+public class DTMFQueue
+    implements Runnable
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>DTMFQueue</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger = Logger.getLogger(DTMFQueue.class);
+
+    /**
+     * The character which stands for a pause in a sequence of tones, as in
+     * the dial strings of telephones.
+     */
+    public static final char PAUSE = ',';
+
+    /**
+     * The number of milliseconds a {@link #PAUSE} lasts.
+     */
+    public static final int PAUSE_DURATION = 2000;
+
+    /**
+     * The <tt>OperationSetDTMF</tt> sending the tones.
+     */
+    private final OperationSetDTMF opSet;
+
+    /**
+     * The <tt>CallPeer</tt> the tones are sent to. It is weakly referenced
+     * because the <tt>DTMFQueue</tt>s of an <tt>AbstractOperationSetDTMF</tt>
+     * are kept in a <tt>WeakHashMap</tt> keyed by <tt>CallPeer</tt>.
+     */
+    private final WeakReference<CallPeer> callPeer;
+
+    /**
+     * The tones waiting to be sent.
+     */
+    private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+    /**
+     * The tone which has been started and is to be stopped next or
+     * <tt>null</tt>.
+     */
+    private Entry current;
+
+    /**
+     * The tone which is being sent whole and whose outcome has not been
+     * reported yet or <tt>null</tt>.
+     */
+    private Entry sending;
+
+    /**
+     * The time in milliseconds at which {@link #sending} has been sent.
+     */
+    private long sendingTime;
+
+    /**
+     * Whether a run of this queue has been scheduled.
+     */
+    private boolean running = false;
+
+    /**
+     * Initializes a new <tt>DTMFQueue</tt>.
+     *
+     * @param opSet the <tt>OperationSetDTMF</tt> to send the tones with
+     * @param callPeer the <tt>CallPeer</tt> to send the tones to
+     */
+    public DTMFQueue(OperationSetDTMF opSet, CallPeer callPeer)
+    {
+        this.opSet = opSet;
+        this.callPeer = new WeakReference<CallPeer>(callPeer);
+    }
+
+    /**
+     * Parses a sequence of tones.
+     *
+     * @param tones the values of the tones (<tt>0</tt>-<tt>9</tt>,
+     * <tt>*</tt>, <tt>#</tt>, <tt>A</tt>-<tt>D</tt>) and {@link #PAUSE}s;
+     * whitespace is ignored
+     * @return the tones of <tt>tones</tt> with <tt>null</tt> standing for a
+     * {@link #PAUSE}
+     * @throws IllegalArgumentException if <tt>tones</tt> contains a character
+     * which is neither a tone nor a pause
+     */
+    public static List<DTMFTone> parse(String tones)
+    {
+        List<DTMFTone> sequence = new ArrayList<DTMFTone>(tones.length());
+
+        for (int i = 0; i < tones.length(); i++)
+        {
+            char c = tones.charAt(i);
+
+            if (c == PAUSE)
+                sequence.add(null);
+            else if (!Character.isWhitespace(c))
+            {
+                DTMFTone tone
+                    = DTMFTone.getDTMFTone(
+                            String.valueOf(Character.toUpperCase(c)));
+
+                if (tone == null)
+                {
+                    throw new IllegalArgumentException(
+                            "Not a DTMF tone: " + c);
+                }
+                sequence.add(tone);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Appends a sequence of tones to this queue.
+     *
+     * @param tones the tones with <tt>null</tt> standing for a {@link #PAUSE}
+     * @param toneDuration the number of milliseconds each tone lasts
+     * @param pauseDuration the number of milliseconds between two tones
+     */
+    public synchronized void add(
+            List<DTMFTone> tones,
+            int toneDuration,
+            int pauseDuration)
+    {
+        for (DTMFTone tone : tones)
+            entries.add(new Entry(tone, toneDuration, pauseDuration));
+
+        if (!running && !entries.isEmpty())
+        {
+            running = true;
+            schedule(0);
+        }
+    }
+
+    /**
+     * Drops the tones waiting to be sent. A tone being sent is stopped as
+     * planned.
+     */
+    public synchronized void cancel()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of tones and pauses waiting to be sent.
+     *
+     * @return the number of tones and pauses waiting to be sent
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Continues with the next tone once the tone sent whole has been sent and
+     * it has lasted for its duration and pause.
+     */
+    public void toneSent()
+    {
+        long delay;
+
+        synchronized (this)
+        {
+            if (sending == null)
+                return;
+            delay
+                = sendingTime + sending.toneDuration + sending.pauseDuration
+                    - System.currentTimeMillis();
+            sending = null;
+        }
+        schedule(Math.max(0, delay));
+    }
+
+    /**
+     * Drops the tones waiting to be sent because the tone sent whole has
+     * failed to be sent.
+     *
+     * @param cause the failure
+     */
+    public void toneFailed(Throwable cause)
+    {
+        synchronized (this)
+        {
+            if (sending == null)
+                return;
+            sending = null;
+            entries.clear();
+            running = false;
+        }
+        logger.error("Failed to send DTMF tone to " + callPeer.get(), cause);
+    }
+
+    /**
+     * Stops the current tone or sends the next one.
+     */
+    public void run()
+    {
+        CallPeer callPeer = this.callPeer.get();
+        Entry entry;
+        boolean stop;
+
+        synchronized (this)
+        {
+            if (current != null)
+            {
+                entry = current;
+                current = null;
+                stop = true;
+            }
+            else
+            {
+                entry = isEnded(callPeer) ? null : entries.poll();
+                if (entry == null)
+                {
+                    entries.clear();
+                    running = false;
+                    return;
+                }
+                stop = false;
+            }
+        }
+
+        try
+        {
+            if (stop)
+            {
+                if (callPeer != null)
+                    opSet.stopSendingDTMF(callPeer);
+                schedule(entry.pauseDuration);
+            }
+            else if (entry.tone == null)
+                schedule(PAUSE_DURATION);
+            else if (!sendWhole(callPeer, entry))
+            {
+                opSet.startSendingDTMF(callPeer, entry.tone);
+                synchronized (this)
+                {
+                    current = entry;
+                }
+                schedule(entry.toneDuration);
+            }
+        }
+        catch (Throwable t)
+        {
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+            logger.error("Failed to send DTMF tone to " + callPeer, t);
+            synchronized (this)
+            {
+                sending = null;
+                entries.clear();
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * Sends a tone whole if the DTMF method in use carries the duration along
+     * with the tone. The next run of this queue is then scheduled by
+     * {@link #toneSent()}.
+     *
+     * @param callPeer the <tt>CallPeer</tt> to send the tone to
+     * @param entry the tone
+     * @return <tt>true</tt> if the tone is being sent whole
+     * @throws OperationFailedException if sending the tone fails right away
+     */
+    private boolean sendWhole(CallPeer callPeer, Entry entry)
+        throws OperationFailedException
+    {
+        if (!(opSet instanceof AbstractOperationSetDTMF))
+            return false;
+
+        synchronized (this)
+        {
+            sending = entry;
+            sendingTime = System.currentTimeMillis();
+        }
+
+        boolean sent = false;
+
+        try
+        {
+            sent
+                = ((AbstractOperationSetDTMF) opSet).sendDTMFTone(
+                        callPeer,
+                        entry.tone,
+                        entry.toneDuration,
+                        this);
+        }
+        finally
+        {
+            if (!sent)
+            {
+                synchronized (this)
+                {
+                    sending = null;
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Schedules the next run of this queue.
+     *
+     * @param delay the number of milliseconds to wait before the next run
+     */
+    private void schedule(long delay)
+    {
+        MediaTaskExecutor.getScheduler().schedule(
+                this,
+                delay,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Determines whether the call with a <tt>CallPeer</tt> has ended.
+     *
+     * @param callPeer the <tt>CallPeer</tt>
+     * @return <tt>true</tt> if the call with <tt>callPeer</tt> has ended
+     */
+    private static boolean isEnded(CallPeer callPeer)
+    {
+        if (callPeer == null)
+            return true;
+
+        CallPeerState state = callPeer.getState();
+
+        return
+            (state != null)
+                && (CallPeerState.DISCONNECTED.equals(state)
+                        || CallPeerState.FAILED.equals(state));
+    }
+
+    /**
+     * A tone or pause waiting to be sent.
+     */
+    private static class Entry
+    {
+        /**
+         * The tone or <tt>null</tt> for a {@link DTMFQueue#PAUSE}.
+         */
+        final DTMFTone tone;
+
+        /**
+         * The number of milliseconds the tone lasts.
+         */
+        final int toneDuration;
+
+        /**
+         * The number of milliseconds between the tone and the next one.
+         */
+        final int pauseDuration;
+
+        /**
+         * Initializes a new <tt>Entry</tt>.
+         *
+         * @param tone the tone or <tt>null</tt> for a pause
+         * @param toneDuration the number of milliseconds the tone lasts
+         * @param pauseDuration the number of milliseconds between the tone
+         * and the next one
+         */
+        Entry(DTMFTone tone, int toneDuration, int pauseDuration)
+        {
+            this.tone = tone;
+            this.toneDuration = toneDuration;
+            this.pauseDuration = pauseDuration;
+        }
+    }
+}
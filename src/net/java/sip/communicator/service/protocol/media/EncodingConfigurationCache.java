@@ -0,0 +1,119 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.neomedia.codec.*;
+
+/**
+ * Caches per <tt>AccountID</tt> the <tt>EncodingConfiguration</tt> with which
+ * an account overrides the global encoding settings. The configuration is
+ * only loaded from the account properties again when the encoding properties
+ * of the account change rather than for every offer and answer.
+ */
+public class EncodingConfigurationCache
+{
+    /**
+     * The <tt>EncodingConfigurationCache</tt>s of the accounts.
+     */
+    private static final Map<AccountID, EncodingConfigurationCache> caches
+        = new WeakHashMap<AccountID, EncodingConfigurationCache>();
+
+    /**
+     * The <tt>MediaService</tt> creating the <tt>EncodingConfiguration</tt>s.
+     */
+    private final MediaService mediaService;
+
+    /**
+     * The encoding properties <tt>encodingConfiguration</tt> has been loaded
+     * from.
+     */
+    private Map<String, String> encodingProperties;
+
+    /**
+     * The <tt>EncodingConfiguration</tt> of the account which overrides the
+     * global encoding settings.
+     */
+    private EncodingConfiguration encodingConfiguration;
+
+    /**
+     * Initializes a new <tt>EncodingConfigurationCache</tt>.
+     *
+     * @param mediaService the <tt>MediaService</tt> to create the
+     * <tt>EncodingConfiguration</tt>s with
+     */
+    EncodingConfigurationCache(MediaService mediaService)
+    {
+        this.mediaService = mediaService;
+    }
+
+    /**
+     * Returns the <tt>EncodingConfigurationCache</tt> of an account, creating
+     * it if necessary.
+     *
+     * @param accountID the account
+     * @return the <tt>EncodingConfigurationCache</tt> of <tt>accountID</tt>
+     */
+    public static EncodingConfigurationCache getInstance(AccountID accountID)
+    {
+        synchronized (caches)
+        {
+            EncodingConfigurationCache cache = caches.get(accountID);
+
+            if (cache == null)
+            {
+                cache
+                    = new EncodingConfigurationCache(
+                            ProtocolMediaActivator.getMediaService());
+                caches.put(accountID, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the <tt>EncodingConfiguration</tt> described by the encoding
+     * properties of an account, reusing the one created for an earlier call
+     * if the properties have not changed since.
+     *
+     * @param accountProperties the properties of the account
+     * @return the <tt>EncodingConfiguration</tt> described by
+     * <tt>accountProperties</tt>
+     */
+    public synchronized EncodingConfiguration getEncodingConfiguration(
+            Map<String, String> accountProperties)
+    {
+        Map<String, String> properties = new HashMap<String, String>();
+
+        for (Map.Entry<String, String> e : accountProperties.entrySet())
+        {
+            if (e.getKey().startsWith(
+                    ProtocolProviderFactory.ENCODING_PROP_PREFIX))
+            {
+                properties.put(e.getKey(), e.getValue());
+            }
+        }
+
+        if ((encodingConfiguration == null)
+                || !properties.equals(encodingProperties))
+        {
+            EncodingConfiguration configuration
+                = mediaService.createEmptyEncodingConfiguration();
+
+            configuration.loadProperties(
+                    properties,
+                    ProtocolProviderFactory.ENCODING_PROP_PREFIX);
+            encodingConfiguration = configuration;
+            encodingProperties = properties;
+        }
+        return encodingConfiguration;
+    }
+}
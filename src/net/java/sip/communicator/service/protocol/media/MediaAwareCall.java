@@ -106,6 +106,11 @@ public abstract class MediaAwareCall<
                     }
                 };
 
+    /**
+     * The trace of the setup of this <tt>Call</tt>.
+     */
+    private final CallSetupTrace setupTrace = new CallSetupTrace();
+
     /**
      * Crates a <tt>Call</tt> instance belonging to <tt>parentOpSet</tt>.
      *
@@ -263,6 +268,12 @@ public abstract class MediaAwareCall<
     {
         Object newState = evt.getNewValue();
 
+        String peerAddress = evt.getSourceCallPeer().getAddress();
+
+        setupTrace.mark("state " + newState, peerAddress);
+        if (CallPeerState.CONNECTED.equals(newState))
+            setupTrace.setupCompleted(peerAddress);
+
         if (CallPeerState.DISCONNECTED.equals(newState)
                 || CallPeerState.FAILED.equals(newState))
         {
@@ -279,6 +290,16 @@ public abstract class MediaAwareCall<
         }
     }
 
+    /**
+     * Returns the trace of the setup of this <tt>Call</tt>.
+     *
+     * @return the trace of the setup of this <tt>Call</tt>
+     */
+    public CallSetupTrace getSetupTrace()
+    {
+        return setupTrace;
+    }
+
     /**
      * Returns a reference to the <tt>OperationSetBasicTelephony</tt>
      * implementation instance that created this call.
@@ -821,10 +842,24 @@ public abstract class MediaAwareCall<
         }
         finally
         {
-            if (CallState.CALL_ENDED.equals(getCallState()))
+            CallState callState = getCallState();
+            MediaQualityStatistics mediaQualityStatistics
+                = ProtocolMediaActivator.getMediaQualityStatistics();
+
+            if (CallState.CALL_IN_PROGRESS.equals(callState))
+            {
+                if (mediaQualityStatistics != null)
+                    mediaQualityStatistics.addCall(this);
+            }
+            else if (CallState.CALL_ENDED.equals(callState))
+            {
                 ProtocolMediaActivator
                     .getMediaService()
                         .removePropertyChangeListener(this);
+                setupTrace.log(getCallID());
+                if (mediaQualityStatistics != null)
+                    mediaQualityStatistics.removeCall(this);
+            }
         }
     }
 
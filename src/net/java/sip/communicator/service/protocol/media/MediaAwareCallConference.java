@@ -46,7 +46,9 @@ public class MediaAwareCallConference
     /**
      * The <tt>MediaDevice</tt>s which implement media mixing on the respective
      * <tt>MediaDevice</tt> in {@link #devices} for the purposes of this
-     * telephony conference.
+     * telephony conference. They are created on first use by whichever of the
+     * <tt>CallPeer</tt>s of the conference, which may be set up concurrently,
+     * needs them first so access to them is synchronized on the array itself.
      */
     private final MediaDevice[] mixers;
 
@@ -77,10 +79,17 @@ public class MediaAwareCallConference
      * The <tt>RTPTranslator</tt> which forwards video RTP and RTCP traffic
      * between the <tt>CallPeer</tt>s of the <tt>Call</tt>s participating in
      * this telephony conference when the local peer is acting as a conference
-     * focus.
+     * focus. It is created on first use, like {@link #mixers}, so access to it
+     * is synchronized using {@link #videoRTPTranslatorSyncRoot}.
      */
     private RTPTranslator videoRTPTranslator;
 
+    /**
+     * The <tt>Object</tt> which synchronizes the access to
+     * {@link #videoRTPTranslator}.
+     */
+    private final Object videoRTPTranslatorSyncRoot = new Object();
+
     /**
      * Initializes a new <tt>MediaAwareCallConference</tt> instance.
      */
@@ -175,7 +184,10 @@ public class MediaAwareCallConference
          */
         if (oldValue && !newValue)
         {
-            Arrays.fill(mixers, null);
+            synchronized (mixers)
+            {
+                Arrays.fill(mixers, null);
+            }
 
             /* Disposing the video translator is not needed when the conference
                changes as we have video and we will want to continue with
@@ -208,10 +220,16 @@ public class MediaAwareCallConference
     {
         super.callRemoved(call);
 
-        if (getCallCount() == 0 && (videoRTPTranslator != null))
+        if (getCallCount() == 0)
         {
-            videoRTPTranslator.dispose();
-            videoRTPTranslator = null;
+            synchronized (videoRTPTranslatorSyncRoot)
+            {
+                if (videoRTPTranslator != null)
+                {
+                    videoRTPTranslator.dispose();
+                    videoRTPTranslator = null;
+                }
+            }
         }
     }
 
@@ -245,37 +263,43 @@ public class MediaAwareCallConference
          */
         if (device != null)
         {
-            MediaDevice mixer = mixers[mediaTypeIndex];
+            MediaDevice mixer;
 
-            if (mixer == null)
+            synchronized (mixers)
             {
-                switch (mediaType)
+                mixer = mixers[mediaTypeIndex];
+
+                if (mixer == null)
                 {
-                case AUDIO:
-                    /*
-                     * TODO AudioMixer leads to very poor audio quality on
-                     * Android so do not use it unless it is really really
-                     * necessary.
-                     */
-                    if ((!OSUtils.IS_ANDROID || isConferenceFocus())
-                            /*
-                             * We can use the AudioMixer only if the device is
-                             * able to capture (because the AudioMixer will push
-                             * when the capture device pushes).
-                             */
-                            && device.getDirection().allowsSending())
+                    switch (mediaType)
                     {
-                        mixer = mediaService.createMixer(device);
+                    case AUDIO:
+                        /*
+                         * TODO AudioMixer leads to very poor audio quality on
+                         * Android so do not use it unless it is really really
+                         * necessary.
+                         */
+                        if ((!OSUtils.IS_ANDROID || isConferenceFocus())
+                                /*
+                                 * We can use the AudioMixer only if the
+                                 * device is able to capture (because the
+                                 * AudioMixer will push when the capture
+                                 * device pushes).
+                                 */
+                                && device.getDirection().allowsSending())
+                        {
+                            mixer = mediaService.createMixer(device);
+                        }
+                        break;
+
+                    case VIDEO:
+                        if (isConferenceFocus())
+                            mixer = mediaService.createMixer(device);
+                        break;
                     }
-                    break;
 
-                case VIDEO:
-                    if (isConferenceFocus())
-                        mixer = mediaService.createMixer(device);
-                    break;
+                    mixers[mediaTypeIndex] = mixer;
                 }
-
-                mixers[mediaTypeIndex] = mixer;
             }
 
             if (mixer != null)
@@ -330,14 +354,17 @@ public class MediaAwareCallConference
         if (MediaType.VIDEO.equals(mediaType)
                 && (!OSUtils.IS_ANDROID || isConferenceFocus()))
         {
-            if (videoRTPTranslator == null)
+            synchronized (videoRTPTranslatorSyncRoot)
             {
-                videoRTPTranslator
-                    = ProtocolMediaActivator
-                        .getMediaService()
-                            .createRTPTranslator();
+                if (videoRTPTranslator == null)
+                {
+                    videoRTPTranslator
+                        = ProtocolMediaActivator
+                            .getMediaService()
+                                .createRTPTranslator();
+                }
+                rtpTranslator = videoRTPTranslator;
             }
-            rtpTranslator = videoRTPTranslator;
         }
         return rtpTranslator;
     }
@@ -368,7 +395,12 @@ public class MediaAwareCallConference
                  * time of this writing.
                  */
                 int mediaTypeIndex = MediaType.AUDIO.ordinal();
-                MediaDevice mixer = mixers[mediaTypeIndex];
+                MediaDevice mixer;
+
+                synchronized (mixers)
+                {
+                    mixer = mixers[mediaTypeIndex];
+                }
                 MediaDevice oldValue
                     = (mixer instanceof MediaDeviceWrapper)
                         ? ((MediaDeviceWrapper) mixer).getWrappedDevice()
@@ -393,7 +425,10 @@ public class MediaAwareCallConference
                  */
                 if (oldValue != newValue)
                 {
-                    mixers[mediaTypeIndex] = null;
+                    synchronized (mixers)
+                    {
+                        mixers[mediaTypeIndex] = null;
+                    }
                     firePropertyChange(
                             MediaAwareCall.DEFAULT_DEVICE,
                             oldValue, newValue);
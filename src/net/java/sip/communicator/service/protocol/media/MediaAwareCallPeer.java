@@ -124,11 +124,11 @@ public abstract class MediaAwareCallPeer
         = new LinkedList<PropertyChangeListener>();
 
     /**
-     * Represents the last Conference Information (RFC4575) document sent to
-     * this <tt>CallPeer</tt>. This is always a document with state "full", even
-     * if the last document actually sent was a "partial"
+     * Represents the last Conference Information (RFC4575) notification sent
+     * to this <tt>CallPeer</tt>. The next notification only describes the
+     * changes since this one.
      */
-    private ConferenceInfoDocument lastConferenceInfoSent = null;
+    private ConferenceInfoState.Notification lastConferenceInfoSent = null;
 
     /**
      * The time (as obtained by <tt>System.currentTimeMillis()</tt>) at which
@@ -1061,22 +1061,23 @@ public abstract class MediaAwareCallPeer
     }
 
     /**
-     * Returns the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>. It is a document with state <tt>full</tt>
-     * @return the last <tt>ConferenceInfoDocument</tt> sent by us to this
-     * <tt>CallPeer</tt>. It is a document with state <tt>full</tt>
+     * Returns the last Conference Information notification sent by us to this
+     * <tt>CallPeer</tt>.
+     * @return the last Conference Information notification sent by us to this
+     * <tt>CallPeer</tt> or <tt>null</tt>
      */
-    public ConferenceInfoDocument getLastConferenceInfoSent()
+    public ConferenceInfoState.Notification getLastConferenceInfoSent()
     {
         return lastConferenceInfoSent;
     }
 
     /**
-     * Sets the last <tt>ConferenceInfoDocument</tt> sent by us to this
+     * Sets the last Conference Information notification sent by us to this
      * <tt>CallPeer</tt>.
-     * @param confInfo the document to set.
+     * @param confInfo the notification to set.
      */
-    public void setLastConferenceInfoSent(ConferenceInfoDocument confInfo)
+    public void setLastConferenceInfoSent(
+            ConferenceInfoState.Notification confInfo)
     {
         lastConferenceInfoSent = confInfo;
     }
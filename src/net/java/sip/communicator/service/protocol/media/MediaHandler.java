@@ -45,15 +45,18 @@ public class MediaHandler
     /**
      * The <tt>CsrcAudioLevelListener</tt> that this instance sets on its
      * {@link #audioStream} if {@link #csrcAudioLevelListeners} is not empty.
+     * The levels reported at packet rate are delivered in batches by an
+     * {@link AudioLevelAggregator}.
      */
     private final CsrcAudioLevelListener csrcAudioLevelListener
-        = new CsrcAudioLevelListener()
-        {
-            public void audioLevelsReceived(long[] audioLevels)
-            {
-                MediaHandler.this.audioLevelsReceived(audioLevels);
-            }
-        };
+        = AudioLevelAggregator.aggregateCsrcLevels(
+                new CsrcAudioLevelListener()
+                {
+                    public void audioLevelsReceived(long[] audioLevels)
+                    {
+                        MediaHandler.this.audioLevelsReceived(audioLevels);
+                    }
+                });
 
     /**
      * The <tt>Object</tt> which synchronizes the access to
@@ -100,19 +103,21 @@ public class MediaHandler
      * The <tt>SimpleAudioLeveListener</tt> that this instance sets on its
      * {@link #audioStream} if {@link #localUserAudioLevelListeners} is not
      * empty in order to listen to changes in the levels of the audio sent from
-     * the local user/peer to the remote peer(s).
+     * the local user/peer to the remote peer(s). The levels are delivered in
+     * batches by an {@link AudioLevelAggregator}.
      */
     private final SimpleAudioLevelListener localUserAudioLevelListener
-        = new SimpleAudioLevelListener()
-        {
-            public void audioLevelChanged(int level)
-            {
-                MediaHandler.this.audioLevelChanged(
-                        localUserAudioLevelListenerLock,
-                        localUserAudioLevelListeners,
-                        level);
-            }
-        };
+        = AudioLevelAggregator.aggregateLevels(
+                new SimpleAudioLevelListener()
+                {
+                    public void audioLevelChanged(int level)
+                    {
+                        MediaHandler.this.audioLevelChanged(
+                                localUserAudioLevelListenerLock,
+                                localUserAudioLevelListeners,
+                                level);
+                    }
+                });
 
     /**
      * The <tt>Object</tt> which synchronizes the access to
@@ -188,19 +193,21 @@ public class MediaHandler
      * The <tt>SimpleAudioLeveListener</tt> that this instance sets on its
      * {@link #audioStream} if {@link #streamAudioLevelListeners} is not empty
      * in order to listen to changes in the levels of the audio received from
-     * the remote peer(s) to the local user/peer.
+     * the remote peer(s) to the local user/peer. The levels are delivered in
+     * batches by an {@link AudioLevelAggregator}.
      */
     private final SimpleAudioLevelListener streamAudioLevelListener
-        = new SimpleAudioLevelListener()
-        {
-            public void audioLevelChanged(int level)
-            {
-                MediaHandler.this.audioLevelChanged(
-                        streamAudioLevelListenerLock,
-                        streamAudioLevelListeners,
-                        level);
-            }
-        };
+        = AudioLevelAggregator.aggregateLevels(
+                new SimpleAudioLevelListener()
+                {
+                    public void audioLevelChanged(int level)
+                    {
+                        MediaHandler.this.audioLevelChanged(
+                                streamAudioLevelListenerLock,
+                                streamAudioLevelListeners,
+                                level);
+                    }
+                });
 
     /**
      * The <tt>Object</tt> which synchronizes the access to
@@ -0,0 +1,85 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+/**
+ * Keeps the most recent <tt>MediaQualitySample</tt>s of a stream in a ring
+ * buffer of a fixed capacity so that the memory used by a long call does not
+ * grow.
+ */
+public class MediaQualityHistory
+{
+    /**
+     * The ring buffer of samples.
+     */
+    private final MediaQualitySample[] samples;
+
+    /**
+     * The index in {@link #samples} at which the next sample is to be stored.
+     */
+    private int next = 0;
+
+    /**
+     * The number of samples in {@link #samples}.
+     */
+    private int count = 0;
+
+    /**
+     * Initializes a new <tt>MediaQualityHistory</tt>.
+     *
+     * @param capacity the maximum number of samples to keep
+     */
+    public MediaQualityHistory(int capacity)
+    {
+        samples = new MediaQualitySample[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a sample, dropping the oldest one if this history is full.
+     *
+     * @param sample the sample to add
+     */
+    public synchronized void add(MediaQualitySample sample)
+    {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+            count++;
+    }
+
+    /**
+     * Returns the most recent sample.
+     *
+     * @return the most recent sample or <tt>null</tt> if this history is
+     * empty
+     */
+    public synchronized MediaQualitySample getLatest()
+    {
+        return
+            (count == 0)
+                ? null
+                : samples[(next + samples.length - 1) % samples.length];
+    }
+
+    /**
+     * Returns the samples of this history, oldest first.
+     *
+     * @return the samples of this history, oldest first
+     */
+    public synchronized List<MediaQualitySample> getSamples()
+    {
+        List<MediaQualitySample> list
+            = new ArrayList<MediaQualitySample>(count);
+        int first = (next + samples.length - count) % samples.length;
+
+        for (int i = 0; i < count; i++)
+            list.add(samples[(first + i) % samples.length]);
+        return list;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+/**
+ * Receives the <tt>MediaQualitySample</tt>s taken by
+ * <tt>MediaQualityStatistics</tt>. It is called on the sampling thread so it
+ * has to return quickly.
+ */
+public interface MediaQualityListener
+    extends EventListener
+{
+    /**
+     * Notifies this listener that the quality of a stream has been sampled.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the stream is with
+     * @param sample the sample
+     */
+    public void mediaQualitySampled(
+            CallPeer callPeer,
+            MediaQualitySample sample);
+}
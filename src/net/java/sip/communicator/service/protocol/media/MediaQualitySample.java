@@ -0,0 +1,343 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.text.*;
+import java.util.*;
+
+import org.jitsi.service.neomedia.*;
+
+/**
+ * The quality of a <tt>MediaStream</tt> at a point in time as sampled by
+ * {@link MediaQualityStatistics}: jitter, packet loss, round-trip time,
+ * bitrates and the addresses and ICE candidate type of the pair the media
+ * flows through.
+ */
+public class MediaQualitySample
+{
+    /**
+     * The names of the columns of the lines returned by {@link #toCSV()}.
+     */
+    public static final String CSV_HEADER
+        = "time,peer,media,encoding,download_kbps,upload_kbps,"
+            + "download_loss_percent,upload_loss_percent,download_jitter_ms,"
+            + "upload_jitter_ms,rtt_ms,jitter_buffer_ms,ice_candidate_type,"
+            + "local_address,remote_address";
+
+    /**
+     * The time in milliseconds since the epoch at which this sample was
+     * taken.
+     */
+    private final long time;
+
+    /**
+     * The address of the peer the stream is with.
+     */
+    private final String peer;
+
+    /**
+     * The <tt>MediaType</tt> of the stream.
+     */
+    private final MediaType mediaType;
+
+    /**
+     * The encoding of the stream.
+     */
+    private final String encoding;
+
+    /**
+     * The received bitrate in kilobits per second.
+     */
+    private final double downloadRate;
+
+    /**
+     * The sent bitrate in kilobits per second.
+     */
+    private final double uploadRate;
+
+    /**
+     * The percentage of the received packets which have been lost.
+     */
+    private final double downloadLoss;
+
+    /**
+     * The percentage of the sent packets which have been lost as reported by
+     * the peer.
+     */
+    private final double uploadLoss;
+
+    /**
+     * The jitter of the received packets in milliseconds.
+     */
+    private final double downloadJitter;
+
+    /**
+     * The jitter of the sent packets in milliseconds as reported by the peer.
+     */
+    private final double uploadJitter;
+
+    /**
+     * The round-trip time in milliseconds or <tt>-1</tt> if unknown.
+     */
+    private final long rtt;
+
+    /**
+     * The delay of the jitter buffer in milliseconds.
+     */
+    private final int jitterBufferDelay;
+
+    /**
+     * The extended type of the selected local ICE candidate or <tt>null</tt>
+     * if ICE is not used.
+     */
+    private final String iceCandidateType;
+
+    /**
+     * The local address and port of the stream.
+     */
+    private final String localAddress;
+
+    /**
+     * The remote address and port of the stream.
+     */
+    private final String remoteAddress;
+
+    /**
+     * Initializes a new <tt>MediaQualitySample</tt> from the statistics of a
+     * <tt>MediaStream</tt> which have just been updated.
+     *
+     * @param time the time in milliseconds since the epoch at which the
+     * sample is taken
+     * @param peer the address of the peer the stream is with
+     * @param mediaType the <tt>MediaType</tt> of the stream
+     * @param stats the statistics of the stream
+     * @param iceCandidateType the extended type of the selected local ICE
+     * candidate or <tt>null</tt> if ICE is not used
+     */
+    public MediaQualitySample(
+            long time,
+            String peer,
+            MediaType mediaType,
+            MediaStreamStats stats,
+            String iceCandidateType)
+    {
+        this.time = time;
+        this.peer = peer;
+        this.mediaType = mediaType;
+        this.iceCandidateType = iceCandidateType;
+
+        encoding = stats.getEncoding();
+        downloadRate = stats.getDownloadRateKiloBitPerSec();
+        uploadRate = stats.getUploadRateKiloBitPerSec();
+        downloadLoss = stats.getDownloadPercentLoss();
+        uploadLoss = stats.getUploadPercentLoss();
+        downloadJitter = stats.getDownloadJitterMs();
+        uploadJitter = stats.getUploadJitterMs();
+        rtt = stats.getRttMs();
+        jitterBufferDelay = stats.getJitterBufferDelayMs();
+        localAddress
+            = stats.getLocalIPAddress() + ":" + stats.getLocalPort();
+        remoteAddress
+            = stats.getRemoteIPAddress() + ":" + stats.getRemotePort();
+    }
+
+    /**
+     * Returns the time in milliseconds since the epoch at which this sample
+     * was taken.
+     *
+     * @return the time at which this sample was taken
+     */
+    public long getTime()
+    {
+        return time;
+    }
+
+    /**
+     * Returns the address of the peer the stream is with.
+     *
+     * @return the address of the peer the stream is with
+     */
+    public String getPeer()
+    {
+        return peer;
+    }
+
+    /**
+     * Returns the <tt>MediaType</tt> of the stream.
+     *
+     * @return the <tt>MediaType</tt> of the stream
+     */
+    public MediaType getMediaType()
+    {
+        return mediaType;
+    }
+
+    /**
+     * Returns the encoding of the stream.
+     *
+     * @return the encoding of the stream
+     */
+    public String getEncoding()
+    {
+        return encoding;
+    }
+
+    /**
+     * Returns the received bitrate.
+     *
+     * @return the received bitrate in kilobits per second
+     */
+    public double getDownloadRateKiloBitPerSec()
+    {
+        return downloadRate;
+    }
+
+    /**
+     * Returns the sent bitrate.
+     *
+     * @return the sent bitrate in kilobits per second
+     */
+    public double getUploadRateKiloBitPerSec()
+    {
+        return uploadRate;
+    }
+
+    /**
+     * Returns the percentage of the received packets which have been lost.
+     *
+     * @return the percentage of the received packets which have been lost
+     */
+    public double getDownloadPercentLoss()
+    {
+        return downloadLoss;
+    }
+
+    /**
+     * Returns the percentage of the sent packets which have been lost as
+     * reported by the peer.
+     *
+     * @return the percentage of the sent packets which have been lost
+     */
+    public double getUploadPercentLoss()
+    {
+        return uploadLoss;
+    }
+
+    /**
+     * Returns the jitter of the received packets.
+     *
+     * @return the jitter of the received packets in milliseconds
+     */
+    public double getDownloadJitterMs()
+    {
+        return downloadJitter;
+    }
+
+    /**
+     * Returns the jitter of the sent packets as reported by the peer.
+     *
+     * @return the jitter of the sent packets in milliseconds
+     */
+    public double getUploadJitterMs()
+    {
+        return uploadJitter;
+    }
+
+    /**
+     * Returns the round-trip time.
+     *
+     * @return the round-trip time in milliseconds or <tt>-1</tt> if unknown
+     */
+    public long getRttMs()
+    {
+        return rtt;
+    }
+
+    /**
+     * Returns the delay of the jitter buffer.
+     *
+     * @return the delay of the jitter buffer in milliseconds
+     */
+    public int getJitterBufferDelayMs()
+    {
+        return jitterBufferDelay;
+    }
+
+    /**
+     * Returns the extended type of the selected local ICE candidate.
+     *
+     * @return the extended type of the selected local ICE candidate or
+     * <tt>null</tt> if ICE is not used
+     */
+    public String getICECandidateType()
+    {
+        return iceCandidateType;
+    }
+
+    /**
+     * Returns the local address and port of the stream.
+     *
+     * @return the local address and port of the stream
+     */
+    public String getLocalAddress()
+    {
+        return localAddress;
+    }
+
+    /**
+     * Returns the remote address and port of the stream.
+     *
+     * @return the remote address and port of the stream
+     */
+    public String getRemoteAddress()
+    {
+        return remoteAddress;
+    }
+
+    /**
+     * Returns this sample as a line of comma-separated values in the order of
+     * {@link #CSV_HEADER}.
+     *
+     * @return this sample as a line of comma-separated values
+     */
+    public String toCSV()
+    {
+        DecimalFormat format
+            = new DecimalFormat(
+                    "0.##",
+                    DecimalFormatSymbols.getInstance(Locale.US));
+
+        return
+            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(
+                    new Date(time))
+                + ',' + peer
+                + ',' + mediaType
+                + ',' + encoding
+                + ',' + format.format(downloadRate)
+                + ',' + format.format(uploadRate)
+                + ',' + format.format(downloadLoss)
+                + ',' + format.format(uploadLoss)
+                + ',' + format.format(downloadJitter)
+                + ',' + format.format(uploadJitter)
+                + ',' + rtt
+                + ',' + jitterBufferDelay
+                + ',' + ((iceCandidateType == null) ? "" : iceCandidateType)
+                + ',' + localAddress
+                + ',' + remoteAddress;
+    }
+
+    /**
+     * Returns a description of this sample.
+     *
+     * @return a description of this sample
+     */
+    @Override
+    public String toString()
+    {
+        return toCSV();
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.LogRecord;
+
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.neomedia.*;
+
+/**
+ * Samples the quality of the streams of all <tt>MediaAwareCall</tt>s in
+ * progress at a fixed interval, keeps the most recent samples of each stream
+ * in a <tt>MediaQualityHistory</tt>, notifies <tt>MediaQualityListener</tt>s
+ * and, when a call ends, optionally appends the samples of its streams to a
+ * set of rotating files for post-call analysis.
+ * <p>
+ * The instance of the application is created and registered as a service by
+ * <tt>ProtocolMediaActivator</tt>. Sampling is disabled unless
+ * {@link #INTERVAL_PROPERTY_NAME} is set. The streams are sampled on the
+ * scheduler of <tt>MediaTaskExecutor</tt> and the files are written on its
+ * executor so that the disk never delays a sample.
+ * </p>
+ * <p>
+ * Since the rates reported by <tt>MediaStreamStats</tt> are computed over the
+ * time between two updates, the statistics of a sampled stream are only to be
+ * updated by this instance; see {@link #isSampled(CallPeer)}.
+ * </p>
+ */
+public class MediaQualityStatistics
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>MediaQualityStatistics</tt> class
+     * and its instances for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(MediaQualityStatistics.class);
+
+    /**
+     * The name of the property which specifies the number of milliseconds
+     * between two samples. <tt>0</tt> disables sampling.
+     */
+    public static final String INTERVAL_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "MEDIA_QUALITY_INTERVAL";
+
+    /**
+     * The name of the property which specifies the number of samples kept per
+     * stream.
+     */
+    public static final String HISTORY_SIZE_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "MEDIA_QUALITY_HISTORY_SIZE";
+
+    /**
+     * The name of the property which specifies the approximate maximum number
+     * of bytes written to one file before the next file is used. <tt>0</tt>
+     * disables writing the samples of ended calls to files.
+     */
+    public static final String FILE_SIZE_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "MEDIA_QUALITY_FILE_SIZE";
+
+    /**
+     * The name of the property which specifies the number of files rotated
+     * through.
+     */
+    public static final String FILE_COUNT_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "MEDIA_QUALITY_FILE_COUNT";
+
+    /**
+     * The default number of milliseconds between two samples, i.e. sampling
+     * is disabled by default.
+     */
+    public static final long DEFAULT_INTERVAL = 0;
+
+    /**
+     * The default number of samples kept per stream.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 120;
+
+    /**
+     * The default number of files rotated through.
+     */
+    public static final int DEFAULT_FILE_COUNT = 3;
+
+    /**
+     * The <tt>MediaTypes</tt> of the streams which are sampled.
+     */
+    private static final MediaType[] MEDIA_TYPES
+        = { MediaType.AUDIO, MediaType.VIDEO };
+
+    /**
+     * The number of milliseconds between two samples.
+     */
+    private final long interval;
+
+    /**
+     * The number of samples kept per stream.
+     */
+    private final int historySize;
+
+    /**
+     * The approximate maximum number of bytes written to one file.
+     */
+    private final int fileSize;
+
+    /**
+     * The number of files rotated through.
+     */
+    private final int fileCount;
+
+    /**
+     * The histories of the streams of the calls in progress by call and peer.
+     */
+    private final Map<MediaAwareCall<?,?,?>,
+                      Map<CallPeer, Map<MediaType, MediaQualityHistory>>>
+        calls
+            = new LinkedHashMap<MediaAwareCall<?,?,?>,
+                                Map<CallPeer,
+                                    Map<MediaType, MediaQualityHistory>>>();
+
+    /**
+     * The listeners notified about samples.
+     */
+    private final List<MediaQualityListener> listeners
+        = new ArrayList<MediaQualityListener>();
+
+    /**
+     * The directory the files are written to.
+     */
+    private final File dir;
+
+    /**
+     * Whether {@link #stop()} has been called.
+     */
+    private boolean stopped = false;
+
+    /**
+     * The periodic sampling or <tt>null</tt> if no call is in progress.
+     */
+    private ScheduledFuture<?> sampling;
+
+    /**
+     * The <tt>FileHandler</tt> writing the samples of ended calls or
+     * <tt>null</tt> if it has not been opened. Guarded by
+     * {@link #fileSyncRoot}.
+     */
+    private FileHandler fileHandler;
+
+    /**
+     * Whether {@link #fileHandler} has been closed for good. Guarded by
+     * {@link #fileSyncRoot}.
+     */
+    private boolean fileClosed = false;
+
+    /**
+     * The <tt>Object</tt> which synchronizes the access to
+     * {@link #fileHandler} and {@link #fileClosed}.
+     */
+    private final Object fileSyncRoot = new Object();
+
+    /**
+     * Initializes a new <tt>MediaQualityStatistics</tt>.
+     *
+     * @param interval the number of milliseconds between two samples or
+     * <tt>0</tt> not to sample
+     * @param historySize the number of samples kept per stream
+     * @param fileSize the approximate maximum number of bytes written to one
+     * file or <tt>0</tt> not to write files
+     * @param fileCount the number of files rotated through
+     * @param dir the directory the files are written to
+     */
+    MediaQualityStatistics(
+            long interval,
+            int historySize,
+            int fileSize,
+            int fileCount,
+            File dir)
+    {
+        this.interval = interval;
+        this.historySize = historySize;
+        this.fileSize = fileSize;
+        this.fileCount = Math.max(fileCount, 1);
+        this.dir = dir;
+    }
+
+    /**
+     * Creates a new <tt>MediaQualityStatistics</tt> configured by the
+     * properties of a <tt>ConfigurationService</tt>.
+     *
+     * @param cfg the <tt>ConfigurationService</tt> to read the properties from
+     * or <tt>null</tt> to use the defaults
+     * @return a new <tt>MediaQualityStatistics</tt> configured by the
+     * properties of <tt>cfg</tt>
+     */
+    static MediaQualityStatistics create(ConfigurationService cfg)
+    {
+        String logDir
+            = System.getProperty(
+                    ConfigurationService.PNAME_SC_LOG_DIR_LOCATION);
+        String homeDirName
+            = System.getProperty(ConfigurationService.PNAME_SC_HOME_DIR_NAME);
+        File dir
+            = ((logDir != null) && (homeDirName != null))
+                ? new File(new File(logDir, homeDirName), "log")
+                : new File("log");
+
+        if (cfg == null)
+        {
+            return
+                new MediaQualityStatistics(
+                        DEFAULT_INTERVAL,
+                        DEFAULT_HISTORY_SIZE,
+                        0,
+                        DEFAULT_FILE_COUNT,
+                        dir);
+        }
+        else
+        {
+            return
+                new MediaQualityStatistics(
+                        cfg.getLong(INTERVAL_PROPERTY_NAME, DEFAULT_INTERVAL),
+                        cfg.getInt(
+                                HISTORY_SIZE_PROPERTY_NAME,
+                                DEFAULT_HISTORY_SIZE),
+                        cfg.getInt(FILE_SIZE_PROPERTY_NAME, 0),
+                        cfg.getInt(
+                                FILE_COUNT_PROPERTY_NAME,
+                                DEFAULT_FILE_COUNT),
+                        dir);
+        }
+    }
+
+    /**
+     * Determines whether this instance samples the calls in progress.
+     *
+     * @return <tt>true</tt> if sampling is enabled and this instance has not
+     * been stopped
+     */
+    public synchronized boolean isEnabled()
+    {
+        return (interval > 0) && !stopped;
+    }
+
+    /**
+     * Stops sampling, forgets the calls in progress and closes the files.
+     * The samples of the calls which have ended but have not been written yet
+     * are dropped.
+     */
+    synchronized void stop()
+    {
+        stopped = true;
+        calls.clear();
+        if (sampling != null)
+        {
+            MediaTaskExecutor.cancel(sampling);
+            sampling = null;
+        }
+
+        synchronized (fileSyncRoot)
+        {
+            fileClosed = true;
+            if (fileHandler != null)
+            {
+                fileHandler.close();
+                fileHandler = null;
+            }
+        }
+    }
+
+    /**
+     * Adds a listener to be notified about samples.
+     *
+     * @param listener the listener to add
+     */
+    public void addMediaQualityListener(MediaQualityListener listener)
+    {
+        synchronized (listeners)
+        {
+            if (!listeners.contains(listener))
+                listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener notified about samples.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeMediaQualityListener(MediaQualityListener listener)
+    {
+        synchronized (listeners)
+        {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Starts sampling the streams of a call unless sampling is disabled or
+     * the call is already sampled.
+     *
+     * @param call the call to sample
+     */
+    public synchronized void addCall(MediaAwareCall<?,?,?> call)
+    {
+        if (!isEnabled() || calls.containsKey(call))
+            return;
+
+        calls.put(
+                call,
+                new HashMap<CallPeer, Map<MediaType, MediaQualityHistory>>());
+        if (sampling == null)
+        {
+            sampling
+                = MediaTaskExecutor.getScheduler().scheduleWithFixedDelay(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                sample();
+                            }
+                        },
+                        interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops sampling the streams of a call and, if enabled, writes their
+     * samples to the files.
+     *
+     * @param call the call to stop sampling
+     */
+    public synchronized void removeCall(final MediaAwareCall<?,?,?> call)
+    {
+        final Map<CallPeer, Map<MediaType, MediaQualityHistory>> histories
+            = calls.remove(call);
+
+        if (histories == null)
+            return;
+
+        if (calls.isEmpty() && (sampling != null))
+        {
+            MediaTaskExecutor.cancel(sampling);
+            sampling = null;
+        }
+        if ((fileSize > 0) && !histories.isEmpty())
+        {
+            MediaTaskExecutor.getExecutor().execute(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            write(call.getCallID(), histories);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Determines whether the streams with a <tt>CallPeer</tt> are sampled,
+     * i.e. whether their statistics are updated by this instance.
+     *
+     * @param callPeer the <tt>CallPeer</tt>
+     * @return <tt>true</tt> if the streams with <tt>callPeer</tt> are sampled
+     */
+    public synchronized boolean isSampled(CallPeer callPeer)
+    {
+        Call call = callPeer.getCall();
+
+        return (call != null) && calls.containsKey(call);
+    }
+
+    /**
+     * Returns the samples of a stream kept so far, oldest first.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the stream is with
+     * @param mediaType the <tt>MediaType</tt> of the stream
+     * @return the samples of the stream, oldest first
+     */
+    public List<MediaQualitySample> getSamples(
+            CallPeer callPeer,
+            MediaType mediaType)
+    {
+        MediaQualityHistory history = getHistory(callPeer, mediaType);
+
+        return
+            (history == null)
+                ? new ArrayList<MediaQualitySample>()
+                : history.getSamples();
+    }
+
+    /**
+     * Returns the most recent sample of a stream.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the stream is with
+     * @param mediaType the <tt>MediaType</tt> of the stream
+     * @return the most recent sample of the stream or <tt>null</tt>
+     */
+    public MediaQualitySample getLatestSample(
+            CallPeer callPeer,
+            MediaType mediaType)
+    {
+        MediaQualityHistory history = getHistory(callPeer, mediaType);
+
+        return (history == null) ? null : history.getLatest();
+    }
+
+    /**
+     * Returns the history of a stream.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the stream is with
+     * @param mediaType the <tt>MediaType</tt> of the stream
+     * @return the history of the stream or <tt>null</tt>
+     */
+    private synchronized MediaQualityHistory getHistory(
+            CallPeer callPeer,
+            MediaType mediaType)
+    {
+        Map<CallPeer, Map<MediaType, MediaQualityHistory>> histories
+            = calls.get(callPeer.getCall());
+
+        if (histories == null)
+            return null;
+
+        Map<MediaType, MediaQualityHistory> peerHistories
+            = histories.get(callPeer);
+
+        return (peerHistories == null) ? null : peerHistories.get(mediaType);
+    }
+
+    /**
+     * Samples the streams of all calls in progress.
+     */
+    void sample()
+    {
+        List<MediaAwareCall<?,?,?>> calls;
+
+        synchronized (this)
+        {
+            calls = new ArrayList<MediaAwareCall<?,?,?>>(this.calls.keySet());
+        }
+
+        for (MediaAwareCall<?,?,?> call : calls)
+        {
+            for (MediaAwareCallPeer<?,?,?> callPeer : call.getCallPeerList())
+            {
+                try
+                {
+                    sample(call, callPeer);
+                }
+                catch (Throwable t)
+                {
+                    if (t instanceof ThreadDeath)
+                        throw (ThreadDeath) t;
+                    logger.error("Failed to sample " + callPeer, t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Samples the streams with a <tt>CallPeer</tt>.
+     *
+     * @param call the call of <tt>callPeer</tt>
+     * @param callPeer the <tt>CallPeer</tt>
+     */
+    private void sample(
+            MediaAwareCall<?,?,?> call,
+            MediaAwareCallPeer<?,?,?> callPeer)
+    {
+        CallPeerMediaHandler<?> mediaHandler = callPeer.getMediaHandler();
+
+        if (mediaHandler == null)
+            return;
+
+        for (MediaType mediaType : MEDIA_TYPES)
+        {
+            MediaStream stream = mediaHandler.getStream(mediaType);
+
+            if ((stream == null) || !stream.isStarted())
+                continue;
+
+            MediaStreamStats stats = stream.getMediaStreamStats();
+
+            if (stats == null)
+                continue;
+
+            stats.updateStats();
+
+            MediaQualitySample sample
+                = new MediaQualitySample(
+                        System.currentTimeMillis(),
+                        callPeer.getAddress(),
+                        mediaType,
+                        stats,
+                        mediaHandler.getICECandidateExtendedType(
+                                mediaType.toString()));
+
+            if (!addSample(call, callPeer, sample))
+                return;
+            fireMediaQualitySampled(callPeer, sample);
+        }
+    }
+
+    /**
+     * Adds a sample to the history of its stream.
+     *
+     * @param call the call of <tt>callPeer</tt>
+     * @param callPeer the <tt>CallPeer</tt> the stream is with
+     * @param sample the sample
+     * @return <tt>false</tt> if <tt>call</tt> is no longer sampled
+     */
+    synchronized boolean addSample(
+            MediaAwareCall<?,?,?> call,
+            CallPeer callPeer,
+            MediaQualitySample sample)
+    {
+        Map<CallPeer, Map<MediaType, MediaQualityHistory>> histories
+            = calls.get(call);
+
+        if (histories == null)
+            return false;
+
+        Map<MediaType, MediaQualityHistory> peerHistories
+            = histories.get(callPeer);
+
+        if (peerHistories == null)
+        {
+            peerHistories
+                = new EnumMap<MediaType, MediaQualityHistory>(
+                        MediaType.class);
+            histories.put(callPeer, peerHistories);
+        }
+
+        MediaQualityHistory history = peerHistories.get(sample.getMediaType());
+
+        if (history == null)
+        {
+            history = new MediaQualityHistory(historySize);
+            peerHistories.put(sample.getMediaType(), history);
+        }
+        history.add(sample);
+        return true;
+    }
+
+    /**
+     * Notifies the listeners about a sample.
+     *
+     * @param callPeer the <tt>CallPeer</tt> the stream is with
+     * @param sample the sample
+     */
+    private void fireMediaQualitySampled(
+            CallPeer callPeer,
+            MediaQualitySample sample)
+    {
+        MediaQualityListener[] listeners;
+
+        synchronized (this.listeners)
+        {
+            listeners
+                = this.listeners.toArray(
+                        new MediaQualityListener[this.listeners.size()]);
+        }
+        for (MediaQualityListener listener : listeners)
+            listener.mediaQualitySampled(callPeer, sample);
+    }
+
+    /**
+     * Writes the samples of the streams of an ended call to the files.
+     *
+     * @param callID the ID of the call
+     * @param histories the histories of the streams of the call
+     */
+    void write(
+            String callID,
+            Map<CallPeer, Map<MediaType, MediaQualityHistory>> histories)
+    {
+        StringBuilder s
+            = new StringBuilder("# call ").append(callID).append('\n')
+                .append(MediaQualitySample.CSV_HEADER).append('\n');
+
+        for (Map<MediaType, MediaQualityHistory> peerHistories
+                : histories.values())
+        {
+            for (MediaQualityHistory history : peerHistories.values())
+            {
+                for (MediaQualitySample sample : history.getSamples())
+                    s.append(sample.toCSV()).append('\n');
+            }
+        }
+
+        synchronized (fileSyncRoot)
+        {
+            FileHandler fileHandler = getFileHandler();
+
+            if (fileHandler == null)
+                return;
+
+            fileHandler.publish(
+                    new LogRecord(java.util.logging.Level.INFO, s.toString()));
+            fileHandler.flush();
+        }
+    }
+
+    /**
+     * Returns the <tt>FileHandler</tt> writing the samples of ended calls,
+     * opening it if necessary. Must be called with {@link #fileSyncRoot}
+     * held.
+     *
+     * @return the <tt>FileHandler</tt> writing the samples of ended calls or
+     * <tt>null</tt> if it cannot be opened or has been closed
+     */
+    private FileHandler getFileHandler()
+    {
+        if ((fileHandler == null) && !fileClosed)
+        {
+            try
+            {
+                if (!dir.isDirectory() && !dir.mkdirs())
+                    throw new IOException("Failed to create " + dir);
+
+                fileHandler
+                    = new FileHandler(
+                            new File(dir, "media-quality%g.csv").getPath(),
+                            fileSize,
+                            fileCount);
+                fileHandler.setFormatter(
+                        new java.util.logging.Formatter()
+                        {
+                            @Override
+                            public String format(LogRecord record)
+                            {
+                                return record.getMessage();
+                            }
+                        });
+            }
+            catch (IOException ioe)
+            {
+                logger.error("Failed to open the media quality file", ioe);
+            }
+        }
+        return fileHandler;
+    }
+}
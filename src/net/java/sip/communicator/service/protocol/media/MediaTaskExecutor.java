@@ -0,0 +1,128 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.concurrent.*;
+
+import net.java.sip.communicator.util.*;
+
+/**
+ * Provides the executors shared by the calls of all protocols for their
+ * timed and background media tasks instead of a thread per task or per
+ * feature.
+ * <p>
+ * The scheduler is a single daemon thread meant for short tasks which have to
+ * run at a given time, such as the delivery of audio levels or the pacing of
+ * DTMF tones. The tasks which may block, e.g. on the network or on the disk,
+ * are handed over to the executor, a pool of at most
+ * {@link #MAX_WORKER_THREADS} daemon threads. The threads of both only exist
+ * while there is work to do.
+ * <p>
+ * A cancelled task stays in the queue of the scheduler until it would have
+ * run, so the tasks which are scheduled far ahead or periodically are to be
+ * cancelled with {@link #cancel(Future)}, which removes them right away.
+ */
+public class MediaTaskExecutor
+{
+    /**
+     * The number of seconds an idle thread waits for a new task before it
+     * ends.
+     */
+    private static final long IDLE_THREAD_TIMEOUT = 60;
+
+    /**
+     * The maximum number of threads running blocking tasks at the same time.
+     * The tasks submitted while all of them are busy wait for one to become
+     * available.
+     */
+    static final int MAX_WORKER_THREADS = 8;
+
+    /**
+     * The thread running the timed tasks or <tt>null</tt> if it has not been
+     * needed yet.
+     */
+    private static ScheduledExecutorService scheduler;
+
+    /**
+     * The threads running the blocking tasks or <tt>null</tt> if they have
+     * not been needed yet.
+     */
+    private static ExecutorService executor;
+
+    /**
+     * Prevents the initialization of <tt>MediaTaskExecutor</tt> instances.
+     */
+    private MediaTaskExecutor()
+    {
+    }
+
+    /**
+     * Returns the scheduler shared by the short timed media tasks, creating
+     * it if necessary.
+     *
+     * @return the scheduler shared by the short timed media tasks
+     */
+    public static synchronized ScheduledExecutorService getScheduler()
+    {
+        if (scheduler == null)
+        {
+            ScheduledThreadPoolExecutor timer
+                = new ScheduledThreadPoolExecutor(
+                        1,
+                        new DaemonThreadFactory("MediaTaskExecutor.timer"));
+
+            timer.setKeepAliveTime(IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS);
+            timer.allowCoreThreadTimeOut(true);
+            scheduler = timer;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Cancels a task of the scheduler without interrupting it if it is
+     * running, and removes it and the other cancelled tasks from the queue of
+     * the scheduler.
+     *
+     * @param task the task to cancel
+     */
+    public static void cancel(Future<?> task)
+    {
+        task.cancel(false);
+
+        ScheduledExecutorService scheduler;
+
+        synchronized (MediaTaskExecutor.class)
+        {
+            scheduler = MediaTaskExecutor.scheduler;
+        }
+        if (scheduler instanceof ScheduledThreadPoolExecutor)
+            ((ScheduledThreadPoolExecutor) scheduler).purge();
+    }
+
+    /**
+     * Returns the executor shared by the media tasks which may block,
+     * creating it if necessary.
+     *
+     * @return the executor shared by the media tasks which may block
+     */
+    public static synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            ThreadPoolExecutor workers
+                = new ThreadPoolExecutor(
+                        MAX_WORKER_THREADS, MAX_WORKER_THREADS,
+                        IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new DaemonThreadFactory("MediaTaskExecutor.worker"));
+
+            workers.allowCoreThreadTimeOut(true);
+            executor = workers;
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import net.java.sip.communicator.service.netaddr.*;
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+
+/**
+ * Keeps a small number of RTP/RTCP <tt>DatagramSocket</tt> pairs bound ahead
+ * of time within the range of a <tt>PortTracker</tt> so that a call can lease
+ * a pair instead of binding its sockets while it is being set up. Whenever a
+ * pair is leased, the pool is refilled in the background.
+ * <p>
+ * A pool only keeps pairs bound to a single local address, the one of the
+ * most recent lease, and drops pairs whose ports have fallen out of the range
+ * of its <tt>PortTracker</tt> because the configuration has changed. The
+ * sockets of a call are owned and closed by its <tt>StreamConnector</tt> so
+ * they are not returned to the pool when the call ends.
+ * </p>
+ */
+public class PortPairPool
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>PortPairPool</tt> class and its
+     * instances for logging output.
+     */
+    private static final Logger logger = Logger.getLogger(PortPairPool.class);
+
+    /**
+     * The name of the property which specifies the number of RTP/RTCP socket
+     * pairs kept bound per <tt>PortTracker</tt>. <tt>0</tt> disables pooling.
+     */
+    public static final String SIZE_PROPERTY_NAME
+        = "net.java.sip.communicator.service.protocol.media."
+            + "PORT_PAIR_POOL_SIZE";
+
+    /**
+     * The default number of RTP/RTCP socket pairs kept bound per
+     * <tt>PortTracker</tt>.
+     */
+    public static final int DEFAULT_SIZE = 0;
+
+    /**
+     * The <tt>PortPairPool</tt>s of the <tt>PortTracker</tt>s.
+     */
+    private static final Map<PortTracker, PortPairPool> pools
+        = new HashMap<PortTracker, PortPairPool>();
+
+    /**
+     * The <tt>PortTracker</tt> the ports of the pairs of this pool are taken
+     * from.
+     */
+    private final PortTracker portTracker;
+
+    /**
+     * The number of pairs this pool keeps bound.
+     */
+    private final int size;
+
+    /**
+     * The <tt>NetworkAddressManagerService</tt> binding the sockets.
+     */
+    private final NetworkAddressManagerService nam;
+
+    /**
+     * The pairs bound to {@link #localAddress}, least recently bound first.
+     */
+    private final LinkedList<DatagramSocket[]> pairs
+        = new LinkedList<DatagramSocket[]>();
+
+    /**
+     * The local address the pairs of this pool are bound to or <tt>null</tt>
+     * if no pair has been leased yet.
+     */
+    private InetAddress localAddress;
+
+    /**
+     * Whether a refill of this pool has been scheduled.
+     */
+    private boolean refilling = false;
+
+    /**
+     * Initializes a new <tt>PortPairPool</tt>.
+     *
+     * @param portTracker the <tt>PortTracker</tt> to take the ports from
+     * @param size the number of pairs to keep bound
+     * @param nam the <tt>NetworkAddressManagerService</tt> to bind the
+     * sockets with
+     */
+    public PortPairPool(
+            PortTracker portTracker,
+            int size,
+            NetworkAddressManagerService nam)
+    {
+        this.portTracker = portTracker;
+        this.size = size;
+        this.nam = nam;
+    }
+
+    /**
+     * Returns the <tt>PortPairPool</tt> of a <tt>PortTracker</tt>, creating
+     * it if necessary.
+     *
+     * @param portTracker the <tt>PortTracker</tt>
+     * @return the <tt>PortPairPool</tt> of <tt>portTracker</tt>
+     */
+    public static PortPairPool getInstance(PortTracker portTracker)
+    {
+        synchronized (pools)
+        {
+            PortPairPool pool = pools.get(portTracker);
+
+            if (pool == null)
+            {
+                ConfigurationService cfg
+                    = ProtocolMediaActivator.getConfigurationService();
+
+                pool
+                    = new PortPairPool(
+                            portTracker,
+                            (cfg == null)
+                                ? DEFAULT_SIZE
+                                : cfg.getInt(SIZE_PROPERTY_NAME, DEFAULT_SIZE),
+                            ProtocolMediaActivator
+                                .getNetworkAddressManagerService());
+                pools.put(portTracker, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Closes the pairs of all pools and forgets the pools so that they read
+     * their configuration again when next used.
+     */
+    public static void closeAll()
+    {
+        synchronized (pools)
+        {
+            for (PortPairPool pool : pools.values())
+                pool.close();
+            pools.clear();
+        }
+    }
+
+    /**
+     * Binds an RTP/RTCP socket pair within the range of a
+     * <tt>PortTracker</tt>, preferably on consecutive ports, and advances the
+     * <tt>PortTracker</tt> past them.
+     *
+     * @param nam the <tt>NetworkAddressManagerService</tt> to bind the
+     * sockets with
+     * @param localAddress the local address to bind the sockets to
+     * @param portTracker the <tt>PortTracker</tt> to take the ports from
+     * @return the RTP socket followed by the RTCP socket
+     * @throws IOException if binding either socket fails
+     */
+    public static DatagramSocket[] bind(
+            NetworkAddressManagerService nam,
+            InetAddress localAddress,
+            PortTracker portTracker)
+        throws IOException
+    {
+        synchronized (portTracker)
+        {
+            DatagramSocket rtpSocket
+                = nam.createDatagramSocket(
+                        localAddress, portTracker.getPort(),
+                        portTracker.getMinPort(), portTracker.getMaxPort());
+
+            //make sure that next time we don't try to bind on occupied ports
+            //also, refuse validation in case someone set the tracker range
+            //to 1
+            portTracker.setNextPort(rtpSocket.getLocalPort() + 1, false);
+
+            DatagramSocket rtcpSocket;
+
+            try
+            {
+                rtcpSocket
+                    = nam.createDatagramSocket(
+                            localAddress, portTracker.getPort(),
+                            portTracker.getMinPort(), portTracker.getMaxPort());
+            }
+            catch (IOException ioe)
+            {
+                rtpSocket.close();
+                throw ioe;
+            }
+
+            //make sure that next time we don't try to bind on occupied ports
+            portTracker.setNextPort(rtcpSocket.getLocalPort() + 1);
+
+            return new DatagramSocket[] { rtpSocket, rtcpSocket };
+        }
+    }
+
+    /**
+     * Leases a socket pair bound to a specific local address and schedules
+     * the refill of this pool.
+     *
+     * @param localAddress the local address the sockets are to be bound to
+     * @return the RTP socket followed by the RTCP socket or <tt>null</tt> if
+     * this pool has no such pair
+     */
+    public DatagramSocket[] lease(InetAddress localAddress)
+    {
+        if ((size <= 0) || (localAddress == null))
+            return null;
+
+        DatagramSocket[] pair = null;
+
+        synchronized (this)
+        {
+            if (!localAddress.equals(this.localAddress))
+            {
+                close();
+                this.localAddress = localAddress;
+            }
+
+            while ((pair == null) && !pairs.isEmpty())
+            {
+                pair = pairs.removeFirst();
+                if (!isUsable(pair))
+                {
+                    close(pair);
+                    pair = null;
+                }
+            }
+
+            if (!refilling)
+            {
+                refilling = true;
+                MediaTaskExecutor.getExecutor().execute(
+                        new Runnable()
+                        {
+                            public void run()
+                            {
+                                refill();
+                            }
+                        });
+            }
+        }
+        return pair;
+    }
+
+    /**
+     * Returns the number of pairs currently bound by this pool.
+     *
+     * @return the number of pairs currently bound by this pool
+     */
+    public synchronized int getPairCount()
+    {
+        return pairs.size();
+    }
+
+    /**
+     * Binds pairs to the local address of the most recent lease until this
+     * pool holds {@link #size} of them.
+     */
+    void refill()
+    {
+        while (true)
+        {
+            InetAddress localAddress;
+
+            synchronized (this)
+            {
+                if ((this.localAddress == null) || (pairs.size() >= size))
+                {
+                    refilling = false;
+                    return;
+                }
+                localAddress = this.localAddress;
+            }
+
+            DatagramSocket[] pair;
+
+            try
+            {
+                pair = bind(nam, localAddress, portTracker);
+            }
+            catch (Exception e)
+            {
+                logger.warn("Failed to bind a pooled pair of ports", e);
+                synchronized (this)
+                {
+                    refilling = false;
+                }
+                return;
+            }
+
+            synchronized (this)
+            {
+                if (localAddress.equals(this.localAddress)
+                        && (pairs.size() < size))
+                {
+                    pairs.add(pair);
+                    pair = null;
+                }
+            }
+            if (pair != null)
+                close(pair);
+        }
+    }
+
+    /**
+     * Closes all pairs of this pool and stops any refill in progress from
+     * adding more.
+     */
+    synchronized void close()
+    {
+        for (DatagramSocket[] pair : pairs)
+            close(pair);
+        pairs.clear();
+        localAddress = null;
+    }
+
+    /**
+     * Determines whether a pair is still open and within the range of
+     * {@link #portTracker}.
+     *
+     * @param pair the pair
+     * @return <tt>true</tt> if <tt>pair</tt> can be leased
+     */
+    private boolean isUsable(DatagramSocket[] pair)
+    {
+        for (DatagramSocket socket : pair)
+        {
+            int port = socket.getLocalPort();
+
+            if (socket.isClosed()
+                    || (port < portTracker.getMinPort())
+                    || (port > portTracker.getMaxPort()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the sockets of a pair.
+     *
+     * @param pair the pair
+     */
+    private static void close(DatagramSocket[] pair)
+    {
+        for (DatagramSocket socket : pair)
+            socket.close();
+    }
+}
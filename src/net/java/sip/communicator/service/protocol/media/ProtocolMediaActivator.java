@@ -14,9 +14,10 @@ import org.jitsi.service.neomedia.*;
 import org.osgi.framework.*;
 
 /**
- * The activator doesn't really start anything as this service is mostly
- * stateless, it's simply here to allow us to obtain references to the services
- * that we may need.
+ * The activator registers the <tt>MediaQualityStatistics</tt> of the
+ * application as a service and otherwise doesn't really start anything as this
+ * service is mostly stateless, it's simply here to allow us to obtain
+ * references to the services that we may need.
  *
  * @author Emil Ivov
  */
@@ -51,6 +52,18 @@ public class ProtocolMediaActivator
     private static NetworkAddressManagerService
                                         networkAddressManagerService = null;
 
+    /**
+     * The <tt>MediaQualityStatistics</tt> registered by this activator or
+     * <tt>null</tt> if it is not started.
+     */
+    private static MediaQualityStatistics mediaQualityStatistics = null;
+
+    /**
+     * The registration of {@link #mediaQualityStatistics} as a service.
+     */
+    private ServiceRegistration<MediaQualityStatistics>
+        mediaQualityStatisticsRegistration;
+
     /**
      * Called when this bundle is started so the Framework can perform the
      * bundle-specific activities necessary to start this bundle.
@@ -67,6 +80,16 @@ public class ProtocolMediaActivator
             logger.debug("Started.");
 
         ProtocolMediaActivator.bundleContext = context;
+
+        MediaQualityStatistics mediaQualityStatistics
+            = MediaQualityStatistics.create(getConfigurationService());
+
+        ProtocolMediaActivator.mediaQualityStatistics = mediaQualityStatistics;
+        mediaQualityStatisticsRegistration
+            = context.registerService(
+                    MediaQualityStatistics.class,
+                    mediaQualityStatistics,
+                    null);
     }
 
     /**
@@ -81,6 +104,18 @@ public class ProtocolMediaActivator
      */
     public void stop(BundleContext context) throws Exception
     {
+        if (mediaQualityStatisticsRegistration != null)
+        {
+            mediaQualityStatisticsRegistration.unregister();
+            mediaQualityStatisticsRegistration = null;
+        }
+        if (mediaQualityStatistics != null)
+        {
+            mediaQualityStatistics.stop();
+            mediaQualityStatistics = null;
+        }
+
+        PortPairPool.closeAll();
         configurationService = null;
         mediaService = null;
         networkAddressManagerService = null;
@@ -154,4 +189,15 @@ public class ProtocolMediaActivator
         }
         return networkAddressManagerService;
     }
+
+    /**
+     * Returns the <tt>MediaQualityStatistics</tt> registered by this activator.
+     *
+     * @return the <tt>MediaQualityStatistics</tt> registered by this activator
+     * or <tt>null</tt> if it is not started
+     */
+    public static MediaQualityStatistics getMediaQualityStatistics()
+    {
+        return mediaQualityStatistics;
+    }
 }
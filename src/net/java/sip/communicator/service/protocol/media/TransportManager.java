@@ -240,45 +240,27 @@ public abstract class TransportManager<U extends MediaAwareCallPeer<?, ?, ?>>
 
         PortTracker portTracker = getPortTracker(mediaType);
 
-        //create the RTP socket.
-        DatagramSocket rtpSocket = null;
-        try
-        {
-            rtpSocket = nam.createDatagramSocket(
-                localHostForPeer, portTracker.getPort(),
-                portTracker.getMinPort(), portTracker.getMaxPort());
-        }
-        catch (Exception exc)
-        {
-            throw new OperationFailedException(
-                "Failed to allocate the network ports necessary for the call.",
-                OperationFailedException.INTERNAL_ERROR, exc);
-        }
-
-        //make sure that next time we don't try to bind on occupied ports
-        //also, refuse validation in case someone set the tracker range to 1
-        portTracker.setNextPort( rtpSocket.getLocalPort() + 1, false);
+        //prefer a pair of sockets bound ahead of time
+        DatagramSocket[] sockets
+            = PortPairPool.getInstance(portTracker).lease(localHostForPeer);
 
-        //create the RTCP socket, preferably on the port following our RTP one.
-        DatagramSocket rtcpSocket = null;
-        try
+        if (sockets == null)
         {
-            rtcpSocket = nam.createDatagramSocket(
-                localHostForPeer, portTracker.getPort(),
-                portTracker.getMinPort(), portTracker.getMaxPort());
-        }
-        catch (Exception exc)
-        {
-           throw new OperationFailedException(
-                "Failed to allocate the network ports necessary for the call.",
-                OperationFailedException.INTERNAL_ERROR,
-                exc);
+            try
+            {
+                sockets
+                    = PortPairPool.bind(nam, localHostForPeer, portTracker);
+            }
+            catch (Exception exc)
+            {
+                throw new OperationFailedException(
+                    "Failed to allocate the network ports necessary for the"
+                        + " call.",
+                    OperationFailedException.INTERNAL_ERROR, exc);
+            }
         }
 
-        //make sure that next time we don't try to bind on occupied ports
-        portTracker.setNextPort( rtcpSocket.getLocalPort() + 1);
-
-        return new DefaultStreamConnector(rtpSocket, rtcpSocket);
+        return new DefaultStreamConnector(sockets[0], sockets[1]);
     }
 
     /**
@@ -0,0 +1,54 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.util;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Creates the daemon threads of the executors of the bundles, so that none of
+ * them keeps the application from exiting. The threads are named after the
+ * executor they belong to and numbered in the order they are created in.
+ */
+public class DaemonThreadFactory
+    implements ThreadFactory
+{
+    /**
+     * The prefix of the names of the created threads.
+     */
+    private final String name;
+
+    /**
+     * The number of threads created so far, used to name them.
+     */
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Initializes a new <tt>DaemonThreadFactory</tt>.
+     *
+     * @param name the prefix of the names of the threads to be created,
+     * typically the name of the class owning the executor
+     */
+    public DaemonThreadFactory(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Creates a new daemon thread.
+     *
+     * @param r the <tt>Runnable</tt> to be executed by the new thread
+     * @return a new daemon <tt>Thread</tt>
+     */
+    public Thread newThread(Runnable r)
+    {
+        Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -85,4 +85,27 @@ public class FileUtils
 
         return fileIcon;
     }
+
+    /**
+     * Closes <tt>stream</tt>, logging rather than throwing the errors which
+     * occur. Meant for the <tt>finally</tt> blocks of the methods reading or
+     * writing files, which have nothing better to do with such errors.
+     *
+     * @param stream the stream to close, may be <tt>null</tt>
+     */
+    public static void closeQuietly(Closeable stream)
+    {
+        if (stream == null)
+            return;
+
+        try
+        {
+            stream.close();
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Failed to close " + stream, e);
+        }
+    }
 }
@@ -0,0 +1,216 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+public class AccountTaskSchedulerTest
+    extends TestCase
+{
+    private AccountTaskScheduler scheduler;
+
+    private AccountID account;
+
+    @Override
+    protected void setUp()
+    {
+        scheduler = new AccountTaskScheduler(0);
+
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put(ProtocolProviderFactory.USER_ID, "user@example.com");
+        properties.put(ProtocolProviderFactory.SERVER_ADDRESS, "example.com");
+        account = new JabberAccountIDImpl("user@example.com", properties);
+    }
+
+    public void testOneShotTaskIsAccounted()
+        throws InterruptedException
+    {
+        CountDownLatchRunnable runnable = new CountDownLatchRunnable(1);
+        AccountTaskScheduler.Task task
+            = scheduler.execute(account, "one-shot", runnable);
+
+        runnable.await();
+        waitForTaskCount(0);
+
+        Assert.assertTrue(task.isDone());
+        Assert.assertEquals(1, scheduler.getRunCount(account));
+        Assert.assertEquals(1, runnable.runs);
+    }
+
+    public void testPeriodicTaskRunsUntilCanceled()
+        throws InterruptedException
+    {
+        CountDownLatchRunnable runnable = new CountDownLatchRunnable(3);
+        AccountTaskScheduler.Task task
+            = scheduler.schedule(account, "periodic", runnable, 0, 10);
+
+        Assert.assertEquals(1, scheduler.getTaskCount(account));
+        runnable.await();
+        task.cancel();
+        task.cancel();
+        Assert.assertEquals(0, scheduler.getTaskCount(account));
+
+        int runs = runnable.runs;
+
+        Thread.sleep(50);
+        // a run may have been in progress when the task was canceled
+        Assert.assertTrue(runnable.runs <= runs + 1);
+        Assert.assertTrue(scheduler.getRunCount(account) >= 3);
+    }
+
+    public void testRunningTaskIsNotOverlapped()
+        throws InterruptedException
+    {
+        final Object lock = new Object();
+        final int[] concurrent = new int[2];
+        AccountTaskScheduler.Task task
+            = scheduler.schedule(
+                    account,
+                    "slow",
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            synchronized (lock)
+                            {
+                                concurrent[0]++;
+                                concurrent[1]
+                                    = Math.max(concurrent[1], concurrent[0]);
+                            }
+                            try
+                            {
+                                Thread.sleep(30);
+                            }
+                            catch (InterruptedException e)
+                            {
+                            }
+                            synchronized (lock)
+                            {
+                                concurrent[0]--;
+                            }
+                        }
+                    },
+                    0,
+                    5);
+
+        Thread.sleep(150);
+        task.cancel();
+
+        synchronized (lock)
+        {
+            Assert.assertEquals(1, concurrent[1]);
+        }
+    }
+
+    public void testWorkerThreadsAreBounded()
+        throws InterruptedException
+    {
+        final int taskCount = 2 * AccountTaskScheduler.MAX_WORKER_THREADS;
+        final Object lock = new Object();
+        final int[] concurrent = new int[2];
+        CountDownLatchRunnable done = new CountDownLatchRunnable(taskCount);
+
+        for (int i = 0; i < taskCount; i++)
+        {
+            final Runnable countDown = done;
+
+            scheduler.execute(
+                    account,
+                    "blocking",
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            synchronized (lock)
+                            {
+                                concurrent[0]++;
+                                concurrent[1]
+                                    = Math.max(concurrent[1], concurrent[0]);
+                            }
+                            try
+                            {
+                                Thread.sleep(50);
+                            }
+                            catch (InterruptedException e)
+                            {
+                            }
+                            synchronized (lock)
+                            {
+                                concurrent[0]--;
+                            }
+                            countDown.run();
+                        }
+                    });
+        }
+
+        done.await();
+        synchronized (lock)
+        {
+            Assert.assertTrue(
+                    concurrent[1] <= AccountTaskScheduler.MAX_WORKER_THREADS);
+        }
+    }
+
+    public void testRemovedAccountIsForgotten()
+        throws InterruptedException
+    {
+        CountDownLatchRunnable runnable = new CountDownLatchRunnable(1);
+        AccountTaskScheduler.Task task
+            = scheduler.schedule(account, "periodic", runnable, 0, 10);
+
+        runnable.await();
+        scheduler.removeAccount(account);
+        Assert.assertEquals(0, scheduler.getTaskCount(account));
+        Assert.assertEquals(0, scheduler.getRunCount(account));
+
+        // the tasks of the removed account no longer touch its accounting
+        Thread.sleep(30);
+        task.cancel();
+        Assert.assertEquals(0, scheduler.getTaskCount(account));
+        Assert.assertEquals(0, scheduler.getRunCount(account));
+    }
+
+    private void waitForTaskCount(int count)
+        throws InterruptedException
+    {
+        for (int i = 0;
+                i < 500 && scheduler.getTaskCount(account) != count;
+                i++)
+            Thread.sleep(10);
+        Assert.assertEquals(count, scheduler.getTaskCount(account));
+    }
+
+    private static class CountDownLatchRunnable
+        implements Runnable
+    {
+        private final java.util.concurrent.CountDownLatch latch;
+
+        volatile int runs;
+
+        CountDownLatchRunnable(int count)
+        {
+            latch = new java.util.concurrent.CountDownLatch(count);
+        }
+
+        public void run()
+        {
+            runs++;
+            latch.countDown();
+        }
+
+        void await()
+            throws InterruptedException
+        {
+            Assert.assertTrue(
+                    latch.await(5, java.util.concurrent.TimeUnit.SECONDS));
+        }
+    }
+}
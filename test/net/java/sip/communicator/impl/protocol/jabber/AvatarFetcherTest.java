@@ -0,0 +1,316 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class AvatarFetcherTest
+    extends TestCase
+{
+    private static final byte[] AVATAR = new byte[] { 1, 2, 3 };
+
+    private static final String AVATAR_SHA1
+        = VCardTempXUpdatePresenceExtension.getImageSha1(AVATAR);
+
+    private final List<String> fetched
+        = Collections.synchronizedList(new ArrayList<String>());
+
+    private final List<String> delivered
+        = Collections.synchronizedList(new ArrayList<String>());
+
+    private final Object gate = new Object();
+
+    private boolean gateOpen = true;
+
+    private File directory;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        directory = File.createTempFile("avatar", "store");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testVisibleContactsAreServedFirst()
+        throws InterruptedException
+    {
+        AvatarFetcher fetcher = createFetcher(null);
+
+        closeGate();
+        fetcher.fetch("blocker@example.com", null, false);
+        waitFor(fetched, 1);
+
+        fetcher.fetch("a@example.com", null, false);
+        fetcher.fetch("b@example.com", null, false);
+        fetcher.fetch("c@example.com", null, true);
+        openGate();
+        waitFor(delivered, 4);
+
+        Assert.assertEquals(
+                Arrays.asList(
+                        "blocker@example.com", "c@example.com",
+                        "a@example.com", "b@example.com"),
+                fetched);
+    }
+
+    public void testQueuedContactIsFetchedOnce()
+        throws InterruptedException
+    {
+        AvatarFetcher fetcher = createFetcher(null);
+
+        closeGate();
+        fetcher.fetch("blocker@example.com", null, false);
+        waitFor(fetched, 1);
+
+        fetcher.fetch("a@example.com", null, false);
+        fetcher.fetch("a@example.com", AVATAR_SHA1, false);
+        fetcher.fetch("a@example.com", null, true);
+        openGate();
+        waitFor(delivered, 2);
+        waitForIdle(fetcher);
+
+        Assert.assertEquals(
+                Arrays.asList("blocker@example.com", "a@example.com"),
+                fetched);
+        Assert.assertTrue(delivered.contains("a@example.com " + AVATAR_SHA1));
+    }
+
+    public void testAvatarIsFetchedOnceForAllContacts()
+        throws InterruptedException
+    {
+        AvatarFetcher fetcher = createFetcher(null);
+
+        closeGate();
+        fetcher.fetch("blocker@example.com", null, false);
+        waitFor(fetched, 1);
+
+        fetcher.fetch("a@example.com", AVATAR_SHA1, false);
+        fetcher.fetch("b@example.com", AVATAR_SHA1.toUpperCase(), false);
+        openGate();
+        waitFor(delivered, 3);
+        waitForIdle(fetcher);
+
+        Assert.assertEquals(
+                Arrays.asList("blocker@example.com", "a@example.com"),
+                fetched);
+        Assert.assertTrue(delivered.contains("a@example.com " + AVATAR_SHA1));
+        Assert.assertTrue(delivered.contains("b@example.com " + AVATAR_SHA1));
+    }
+
+    public void testOlderAvatarIsNotDeliveredAfterNewerOne()
+        throws InterruptedException
+    {
+        final CountDownLatch oldAvatarGate = new CountDownLatch(1);
+        final CountDownLatch newAvatarGate = new CountDownLatch(1);
+        AvatarFetcher fetcher
+            = new AvatarFetcher(
+                    new AvatarFetcher.Source()
+                    {
+                        public byte[] fetchAvatar(String address, String sha1)
+                        {
+                            fetched.add(address + " " + sha1);
+                            try
+                            {
+                                if (AVATAR_SHA1.equals(sha1))
+                                    newAvatarGate.await();
+                                else
+                                    oldAvatarGate.await();
+                            }
+                            catch (InterruptedException e)
+                            {
+                                return null;
+                            }
+                            return AVATAR;
+                        }
+                    },
+                    new AvatarFetcher.Listener()
+                    {
+                        public void avatarFetched(
+                                String address,
+                                String sha1,
+                                byte[] avatar)
+                        {
+                            delivered.add(address + " " + sha1);
+                        }
+                    },
+                    null,
+                    2);
+
+        fetcher.fetch("a@example.com", "old", false);
+        waitFor(fetched, 1);
+        fetcher.fetch("a@example.com", AVATAR_SHA1, false);
+        waitFor(fetched, 2);
+
+        // the old avatar is no longer the one the contact advertises
+        oldAvatarGate.countDown();
+        for (int i = 0; i < 500 && fetcher.getRequestCount() != 1; i++)
+            Thread.sleep(10);
+        fetcher.fetch("a@example.com", AVATAR_SHA1, false);
+        Assert.assertEquals(1, fetcher.getRequestCount());
+        Assert.assertTrue(delivered.isEmpty());
+
+        newAvatarGate.countDown();
+        waitFor(delivered, 1);
+        waitForIdle(fetcher);
+        Assert.assertEquals("a@example.com " + AVATAR_SHA1, delivered.get(0));
+        Assert.assertEquals(2, fetched.size());
+    }
+
+    public void testStoredAvatarIsNotDownloaded()
+        throws InterruptedException
+    {
+        AvatarStore store = new AvatarStore(directory);
+
+        Assert.assertEquals(AVATAR_SHA1, store.put(AVATAR));
+
+        AvatarFetcher fetcher = createFetcher(store);
+
+        fetcher.fetch("a@example.com", AVATAR_SHA1, false);
+        waitFor(delivered, 1);
+
+        Assert.assertTrue(fetched.isEmpty());
+    }
+
+    public void testDownloadedAvatarIsStored()
+        throws InterruptedException
+    {
+        AvatarStore store = new AvatarStore(directory);
+        AvatarFetcher fetcher = createFetcher(store);
+
+        fetcher.fetch("a@example.com", AVATAR_SHA1, false);
+        waitFor(delivered, 1);
+
+        Assert.assertTrue(
+                Arrays.equals(
+                        AVATAR,
+                        new AvatarStore(directory).get(AVATAR_SHA1)));
+    }
+
+    public void testStoreRejectsInvalidHashes()
+    {
+        AvatarStore store = new AvatarStore(directory);
+
+        store.put(AVATAR);
+
+        Assert.assertNull(store.get("../" + AVATAR_SHA1.substring(3)));
+        Assert.assertNull(store.get(AVATAR_SHA1.substring(1)));
+        Assert.assertNull(store.get(null));
+        Assert.assertTrue(
+                Arrays.equals(AVATAR, store.get(AVATAR_SHA1.toUpperCase())));
+    }
+
+    public void testStoreEvictsLeastRecentlyUsedAvatars()
+    {
+        AvatarStore store = new AvatarStore(directory, 2);
+        byte[] avatar2 = new byte[] { 4, 5, 6 };
+        byte[] avatar3 = new byte[] { 7, 8, 9 };
+        String sha1 = store.put(AVATAR);
+        String sha2 = store.put(avatar2);
+        long now = System.currentTimeMillis();
+
+        new File(directory, sha1).setLastModified(now - 20000);
+        new File(directory, sha2).setLastModified(now - 10000);
+        Assert.assertNotNull(store.get(sha1));
+
+        String sha3 = store.put(avatar3);
+
+        Assert.assertEquals(2, directory.listFiles().length);
+        Assert.assertNull(store.get(sha2));
+        Assert.assertTrue(Arrays.equals(AVATAR, store.get(sha1)));
+        Assert.assertTrue(Arrays.equals(avatar3, store.get(sha3)));
+    }
+
+    private AvatarFetcher createFetcher(AvatarStore store)
+    {
+        return new AvatarFetcher(
+                new AvatarFetcher.Source()
+                {
+                    public byte[] fetchAvatar(String address, String sha1)
+                    {
+                        fetched.add(address);
+                        synchronized (gate)
+                        {
+                            while (!gateOpen)
+                            {
+                                try
+                                {
+                                    gate.wait();
+                                }
+                                catch (InterruptedException e)
+                                {
+                                    return null;
+                                }
+                            }
+                        }
+                        return AVATAR;
+                    }
+                },
+                new AvatarFetcher.Listener()
+                {
+                    public void avatarFetched(
+                            String address,
+                            String sha1,
+                            byte[] avatar)
+                    {
+                        delivered.add(
+                                (sha1 == null) ? address : address + " " + sha1);
+                    }
+                },
+                store,
+                1);
+    }
+
+    private void closeGate()
+    {
+        synchronized (gate)
+        {
+            gateOpen = false;
+        }
+    }
+
+    private void openGate()
+    {
+        synchronized (gate)
+        {
+            gateOpen = true;
+            gate.notifyAll();
+        }
+    }
+
+    private static void waitFor(List<String> list, int size)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && list.size() < size; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(size, list.size());
+    }
+
+    private static void waitForIdle(AvatarFetcher fetcher)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && fetcher.getRequestCount() != 0; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(0, fetcher.getRequestCount());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.jivesoftware.smackx.muc.*;
+
+public class ChatRoomHistoryTrackerTest
+    extends TestCase
+{
+    private static final String ME = "me";
+
+    private static final String ALICE = "alice";
+
+    private static final String BOB = "bob";
+
+    private final ChatRoom room = proxy(ChatRoom.class, null);
+
+    private ChatRoomHistoryTracker tracker;
+
+    @Override
+    protected void setUp()
+    {
+        tracker = new ChatRoomHistoryTracker();
+    }
+
+    public void testNoHistoryBeforeLoad()
+    {
+        tracker.messageReported(ALICE, "hello", new Date(100000));
+
+        Assert.assertNull(tracker.createDiscussionHistory());
+    }
+
+    public void testNoHistoryWithoutMessages()
+    {
+        tracker.historyLoaded(Collections.<EventObject>emptyList(), ME);
+
+        Assert.assertNull(tracker.createDiscussionHistory());
+    }
+
+    public void testHistorySinceNewestMessage()
+    {
+        tracker.historyLoaded(
+                Arrays.asList(
+                        received(ALICE, "old", 100000),
+                        delivered("mine", 300000)),
+                ME);
+        tracker.messageReported(ALICE, "live", new Date(200000));
+
+        DiscussionHistory history = tracker.createDiscussionHistory();
+
+        Assert.assertEquals(
+                300000 - ChatRoomHistoryTracker.HISTORY_SINCE_MARGIN,
+                history.getSince().getTime());
+        Assert.assertEquals(
+                ChatRoomHistoryTracker.MAX_HISTORY_STANZAS,
+                history.getMaxStanzas());
+    }
+
+    public void testReplayedMessagesAreRecognizedOnce()
+    {
+        tracker.historyLoaded(
+                Arrays.asList(
+                        received(ALICE, "hi", 100000),
+                        delivered("hi", 110000)),
+                ME);
+        tracker.messageReported(ALICE, "hi", new Date(120000));
+
+        Assert.assertTrue(tracker.isReplayed(ME, "hi", new Date(110000)));
+        Assert.assertFalse(tracker.isReplayed(ME, "hi", new Date(110000)));
+        Assert.assertTrue(tracker.isReplayed(ALICE, "hi", new Date(100000)));
+        Assert.assertTrue(tracker.isReplayed(ALICE, "hi", new Date(120000)));
+        Assert.assertFalse(tracker.isReplayed(ALICE, "hi", new Date(120000)));
+        Assert.assertFalse(
+                tracker.isReplayed(ALICE, "other", new Date(120000)));
+    }
+
+    public void testSameBodyFromAnotherNickIsNotReplayed()
+    {
+        tracker.historyLoaded(Collections.<EventObject>emptyList(), ME);
+        tracker.messageReported(ALICE, "ok", new Date(100000));
+
+        Assert.assertFalse(tracker.isReplayed(BOB, "ok", new Date(100000)));
+        Assert.assertFalse(tracker.isReplayed(ME, "ok", new Date(100000)));
+        Assert.assertTrue(tracker.isReplayed(ALICE, "ok", new Date(100000)));
+    }
+
+    public void testSameBodyAtAnotherTimeIsNotReplayed()
+    {
+        long margin = ChatRoomHistoryTracker.HISTORY_SINCE_MARGIN;
+
+        tracker.historyLoaded(Collections.<EventObject>emptyList(), ME);
+        tracker.messageReported(ALICE, "yes", new Date(10 * margin));
+
+        Assert.assertFalse(
+                tracker.isReplayed(ALICE, "yes", new Date(8 * margin)));
+        Assert.assertFalse(
+                tracker.isReplayed(ALICE, "yes", new Date(12 * margin)));
+        // the clock of the server may differ from the local one
+        Assert.assertTrue(
+                tracker.isReplayed(
+                        ALICE,
+                        "yes",
+                        new Date(10 * margin - margin / 2)));
+    }
+
+    public void testMessagesOutsideTheMarginAreForgotten()
+    {
+        tracker.historyLoaded(Collections.<EventObject>emptyList(), ME);
+        tracker.messageReported(ALICE, "old", new Date(0));
+        tracker.messageReported(
+                ALICE,
+                "new",
+                new Date(ChatRoomHistoryTracker.HISTORY_SINCE_MARGIN + 1));
+
+        Assert.assertFalse(tracker.isReplayed(ALICE, "old", new Date(0)));
+        Assert.assertTrue(
+                tracker.isReplayed(
+                        ALICE,
+                        "new",
+                        new Date(ChatRoomHistoryTracker.HISTORY_SINCE_MARGIN)));
+    }
+
+    public void testKnownMessagesAreBounded()
+    {
+        tracker.historyLoaded(Collections.<EventObject>emptyList(), ME);
+        for (int i = 0; i <= ChatRoomHistoryTracker.MAX_HISTORY_STANZAS; i++)
+            tracker.messageReported(ALICE, "m" + i, new Date(i));
+
+        Assert.assertFalse(tracker.isReplayed(ALICE, "m0", new Date(0)));
+        Assert.assertTrue(tracker.isReplayed(ALICE, "m1", new Date(1)));
+    }
+
+    private ChatRoomMessageReceivedEvent received(
+            String nickname,
+            String body,
+            long time)
+    {
+        return new ChatRoomMessageReceivedEvent(
+                room,
+                proxy(ChatRoomMember.class, nickname),
+                new Date(time),
+                message(body),
+                ChatRoomMessageReceivedEvent.CONVERSATION_MESSAGE_RECEIVED);
+    }
+
+    private ChatRoomMessageDeliveredEvent delivered(String body, long time)
+    {
+        return new ChatRoomMessageDeliveredEvent(
+                room,
+                new Date(time),
+                message(body),
+                ChatRoomMessageDeliveredEvent.CONVERSATION_MESSAGE_DELIVERED);
+    }
+
+    private static Message message(String body)
+    {
+        return new MessageJabberImpl(
+                body,
+                OperationSetBasicInstantMessaging.DEFAULT_MIME_TYPE,
+                OperationSetBasicInstantMessaging.DEFAULT_MIME_ENCODING,
+                null);
+    }
+
+    private static <T> T proxy(Class<T> type, final String name)
+    {
+        return type.cast(
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] { type },
+                        new InvocationHandler()
+                        {
+                            public Object invoke(
+                                    Object proxy,
+                                    Method method,
+                                    Object[] args)
+                            {
+                                return method.getName().equals("getName")
+                                    ? name
+                                    : null;
+                            }
+                        }));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+public class FileChannelInputStreamTest
+    extends TestCase
+{
+    private File file;
+
+    private byte[] content;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        content = new byte[1000];
+        new Random(42).nextBytes(content);
+
+        file = File.createTempFile("transfer", null);
+
+        OutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testReadsWholeFileAcrossBufferBoundaries()
+        throws IOException
+    {
+        InputStream in = new FileChannelInputStream(file, 0, 64);
+
+        Assert.assertTrue(Arrays.equals(content, readFully(in, 100)));
+        in.close();
+    }
+
+    public void testReadsFromOffset()
+        throws IOException
+    {
+        InputStream in = new FileChannelInputStream(file, 900);
+
+        Assert.assertTrue(
+                Arrays.equals(
+                        Arrays.copyOfRange(content, 900, 1000),
+                        readFully(in, 7)));
+        in.close();
+    }
+
+    public void testSingleByteReadsAndSkip()
+        throws IOException
+    {
+        InputStream in = new FileChannelInputStream(file, 0, 16);
+
+        Assert.assertEquals(content[0] & 0xFF, in.read());
+        Assert.assertEquals(500, in.skip(500));
+        Assert.assertEquals(content[501] & 0xFF, in.read());
+        Assert.assertEquals(498, in.skip(1000));
+        Assert.assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testClosedStreamCannotBeRead()
+        throws IOException
+    {
+        InputStream in = new FileChannelInputStream(file);
+
+        in.close();
+        try
+        {
+            in.read();
+            fail("Read from a closed stream");
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    public void testMissingFileIsRejected()
+        throws IOException
+    {
+        File missing = new File(file.getPath() + ".missing");
+
+        try
+        {
+            new FileChannelInputStream(missing).close();
+            fail("Opened a missing file");
+        }
+        catch (FileNotFoundException e)
+        {
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int chunkSize)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[chunkSize];
+        int count;
+
+        while ((count = in.read(chunk)) != -1)
+            out.write(chunk, 0, count);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+import org.jivesoftware.smackx.filetransfer.FileTransfer.Status;
+
+public class FileTransferProgressSchedulerTest
+    extends TestCase
+{
+    private FileTransferProgressScheduler scheduler;
+
+    private SmackTransfer jabberTransfer;
+
+    private TestTransfer transfer;
+
+    private final List<String> events = new ArrayList<String>();
+
+    @Override
+    protected void setUp()
+    {
+        // never let the timer fire, samples are taken by hand
+        scheduler = new FileTransferProgressScheduler(3600000);
+        jabberTransfer = new SmackTransfer();
+        transfer = new TestTransfer();
+
+        transfer.addStatusListener(new FileTransferStatusListener()
+        {
+            public void statusChanged(FileTransferStatusChangeEvent event)
+            {
+                events.add("status " + event.getNewStatus());
+            }
+        });
+        transfer.addProgressListener(new FileTransferProgressListener()
+        {
+            public void progressChanged(FileTransferProgressEvent event)
+            {
+                events.add("progress " + event.getProgress());
+            }
+        });
+    }
+
+    public void testEventsAreOnlyFiredOnChange()
+    {
+        scheduler.add(jabberTransfer, transfer, 0);
+
+        jabberTransfer.setStatus(Status.in_progress);
+        transfer.bytes = 10;
+        scheduler.sample();
+        scheduler.sample();
+        transfer.bytes = 20;
+        scheduler.sample();
+
+        Assert.assertEquals(
+                Arrays.asList(
+                        "status " + FileTransferStatusChangeEvent.IN_PROGRESS,
+                        "progress 10",
+                        "progress 20"),
+                events);
+        Assert.assertEquals(1, scheduler.getTransferCount());
+    }
+
+    public void testCompletedTransferIsDropped()
+    {
+        scheduler.add(jabberTransfer, transfer, 0);
+
+        jabberTransfer.setStatus(Status.in_progress);
+        scheduler.sample();
+        jabberTransfer.setStatus(Status.complete);
+        transfer.bytes = 30;
+        scheduler.sample();
+        scheduler.sample();
+
+        Assert.assertEquals(
+                Arrays.asList(
+                        "status " + FileTransferStatusChangeEvent.IN_PROGRESS,
+                        "progress 0",
+                        "status " + FileTransferStatusChangeEvent.COMPLETED,
+                        "progress 30"),
+                events);
+        Assert.assertEquals(0, scheduler.getTransferCount());
+    }
+
+    public void testShortReceivedFileIsCanceled()
+    {
+        scheduler.add(jabberTransfer, transfer, 100);
+
+        jabberTransfer.setStatus(Status.complete);
+        transfer.bytes = 30;
+        scheduler.sample();
+
+        Assert.assertEquals(
+                "status " + FileTransferStatusChangeEvent.CANCELED,
+                events.get(0));
+    }
+
+    private static class SmackTransfer
+        extends org.jivesoftware.smackx.filetransfer.FileTransfer
+    {
+        SmackTransfer()
+        {
+            super("peer@example.com/resource", "stream", null);
+        }
+
+        @Override
+        public void setStatus(Status status)
+        {
+            super.setStatus(status);
+        }
+
+        @Override
+        public void cancel()
+        {
+        }
+    }
+
+    private static class TestTransfer
+        extends AbstractFileTransfer
+    {
+        long bytes;
+
+        @Override
+        public void cancel()
+        {
+        }
+
+        @Override
+        public long getTransferedBytes()
+        {
+            return bytes;
+        }
+
+        public String getID()
+        {
+            return "id";
+        }
+
+        public int getDirection()
+        {
+            return IN;
+        }
+
+        public File getLocalFile()
+        {
+            return null;
+        }
+
+        public Contact getContact()
+        {
+            return null;
+        }
+    }
+}
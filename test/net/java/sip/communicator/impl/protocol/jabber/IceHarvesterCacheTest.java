@@ -0,0 +1,351 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.netaddr.*;
+import net.java.sip.communicator.service.netaddr.event.*;
+
+import org.bitlet.weupnp.*;
+import org.ice4j.*;
+import org.ice4j.ice.*;
+import org.ice4j.ice.harvest.*;
+import org.ice4j.security.*;
+
+public class IceHarvesterCacheTest
+    extends TestCase
+{
+    private static final byte[] USER = new byte[] { 'u' };
+
+    private static final byte[] PASSWORD = new byte[] { 'p' };
+
+    private DiscoveringNetAddrMgr netAddrMgr;
+
+    private QueueExecutor executor;
+
+    private IceHarvesterCache cache;
+
+    private GatewayDevice upnpGateway;
+
+    private int upnpDiscoveryCount;
+
+    @Override
+    protected void setUp()
+    {
+        netAddrMgr = new DiscoveringNetAddrMgr();
+        executor = new QueueExecutor();
+        cache
+            = new IceHarvesterCache(netAddrMgr, executor)
+            {
+                @Override
+                GatewayDevice discoverUPNPGateway()
+                {
+                    upnpDiscoveryCount++;
+                    return upnpGateway;
+                }
+            };
+    }
+
+    public void testServerIsDiscoveredOnce()
+    {
+        netAddrMgr.server
+            = new TurnCandidateHarvester(
+                    new TransportAddress("127.0.0.1", 3478, Transport.UDP),
+                    new LongTermCredential(USER, PASSWORD));
+
+        Assert.assertFalse(cache.isStunServerDiscovered());
+
+        StunCandidateHarvester first
+            = cache.discoverStunServer("example.com", USER, PASSWORD);
+        StunCandidateHarvester second
+            = cache.discoverStunServer("example.com", USER, PASSWORD);
+        StunCandidateHarvester third = cache.createDiscoveredHarvester();
+
+        Assert.assertEquals(1, netAddrMgr.discoveryCount);
+        Assert.assertTrue(cache.isStunServerDiscovered());
+        Assert.assertTrue(third instanceof TurnCandidateHarvester);
+        Assert.assertEquals(netAddrMgr.server.stunServer, third.stunServer);
+        // harvesters are bound to the agent they harvest for
+        Assert.assertNotSame(first, second);
+        Assert.assertNotSame(second, third);
+    }
+
+    public void testMissingServerIsRemembered()
+    {
+        Assert.assertNull(
+                cache.discoverStunServer("example.com", USER, PASSWORD));
+        Assert.assertNull(
+                cache.discoverStunServer("example.com", USER, PASSWORD));
+
+        Assert.assertEquals(1, netAddrMgr.discoveryCount);
+        Assert.assertTrue(cache.isStunServerDiscovered());
+    }
+
+    public void testNetworkChangeClearsCache()
+    {
+        upnpGateway = new GatewayDevice();
+
+        cache.discoverStunServer("example.com", USER, PASSWORD);
+        Assert.assertSame(upnpGateway, cache.getUPNPGateway());
+        netAddrMgr.listener.configurationChanged(
+                new ChangeEvent(this, ChangeEvent.DNS_CHANGE, null, false, true));
+        Assert.assertTrue(cache.isStunServerDiscovered());
+        Assert.assertSame(upnpGateway, cache.getUPNPGateway());
+        Assert.assertEquals(1, upnpDiscoveryCount);
+
+        netAddrMgr.listener.configurationChanged(
+                new ChangeEvent(this, ChangeEvent.IFACE_UP));
+        Assert.assertFalse(cache.isStunServerDiscovered());
+        Assert.assertSame(upnpGateway, cache.getUPNPGateway());
+        Assert.assertEquals(2, upnpDiscoveryCount);
+
+        cache.discoverStunServer("example.com", USER, PASSWORD);
+        Assert.assertEquals(2, netAddrMgr.discoveryCount);
+    }
+
+    public void testOnlyUPNPGatewayIsShared()
+    {
+        CandidateHarvester first = cache.createUPNPHarvester();
+        CandidateHarvester second = cache.createUPNPHarvester();
+
+        Assert.assertNotSame(first, second);
+        // no gateway has been discovered so nothing is harvested
+        Assert.assertTrue(first.harvest(null).isEmpty());
+        Assert.assertTrue(second.harvest(null).isEmpty());
+        Assert.assertEquals(1, upnpDiscoveryCount);
+    }
+
+    public void testDisposedCacheDoesNotKeepCredentials()
+    {
+        cache.dispose();
+        cache.discoverStunServer("example.com", USER, PASSWORD);
+        cache.configurationChanged(
+                new ChangeEvent(this, ChangeEvent.IFACE_UP));
+
+        Assert.assertTrue(executor.tasks.isEmpty());
+    }
+
+    public void testNetworkChangeRestartsDiscovery()
+    {
+        netAddrMgr.listener.configurationChanged(
+                new ChangeEvent(this, ChangeEvent.IFACE_UP));
+        Assert.assertTrue(executor.tasks.isEmpty());
+
+        cache.startStunServerDiscovery("example.com", USER, PASSWORD);
+        executor.runAll();
+        Assert.assertEquals(1, netAddrMgr.discoveryCount);
+
+        netAddrMgr.listener.configurationChanged(
+                new ChangeEvent(this, ChangeEvent.IFACE_UP));
+        Assert.assertFalse(cache.isStunServerDiscovered());
+        executor.runAll();
+        Assert.assertEquals(2, netAddrMgr.discoveryCount);
+        Assert.assertTrue(cache.isStunServerDiscovered());
+
+        cache.dispose();
+        cache.configurationChanged(
+                new ChangeEvent(this, ChangeEvent.IFACE_UP));
+        Assert.assertTrue(executor.tasks.isEmpty());
+    }
+
+    public void testDiscoveryDoesNotHoldTheCache()
+        throws Exception
+    {
+        netAddrMgr.gate = new CountDownLatch(1);
+
+        Thread discovery = startDiscovery();
+
+        Assert.assertTrue(
+                netAddrMgr.discoveryStarted.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(cache.isStunServerDiscovered());
+        Assert.assertNull(cache.getUPNPGateway());
+
+        netAddrMgr.gate.countDown();
+        discovery.join(5000);
+        Assert.assertTrue(cache.isStunServerDiscovered());
+    }
+
+    public void testConcurrentCallersShareDiscovery()
+        throws Exception
+    {
+        netAddrMgr.gate = new CountDownLatch(1);
+
+        Thread first = startDiscovery();
+
+        Assert.assertTrue(
+                netAddrMgr.discoveryStarted.await(5, TimeUnit.SECONDS));
+
+        Thread second = startDiscovery();
+
+        second.join(200);
+        Assert.assertTrue(second.isAlive());
+
+        netAddrMgr.gate.countDown();
+        first.join(5000);
+        second.join(5000);
+        Assert.assertEquals(1, netAddrMgr.discoveryCount);
+    }
+
+    public void testOutdatedDiscoveryIsNotStored()
+        throws Exception
+    {
+        netAddrMgr.gate = new CountDownLatch(1);
+
+        Thread discovery = startDiscovery();
+
+        Assert.assertTrue(
+                netAddrMgr.discoveryStarted.await(5, TimeUnit.SECONDS));
+        cache.clear();
+        netAddrMgr.gate.countDown();
+        discovery.join(5000);
+
+        Assert.assertFalse(cache.isStunServerDiscovered());
+    }
+
+    private Thread startDiscovery()
+    {
+        Thread thread
+            = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    cache.discoverStunServer("example.com", USER, PASSWORD);
+                }
+            };
+
+        thread.start();
+        return thread;
+    }
+
+    public void testDisposeRemovesListener()
+    {
+        cache.dispose();
+
+        Assert.assertNull(netAddrMgr.listener);
+    }
+
+    private static class DiscoveringNetAddrMgr
+        implements NetworkAddressManagerService
+    {
+        StunCandidateHarvester server;
+
+        volatile int discoveryCount;
+
+        volatile CountDownLatch gate;
+
+        final CountDownLatch discoveryStarted = new CountDownLatch(1);
+
+        NetworkConfigurationChangeListener listener;
+
+        public StunCandidateHarvester discoverStunServer(
+                String domainName,
+                byte[] userName,
+                byte[] password)
+        {
+            discoveryCount++;
+            discoveryStarted.countDown();
+            if (gate != null)
+            {
+                try
+                {
+                    gate.await();
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return server;
+        }
+
+        public void addNetworkConfigurationChangeListener(
+                NetworkConfigurationChangeListener listener)
+        {
+            this.listener = listener;
+        }
+
+        public void removeNetworkConfigurationChangeListener(
+                NetworkConfigurationChangeListener listener)
+        {
+            if (this.listener == listener)
+                this.listener = null;
+        }
+
+        public InetAddress getLocalHost(InetAddress intendedDestination)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public InetSocketAddress getPublicAddressFor(
+                InetAddress intendedDestination,
+                int port)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public byte[] getHardwareAddress(NetworkInterface iface)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public DatagramSocket createDatagramSocket(
+                InetAddress laddr,
+                int preferredPort,
+                int minPort,
+                int maxPort)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public Agent createIceAgent()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public IceMediaStream createIceStream(
+                int rtpPort,
+                String streamName,
+                Agent agent)
+            throws IOException
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public IceMediaStream createIceStream(
+                int numComponents,
+                int portBase,
+                String streamName,
+                Agent agent)
+            throws IOException
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class QueueExecutor
+        implements Executor
+    {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        public void execute(Runnable command)
+        {
+            tasks.add(command);
+        }
+
+        void runAll()
+        {
+            while (!tasks.isEmpty())
+                tasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.net.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.ice4j.*;
+import org.ice4j.ice.*;
+import org.ice4j.socket.*;
+
+public class IceUdpTransportManagerTest
+    extends TestCase
+{
+    private Agent agent;
+
+    private Component audio;
+
+    private Component video;
+
+    private final List<DatagramSocket> sockets
+        = new ArrayList<DatagramSocket>();
+
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        agent = new Agent();
+        audio
+            = agent.createComponent(
+                    agent.createMediaStream("audio"),
+                    Transport.UDP,
+                    40000, 40000, 40100);
+        video
+            = agent.createComponent(
+                    agent.createMediaStream("video"),
+                    Transport.UDP,
+                    40000, 40000, 40100);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        for (DatagramSocket socket : sockets)
+            socket.close();
+        agent.free();
+    }
+
+    public void testCandidatesAreGroupedByMedia()
+        throws Exception
+    {
+        LocalCandidate audio1 = candidate(audio);
+        LocalCandidate video1 = candidate(video);
+        LocalCandidate audio2 = candidate(audio);
+
+        Map<String,List<LocalCandidate>> candidatesByMedia
+            = IceUdpTransportManager.groupCandidatesByMedia(
+                    Arrays.asList(video1, audio1, audio2));
+
+        Assert.assertEquals(
+                Arrays.asList("video", "audio"),
+                new ArrayList<String>(candidatesByMedia.keySet()));
+        Assert.assertEquals(
+                Arrays.asList(audio1, audio2),
+                candidatesByMedia.get("audio"));
+        Assert.assertEquals(
+                Arrays.asList(video1),
+                candidatesByMedia.get("video"));
+    }
+
+    public void testNoCandidates()
+    {
+        Assert.assertTrue(
+                IceUdpTransportManager.groupCandidatesByMedia(
+                        Collections.<LocalCandidate>emptyList()).isEmpty());
+    }
+
+    public void testContentFoundByMedia()
+    {
+        ContentPacketExtension audioContent = content("audio", "a");
+        ContentPacketExtension videoContent = content("video", "v");
+        List<ContentPacketExtension> contents
+            = Arrays.asList(audioContent, videoContent);
+
+        Assert.assertSame(
+                videoContent,
+                IceUdpTransportManager.findContentByMedia(contents, "video"));
+        Assert.assertSame(
+                audioContent,
+                IceUdpTransportManager.findContentByMedia(contents, "audio"));
+        Assert.assertNull(
+                IceUdpTransportManager.findContentByMedia(contents, "data"));
+    }
+
+    public void testTransportInfoContentCarriesOnlyTheTransport()
+    {
+        ContentPacketExtension ourContent = content("audio", "a");
+        IceUdpTransportPacketExtension transport
+            = new IceUdpTransportPacketExtension();
+
+        ContentPacketExtension transportInfoContent
+            = IceUdpTransportManager.createTransportInfoContent(
+                    ourContent,
+                    transport);
+
+        Assert.assertEquals("a", transportInfoContent.getName());
+        Assert.assertEquals(
+                ContentPacketExtension.CreatorEnum.initiator,
+                transportInfoContent.getCreator());
+        Assert.assertEquals(
+                Arrays.asList(transport),
+                transportInfoContent.getChildExtensions());
+    }
+
+    private LocalCandidate candidate(Component component)
+        throws Exception
+    {
+        DatagramSocket socket
+            = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+
+        sockets.add(socket);
+        return new HostCandidate(new IceUdpSocketWrapper(socket), component);
+    }
+
+    private static ContentPacketExtension content(String media, String name)
+    {
+        ContentPacketExtension content = new ContentPacketExtension();
+        RtpDescriptionPacketExtension description
+            = new RtpDescriptionPacketExtension();
+
+        content.setName(name);
+        content.setCreator(ContentPacketExtension.CreatorEnum.initiator);
+        description.setMedia(media);
+        content.addChildExtension(description);
+        return content;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.*;
+
+public class LocalRosterStoreTest
+    extends TestCase
+{
+    private File file;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        file = File.createTempFile("roster", ".properties");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        file.delete();
+    }
+
+    public void testFingerprintIgnoresGroupOrder()
+    {
+        Assert.assertEquals(
+                LocalRosterStore.getFingerprint(
+                        "Alice", "both", "null", Arrays.asList("a", "b")),
+                LocalRosterStore.getFingerprint(
+                        "Alice", "both", "null", Arrays.asList("b", "a")));
+    }
+
+    public void testFingerprintReflectsChanges()
+    {
+        String fingerprint
+            = LocalRosterStore.getFingerprint(
+                    "Alice", "both", "null", Arrays.asList("Friends"));
+
+        Assert.assertFalse(fingerprint.equals(
+                LocalRosterStore.getFingerprint(
+                        "Alice B.", "both", "null", Arrays.asList("Friends"))));
+        Assert.assertFalse(fingerprint.equals(
+                LocalRosterStore.getFingerprint(
+                        "Alice", "to", "null", Arrays.asList("Friends"))));
+        Assert.assertFalse(fingerprint.equals(
+                LocalRosterStore.getFingerprint(
+                        "Alice", "both", "null", Arrays.asList("Work"))));
+    }
+
+    public void testEntriesSurviveRestart()
+    {
+        LocalRosterStore store = new LocalRosterStore(file);
+        store.put("alice@example.com", "f1");
+        store.put("bob@example.com", "f2");
+        store.save();
+
+        LocalRosterStore restored = new LocalRosterStore(file);
+        Assert.assertTrue(restored.isUnchanged("alice@example.com", "f1"));
+        Assert.assertTrue(restored.isUnchanged("bob@example.com", "f2"));
+        Assert.assertFalse(restored.isUnchanged("bob@example.com", "f3"));
+        Assert.assertFalse(restored.isUnchanged("carol@example.com", "f1"));
+    }
+
+    public void testRemovedEntryIsChanged()
+    {
+        LocalRosterStore store = new LocalRosterStore(file);
+        store.put("alice@example.com", "f1");
+        store.remove("alice@example.com");
+        store.save();
+
+        Assert.assertFalse(
+                new LocalRosterStore(file).isUnchanged(
+                        "alice@example.com", "f1"));
+    }
+
+    public void testNothingWrittenWithoutChanges()
+    {
+        new LocalRosterStore(file).save();
+
+        Assert.assertFalse(file.exists());
+    }
+}
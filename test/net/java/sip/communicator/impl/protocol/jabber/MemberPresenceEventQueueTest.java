@@ -0,0 +1,220 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.service.protocol.event.*;
+
+public class MemberPresenceEventQueueTest
+    extends TestCase
+{
+    private final ChatRoom room = proxy(ChatRoom.class);
+
+    private final List<List<ChatRoomMemberPresenceChangeEvent>> batches
+        = Collections.synchronizedList(
+                new ArrayList<List<ChatRoomMemberPresenceChangeEvent>>());
+
+    private final MemberPresenceEventQueue.Dispatcher dispatcher
+        = new MemberPresenceEventQueue.Dispatcher()
+        {
+            public void dispatch(List<ChatRoomMemberPresenceChangeEvent> evts)
+            {
+                batches.add(evts);
+            }
+        };
+
+    public void testBatchIsDeliveredOnce()
+    {
+        MemberPresenceEventQueue queue = createQueue(0);
+
+        queue.startBatch();
+        for (int i = 0; i < 100; i++)
+            queue.add(joined(proxy(ChatRoomMember.class)));
+        Assert.assertTrue(batches.isEmpty());
+        queue.endBatch();
+
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(100, batches.get(0).size());
+    }
+
+    public void testZeroIntervalDeliversRightAway()
+    {
+        MemberPresenceEventQueue queue = createQueue(0);
+
+        queue.add(joined(proxy(ChatRoomMember.class)));
+        queue.add(joined(proxy(ChatRoomMember.class)));
+
+        Assert.assertEquals(2, batches.size());
+    }
+
+    public void testBurstIsCoalesced()
+        throws InterruptedException
+    {
+        MemberPresenceEventQueue queue = createQueue(50);
+        ChatRoomMember stays = proxy(ChatRoomMember.class);
+        ChatRoomMember passes = proxy(ChatRoomMember.class);
+
+        queue.add(joined(stays));
+        queue.add(joined(passes));
+        queue.add(
+                new ChatRoomMemberPresenceChangeEvent(
+                        room, passes,
+                        ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT, null));
+
+        for (int i = 0; i < 500 && batches.isEmpty(); i++)
+            Thread.sleep(10);
+
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(1, batches.get(0).size());
+        Assert.assertSame(stays, batches.get(0).get(0).getChatRoomMember());
+    }
+
+    public void testFlushDeliversPendingEvents()
+    {
+        MemberPresenceEventQueue queue = createQueue(3600000);
+
+        queue.add(joined(proxy(ChatRoomMember.class)));
+        Assert.assertTrue(batches.isEmpty());
+        queue.flush();
+        queue.flush();
+
+        Assert.assertEquals(1, batches.size());
+    }
+
+    public void testFlushFromListenerKeepsOrder()
+    {
+        final ChatRoomMember first = proxy(ChatRoomMember.class);
+        final ChatRoomMember second = proxy(ChatRoomMember.class);
+        final MemberPresenceEventQueue[] queue
+            = new MemberPresenceEventQueue[1];
+
+        queue[0]
+            = createQueue(
+                    3600000,
+                    new MemberPresenceEventQueue.Dispatcher()
+                    {
+                        public void dispatch(
+                                List<ChatRoomMemberPresenceChangeEvent> evts)
+                        {
+                            batches.add(evts);
+                            if (batches.size() == 1)
+                            {
+                                queue[0].add(joined(second));
+                                queue[0].flush();
+                                // delivered once this listener returns
+                                Assert.assertEquals(1, batches.size());
+                            }
+                        }
+                    });
+
+        queue[0].add(joined(first));
+        queue[0].flush();
+
+        Assert.assertEquals(2, batches.size());
+        Assert.assertSame(first, batches.get(0).get(0).getChatRoomMember());
+        Assert.assertSame(second, batches.get(1).get(0).getChatRoomMember());
+    }
+
+    public void testFlushWaitsForDeliveryInProgress()
+        throws InterruptedException
+    {
+        final java.util.concurrent.CountDownLatch dispatching
+            = new java.util.concurrent.CountDownLatch(1);
+        final java.util.concurrent.CountDownLatch release
+            = new java.util.concurrent.CountDownLatch(1);
+        final MemberPresenceEventQueue queue
+            = createQueue(
+                    3600000,
+                    new MemberPresenceEventQueue.Dispatcher()
+                    {
+                        public void dispatch(
+                                List<ChatRoomMemberPresenceChangeEvent> evts)
+                        {
+                            dispatching.countDown();
+                            try
+                            {
+                                release.await();
+                            }
+                            catch (InterruptedException ie)
+                            {
+                            }
+                            batches.add(evts);
+                        }
+                    });
+
+        queue.add(joined(proxy(ChatRoomMember.class)));
+
+        Thread firstFlush
+            = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    queue.flush();
+                }
+            };
+
+        firstFlush.start();
+        Assert.assertTrue(
+                dispatching.await(5, java.util.concurrent.TimeUnit.SECONDS));
+
+        queue.add(joined(proxy(ChatRoomMember.class)));
+        // the queue is not locked while the listener runs
+        Assert.assertFalse(queue.isBatching());
+        release.countDown();
+        queue.flush();
+
+        Assert.assertEquals(2, batches.size());
+        firstFlush.join(5000);
+    }
+
+    private MemberPresenceEventQueue createQueue(long interval)
+    {
+        return createQueue(interval, dispatcher);
+    }
+
+    private MemberPresenceEventQueue createQueue(
+            long interval,
+            MemberPresenceEventQueue.Dispatcher dispatcher)
+    {
+        return new MemberPresenceEventQueue(
+                null, dispatcher, new AccountTaskScheduler(0), interval);
+    }
+
+    private ChatRoomMemberPresenceChangeEvent joined(ChatRoomMember member)
+    {
+        return new ChatRoomMemberPresenceChangeEvent(
+                room, member,
+                ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED, null);
+    }
+
+    private static <T> T proxy(Class<T> type)
+    {
+        return type.cast(
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] { type },
+                        new InvocationHandler()
+                        {
+                            public Object invoke(
+                                    Object proxy,
+                                    Method method,
+                                    Object[] args)
+                            {
+                                if (method.getName().equals("equals"))
+                                    return proxy == args[0];
+                                if (method.getName().equals("hashCode"))
+                                    return System.identityHashCode(proxy);
+                                return null;
+                            }
+                        }));
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import junit.framework.*;
+
+public class CallPeerMediaHandlerSipImplTest
+    extends TestCase
+{
+    private static final String OFFER
+        = "v=0\r\n"
+            + "o=alice 2890844526 2890844527 IN IP4 192.0.2.1\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.1\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49170 RTP/AVP 96\r\n"
+            + "a=rtpmap:96 opus/48000/2\r\n"
+            + "a=fmtp:96 useinbandfec=1\r\n";
+
+    public void testIdenticalOfferReusesAnswer()
+    {
+        Assert.assertTrue(
+                CallPeerMediaHandlerSipImpl.isUnchangedOffer(
+                        OFFER,
+                        new String(OFFER)));
+    }
+
+    public void testOfferDifferingInFmtpOnlyIsAnswered()
+    {
+        String offer = OFFER.replace("useinbandfec=1", "useinbandfec=0");
+
+        Assert.assertFalse(
+                CallPeerMediaHandlerSipImpl.isUnchangedOffer(OFFER, offer));
+    }
+
+    public void testFirstOfferIsAnswered()
+    {
+        Assert.assertFalse(
+                CallPeerMediaHandlerSipImpl.isUnchangedOffer(null, OFFER));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import gov.nist.javax.sip.header.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+public class ConfigHeadersTest
+    extends TestCase
+{
+    public void testParseIgnoresUnrelatedProperties()
+    {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("USER_ID", "alice@example.com");
+        props.put("ConfigHeader", "broken");
+
+        List<ConfigHeaders> headers
+            = ConfigHeaders.parseConfigHeaders(props, new HeaderFactoryImpl());
+
+        Assert.assertTrue(headers.isEmpty());
+    }
+
+    public void testParseSkipsIncompleteHeaders()
+    {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("ConfigHeader.1.Name", "X-Only-Name");
+        props.put("ConfigHeader.2.Value", "only value");
+
+        List<ConfigHeaders> headers
+            = ConfigHeaders.parseConfigHeaders(props, new HeaderFactoryImpl());
+
+        Assert.assertTrue(headers.isEmpty());
+    }
+
+    public void testParseCreatesOneEntryPerIndex()
+    {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("ConfigHeader.1.Name", "X-Static");
+        props.put("ConfigHeader.1.Value", "static value");
+        props.put("ConfigHeader.2.Name", "X-Dynamic");
+        props.put("ConfigHeader.2.Value", "${from.address}");
+        props.put("ConfigHeader.2.Method", "INVITE");
+
+        List<ConfigHeaders> headers
+            = ConfigHeaders.parseConfigHeaders(props, new HeaderFactoryImpl());
+
+        Assert.assertEquals(2, headers.size());
+    }
+}
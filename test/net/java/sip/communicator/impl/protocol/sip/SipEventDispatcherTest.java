@@ -0,0 +1,128 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class SipEventDispatcherTest
+    extends TestCase
+{
+    private SipEventDispatcher dispatcher;
+
+    @Override
+    protected void setUp()
+    {
+        dispatcher = new SipEventDispatcher(4);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        dispatcher.shutdown();
+    }
+
+    public void testTasksWithSameKeyRunInOrder()
+        throws InterruptedException
+    {
+        final List<Integer> order
+            = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(100);
+
+        for (int i = 0; i < 100; i++)
+        {
+            final int index = i;
+            dispatcher.dispatch("call-1", new Runnable()
+            {
+                public void run()
+                {
+                    order.add(index);
+                    done.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+            Assert.assertEquals(Integer.valueOf(i), order.get(i));
+    }
+
+    public void testBlockedKeyDoesNotBlockOtherKeys()
+        throws InterruptedException
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch other = new CountDownLatch(1);
+
+        dispatcher.dispatch("slow", new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+        });
+        dispatcher.dispatch("fast", new Runnable()
+        {
+            public void run()
+            {
+                other.countDown();
+            }
+        });
+
+        Assert.assertTrue(other.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    public void testFailingTaskDoesNotStopQueue()
+        throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.dispatch("call-1", new Runnable()
+        {
+            public void run()
+            {
+                throw new IllegalStateException("expected");
+            }
+        });
+        dispatcher.dispatch("call-1", new Runnable()
+        {
+            public void run()
+            {
+                done.countDown();
+            }
+        });
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testDrainedQueuesAreRemoved()
+        throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.dispatch("call-1", new Runnable()
+        {
+            public void run()
+            {
+                done.countDown();
+            }
+        });
+
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && dispatcher.getActiveKeyCount() != 0; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(0, dispatcher.getActiveKeyCount());
+    }
+}
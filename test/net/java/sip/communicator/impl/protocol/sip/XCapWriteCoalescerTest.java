@@ -0,0 +1,119 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip;
+
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.impl.protocol.sip.xcap.*;
+
+public class XCapWriteCoalescerTest
+    extends TestCase
+{
+    private final Object lock = new Object();
+
+    private final List<String> log
+        = Collections.synchronizedList(new ArrayList<String>());
+
+    private int writeCount;
+
+    private boolean failWrites;
+
+    private XCapWriteCoalescer coalescer;
+
+    @Override
+    protected void setUp()
+    {
+        coalescer
+            = new XCapWriteCoalescer(
+                    lock,
+                    new XCapWriteCoalescer.Writer()
+                    {
+                        public void write()
+                            throws XCapException
+                        {
+                            writeCount++;
+                            if (failWrites)
+                                throw new XCapException("409 Conflict");
+                        }
+                    },
+                    100);
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        coalescer.shutdown();
+    }
+
+    public void testChangesWithinWindowAreWrittenOnce()
+        throws InterruptedException
+    {
+        for (int i = 0; i < 10; i++)
+            coalescer.submit(new LoggingChange("change" + i));
+
+        for (int i = 0; i < 100 && coalescer.getPendingChangeCount() != 0; i++)
+            Thread.sleep(10);
+
+        synchronized (lock)
+        {
+            Assert.assertEquals(0, coalescer.getPendingChangeCount());
+            Assert.assertEquals(1, writeCount);
+        }
+        Assert.assertTrue(log.isEmpty());
+    }
+
+    public void testFailedWriteRevertsChangesInReverseOrder()
+    {
+        failWrites = true;
+        coalescer.submit(new LoggingChange("a"));
+        coalescer.submit(new LoggingChange("b"));
+
+        Assert.assertFalse(coalescer.flush());
+        Assert.assertEquals(
+                Arrays.asList(
+                        "revert b", "revert a",
+                        "fire b", "fire a"),
+                log);
+    }
+
+    public void testFlushWithoutChangesDoesNotWrite()
+    {
+        Assert.assertTrue(coalescer.flush());
+        Assert.assertEquals(0, writeCount);
+    }
+
+    public void testShutdownWritesPendingChanges()
+    {
+        coalescer.submit(new LoggingChange("a"));
+        coalescer.shutdown();
+
+        Assert.assertEquals(1, writeCount);
+        Assert.assertEquals(0, coalescer.getPendingChangeCount());
+    }
+
+    private class LoggingChange
+        implements XCapWriteCoalescer.Change
+    {
+        private final String name;
+
+        LoggingChange(String name)
+        {
+            this.name = name;
+        }
+
+        public void revert()
+        {
+            log.add("revert " + name);
+        }
+
+        public void fireReverted()
+        {
+            log.add("fire " + name);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip.net;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.impl.protocol.sip.*;
+import net.java.sip.communicator.service.protocol.*;
+import net.java.sip.communicator.util.*;
+import net.java.sip.communicator.util.SRVRecord;
+
+import org.xbill.DNS.*;
+
+public class AutoProxyConnectionTest
+    extends TestCase
+{
+    private static class TestNetworkUtils
+        extends AutoProxyConnection.LocalNetworkUtils
+    {
+        final Map<String, SRVRecord[]> srv
+            = new HashMap<String, SRVRecord[]>();
+        final Map<String, InetSocketAddress[]> hosts
+            = new HashMap<String, InetSocketAddress[]>();
+        final CountDownLatch udpQueried = new CountDownLatch(1);
+        volatile boolean tlsWaitedForUdp = false;
+        volatile String[][] naptr = null;
+        volatile int transportSrvQueries = 0;
+
+        @Override
+        public String[][] getNAPTRRecords(String address)
+        {
+            return naptr;
+        }
+
+        @Override
+        public SRVRecord[] getSRVRecords(String domain)
+        {
+            return srv.get(domain);
+        }
+
+        @Override
+        public SRVRecord[] getSRVRecords(String service, String proto,
+            String address)
+        {
+            synchronized (this)
+            {
+                transportSrvQueries++;
+            }
+            if ("sips".equals(service))
+            {
+                // only completes early if the UDP query runs in parallel
+                try
+                {
+                    tlsWaitedForUdp = udpQueried.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
+            else if ("UDP".equals(proto))
+            {
+                udpQueried.countDown();
+            }
+            return srv.get(service + "/" + proto);
+        }
+
+        @Override
+        public InetSocketAddress[] getAandAAAARecords(String target, int port)
+        {
+            return hosts.get(target);
+        }
+
+        @Override
+        public boolean isValidIPAddress(String address)
+        {
+            return false;
+        }
+    }
+
+    private static SRVRecord srv(String target, int port)
+        throws Exception
+    {
+        return new SRVRecord(
+            new org.xbill.DNS.SRVRecord(
+                Name.fromString("_sip._udp.example.com."),
+                DClass.IN, 60, 10, 10, port,
+                Name.fromString(target)));
+    }
+
+    private static InetSocketAddress addr(int lastByte, int port)
+        throws Exception
+    {
+        return new InetSocketAddress(
+            InetAddress.getByAddress(new byte[] { 10, 0, 0, (byte) lastByte }),
+            port);
+    }
+
+    private static SipAccountIDImpl account()
+    {
+        Map<String, String> props = new HashMap<String, String>();
+        props.put(ProtocolProviderFactory.USER_ID, "alice@example.com");
+        return
+            new SipAccountIDImpl("alice@example.com", props, "example.com")
+            {
+            };
+    }
+
+    public void testNoTransportSrvLookupsAfterNaptr()
+        throws Exception
+    {
+        TestNetworkUtils nu = new TestNetworkUtils();
+        nu.naptr = new String[][]
+            {
+                { "s", "TCP", "_sip._tcp.example.com.", "" }
+            };
+        nu.srv.put("_sip._tcp.example.com.",
+            new SRVRecord[] { srv("tcp.example.com.", 5060) });
+        nu.hosts.put("tcp.example.com.",
+            new InetSocketAddress[] { addr(1, 5060) });
+
+        AutoProxyConnection apc
+            = new AutoProxyConnection(account(), "UDP");
+        apc.setNetworkUtils(nu);
+        apc.reset();
+
+        Assert.assertTrue(apc.getNextAddress());
+        Assert.assertEquals("TCP", apc.getTransport());
+        Assert.assertEquals(addr(1, 5060), apc.getAddress());
+        Assert.assertFalse(apc.getNextAddress());
+        Assert.assertEquals(0, nu.transportSrvQueries);
+    }
+
+    public void testSrvLookupsRunInParallelAndKeepOrder()
+        throws Exception
+    {
+        TestNetworkUtils nu = new TestNetworkUtils();
+        nu.srv.put("sip/TCP",
+            new SRVRecord[] { srv("tcp.example.com.", 5060) });
+        nu.srv.put("sip/UDP",
+            new SRVRecord[] { srv("udp.example.com.", 5070) });
+        nu.hosts.put("tcp.example.com.",
+            new InetSocketAddress[] { addr(1, 5060) });
+        nu.hosts.put("udp.example.com.",
+            new InetSocketAddress[] { addr(2, 5070), addr(3, 5070) });
+
+        AutoProxyConnection apc
+            = new AutoProxyConnection(account(), "UDP");
+        apc.setNetworkUtils(nu);
+        apc.reset();
+
+        Assert.assertTrue(apc.getNextAddress());
+        Assert.assertTrue(nu.tlsWaitedForUdp);
+        Assert.assertEquals("TCP", apc.getTransport());
+        Assert.assertEquals(addr(1, 5060), apc.getAddress());
+
+        Assert.assertTrue(apc.getNextAddress());
+        Assert.assertEquals("UDP", apc.getTransport());
+        Assert.assertEquals(addr(2, 5070), apc.getAddress());
+
+        Assert.assertTrue(apc.getNextAddress());
+        Assert.assertEquals(addr(3, 5070), apc.getAddress());
+
+        Assert.assertFalse(apc.getNextAddress());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip.sdp;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import javax.sdp.*;
+
+import junit.framework.*;
+
+public class SdpUtilsTest
+    extends TestCase
+{
+    private static final String OFFER
+        = "v=0\r\n"
+            + "o=alice 2890844526 2890844527 IN IP4 192.0.2.1\r\n"
+            + "s=-\r\n"
+            + "c=IN IP4 192.0.2.1\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 49170 RTP/AVP 0 96 97\r\n"
+            + "a=rtpmap:96 opus/48000/2\r\n"
+            + "a=fmtp:96 useinbandfec=1\r\n"
+            + "a=rtpmap:97 telephone-event/8000\r\n"
+            + "a=rtpmap:96 speex/16000\r\n"
+            + "a=sendrecv\r\n";
+
+    public void testAttributesAreIndexedByPayloadType()
+        throws Exception
+    {
+        Vector<Attribute> attributes = getMediaAttributes(OFFER);
+        Map<String, Attribute> rtpmaps = new HashMap<String, Attribute>();
+        Map<String, Attribute> fmtps = new HashMap<String, Attribute>();
+
+        SdpUtils.indexPayloadTypeSpecificAttributes(
+                attributes, SdpConstants.RTPMAP, rtpmaps);
+        SdpUtils.indexPayloadTypeSpecificAttributes(attributes, "fmtp", fmtps);
+
+        Assert.assertEquals(2, rtpmaps.size());
+        // only the first attribute of a payload type is kept
+        Assert.assertEquals("96 opus/48000/2", rtpmaps.get("96").getValue());
+        Assert.assertEquals(
+                "97 telephone-event/8000",
+                rtpmaps.get("97").getValue());
+        Assert.assertEquals(1, fmtps.size());
+        Assert.assertEquals("96 useinbandfec=1", fmtps.get("96").getValue());
+    }
+
+    public void testUnparsableAttributeIsSkipped()
+        throws Exception
+    {
+        Vector<Attribute> attributes = getMediaAttributes(OFFER);
+        Map<String, Attribute> rtpmaps = new HashMap<String, Attribute>();
+
+        attributes.add(0, unparsableAttribute());
+        SdpUtils.indexPayloadTypeSpecificAttributes(
+                attributes, SdpConstants.RTPMAP, rtpmaps);
+
+        Assert.assertEquals(2, rtpmaps.size());
+        Assert.assertEquals("96 opus/48000/2", rtpmaps.get("96").getValue());
+    }
+
+    public void testNoAttributes()
+    {
+        Map<String, Attribute> rtpmaps = new HashMap<String, Attribute>();
+
+        SdpUtils.indexPayloadTypeSpecificAttributes(
+                null, SdpConstants.RTPMAP, rtpmaps);
+        SdpUtils.indexPayloadTypeSpecificAttributes(
+                new Vector<Attribute>(), SdpConstants.RTPMAP, rtpmaps);
+
+        Assert.assertTrue(rtpmaps.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Vector<Attribute> getMediaAttributes(String sdp)
+        throws SdpException
+    {
+        MediaDescription media
+            = (MediaDescription)
+                SdpUtils.parseSdpString(sdp).getMediaDescriptions(false).get(0);
+
+        return new Vector<Attribute>(media.getAttributes(false));
+    }
+
+    private static Attribute unparsableAttribute()
+    {
+        return
+            (Attribute) Proxy.newProxyInstance(
+                    Attribute.class.getClassLoader(),
+                    new Class<?>[] { Attribute.class },
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                            throws SdpParseException
+                        {
+                            if (method.getName().equals("toString"))
+                                return "a=rtpmap:?";
+                            throw new SdpParseException(0, 0, "unparsable");
+                        }
+                    });
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.sip.xcap;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+
+import junit.framework.*;
+
+public class XCapDocumentCacheTest
+    extends TestCase
+{
+    private static final URI DOCUMENT_URI
+        = URI.create("https://xcap.example.com/xcap-root/resource-lists/"
+            + "users/sip:alice@example.com/index");
+
+    private File directory;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        directory = File.createTempFile("xcap", "cache");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testMissingDocument()
+    {
+        XCapDocumentCache cache = new XCapDocumentCache(directory);
+
+        Assert.assertNull(cache.get(DOCUMENT_URI));
+    }
+
+    public void testDocumentSurvivesRestart()
+        throws UnsupportedEncodingException
+    {
+        byte[] content = "<resource-lists/>".getBytes("UTF-8");
+
+        new XCapDocumentCache(directory).put(
+                DOCUMENT_URI, "\"etag-1\"", "application/resource-lists+xml",
+                content);
+
+        XCapHttpResponse cached
+            = new XCapDocumentCache(directory).get(DOCUMENT_URI);
+
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(200, cached.getHttpCode());
+        Assert.assertEquals("\"etag-1\"", cached.getETag());
+        Assert.assertEquals(
+                "application/resource-lists+xml", cached.getContentType());
+        Assert.assertTrue(Arrays.equals(content, cached.getContent()));
+    }
+
+    public void testDocumentWithoutETagIsNotCached()
+    {
+        XCapDocumentCache cache = new XCapDocumentCache(directory);
+
+        cache.put(DOCUMENT_URI, "\"etag-1\"", null, new byte[] { 1 });
+        cache.put(DOCUMENT_URI, null, null, new byte[] { 2 });
+
+        Assert.assertNull(cache.get(DOCUMENT_URI));
+        Assert.assertNull(new XCapDocumentCache(directory).get(DOCUMENT_URI));
+    }
+
+    public void testRemove()
+    {
+        XCapDocumentCache cache = new XCapDocumentCache(directory);
+
+        cache.put(DOCUMENT_URI, "\"etag-1\"", null, new byte[] { 1 });
+        cache.remove(DOCUMENT_URI);
+
+        Assert.assertNull(cache.get(DOCUMENT_URI));
+        Assert.assertNull(new XCapDocumentCache(directory).get(DOCUMENT_URI));
+    }
+
+    public void testReturnedContentIsACopy()
+    {
+        XCapDocumentCache cache = new XCapDocumentCache(directory);
+
+        cache.put(DOCUMENT_URI, "\"etag-1\"", null, new byte[] { 1 });
+        cache.get(DOCUMENT_URI).getContent()[0] = 2;
+
+        Assert.assertEquals(1, cache.get(DOCUMENT_URI).getContent()[0]);
+    }
+
+    public void testOldestFilesAreEvicted()
+    {
+        XCapDocumentCache cache = new XCapDocumentCache(directory);
+
+        for (int i = 0; i <= XCapDocumentCache.MAX_FILES; i++)
+        {
+            cache.put(
+                    URI.create(DOCUMENT_URI + "-" + i), "\"etag-1\"", null,
+                    new byte[] { 1 });
+        }
+
+        String[] names = directory.list();
+
+        Assert.assertEquals(XCapDocumentCache.MAX_FILES, names.length);
+        for (String name : names)
+            Assert.assertTrue(name, name.endsWith(".xcap"));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.plugin.reconnectplugin;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class NetworkDownGracePeriodTest
+    extends TestCase
+{
+    private Timer timer;
+
+    private CountDownLatch expired;
+
+    private NetworkDownGracePeriod gracePeriod;
+
+    @Override
+    protected void setUp()
+    {
+        timer = new Timer(true);
+        expired = new CountDownLatch(1);
+        gracePeriod
+            = new NetworkDownGracePeriod(
+                    timer,
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            expired.countDown();
+                        }
+                    });
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        timer.cancel();
+    }
+
+    public void testCancelledWhenNetworkIsBack()
+        throws Exception
+    {
+        gracePeriod.start(200, addresses(1));
+
+        Assert.assertTrue(gracePeriod.cancel());
+        Assert.assertFalse(expired.await(500, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(gracePeriod.cancel());
+    }
+
+    public void testExpiryRunsHandler()
+        throws Exception
+    {
+        gracePeriod.start(50, addresses(1));
+
+        Assert.assertTrue(expired.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(gracePeriod.cancel());
+    }
+
+    public void testSecondStartKeepsFirstOutage()
+        throws Exception
+    {
+        gracePeriod.start(50, addresses(1));
+        gracePeriod.start(60000, addresses(2));
+
+        Assert.assertTrue(expired.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testAddressesCompared()
+        throws Exception
+    {
+        gracePeriod.start(60000, addresses(1, 2));
+        gracePeriod.cancel();
+
+        Assert.assertTrue(gracePeriod.isAddressesBack(addresses(2, 1, 3)));
+        Assert.assertFalse(gracePeriod.isAddressesBack(addresses(1)));
+        Assert.assertFalse(gracePeriod.isAddressesBack(addresses(3)));
+    }
+
+    private static List<InetAddress> addresses(int... lastBytes)
+        throws UnknownHostException
+    {
+        List<InetAddress> addresses = new ArrayList<InetAddress>();
+
+        for (int lastByte : lastBytes)
+        {
+            addresses.add(
+                InetAddress.getByAddress(
+                    new byte[] { 10, 0, 0, (byte) lastByte }));
+        }
+        return addresses;
+    }
+}
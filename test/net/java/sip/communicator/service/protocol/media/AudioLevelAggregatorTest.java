@@ -0,0 +1,103 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import org.jitsi.service.neomedia.event.*;
+
+public class AudioLevelAggregatorTest
+    extends TestCase
+{
+    private final List<long[]> batches
+        = Collections.synchronizedList(new ArrayList<long[]>());
+
+    private final List<Integer> levels
+        = Collections.synchronizedList(new ArrayList<Integer>());
+
+    private final CsrcAudioLevelListener csrcListener
+        = new CsrcAudioLevelListener()
+        {
+            public void audioLevelsReceived(long[] audioLevels)
+            {
+                batches.add(audioLevels);
+            }
+        };
+
+    private final SimpleAudioLevelListener simpleListener
+        = new SimpleAudioLevelListener()
+        {
+            public void audioLevelChanged(int level)
+            {
+                levels.add(level);
+            }
+        };
+
+    public void testHighestLevelPerSsrcIsDelivered()
+    {
+        AudioLevelAggregator aggregator
+            = new AudioLevelAggregator(csrcListener, 3600000);
+
+        aggregator.audioLevelsReceived(new long[] { 1, 10, 2, 40 });
+        aggregator.audioLevelsReceived(new long[] { 2, 20, 1, 30 });
+        aggregator.audioLevelsReceived(new long[] { 3, 5 });
+        Assert.assertTrue(batches.isEmpty());
+
+        aggregator.deliver();
+        aggregator.deliver();
+
+        Assert.assertEquals(1, batches.size());
+        Assert.assertTrue(
+                Arrays.equals(
+                        new long[] { 1, 30, 2, 40, 3, 5 },
+                        batches.get(0)));
+    }
+
+    public void testManySsrcs()
+    {
+        AudioLevelAggregator aggregator
+            = new AudioLevelAggregator(csrcListener, 3600000);
+
+        for (int i = 0; i < 100; i++)
+            aggregator.audioLevelsReceived(new long[] { i, i });
+        aggregator.deliver();
+
+        Assert.assertEquals(200, batches.get(0).length);
+        Assert.assertEquals(99, batches.get(0)[199]);
+    }
+
+    public void testHighestStreamLevelIsDelivered()
+    {
+        AudioLevelAggregator aggregator
+            = new AudioLevelAggregator(simpleListener, 3600000);
+
+        aggregator.audioLevelChanged(3);
+        aggregator.audioLevelChanged(9);
+        aggregator.audioLevelChanged(0);
+        aggregator.deliver();
+        aggregator.deliver();
+
+        Assert.assertEquals(Collections.singletonList(9), levels);
+    }
+
+    public void testLevelsAreDeliveredAfterInterval()
+        throws InterruptedException
+    {
+        AudioLevelAggregator aggregator
+            = new AudioLevelAggregator(simpleListener, 20);
+
+        aggregator.audioLevelChanged(1);
+        aggregator.audioLevelChanged(2);
+
+        for (int i = 0; i < 500 && levels.isEmpty(); i++)
+            Thread.sleep(10);
+
+        Assert.assertEquals(Collections.singletonList(2), levels);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import junit.framework.*;
+
+public class CallSetupTraceTest
+    extends TestCase
+{
+    public void testSpanIsEndedByNameAndPeer()
+    {
+        CallSetupTrace trace = new CallSetupTrace();
+
+        trace.begin("sip.invite", "alice");
+        trace.begin("sip.invite", "bob");
+
+        Assert.assertTrue(trace.end("sip.invite", "alice"));
+        Assert.assertFalse(trace.end("sip.invite", "alice"));
+        Assert.assertFalse(trace.end("sip.invite", null));
+
+        List<CallSetupTrace.Span> spans = trace.getSpans();
+
+        Assert.assertTrue(spans.get(0).isEnded());
+        Assert.assertTrue(spans.get(0).getDuration() >= 0);
+        Assert.assertFalse(spans.get(1).isEnded());
+        Assert.assertEquals(-1, spans.get(1).getDuration());
+    }
+
+    public void testMarkEndsRightAway()
+    {
+        CallSetupTrace trace = new CallSetupTrace();
+
+        trace.mark("state Connected", "alice");
+
+        CallSetupTrace.Span span = trace.getSpans().get(0);
+
+        Assert.assertTrue(span.isEnded());
+        Assert.assertEquals("state Connected", span.getName());
+        Assert.assertEquals("alice", span.getPeer());
+        Assert.assertTrue(
+                trace.toString().contains("ms state Connected [alice] "));
+    }
+
+    public void testNoSpansAfterSetupCompleted()
+    {
+        CallSetupTrace trace = new CallSetupTrace();
+
+        trace.begin("ice.connectivity", "alice");
+        trace.setupCompleted("alice");
+        trace.begin("sdp.processOffer", "alice");
+        trace.mark("state On hold", "alice");
+        trace.mark("state Connected", "bob");
+
+        Assert.assertTrue(trace.end("ice.connectivity", "alice"));
+
+        List<CallSetupTrace.Span> spans = trace.getSpans();
+
+        Assert.assertEquals(2, spans.size());
+        Assert.assertEquals("ice.connectivity", spans.get(0).getName());
+        Assert.assertEquals("bob", spans.get(1).getPeer());
+    }
+
+    public void testNumberOfSpansIsBounded()
+    {
+        CallSetupTrace trace = new CallSetupTrace();
+
+        for (int i = 0; i < CallSetupTrace.MAX_SPANS + 10; i++)
+            trace.mark("sdp.processOffer", null);
+
+        Assert.assertEquals(CallSetupTrace.MAX_SPANS, trace.getSpans().size());
+    }
+
+    public void testStaticHelpersIgnoreUntracedPeers()
+    {
+        Assert.assertNull(CallSetupTrace.getTrace(null));
+        CallSetupTrace.end(null);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+
+import junit.framework.*;
+
+public class ConferenceInfoStateTest
+    extends TestCase
+{
+    private static final String ENTITY = "sip:focus@example.com";
+
+    private final ConferenceInfoState state = new ConferenceInfoState();
+
+    private final ConferenceInfoState.UserState local
+        = user("sip:focus@example.com", "Focus", "1");
+
+    public void testFirstNotificationIsFull()
+        throws Exception
+    {
+        state.update(users(user("sip:a@example.com", "A & B", "2")));
+
+        ConferenceInfoState.Notification n = notify(null);
+        ConferenceInfoDocument doc = new ConferenceInfoDocument(n.toXml());
+
+        Assert.assertTrue(n.isFull());
+        Assert.assertEquals(1, doc.getVersion());
+        Assert.assertEquals(ConferenceInfoDocument.State.FULL, doc.getState());
+        Assert.assertEquals(ENTITY, doc.getEntity());
+        Assert.assertEquals(2, doc.getUserCount());
+        Assert.assertEquals(2, doc.getUsers().size());
+
+        ConferenceInfoDocument.User a = doc.getUser("sip:a@example.com");
+
+        Assert.assertEquals("A & B", a.getDisplayText());
+        Assert.assertEquals(
+                ConferenceInfoDocument.EndpointStatusType.connected,
+                a.getEndpoint("sip:a@example.com").getStatus());
+        Assert.assertEquals(
+                "2",
+                a.getEndpoint("sip:a@example.com").getMedia("audio")
+                    .getSrcId());
+    }
+
+    public void testUnchangedStateNeedsNoNotification()
+    {
+        state.update(users(user("sip:a@example.com", "A", "2")));
+
+        ConferenceInfoState.Notification first = notify(null);
+
+        Assert.assertFalse(
+                state.update(users(user("sip:a@example.com", "A", "2"))));
+        Assert.assertNull(notify(first));
+    }
+
+    public void testPartialNotificationOnlyHasChanges()
+        throws Exception
+    {
+        List<ConferenceInfoState.UserState> users
+            = new ArrayList<ConferenceInfoState.UserState>();
+
+        for (int i = 0; i < 50; i++)
+            users.add(user("sip:" + i + "@example.com", null, "" + i));
+        state.update(users);
+
+        ConferenceInfoState.Notification first = notify(null);
+
+        users.remove(0);
+        users.set(0, user("sip:1@example.com", "One", "1"));
+        users.add(user("sip:new@example.com", null, "100"));
+        state.update(users);
+
+        ConferenceInfoState.Notification second = notify(first);
+        ConferenceInfoDocument doc
+            = new ConferenceInfoDocument(second.toXml());
+
+        Assert.assertFalse(second.isFull());
+        Assert.assertEquals(2, second.getVersion());
+        Assert.assertEquals(
+                ConferenceInfoDocument.State.PARTIAL,
+                doc.getState());
+        Assert.assertEquals(
+                ConferenceInfoDocument.State.PARTIAL,
+                doc.getUsersState());
+        Assert.assertEquals(51, doc.getUserCount());
+        Assert.assertEquals(3, doc.getUsers().size());
+        Assert.assertEquals(
+                ConferenceInfoDocument.State.DELETED,
+                doc.getUser("sip:0@example.com").getState());
+        Assert.assertEquals(
+                "One",
+                doc.getUser("sip:1@example.com").getDisplayText());
+        Assert.assertNotNull(doc.getUser("sip:new@example.com"));
+    }
+
+    public void testUserXmlIsShared()
+    {
+        state.update(users(user("sip:a@example.com", "A", "2")));
+
+        ConferenceInfoState.Notification n1 = notify(null);
+        ConferenceInfoState.Notification n2 = notify(null);
+
+        Assert.assertSame(
+                n1.getUsers().get(1).toXml(),
+                n2.getUsers().get(1).toXml());
+    }
+
+    public void testPartialNotificationsCanBeDisabled()
+    {
+        state.update(users(user("sip:a@example.com", "A", "2")));
+
+        ConferenceInfoState.Notification first
+            = state.createNotification(ENTITY, null, local, null, false, false);
+
+        state.update(
+                users(
+                    user("sip:a@example.com", "A", "2"),
+                    user("sip:b@example.com", "B", "3")));
+
+        ConferenceInfoState.Notification second
+            = state.createNotification(
+                    ENTITY, null, local, first, false, false);
+
+        Assert.assertTrue(second.isFull());
+        Assert.assertEquals(3, second.getUsers().size());
+    }
+
+    private ConferenceInfoState.Notification notify(
+            ConferenceInfoState.Notification lastSent)
+    {
+        return
+            state.createNotification(
+                    ENTITY, "sid", local, lastSent, true, false);
+    }
+
+    private static List<ConferenceInfoState.UserState> users(
+            ConferenceInfoState.UserState... users)
+    {
+        return Arrays.asList(users);
+    }
+
+    private static ConferenceInfoState.UserState user(
+            String entity,
+            String displayText,
+            String srcId)
+    {
+        return
+            new ConferenceInfoState.UserState(
+                    entity,
+                    displayText,
+                    ConferenceInfoDocument.EndpointStatusType.connected,
+                    Collections.singletonList(
+                            new ConferenceInfoState.MediaState(
+                                    "audio", "audio", srcId, "sendrecv")));
+    }
+}
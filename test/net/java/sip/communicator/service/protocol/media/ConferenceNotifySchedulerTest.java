@@ -0,0 +1,129 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+
+public class ConferenceNotifySchedulerTest
+    extends TestCase
+{
+    private ConferenceNotifyScheduler scheduler;
+
+    private TestParticipant participant;
+
+    private AtomicInteger notifications;
+
+    private CountDownLatch notified;
+
+    private Runnable notifier;
+
+    private volatile boolean scheduledWhenNotified;
+
+    @Override
+    protected void setUp()
+    {
+        scheduler = new ConferenceNotifyScheduler();
+        participant = new TestParticipant();
+        notifications = new AtomicInteger();
+        notified = new CountDownLatch(1);
+        notifier
+            = new Runnable()
+            {
+                public void run()
+                {
+                    scheduledWhenNotified = participant.isScheduled();
+                    notifications.incrementAndGet();
+                    notified.countDown();
+                }
+            };
+    }
+
+    public void testNotifiedRightAwayAfterInterval()
+    {
+        participant.lastSentTimestamp = System.currentTimeMillis() - 1000;
+
+        Assert.assertTrue(scheduler.schedule(participant, 500, notifier));
+        Assert.assertFalse(participant.isScheduled());
+        Assert.assertEquals(0, notifications.get());
+    }
+
+    public void testBurstIsCoalesced()
+        throws InterruptedException
+    {
+        participant.lastSentTimestamp = System.currentTimeMillis();
+
+        for (int i = 0; i < 10; i++)
+            Assert.assertFalse(scheduler.schedule(participant, 100, notifier));
+        Assert.assertTrue(participant.isScheduled());
+
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        Assert.assertEquals(1, notifications.get());
+        // the next change has to schedule a new notification
+        Assert.assertFalse(scheduledWhenNotified);
+        Assert.assertFalse(participant.isScheduled());
+    }
+
+    public void testChangeDuringNotificationSchedulesAnother()
+        throws InterruptedException
+    {
+        participant.lastSentTimestamp = System.currentTimeMillis();
+
+        Assert.assertFalse(scheduler.schedule(participant, 50, notifier));
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+
+        notified = new CountDownLatch(1);
+        participant.lastSentTimestamp = System.currentTimeMillis();
+        Assert.assertFalse(scheduler.schedule(participant, 50, notifier));
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, notifications.get());
+    }
+
+    public void testNotificationsAreCounted()
+        throws InterruptedException
+    {
+        participant.lastSentTimestamp = System.currentTimeMillis() - 1000;
+        Assert.assertTrue(scheduler.schedule(participant, 500, notifier));
+        scheduler.notificationSent();
+
+        participant.lastSentTimestamp = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++)
+            Assert.assertFalse(scheduler.schedule(participant, 50, notifier));
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        scheduler.notificationSent();
+
+        Assert.assertEquals(2, scheduler.getSentCount());
+        Assert.assertEquals(1, scheduler.getScheduledCount());
+        Assert.assertEquals(2, scheduler.getSuppressedCount());
+    }
+
+    private static class TestParticipant
+        implements ConferenceNotifyScheduler.Participant
+    {
+        volatile long lastSentTimestamp;
+
+        private volatile boolean scheduled;
+
+        public boolean isScheduled()
+        {
+            return scheduled;
+        }
+
+        public void setScheduled(boolean scheduled)
+        {
+            this.scheduled = scheduled;
+        }
+
+        public long getLastSentTimestamp()
+        {
+            return lastSentTimestamp;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+public class ConferenceSetupExecutorTest
+    extends TestCase
+{
+    public void testTasksRunConcurrently()
+        throws OperationFailedException
+    {
+        final CountDownLatch started = new CountDownLatch(4);
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+
+        for (int i = 0; i < 4; i++)
+        {
+            final int result = i;
+
+            tasks.add(
+                    new Callable<Integer>()
+                    {
+                        public Integer call()
+                            throws InterruptedException
+                        {
+                            started.countDown();
+                            Assert.assertTrue(
+                                    started.await(5, TimeUnit.SECONDS));
+                            return result;
+                        }
+                    });
+        }
+
+        Assert.assertEquals(
+                Arrays.asList(0, 1, 2, 3),
+                new ConferenceSetupExecutor(4).invokeAll(tasks));
+    }
+
+    public void testConcurrencyIsBounded()
+        throws OperationFailedException
+    {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        ExecutorService executor = Executors.newCachedThreadPool();
+
+        for (int i = 0; i < 6; i++)
+        {
+            final int result = i;
+
+            tasks.add(
+                    new Callable<Integer>()
+                    {
+                        public Integer call()
+                            throws InterruptedException
+                        {
+                            int count = running.incrementAndGet();
+
+                            synchronized (maxRunning)
+                            {
+                                if (maxRunning.get() < count)
+                                    maxRunning.set(count);
+                            }
+                            Thread.sleep(20);
+                            running.decrementAndGet();
+                            return result;
+                        }
+                    });
+        }
+
+        try
+        {
+            Assert.assertEquals(
+                    Arrays.asList(0, 1, 2, 3, 4, 5),
+                    new ConferenceSetupExecutor(2, executor).invokeAll(tasks));
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        Assert.assertEquals(2, maxRunning.get());
+    }
+
+    public void testFirstFailureIsReported()
+    {
+        final List<Integer> completed
+            = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+
+        for (int i = 0; i < 3; i++)
+        {
+            final int index = i;
+
+            tasks.add(
+                    new Callable<Integer>()
+                    {
+                        public Integer call()
+                            throws OperationFailedException
+                        {
+                            completed.add(index);
+                            if (index > 0)
+                            {
+                                throw new OperationFailedException(
+                                        Integer.toString(index),
+                                        OperationFailedException.GENERAL_ERROR);
+                            }
+                            return index;
+                        }
+                    });
+        }
+
+        try
+        {
+            new ConferenceSetupExecutor(2).invokeAll(tasks);
+            Assert.fail();
+        }
+        catch (OperationFailedException ofe)
+        {
+            Assert.assertEquals("1", ofe.getMessage());
+        }
+        Assert.assertEquals(3, completed.size());
+    }
+
+    public void testSingleThreadRunsOnCallingThread()
+        throws OperationFailedException
+    {
+        final Thread caller = Thread.currentThread();
+        Callable<Boolean> task
+            = new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    return Thread.currentThread() == caller;
+                }
+            };
+
+        Assert.assertEquals(
+                Arrays.asList(true, true),
+                new ConferenceSetupExecutor(1).invokeAll(
+                        Arrays.asList(task, task)));
+    }
+}
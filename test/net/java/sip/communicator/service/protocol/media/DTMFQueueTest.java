@@ -0,0 +1,192 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.protocol.DTMFTone;
+
+public class DTMFQueueTest
+    extends TestCase
+{
+    private final List<String> events
+        = Collections.synchronizedList(new ArrayList<String>());
+
+    private final CallPeer callPeer
+        = (CallPeer) Proxy.newProxyInstance(
+                CallPeer.class.getClassLoader(),
+                new Class<?>[] { CallPeer.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(
+                            Object proxy,
+                            Method method,
+                            Object[] args)
+                    {
+                        return null;
+                    }
+                });
+
+    private final OperationSetDTMF opSet
+        = new OperationSetDTMF()
+        {
+            public void startSendingDTMF(CallPeer callPeer, DTMFTone tone)
+            {
+                events.add("start " + tone.getValue());
+            }
+
+            public void stopSendingDTMF(CallPeer callPeer)
+            {
+                events.add("stop");
+            }
+        };
+
+    public void testTonesAreSentInOrder()
+        throws InterruptedException
+    {
+        DTMFQueue queue = new DTMFQueue(opSet, callPeer);
+
+        queue.add(DTMFQueue.parse("12"), 10, 5);
+        queue.add(DTMFQueue.parse(" #a"), 10, 5);
+
+        waitForEvents(8);
+        Assert.assertEquals(
+                Arrays.asList(
+                        "start 1", "stop", "start 2", "stop",
+                        "start #", "stop", "start A", "stop"),
+                events);
+        Assert.assertEquals(0, queue.size());
+    }
+
+    public void testCancelDropsQueuedTones()
+        throws InterruptedException
+    {
+        DTMFQueue queue = new DTMFQueue(opSet, callPeer);
+
+        queue.add(DTMFQueue.parse("1,2"), 10, 5);
+        waitForEvents(2);
+        queue.cancel();
+        Thread.sleep(100);
+
+        Assert.assertEquals(Arrays.asList("start 1", "stop"), events);
+    }
+
+    public void testQueueRestartsWhenTonesAreAdded()
+        throws InterruptedException
+    {
+        DTMFQueue queue = new DTMFQueue(opSet, callPeer);
+
+        queue.add(DTMFQueue.parse("1"), 10, 5);
+        waitForEvents(2);
+        Thread.sleep(50);
+        queue.add(DTMFQueue.parse("2"), 10, 5);
+        waitForEvents(4);
+
+        Assert.assertEquals(
+                Arrays.asList("start 1", "stop", "start 2", "stop"),
+                events);
+    }
+
+    public void testNextWholeToneWaitsUntilSent()
+        throws InterruptedException
+    {
+        WholeToneOperationSet opSet = new WholeToneOperationSet();
+        DTMFQueue queue = new DTMFQueue(opSet, callPeer);
+
+        queue.add(DTMFQueue.parse("12"), 10, 5);
+        waitForEvents(1);
+        Thread.sleep(100);
+        Assert.assertEquals(Arrays.asList("info 1"), events);
+
+        opSet.lastQueue.toneSent();
+        waitForEvents(2);
+        Assert.assertEquals(Arrays.asList("info 1", "info 2"), events);
+
+        opSet.lastQueue.toneSent();
+        Assert.assertEquals(0, queue.size());
+    }
+
+    public void testFailedWholeToneDropsTheRest()
+        throws InterruptedException
+    {
+        WholeToneOperationSet opSet = new WholeToneOperationSet();
+        DTMFQueue queue = new DTMFQueue(opSet, callPeer);
+
+        queue.add(DTMFQueue.parse("123"), 10, 5);
+        waitForEvents(1);
+        opSet.lastQueue.toneFailed(new Exception("rejected"));
+        Thread.sleep(100);
+
+        Assert.assertEquals(Arrays.asList("info 1"), events);
+        Assert.assertEquals(0, queue.size());
+
+        queue.add(DTMFQueue.parse("4"), 10, 5);
+        waitForEvents(2);
+        Assert.assertEquals(Arrays.asList("info 1", "info 4"), events);
+    }
+
+    public void testInvalidTonesAreRejected()
+    {
+        try
+        {
+            DTMFQueue.parse("12x");
+            Assert.fail();
+        }
+        catch (IllegalArgumentException iae)
+        {
+        }
+        Assert.assertEquals(
+                Arrays.asList(DTMFTone.DTMF_0, null, DTMFTone.DTMF_STAR),
+                DTMFQueue.parse("0,*"));
+    }
+
+    private void waitForEvents(int count)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && events.size() < count; i++)
+            Thread.sleep(10);
+    }
+
+    private class WholeToneOperationSet
+        extends AbstractOperationSetDTMF
+    {
+        volatile DTMFQueue lastQueue;
+
+        WholeToneOperationSet()
+        {
+            super(DTMFMethod.SIP_INFO_DTMF, 10, 1000, 0);
+        }
+
+        public void startSendingDTMF(CallPeer callPeer, DTMFTone tone)
+        {
+            events.add("start " + tone.getValue());
+        }
+
+        public void stopSendingDTMF(CallPeer callPeer)
+        {
+            events.add("stop");
+        }
+
+        @Override
+        protected boolean sendDTMFTone(
+                CallPeer callPeer,
+                DTMFTone tone,
+                int duration,
+                DTMFQueue queue)
+        {
+            lastQueue = queue;
+            events.add("info " + tone.getValue());
+            return true;
+        }
+    }
+}
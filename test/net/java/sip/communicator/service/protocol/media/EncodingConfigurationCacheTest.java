@@ -0,0 +1,115 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.neomedia.*;
+import org.jitsi.service.neomedia.codec.*;
+import org.jitsi.service.neomedia.format.*;
+
+public class EncodingConfigurationCacheTest
+    extends TestCase
+{
+    private static final String OPUS_PROPERTY
+        = ProtocolProviderFactory.ENCODING_PROP_PREFIX + ".opus/48000";
+
+    private int createdCount;
+
+    private EncodingConfigurationCache cache;
+
+    @Override
+    protected void setUp()
+    {
+        cache = new EncodingConfigurationCache(mediaService());
+    }
+
+    public void testConfigurationIsReusedUntilPropertiesChange()
+    {
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put(OPUS_PROPERTY, "750");
+
+        EncodingConfiguration first
+            = cache.getEncodingConfiguration(properties);
+
+        Assert.assertSame(first, cache.getEncodingConfiguration(properties));
+        Assert.assertEquals(1, createdCount);
+
+        properties.put(OPUS_PROPERTY, "0");
+
+        Assert.assertNotSame(
+                first,
+                cache.getEncodingConfiguration(properties));
+        Assert.assertEquals(2, createdCount);
+    }
+
+    public void testOtherPropertiesAreIgnored()
+    {
+        Map<String, String> properties = new HashMap<String, String>();
+
+        properties.put(OPUS_PROPERTY, "750");
+
+        EncodingConfiguration first
+            = cache.getEncodingConfiguration(properties);
+
+        properties.put(ProtocolProviderFactory.DISPLAY_NAME, "Alice");
+
+        Assert.assertSame(first, cache.getEncodingConfiguration(properties));
+        Assert.assertEquals(1, createdCount);
+    }
+
+    private MediaService mediaService()
+    {
+        return (MediaService) Proxy.newProxyInstance(
+                MediaService.class.getClassLoader(),
+                new Class<?>[] { MediaService.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(
+                            Object proxy,
+                            Method method,
+                            Object[] args)
+                    {
+                        if (!method.getName().equals(
+                                "createEmptyEncodingConfiguration"))
+                            return null;
+
+                        createdCount++;
+                        return new TestEncodingConfiguration();
+                    }
+                });
+    }
+
+    private static class TestEncodingConfiguration
+        extends EncodingConfiguration
+    {
+        @Override
+        protected void setEncodingPreference(
+                String encoding,
+                double clockRate,
+                int pref)
+        {
+        }
+
+        @Override
+        public MediaFormat[] getAllEncodings(MediaType type)
+        {
+            return new MediaFormat[0];
+        }
+
+        @Override
+        protected int compareEncodingPreferences(MediaFormat a, MediaFormat b)
+        {
+            return 0;
+        }
+    }
+}
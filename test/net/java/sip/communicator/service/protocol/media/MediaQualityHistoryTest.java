@@ -0,0 +1,95 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+
+import org.jitsi.service.neomedia.*;
+
+public class MediaQualityHistoryTest
+    extends TestCase
+{
+    public void testEmptyHistory()
+    {
+        MediaQualityHistory history = new MediaQualityHistory(3);
+
+        Assert.assertNull(history.getLatest());
+        Assert.assertTrue(history.getSamples().isEmpty());
+    }
+
+    public void testOldestSamplesAreDropped()
+    {
+        MediaQualityHistory history = new MediaQualityHistory(3);
+
+        for (int i = 1; i <= 5; i++)
+            history.add(sample(i));
+
+        List<MediaQualitySample> samples = history.getSamples();
+
+        Assert.assertEquals(3, samples.size());
+        Assert.assertEquals(3, samples.get(0).getTime());
+        Assert.assertEquals(4, samples.get(1).getTime());
+        Assert.assertEquals(5, samples.get(2).getTime());
+        Assert.assertEquals(5, history.getLatest().getTime());
+    }
+
+    public void testSampleCopiesStatistics()
+    {
+        MediaQualitySample sample = sample(0);
+
+        Assert.assertEquals(42.5, sample.getDownloadJitterMs());
+        Assert.assertEquals(120, sample.getRttMs());
+        Assert.assertEquals("10.0.0.1:5000", sample.getLocalAddress());
+        Assert.assertEquals(
+                MediaQualitySample.CSV_HEADER.split(",").length,
+                sample.toCSV().split(",", -1).length);
+        Assert.assertTrue(
+                sample.toCSV().endsWith(
+                        ",sip:a@b,audio,opus,42.5,42.5,42.5,42.5,42.5,42.5,"
+                            + "120,60,host,10.0.0.1:5000,10.0.0.1:5000"));
+    }
+
+    private static MediaQualitySample sample(long time)
+    {
+        MediaStreamStats stats
+            = (MediaStreamStats) Proxy.newProxyInstance(
+                    MediaStreamStats.class.getClassLoader(),
+                    new Class<?>[] { MediaStreamStats.class },
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                        {
+                            Class<?> type = method.getReturnType();
+                            String name = method.getName();
+
+                            if (name.equals("getEncoding"))
+                                return "opus";
+                            if (name.endsWith("IPAddress"))
+                                return "10.0.0.1";
+                            if (name.endsWith("Port"))
+                                return 5000;
+                            if (type == double.class)
+                                return 42.5;
+                            if (type == long.class)
+                                return 120L;
+                            if (type == int.class)
+                                return 60;
+                            return null;
+                        }
+                    });
+
+        return
+            new MediaQualitySample(
+                    time, "sip:a@b", MediaType.AUDIO, stats, "host");
+    }
+}
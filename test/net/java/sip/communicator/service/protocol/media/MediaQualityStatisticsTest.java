@@ -0,0 +1,208 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import junit.framework.*;
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.service.neomedia.*;
+
+public class MediaQualityStatisticsTest
+    extends TestCase
+{
+    private File dir;
+
+    @Override
+    protected void setUp()
+        throws IOException
+    {
+        dir = File.createTempFile("media-quality", "");
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(dir.mkdir());
+    }
+
+    @Override
+    protected void tearDown()
+    {
+        File[] files = dir.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        dir.delete();
+    }
+
+    public void testDisabledByDefault()
+    {
+        Assert.assertFalse(MediaQualityStatistics.create(null).isEnabled());
+        Assert.assertFalse(
+                MediaQualityStatistics.create(
+                        configuration(
+                                Collections.<String, Object>emptyMap()))
+                    .isEnabled());
+    }
+
+    public void testEnabledUntilStopped()
+    {
+        MediaQualityStatistics statistics
+            = MediaQualityStatistics.create(
+                    configuration(
+                            Collections.<String, Object>singletonMap(
+                                    MediaQualityStatistics
+                                        .INTERVAL_PROPERTY_NAME,
+                                    500L)));
+
+        Assert.assertTrue(statistics.isEnabled());
+
+        statistics.stop();
+        Assert.assertFalse(statistics.isEnabled());
+    }
+
+    public void testSamplesOfEndedCallAreWrittenAsCSV()
+        throws IOException
+    {
+        MediaQualityStatistics statistics
+            = new MediaQualityStatistics(1000, 10, 100000, 1, dir);
+        MediaQualityHistory history = new MediaQualityHistory(10);
+
+        history.add(sample(1));
+        history.add(sample(2));
+        statistics.write("call1", histories(history));
+        statistics.stop();
+
+        List<String> lines = read(new File(dir, "media-quality0.csv"));
+
+        Assert.assertEquals(4, lines.size());
+        Assert.assertEquals("# call call1", lines.get(0));
+        Assert.assertEquals(MediaQualitySample.CSV_HEADER, lines.get(1));
+        Assert.assertEquals(sample(1).toCSV(), lines.get(2));
+        Assert.assertEquals(sample(2).toCSV(), lines.get(3));
+    }
+
+    public void testNothingIsWrittenAfterStop()
+    {
+        MediaQualityStatistics statistics
+            = new MediaQualityStatistics(1000, 10, 100000, 1, dir);
+        MediaQualityHistory history = new MediaQualityHistory(10);
+
+        history.add(sample(1));
+        statistics.stop();
+        statistics.write("call1", histories(history));
+
+        Assert.assertEquals(0, dir.listFiles().length);
+    }
+
+    private static Map<CallPeer, Map<MediaType, MediaQualityHistory>> histories(
+            MediaQualityHistory history)
+    {
+        Map<MediaType, MediaQualityHistory> peerHistories
+            = new EnumMap<MediaType, MediaQualityHistory>(MediaType.class);
+
+        peerHistories.put(MediaType.AUDIO, history);
+        return Collections.singletonMap(
+                proxy(CallPeer.class, Collections.<String, Object>emptyMap()),
+                peerHistories);
+    }
+
+    private static List<String> read(File file)
+        throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static MediaQualitySample sample(long time)
+    {
+        Map<String, Object> values = new HashMap<String, Object>();
+
+        values.put("getEncoding", "opus");
+        values.put("getLocalIPAddress", "10.0.0.1");
+        values.put("getRemoteIPAddress", "10.0.0.2");
+        return
+            new MediaQualitySample(
+                    time,
+                    "sip:a@b",
+                    MediaType.AUDIO,
+                    proxy(MediaStreamStats.class, values),
+                    "host");
+    }
+
+    private static ConfigurationService configuration(
+            final Map<String, Object> properties)
+    {
+        return
+            (ConfigurationService) Proxy.newProxyInstance(
+                    ConfigurationService.class.getClassLoader(),
+                    new Class<?>[] { ConfigurationService.class },
+                    new InvocationHandler()
+                    {
+                        public Object invoke(
+                                Object proxy,
+                                Method method,
+                                Object[] args)
+                        {
+                            Object value = properties.get(args[0]);
+
+                            return (value == null) ? args[1] : value;
+                        }
+                    });
+    }
+
+    private static <T> T proxy(
+            Class<T> type,
+            final Map<String, Object> values)
+    {
+        return type.cast(
+                Proxy.newProxyInstance(
+                        type.getClassLoader(),
+                        new Class<?>[] { type },
+                        new InvocationHandler()
+                        {
+                            public Object invoke(
+                                    Object proxy,
+                                    Method method,
+                                    Object[] args)
+                            {
+                                Class<?> returnType = method.getReturnType();
+
+                                if (values.containsKey(method.getName()))
+                                    return values.get(method.getName());
+                                if (method.getName().equals("hashCode"))
+                                    return System.identityHashCode(proxy);
+                                if (method.getName().equals("equals"))
+                                    return proxy == args[0];
+                                if (returnType == double.class)
+                                    return 0.0;
+                                if (returnType == long.class)
+                                    return 0L;
+                                if (returnType == int.class)
+                                    return 0;
+                                return null;
+                            }
+                        }));
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.util.concurrent.*;
+
+import junit.framework.*;
+
+public class MediaTaskExecutorTest
+    extends TestCase
+{
+    public void testCancelledTaskIsRemovedFromQueue()
+    {
+        ScheduledThreadPoolExecutor scheduler
+            = (ScheduledThreadPoolExecutor) MediaTaskExecutor.getScheduler();
+        ScheduledFuture<?> task
+            = scheduler.scheduleWithFixedDelay(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                        }
+                    },
+                    1, 1, TimeUnit.HOURS);
+
+        Assert.assertTrue(scheduler.getQueue().contains(task));
+
+        MediaTaskExecutor.cancel(task);
+
+        Assert.assertTrue(task.isCancelled());
+        Assert.assertFalse(scheduler.getQueue().contains(task));
+    }
+}
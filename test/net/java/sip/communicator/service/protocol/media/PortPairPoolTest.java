@@ -0,0 +1,141 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.service.protocol.media;
+
+import java.lang.reflect.*;
+import java.net.*;
+
+import junit.framework.*;
+
+import net.java.sip.communicator.service.netaddr.*;
+import net.java.sip.communicator.util.*;
+
+public class PortPairPoolTest
+    extends TestCase
+{
+    private final InetAddress loopback = InetAddress.getLoopbackAddress();
+
+    private final NetworkAddressManagerService nam
+        = (NetworkAddressManagerService)
+            java.lang.reflect.Proxy.newProxyInstance(
+                NetworkAddressManagerService.class.getClassLoader(),
+                new Class<?>[] { NetworkAddressManagerService.class },
+                new InvocationHandler()
+                {
+                    public Object invoke(
+                            Object proxy,
+                            Method method,
+                            Object[] args)
+                        throws Exception
+                    {
+                        if (!method.getName().equals("createDatagramSocket"))
+                            return null;
+
+                        InetAddress laddr = (InetAddress) args[0];
+                        int port = (Integer) args[1];
+                        int maxPort = (Integer) args[3];
+
+                        for (; port <= maxPort; port++)
+                        {
+                            try
+                            {
+                                return new DatagramSocket(port, laddr);
+                            }
+                            catch (SocketException se)
+                            {
+                            }
+                        }
+                        throw new BindException();
+                    }
+                });
+
+    public void testLeasedPairsAreWithinRangeAndRefilled()
+        throws Exception
+    {
+        PortTracker portTracker = new PortTracker(41000, 41999);
+        PortPairPool pool = new PortPairPool(portTracker, 2, nam);
+
+        Assert.assertNull(pool.lease(loopback));
+        waitForPairs(pool, 2);
+
+        DatagramSocket[] pair = pool.lease(loopback);
+
+        try
+        {
+            Assert.assertNotNull(pair);
+            for (DatagramSocket socket : pair)
+            {
+                Assert.assertFalse(socket.isClosed());
+                Assert.assertEquals(loopback, socket.getLocalAddress());
+                Assert.assertTrue(socket.getLocalPort() >= 41000);
+                Assert.assertTrue(socket.getLocalPort() <= 41999);
+            }
+            Assert.assertTrue(
+                    portTracker.getPort() > pair[1].getLocalPort());
+            waitForPairs(pool, 2);
+        }
+        finally
+        {
+            close(pair);
+            pool.close();
+        }
+    }
+
+    public void testPairsOutOfRangeAreDropped()
+        throws Exception
+    {
+        PortTracker portTracker = new PortTracker(42000, 42999);
+        PortPairPool pool = new PortPairPool(portTracker, 1, nam);
+
+        pool.lease(loopback);
+        waitForPairs(pool, 1);
+        portTracker.setRange(43000, 43999);
+
+        DatagramSocket[] pair = pool.lease(loopback);
+
+        try
+        {
+            Assert.assertNull(pair);
+            waitForPairs(pool, 1);
+            pair = pool.lease(loopback);
+            Assert.assertTrue(pair[0].getLocalPort() >= 43000);
+        }
+        finally
+        {
+            close(pair);
+            pool.close();
+        }
+    }
+
+    public void testZeroSizeDisablesPooling()
+        throws Exception
+    {
+        PortPairPool pool
+            = new PortPairPool(new PortTracker(44000, 44999), 0, nam);
+
+        Assert.assertNull(pool.lease(loopback));
+        Thread.sleep(50);
+        Assert.assertEquals(0, pool.getPairCount());
+    }
+
+    private static void waitForPairs(PortPairPool pool, int count)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 500 && pool.getPairCount() < count; i++)
+            Thread.sleep(10);
+        Assert.assertEquals(count, pool.getPairCount());
+    }
+
+    private static void close(DatagramSocket[] pair)
+    {
+        if (pair != null)
+        {
+            for (DatagramSocket socket : pair)
+                socket.close();
+        }
+    }
+}